@@ -34,9 +34,12 @@
 
 package org.opentradingsolutions.log4fix;
 
+import org.opentradingsolutions.log4fix.core.AsyncLiveMemoryLog;
 import org.opentradingsolutions.log4fix.core.MemoryLogFactory;
 import org.opentradingsolutions.log4fix.core.MemoryLogModel;
 import org.opentradingsolutions.log4fix.core.MemoryLogModelFactory;
+import org.opentradingsolutions.log4fix.core.OverflowPolicy;
+import org.opentradingsolutions.log4fix.core.SessionMemoryLogModels;
 import org.opentradingsolutions.log4fix.datadictionary.SessionDataDictionaryLoader;
 import org.opentradingsolutions.log4fix.ui.importer.ImporterController;
 import org.opentradingsolutions.log4fix.ui.messages.ViewBuilder;
@@ -115,9 +118,31 @@ public class Log4FIX {
      * @see #show()
      */
     public static Log4FIX createForLiveUpdates(Map<SessionID, MemoryLogModel> memoryLogModelsBySessionId) {
+        return createForLiveUpdates(memoryLogModelsBySessionId, null);
+    }
+
+    /**
+     * Factory method that creates a Log4FIX instance for displaying real-time
+     * FIX messages without slowing down the sessions. Each session's messages are
+     * handed to the models by an {@link AsyncLiveMemoryLog}.
+     *
+     * @param overflowPolicy what happens to messages logged while a log's buffer is
+     *                       full; null to add the messages on the session threads.
+     * @see #createForLiveUpdates(SessionSettings)
+     */
+    public static Log4FIX createForLiveUpdates(SessionSettings sessionSettings, OverflowPolicy overflowPolicy) {
+        return createForLiveUpdates(MemoryLogModelFactory.getMemoryLogModels(sessionSettings), overflowPolicy);
+    }
+
+    /**
+     * @see #createForLiveUpdates(SessionSettings, OverflowPolicy)
+     */
+    public static Log4FIX createForLiveUpdates(Map<SessionID, MemoryLogModel> memoryLogModelsBySessionId,
+                                               OverflowPolicy overflowPolicy) {
 
         Log4FIX log4FIX = new Log4FIX();
-        log4FIX.logFactory = new MemoryLogFactory(memoryLogModelsBySessionId, new SessionDataDictionaryLoader());
+        log4FIX.logFactory = new MemoryLogFactory(memoryLogModelsBySessionId, new SessionDataDictionaryLoader(),
+                overflowPolicy, AsyncLiveMemoryLog.DEFAULT_CAPACITY);
 
         ViewBuilder viewBuilder = new ViewBuilder();
 
@@ -136,20 +161,37 @@ public class Log4FIX {
      */
     public static Log4FIX createForImport(final MemoryLogModel memoryLogModel, ImporterController controller) {
         ViewBuilder viewBuilder = new ViewBuilder();
+        return createForImport(viewBuilder.createView(memoryLogModel), new AbstractAction("Clear") {
+            public void actionPerformed(ActionEvent e) {
+                memoryLogModel.clear();
+            }
+        }, controller);
+    }
+
+    /**
+     * Factory method that creates a Log4FIX instance for displaying imported
+     * FIX messages, showing each session found by the import in its own tab.
+     */
+    public static Log4FIX createForImport(final SessionMemoryLogModels sessionMemoryLogModels,
+                                          ImporterController controller) {
+        ViewBuilder viewBuilder = new ViewBuilder();
+        return createForImport(viewBuilder.createView(sessionMemoryLogModels), new AbstractAction("Clear") {
+            public void actionPerformed(ActionEvent e) {
+                sessionMemoryLogModels.clear();
+            }
+        }, controller);
+    }
 
+    private static Log4FIX createForImport(JComponent view, Action clear, ImporterController controller) {
         Log4FIX log4FIX = new Log4FIX();
         log4FIX.frame = new JFrame("Log4FIX");
-        log4FIX.frame.add(viewBuilder.createView(memoryLogModel), BorderLayout.CENTER);
+        log4FIX.frame.add(view, BorderLayout.CENTER);
 
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         buttonPanel.add(new JButton(controller.getStart()));
+        buttonPanel.add(new JButton(controller.getFollow()));
         buttonPanel.add(new JButton(controller.getStop()));
-        buttonPanel.add(new JButton(new AbstractAction("Clear") {
-            public void actionPerformed(ActionEvent e) {
-                memoryLogModel.clear();
-            }
-        }
-        ));
+        buttonPanel.add(new JButton(clear));
 
         buttonPanel.add(controller.getBusyIcon());
 
@@ -72,6 +72,22 @@ public abstract class AbstractMemoryLog implements Log {
         log(message, false);
     }
 
+    /**
+     * @param receiveTime the time the message was logged in nanoseconds since the
+     *                    epoch; {@link LogMessage#NO_RECEIVE_TIME} if not known.
+     */
+    public void onIncoming(String message, long receiveTime) {
+        log(message, true, receiveTime);
+    }
+
+    /**
+     * @param receiveTime the time the message was logged in nanoseconds since the
+     *                    epoch; {@link LogMessage#NO_RECEIVE_TIME} if not known.
+     */
+    public void onOutgoing(String message, long receiveTime) {
+        log(message, false, receiveTime);
+    }
+
     @Override
     public void onEvent(String text) {
         getMemoryLogModel().addLogEvent(new LogEvent(text));
@@ -86,12 +102,32 @@ public abstract class AbstractMemoryLog implements Log {
 
     protected abstract MemoryLogModel getMemoryLogModel();
 
+    /**
+     * Reserves a block of consecutive message indexes. This allows messages to be
+     * created out of order (for example, by multiple threads) and still be indexed
+     * in the order they appear in the log.
+     *
+     * @param count the number of indexes to reserve.
+     * @return the first reserved index.
+     */
+    protected int reserveMessageIndexes(int count) {
+        return index.getAndAdd(count);
+    }
+
+    protected DataDictionary getDataDictionary() {
+        return dictionaryLoader.loadDictionary(getSessionId());
+    }
+
     private void log(final String rawMessage, final boolean incoming) {
+        log(rawMessage, incoming, LogMessage.NO_RECEIVE_TIME);
+    }
+
+    private void log(final String rawMessage, final boolean incoming, long receiveTime) {
         SessionID sessionId = getSessionId();
         int messageIndex = index.getAndIncrement();
 
         DataDictionary dictionary = dictionaryLoader.loadDictionary(sessionId);
-        LogMessage message = new LogMessage(messageIndex, incoming, sessionId, rawMessage, dictionary);
+        LogMessage message = new LogMessage(messageIndex, incoming, sessionId, rawMessage, dictionary, receiveTime);
         getMemoryLogModel().addLogMessage(message);
     }
 }
\ No newline at end of file
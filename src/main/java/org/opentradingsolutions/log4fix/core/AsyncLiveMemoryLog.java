@@ -0,0 +1,315 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import org.opentradingsolutions.log4fix.datadictionary.DataDictionaryLoader;
+import quickfix.SessionID;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link LiveMemoryLog} that never parses a message or touches the model on the
+ * thread that logs it. The QuickFIX/J thread only puts the raw message and the
+ * time it was logged into a {@link LogRingBuffer}; the log's own thread takes
+ * them out, creates the {@link LogMessage}s and adds them to the model. Events and
+ * {@link #clear()} go through the same buffer, so they keep their order with the
+ * messages.
+ * <p/>
+ * The receive time of each message is taken from <code>System.nanoTime()</code>
+ * when it is logged and converted to nanoseconds since the epoch.
+ * <p/>
+ * When the buffer is full the log applies its {@link OverflowPolicy}. Dropped
+ * messages are counted and reported to the model as an event.
+ */
+public class AsyncLiveMemoryLog extends LiveMemoryLog {
+
+    /**
+     * The number of entries the ring buffer holds by default.
+     */
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    public static final String EVENT_OVERFLOW = "Overflow";
+
+    /**
+     * How long a thread waiting for room in the buffer sleeps at a time.
+     */
+    private static final long BLOCKED_NANOS = 10000L;
+
+    /**
+     * The number of entries added between reports of dropped messages while the
+     * log's thread never runs out of entries.
+     */
+    private static final int REPORT_INTERVAL = 1024;
+
+    private final LogRingBuffer buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final int heartbeatLimit;
+    private final Thread consumer;
+
+    // converts System.nanoTime() to nanoseconds since the epoch.
+    private final long epochOffset;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile boolean waiting;
+    private volatile boolean busy;
+    private volatile boolean closed;
+
+    public AsyncLiveMemoryLog(MemoryLogModel model, SessionID sessionId, DataDictionaryLoader dictionaryLoader) {
+        this(model, sessionId, dictionaryLoader, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Starts the log's thread, a daemon thread named after the session.
+     *
+     * @param capacity the number of messages the buffer holds; rounded up to a power of two.
+     */
+    public AsyncLiveMemoryLog(MemoryLogModel model, SessionID sessionId, DataDictionaryLoader dictionaryLoader,
+                              int capacity, OverflowPolicy overflowPolicy) {
+        super(model, sessionId, dictionaryLoader);
+
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("The overflow policy is null.");
+        }
+
+        buffer = new LogRingBuffer(capacity);
+        this.overflowPolicy = overflowPolicy;
+        // heartbeats may only fill three quarters of the buffer.
+        heartbeatLimit = buffer.getCapacity() - buffer.getCapacity() / 4;
+        epochOffset = System.currentTimeMillis() * 1000000L - System.nanoTime();
+
+        consumer = new Thread(new Consumer(), "Log4FIX " + sessionId);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return the number of messages dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public void onIncoming(String message) {
+        put(LogRingBuffer.INCOMING, message, epochOffset + System.nanoTime());
+    }
+
+    @Override
+    public void onOutgoing(String message) {
+        put(LogRingBuffer.OUTGOING, message, epochOffset + System.nanoTime());
+    }
+
+    @Override
+    public void onIncoming(String message, long receiveTime) {
+        put(LogRingBuffer.INCOMING, message, receiveTime);
+    }
+
+    @Override
+    public void onOutgoing(String message, long receiveTime) {
+        put(LogRingBuffer.OUTGOING, message, receiveTime);
+    }
+
+    @Override
+    public void onEvent(String text) {
+        put(LogRingBuffer.EVENT, text, 0);
+    }
+
+    @Override
+    public void clear() {
+        put(LogRingBuffer.CLEAR, null, 0);
+    }
+
+    /**
+     * Waits until everything logged so far is in the model.
+     */
+    public void flush() {
+        while (busy || !buffer.isEmpty()) {
+            if (!consumer.isAlive()) {
+                return;
+            }
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(BLOCKED_NANOS);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds what is still in the buffer to the model and stops the log's thread.
+     * Anything logged afterwards is dropped.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void put(byte kind, String text, long time) {
+        if (closed) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        if (overflowPolicy == OverflowPolicy.DROP_HEARTBEATS && kind != LogRingBuffer.EVENT
+                && kind != LogRingBuffer.CLEAR && buffer.size() >= heartbeatLimit && isHeartbeat(text)) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        while (!buffer.offer(kind, text, time)) {
+            // a slot taken by the log's thread is freed just after the entry is
+            // taken, so the buffer may no longer be full.
+            if (overflowPolicy == OverflowPolicy.DROP_OLDEST && buffer.size() == buffer.getCapacity()
+                    && buffer.dropOldestMessage()) {
+                droppedCount.incrementAndGet();
+            } else {
+                // waits for room; the oldest entry may be an event or a clear,
+                // which DROP_OLDEST never drops.
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(BLOCKED_NANOS);
+                if (closed) {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * @return true if the MsgType (35) field, which is near the start of the
+     *         message, is a Heartbeat ('0').
+     */
+    static boolean isHeartbeat(String message) {
+        int index = message.indexOf("35=");
+        while (index != -1) {
+            boolean fieldStart = index == 0 || !Character.isDigit(message.charAt(index - 1));
+            if (fieldStart) {
+                int value = index + 3;
+                return value + 1 < message.length() && message.charAt(value) == '0'
+                        && !Character.isLetterOrDigit(message.charAt(value + 1));
+            }
+            index = message.indexOf("35=", index + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Adds the entries taken from the buffer to the model.
+     */
+    private class Consumer implements Runnable {
+
+        private final LogRingBuffer.Entry entry = new LogRingBuffer.Entry();
+        private long reportedDroppedCount;
+        private int addedCount;
+
+        public void run() {
+            while (true) {
+                busy = true;
+                if (buffer.poll(entry)) {
+                    add();
+                    if (++addedCount % REPORT_INTERVAL == 0) {
+                        reportDropped();
+                    }
+                    continue;
+                }
+
+                reportDropped();
+                busy = false;
+
+                if (closed) {
+                    if (buffer.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+
+                // a producer that adds an entry after the buffer is checked sees
+                // the flag and wakes the thread.
+                waiting = true;
+                if (buffer.isEmpty() && !closed) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+            }
+        }
+
+        private void add() {
+            String text = entry.text;
+            entry.text = null;
+            try {
+                switch (entry.kind) {
+                    case LogRingBuffer.INCOMING:
+                        AsyncLiveMemoryLog.super.onIncoming(text, entry.time);
+                        break;
+                    case LogRingBuffer.OUTGOING:
+                        AsyncLiveMemoryLog.super.onOutgoing(text, entry.time);
+                        break;
+                    case LogRingBuffer.EVENT:
+                        AsyncLiveMemoryLog.super.onEvent(text);
+                        break;
+                    default:
+                        AsyncLiveMemoryLog.super.clear();
+                        break;
+                }
+            } catch (RuntimeException e) {
+                // the thread must keep going, or every later message is lost.
+                AsyncLiveMemoryLog.super.onEvent("Unable to log " + text + ": " + e);
+            }
+        }
+
+        private void reportDropped() {
+            long dropped = droppedCount.get();
+            if (dropped != reportedDroppedCount) {
+                AsyncLiveMemoryLog.super.onEvent(EVENT_OVERFLOW + ": " + (dropped - reportedDroppedCount)
+                        + " messages dropped (" + overflowPolicy + ")");
+                reportedDroppedCount = dropped;
+            }
+        }
+    }
+}
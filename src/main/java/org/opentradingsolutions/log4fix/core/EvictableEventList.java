@@ -0,0 +1,159 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import ca.odell.glazedlists.AbstractEventList;
+import ca.odell.glazedlists.util.concurrent.LockFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A <code>BasicEventList</code> that can also remove many elements at once, in a
+ * single pass over the list and a single list change event. Removing the same
+ * elements one at a time from a <code>BasicEventList</code> shifts the list and
+ * fires an event for each element.
+ * <p/>
+ * Like a <code>BasicEventList</code>, this list is not thread-safe by itself; wrap
+ * it with a <code>ThreadSafeList</code>.
+ */
+class EvictableEventList<E> extends AbstractEventList<E> {
+
+    private List<E> data = new ArrayList<E>();
+
+    EvictableEventList() {
+        super(null);
+        readWriteLock = LockFactory.DEFAULT.createReadWriteLock();
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public E get(int index) {
+        return data.get(index);
+    }
+
+    public void add(int index, E element) {
+        updates.beginEvent();
+        updates.addInsert(index);
+        data.add(index, element);
+        updates.commitEvent();
+    }
+
+    public boolean add(E element) {
+        add(data.size(), element);
+        return true;
+    }
+
+    public boolean addAll(Collection<? extends E> elements) {
+        return addAll(data.size(), elements);
+    }
+
+    public boolean addAll(int index, Collection<? extends E> elements) {
+        if (elements.isEmpty()) {
+            return false;
+        }
+
+        updates.beginEvent();
+        updates.addInsert(index, index + elements.size() - 1);
+        data.addAll(index, elements);
+        updates.commitEvent();
+        return true;
+    }
+
+    public E remove(int index) {
+        updates.beginEvent();
+        updates.addDelete(index);
+        E removed = data.remove(index);
+        updates.commitEvent();
+        return removed;
+    }
+
+    public E set(int index, E element) {
+        updates.beginEvent();
+        updates.addUpdate(index);
+        E replaced = data.set(index, element);
+        updates.commitEvent();
+        return replaced;
+    }
+
+    public void clear() {
+        if (data.isEmpty()) {
+            return;
+        }
+
+        updates.beginEvent();
+        updates.addDelete(0, data.size() - 1);
+        data.clear();
+        updates.commitEvent();
+    }
+
+    /**
+     * Removes the elements at the indexes.
+     *
+     * @param indexes the indexes of the elements to remove.
+     * @return the number of elements removed.
+     */
+    int removeAll(BitSet indexes) {
+        int size = data.size();
+        int first = indexes.nextSetBit(0);
+        if (first == -1 || first >= size) {
+            return 0;
+        }
+
+        updates.beginEvent();
+        List<E> retained = new ArrayList<E>(size);
+        retained.addAll(data.subList(0, first));
+        int removed = 0;
+        int start = first;
+        while (start != -1 && start < size) {
+            int end = Math.min(indexes.nextClearBit(start), size);
+
+            // the indexes of each run are reported as they are after the previous runs are removed.
+            updates.addDelete(start - removed, end - 1 - removed);
+            removed += end - start;
+
+            int next = indexes.nextSetBit(end);
+            retained.addAll(data.subList(end, next == -1 || next > size ? size : next));
+            start = next;
+        }
+        data = retained;
+        updates.commitEvent();
+        return removed;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+/**
+ * Decides which messages a {@link RetentionPolicy} evicts first when a model holds
+ * more messages than it may retain. Messages with a lower rank are evicted before
+ * messages with a higher rank; messages with the same rank are evicted oldest first.
+ * A message ranked {@link #NEVER} is never evicted.
+ * <p/>
+ * The rank of a message must not change while the message is in the model.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * The rank of a message that is never evicted.
+     */
+    int NEVER = -1;
+
+    /**
+     * Evicts the oldest messages first, whatever they are.
+     */
+    EvictionPolicy OLDEST_FIRST = new EvictionPolicy() {
+        public int getEvictionRank(LogMessage message) {
+            return 0;
+        }
+    };
+
+    /**
+     * Called while the model's list is locked, so this should be cheap.
+     *
+     * @return a rank of 0 or more; {@link #NEVER} if the message must be retained.
+     */
+    int getEvictionRank(LogMessage message);
+}
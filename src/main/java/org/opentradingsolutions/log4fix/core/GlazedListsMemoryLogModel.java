@@ -34,52 +34,235 @@
 
 package org.opentradingsolutions.log4fix.core;
 
-import ca.odell.glazedlists.BasicEventList;
 import ca.odell.glazedlists.EventList;
 import ca.odell.glazedlists.FilterList;
 import ca.odell.glazedlists.impl.ThreadSafeList;
+import ca.odell.glazedlists.util.concurrent.Lock;
 import org.opentradingsolutions.log4fix.ui.importer.ThreadPerTaskExecutor;
 import quickfix.SessionID;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A thread-safe implementation of the memory core. Thread-safety comes by
  * wrapping the <code>BasicEventList</code> with a <code>ThreadSafeList</code>.
  * All access to the list always executes through the <code>ThreadSafeList</code>.
+ * <p/>
+ * Added messages are not published one at a time. They are buffered and added to
+ * the list in batches, each batch under a single write lock and with a single list
+ * change event, so a busy session does not flood the views with events. A batch is
+ * published once it holds {@link #getBatchSize()} messages or
+ * {@link #getBatchInterval()} milliseconds after its first message was added,
+ * whichever comes first. The messages keep the order they were added in.
+ * <p/>
+ * {@link #getMessages()} publishes any buffered messages before it returns the list.
+ * <p/>
+ * By default every message and event is kept. A {@link RetentionPolicy} limits
+ * what is kept; the messages are evicted as the batches are published.
  *
  * @author Brian M. Coyner
  */
 public class GlazedListsMemoryLogModel implements MemoryLogModel {
 
+    /**
+     * The default number of messages published in one batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The default number of milliseconds a message waits before it is published.
+     */
+    public static final long DEFAULT_BATCH_INTERVAL = 100;
+
+    // publishes the batches that are not filled in time; shared by every model.
+    private static final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Log4FIX Batch Publisher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     private final FilterList<LogMessage> messages;
     private final EventList<LogEvent> events;
     private final PropertyChangeSupport support;
     private final ThreadSafeList<LogMessage> underlying;
+    private final EvictableEventList<LogMessage> messageList;
+    private final EvictableEventList<LogEvent> eventList;
     private SessionID sessionId;
 
+    // the messages waiting to be published, guarded by pendingLock.
+    private final Object pendingLock = new Object();
+    private List<LogMessage> pending = new ArrayList<LogMessage>();
+
+    // held while a batch is published, so the batches are added in order.
+    private final Object publishLock = new Object();
+
+    private final Runnable publishTask = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile long batchInterval = DEFAULT_BATCH_INTERVAL;
+
+    // the retention state, guarded by publishLock.
+    private volatile RetentionPolicy retentionPolicy;
+    private long retainedBytes;
+    private long nextEvictionSize;
+    private long nextEvictionBytes;
+    private long nextAgeEviction;
+    private volatile long evictedCount;
+
     public GlazedListsMemoryLogModel() {
         this(null);
     }
 
     public GlazedListsMemoryLogModel(SessionID sessionId) {
-        underlying = new ThreadSafeList<LogMessage>(new BasicEventList<LogMessage>());
+        this(sessionId, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_INTERVAL);
+    }
+
+    /**
+     * @param batchSize     the number of messages published in one batch; 1 publishes
+     *                      every message as soon as it is added.
+     * @param batchInterval the number of milliseconds a message waits before it is
+     *                      published.
+     * @throws IllegalArgumentException if the batch size is less than 1 or the
+     *                                  interval is negative.
+     */
+    public GlazedListsMemoryLogModel(SessionID sessionId, int batchSize, long batchInterval) {
+        messageList = new EvictableEventList<LogMessage>();
+        underlying = new ThreadSafeList<LogMessage>(messageList);
         messages = new FilterList<LogMessage>(underlying);
-        events = new ThreadSafeList<LogEvent>(new BasicEventList<LogEvent>());
+        eventList = new EvictableEventList<LogEvent>();
+        events = new ThreadSafeList<LogEvent>(eventList);
         this.sessionId = sessionId;
         support = new PropertyChangeSupport(this);
+        setBatchSize(batchSize);
+        setBatchInterval(batchInterval);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the number of messages published in one batch; 1 publishes
+     *                  every message as soon as it is added.
+     * @throws IllegalArgumentException if the batch size is less than 1.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchInterval() {
+        return batchInterval;
+    }
+
+    /**
+     * Changing the interval affects the batches started afterwards.
+     *
+     * @param batchInterval the number of milliseconds a message waits before it is
+     *                      published.
+     * @throws IllegalArgumentException if the interval is negative.
+     */
+    public void setBatchInterval(long batchInterval) {
+        if (batchInterval < 0) {
+            throw new IllegalArgumentException("The batch interval must not be negative: " + batchInterval);
+        }
+        this.batchInterval = batchInterval;
+    }
+
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Limits the messages and events kept by the model. The limits apply at once.
+     *
+     * @param retentionPolicy the policy; null to keep every message and event.
+     */
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        synchronized (publishLock) {
+            this.retentionPolicy = retentionPolicy;
+            if (retentionPolicy != null) {
+                nextEvictionSize = retentionPolicy.getMaximumMessages();
+                nextEvictionBytes = retentionPolicy.getMaximumBytes();
+                nextAgeEviction = 0;
+                evictMessages(retentionPolicy);
+                evictEvents(retentionPolicy);
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages evicted by the {@link RetentionPolicy}.
+     */
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Publishes the buffered messages now, as one batch.
+     */
+    public void flush() {
+        synchronized (publishLock) {
+            List<LogMessage> batch;
+            synchronized (pendingLock) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<LogMessage>(Math.min(batchSize, DEFAULT_BATCH_SIZE));
+            }
+
+            // a single write lock and a single list change event for the whole batch.
+            underlying.addAll(batch);
+            for (LogMessage message : batch) {
+                retainedBytes += RetentionPolicy.estimateSize(message);
+            }
+
+            RetentionPolicy policy = retentionPolicy;
+            if (policy != null) {
+                evictMessages(policy);
+            }
+        }
     }
 
     public void clear() {
 
+        // the buffered messages are cleared with the list.
+        synchronized (pendingLock) {
+            pending.clear();
+        }
+
         Runnable r = new Runnable() {
             public void run() {
                 // must clear the underlying list... clearing the filter list only clears the
                 // values in the filter
-                underlying.clear();
+                synchronized (publishLock) {
+                    underlying.clear();
+                    retainedBytes = 0;
+                    RetentionPolicy policy = retentionPolicy;
+                    if (policy != null) {
+                        nextEvictionSize = policy.getMaximumMessages();
+                        nextEvictionBytes = policy.getMaximumBytes();
+                    }
+                }
                 events.clear();
                 setSessionId(null);
             }
@@ -102,6 +285,7 @@ public class GlazedListsMemoryLogModel implements MemoryLogModel {
     }
 
     public FilterList<LogMessage> getMessages() {
+        flush();
         return messages;
     }
 
@@ -110,10 +294,135 @@ public class GlazedListsMemoryLogModel implements MemoryLogModel {
     }
 
     public void addLogMessage(LogMessage logMessage) {
-        messages.add(logMessage);
+        boolean full;
+        boolean started;
+        synchronized (pendingLock) {
+            pending.add(logMessage);
+            full = pending.size() >= batchSize;
+            started = pending.size() == 1;
+        }
+
+        if (full) {
+            flush();
+        } else if (started) {
+            schedule(publishTask, batchInterval);
+        }
+    }
+
+    /**
+     * Runs the task on the thread shared by the models after the delay.
+     *
+     * @param delay the delay in milliseconds.
+     */
+    static void schedule(Runnable task, long delay) {
+        publisher.schedule(task, delay, TimeUnit.MILLISECONDS);
     }
 
     public void addLogEvent(LogEvent logEvent) {
         events.add(logEvent);
+
+        RetentionPolicy policy = retentionPolicy;
+        if (policy != null && policy.getMaximumEvents() > 0 && events.size() > policy.getMaximumEvents()) {
+            evictEvents(policy);
+        }
+    }
+
+    /**
+     * Evicts the messages over the limits of the policy, if a limit is exceeded.
+     * Must be called holding the publish lock.
+     */
+    private void evictMessages(RetentionPolicy policy) {
+        int maximumMessages = policy.getMaximumMessages();
+        long maximumBytes = policy.getMaximumBytes();
+        long maximumAge = policy.getMaximumAge();
+        long now = System.currentTimeMillis();
+
+        boolean overSize = maximumMessages > 0 && messageList.size() > nextEvictionSize;
+        boolean overBytes = maximumBytes > 0 && retainedBytes > nextEvictionBytes;
+        boolean ageChecked = maximumAge > 0 && now >= nextAgeEviction;
+        if (!overSize && !overBytes && !ageChecked) {
+            return;
+        }
+
+        Lock lock = underlying.getReadWriteLock().writeLock();
+        lock.lock();
+        try {
+            EvictionPolicy evictionPolicy = policy.getEvictionPolicy();
+            int size = messageList.size();
+            BitSet evicted = new BitSet(size);
+            int count = size;
+            long bytes = retainedBytes;
+
+            if (ageChecked) {
+                // the messages are in the order they were logged, so the old messages are at the head.
+                long oldest = now - maximumAge;
+                for (int i = 0; i < size; i++) {
+                    LogMessage message = messageList.get(i);
+                    long time = RetentionPolicy.getTime(message);
+                    if (time == Long.MIN_VALUE || evictionPolicy.getEvictionRank(message) == EvictionPolicy.NEVER) {
+                        continue;
+                    }
+                    if (time >= oldest) {
+                        break;
+                    }
+                    evicted.set(i);
+                    count--;
+                    bytes -= RetentionPolicy.estimateSize(message);
+                }
+                nextAgeEviction = now + Math.max(1, maximumAge * RetentionPolicy.EVICTION_PERCENT / 100);
+            }
+
+            long targetSize = maximumMessages > 0 ? RetentionPolicy.getEvictionTarget(maximumMessages) : Long.MAX_VALUE;
+            long targetBytes = maximumBytes > 0 ? RetentionPolicy.getEvictionTarget(maximumBytes) : Long.MAX_VALUE;
+            if ((overSize || overBytes) && (count > targetSize || bytes > targetBytes)) {
+                int[] ranks = new int[size];
+                int maximumRank = EvictionPolicy.NEVER;
+                for (int i = 0; i < size; i++) {
+                    ranks[i] = evicted.get(i) ? EvictionPolicy.NEVER : evictionPolicy.getEvictionRank(messageList.get(i));
+                    maximumRank = Math.max(maximumRank, ranks[i]);
+                }
+
+                // the lowest rank first, oldest first within a rank.
+                for (int rank = 0; rank <= maximumRank && (count > targetSize || bytes > targetBytes); rank++) {
+                    for (int i = 0; i < size && (count > targetSize || bytes > targetBytes); i++) {
+                        if (ranks[i] == rank) {
+                            evicted.set(i);
+                            count--;
+                            bytes -= RetentionPolicy.estimateSize(messageList.get(i));
+                        }
+                    }
+                }
+            }
+
+            evictedCount += messageList.removeAll(evicted);
+            retainedBytes = bytes;
+
+            // if the retained messages cannot be evicted, wait for another part of the limit to be added.
+            nextEvictionSize = Math.max(maximumMessages,
+                    count + (long) maximumMessages * RetentionPolicy.EVICTION_PERCENT / 100);
+            nextEvictionBytes = Math.max(maximumBytes, bytes + maximumBytes * RetentionPolicy.EVICTION_PERCENT / 100);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictEvents(RetentionPolicy policy) {
+        int maximumEvents = policy.getMaximumEvents();
+        if (maximumEvents == 0) {
+            return;
+        }
+
+        Lock lock = events.getReadWriteLock().writeLock();
+        lock.lock();
+        try {
+            int excess = eventList.size() - (int) RetentionPolicy.getEvictionTarget(maximumEvents);
+            if (eventList.size() > maximumEvents && excess > 0) {
+                BitSet evicted = new BitSet(excess);
+                evicted.set(0, excess);
+                eventList.removeAll(evicted);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
-}
\ No newline at end of file
+}
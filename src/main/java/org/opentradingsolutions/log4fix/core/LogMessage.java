@@ -40,9 +40,17 @@ import quickfix.DataDictionary.GroupInfo;
 import quickfix.field.MsgType;
 import quickfix.field.SendingTime;
 
+import java.nio.charset.Charset;
 import java.util.*;
 
 /**
+ * A message is kept in a compact form, because millions of them may be held at
+ * once: the raw message is stored once as bytes, exactly as it was logged, the
+ * SendingTime as a primitive and the MsgType and message type name as indexes
+ * into tables shared by every message. The delimeters are replaced and the
+ * <code>String</code> and <code>Date</code> are created each time a view asks for
+ * them.
+ *
  * @author Brian M. Coyner
  */
 public class LogMessage implements Comparable {
@@ -55,41 +63,153 @@ public class LogMessage implements Comparable {
     public static final String SENDING_TIME = "sendingTime";
     public static final String RAW_MESSAGE = "rawMessage";
 
+    /**
+     * The receive time of a message whose log did not record when it was logged.
+     */
+    public static final long NO_RECEIVE_TIME = Long.MIN_VALUE;
+
+    /**
+     * The sending time of a message without a valid SendingTime field.
+     */
+    public static final long NO_SENDING_TIME = Long.MIN_VALUE;
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The code of a message without a MsgType (35).
+     */
+    static final int NO_MESSAGE_TYPE = -1;
+
+    // the MsgType values and message type names of every message.
+    private static final InternTable messageTypes = new InternTable();
+    private static final InternTable messageTypeNames = new InternTable();
+
     private final int messageIndex;
     private final SessionID sessionId;
     private final boolean incoming;
-    private final String rawMessage;
-    private final String messageTypeName;
-    private final Date sendingTime;
+    // the raw message as logged; ISO-8859-1 unless a character needs UTF-8.
+    private final byte[] rawMessage;
+    private final boolean utf8;
+    private final int messageType;
+    private final int messageTypeName;
+    private final long sendingTime;
     private final DataDictionary dictionary;
+    private final long receiveTime;
 
     private List<ValidationError> validationErrors;
     private boolean isValid;
 
 
     public LogMessage(int messageIndex, boolean incoming, SessionID sessionId, String rawMessage, DataDictionary dictionary) {
+        this(messageIndex, incoming, sessionId, rawMessage, dictionary, NO_RECEIVE_TIME);
+    }
+
+    /**
+     * @param receiveTime the local time the message was logged (received or sent) in
+     *                    nanoseconds since the epoch; {@link #NO_RECEIVE_TIME} if not known.
+     */
+    public LogMessage(int messageIndex, boolean incoming, SessionID sessionId, String rawMessage,
+                      DataDictionary dictionary, long receiveTime) {
         this.messageIndex = messageIndex;
+        this.receiveTime = receiveTime;
 
         isValid = true;
         this.dictionary = dictionary;
-        this.rawMessage = rawMessage.replace(SOH_DELIMETER, DEFAULT_DELIMETER);
         this.sessionId = sessionId;
         this.incoming = incoming;
 
-        sendingTime = lookupSendingTime();
-        messageTypeName = lookupMessageTypeName();
+        utf8 = !isLatin1(rawMessage);
+        this.rawMessage = rawMessage.getBytes(utf8 ? UTF_8 : ISO_8859_1);
+
+        char delimeter = rawMessage.indexOf(SOH_DELIMETER) == -1 ? DEFAULT_DELIMETER : SOH_DELIMETER;
+        sendingTime = lookupSendingTime(rawMessage, delimeter);
+
+        String messageTypeValue = findMessageType(rawMessage);
+        if (messageTypeValue == null) {
+            isValid = false;
+            messageType = NO_MESSAGE_TYPE;
+            messageTypeName = NO_MESSAGE_TYPE;
+        } else {
+            messageType = messageTypes.intern(messageTypeValue);
+            messageTypeName = messageTypeNames.intern(dictionary.getValueName(MsgType.FIELD, messageTypeValue));
+        }
     }
 
     public SessionID getSessionId() {
         return sessionId;
     }
 
+    /**
+     * @return the raw message with each SOH replaced by the {@link #DEFAULT_DELIMETER};
+     *         a new string each time.
+     */
     public String getRawMessage() {
+        byte[] bytes = new byte[rawMessage.length];
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = rawMessage[i];
+            bytes[i] = b == SOH_DELIMETER ? (byte) DEFAULT_DELIMETER : b;
+        }
+        return new String(bytes, utf8 ? UTF_8 : ISO_8859_1);
+    }
+
+    /**
+     * @return the number of bytes used to store the raw message.
+     */
+    public int getRawMessageLength() {
+        return rawMessage.length;
+    }
+
+    /**
+     * @return the bytes of the raw message as stored, with the original delimeter;
+     *         not a copy, so the caller must not change them.
+     */
+    byte[] getRawBytes() {
         return rawMessage;
     }
 
+    /**
+     * @return true if the raw bytes are UTF-8; false if they are ISO-8859-1.
+     */
+    boolean isUtf8() {
+        return utf8;
+    }
+
+    int getMessageIndex() {
+        return messageIndex;
+    }
+
+    DataDictionary getDataDictionary() {
+        return dictionary;
+    }
+
     public String getMessageTypeName() {
-        return messageTypeName;
+        return messageTypeNames.get(messageTypeName);
+    }
+
+    /**
+     * @return the MsgType (35) value, e.g. "D"; null if the message has no MsgType.
+     *         Messages of the same type return the same <code>String</code>.
+     */
+    public String getMessageType() {
+        return messageTypes.get(messageType);
+    }
+
+    /**
+     * @return a number standing for the MsgType (35), shared by every message of
+     *         the type; {@link #NO_MESSAGE_TYPE} if the message has no MsgType.
+     * @see #getMessageTypeCode(String)
+     */
+    int getMessageTypeCode() {
+        return messageType;
+    }
+
+    /**
+     * @return the code of the MsgType (35) value, as returned by
+     *         {@link #getMessageTypeCode()} for messages of the type.
+     */
+    static int getMessageTypeCode(String messageType) {
+        return messageTypes.intern(messageType);
     }
 
     /**
@@ -97,6 +217,10 @@ public class LogMessage implements Comparable {
      * checksum value is correct. If true then the {@link #getValidationErrorMessages()}
      * has one or more <code>Exception</code>s explaining the problems with the message
      * as reported by QuickFIX/J.
+     * <p/>
+     * When the message is created only the MsgType and SendingTime are checked. The
+     * message is fully validated the first time {@link #getLogFields()} is called,
+     * so a message may become invalid afterwards.
      *
      * @return true if the message is valid.
      */
@@ -115,12 +239,33 @@ public class LogMessage implements Comparable {
      * describing the problem.
      *
      * @return the sending time of the message or null if the message was missing the
-     *         sending time.
+     *         sending time; a new <code>Date</code> each time.
      */
     public Date getSendingTime() {
+        return sendingTime == NO_SENDING_TIME ? null : new Date(sendingTime);
+    }
+
+    /**
+     * @return the sending time in milliseconds since the epoch; {@link #NO_SENDING_TIME}
+     *         if the message was missing the sending time.
+     * @see #getSendingTime()
+     */
+    public long getSendingTimeMillis() {
         return sendingTime;
     }
 
+    /**
+     * The local time the message was logged, e.g. the timestamp a QuickFIX/J
+     * <code>FileLog</code> writes in front of each message. Kept as a primitive so
+     * it costs no object per message.
+     *
+     * @return the time in nanoseconds since the epoch; {@link #NO_RECEIVE_TIME} if
+     *         the log did not record it.
+     */
+    public long getReceiveTime() {
+        return receiveTime;
+    }
+
     /**
      * This method should only be called if {@link #isValid()} returns
      * <code>true</code>.
@@ -161,7 +306,7 @@ public class LogMessage implements Comparable {
 
         Map<Integer, Field> allFields = getAllFields(message);
 
-        String[] fields = rawMessage.split("\\|");
+        String[] fields = getRawMessage().split("\\|");
 
         for (String fieldString : fields) {
             int indexOfEqual = fieldString.indexOf('=');
@@ -233,7 +378,7 @@ public class LogMessage implements Comparable {
     }
 
     private Message createMessage() {
-        String sohMessage = rawMessage.replace(DEFAULT_DELIMETER, SOH_DELIMETER);
+        String sohMessage = new String(rawMessage, utf8 ? UTF_8 : ISO_8859_1).replace(DEFAULT_DELIMETER, SOH_DELIMETER);
         try {
             return new Message(sohMessage, dictionary, true);
         } catch (InvalidMessage invalidMessage) {
@@ -286,30 +431,52 @@ public class LogMessage implements Comparable {
         isValid = false;
     }
 
-    private String lookupMessageTypeName() {
-        String messageTypeValue = FIXMessageHelper.getMessageType(rawMessage, DEFAULT_DELIMETER);
-
-        if (messageTypeValue == null) {
-            isValid = false;
-            return null;
+    /**
+     * @return the value of the first MsgType (35) field; null if there is none.
+     */
+    private static String findMessageType(String rawMessage) {
+        int index = rawMessage.indexOf("35=");
+        while (index != -1) {
+            if (index == 0 || isDelimeter(rawMessage.charAt(index - 1))) {
+                int start = index + 3;
+                int end = start;
+                while (end < rawMessage.length() && !isDelimeter(rawMessage.charAt(end))) {
+                    end++;
+                }
+                return rawMessage.substring(start, end);
+            }
+            index = rawMessage.indexOf("35=", index + 1);
         }
-        return dictionary.getValueName(MsgType.FIELD, messageTypeValue);
+        return null;
+    }
+
+    private static boolean isDelimeter(char c) {
+        return c == SOH_DELIMETER || c == DEFAULT_DELIMETER;
     }
 
-    private Date lookupSendingTime() {
+    private long lookupSendingTime(String rawMessage, char delimeter) {
         try {
-            Date date = FIXMessageHelper.getSendingTime(rawMessage, DEFAULT_DELIMETER);
+            Date date = FIXMessageHelper.getSendingTime(rawMessage, delimeter);
             if (date == null) {
                 addValidationError(new ValidationError("SendingTime missing"));
-                return date;
+                return NO_SENDING_TIME;
             }
-            return date;
+            return date.getTime();
         } catch (FieldConvertError fieldConvertError) {
             addValidationError(new ValidationError(fieldConvertError.getMessage()));
-            return null;
+            return NO_SENDING_TIME;
         }
     }
 
+    private static boolean isLatin1(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private MsgType getMessageType(Message message) {
         try {
             return (MsgType) message.getHeader().getField(new MsgType());
@@ -317,4 +484,34 @@ public class LogMessage implements Comparable {
             throw new RuntimeException(fieldNotFound);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Gives each distinct string a number. There are only as many MsgType values
+     * and names as the data dictionaries define, so the table never shrinks. A
+     * string is added by replacing the array, so strings are read without locking.
+     */
+    private static class InternTable {
+
+        private volatile String[] strings = new String[0];
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        synchronized int intern(String string) {
+            if (string == null) {
+                return NO_MESSAGE_TYPE;
+            }
+            Integer index = indexes.get(string);
+            if (index == null) {
+                String[] newStrings = Arrays.copyOf(strings, strings.length + 1);
+                index = strings.length;
+                newStrings[index] = string;
+                strings = newStrings;
+                indexes.put(string, index);
+            }
+            return index;
+        }
+
+        String get(int index) {
+            return index == NO_MESSAGE_TYPE ? null : strings[index];
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring buffer of log entries. Each slot has a sequence number
+ * telling whether it is free to write or ready to read, so threads claim slots
+ * with a single compare-and-set and never take a lock. Any number of threads may
+ * add and take entries, so a QuickFIX/J session thread and the application threads
+ * sending messages can log at the same time.
+ * <p/>
+ * The entries are kept in parallel arrays, so adding an entry creates no objects.
+ */
+class LogRingBuffer {
+
+    static final byte INCOMING = 0;
+    static final byte OUTGOING = 1;
+    static final byte EVENT = 2;
+    static final byte CLEAR = 3;
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final byte[] kinds;
+    private final String[] texts;
+    private final long[] times;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity the number of entries; rounded up to a power of two.
+     */
+    LogRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        kinds = new byte[size];
+        texts = new String[size];
+        times = new long[size];
+    }
+
+    int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of entries waiting; only an estimate while entries are
+     *         added or taken.
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, getCapacity()));
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    /**
+     * @return false if the buffer is full.
+     */
+    boolean offer(byte kind, String text, long time) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    kinds[index] = kind;
+                    texts[index] = text;
+                    times[index] = time;
+                    // publishes the entry.
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            // another thread claimed the slot first.
+        }
+    }
+
+    /**
+     * Takes the oldest entry.
+     *
+     * @param entry receives the entry.
+     * @return false if the buffer is empty.
+     */
+    boolean poll(Entry entry) {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    if (entry != null) {
+                        entry.kind = kinds[index];
+                        entry.text = texts[index];
+                        entry.time = times[index];
+                    }
+                    texts[index] = null;
+                    // frees the slot for the next lap.
+                    sequences.lazySet(index, position + mask + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest entry if it is a message. Events and clears are never
+     * dropped, because the model would lose them or keep messages it should not.
+     *
+     * @return false if the buffer is empty or the oldest entry is not a message.
+     */
+    boolean dropOldestMessage() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                // the slot is not reused until the head moves past it.
+                byte kind = kinds[index];
+                if (kind != INCOMING && kind != OUTGOING) {
+                    return false;
+                }
+                if (head.compareAndSet(position, position + 1)) {
+                    texts[index] = null;
+                    sequences.lazySet(index, position + mask + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A log entry taken from the buffer. The consumer reuses a single entry.
+     */
+    static class Entry {
+
+        byte kind;
+        String text;
+        long time;
+    }
+}
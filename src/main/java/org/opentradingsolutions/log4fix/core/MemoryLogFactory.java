@@ -44,6 +44,8 @@ import java.util.Map;
 /**
  * An implementation of a QuickFIX {@link LogFactory}. This factory
  * creates a {@link LiveMemoryLog} for each configured {@link quickfix.Session}.
+ * A factory given an {@link OverflowPolicy} creates an {@link AsyncLiveMemoryLog}
+ * instead, so the session threads never wait for the models.
  *
  * @author Brian M. Coyner
  */
@@ -51,6 +53,8 @@ public class MemoryLogFactory implements LogFactory {
 
     private final DataDictionaryLoader dictionaryLoader;
     private final Map<SessionID, MemoryLogModel> memoryLogModels;
+    private final OverflowPolicy overflowPolicy;
+    private final int capacity;
 
     /**
      * @param memoryLogModels a collection of {@link org.opentradingsolutions.log4fix.core.MemoryLogModel}s mapped using
@@ -58,9 +62,22 @@ public class MemoryLogFactory implements LogFactory {
      * @param dictionaryLoader
      */
     public MemoryLogFactory(Map<SessionID, MemoryLogModel> memoryLogModels, DataDictionaryLoader dictionaryLoader) {
+        this(memoryLogModels, dictionaryLoader, null, AsyncLiveMemoryLog.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param overflowPolicy what each log does when its buffer is full; null to
+     *                       create synchronous {@link LiveMemoryLog}s.
+     * @param capacity       the number of messages each log's buffer holds.
+     * @see #MemoryLogFactory(Map, DataDictionaryLoader)
+     */
+    public MemoryLogFactory(Map<SessionID, MemoryLogModel> memoryLogModels, DataDictionaryLoader dictionaryLoader,
+                            OverflowPolicy overflowPolicy, int capacity) {
 
         this.memoryLogModels = memoryLogModels;
         this.dictionaryLoader = dictionaryLoader;
+        this.overflowPolicy = overflowPolicy;
+        this.capacity = capacity;
     }
 
     /**
@@ -71,7 +88,8 @@ public class MemoryLogFactory implements LogFactory {
     }
 
     /**
-     * @return a new {@link LiveMemoryLog}.
+     * @return a new {@link LiveMemoryLog}, or {@link AsyncLiveMemoryLog} if the
+     * factory has an overflow policy.
      * @throws RuntimeException if the given <code>SessionID</code> is not found in the collection of
      * <code>MemoryLogModel</code> passed to the constructor.
      */
@@ -82,6 +100,9 @@ public class MemoryLogFactory implements LogFactory {
             throw new RuntimeException("Unable to find core for Session Id: " + sessionId);
         }
 
+        if (overflowPolicy != null) {
+            return new AsyncLiveMemoryLog(model, sessionId, dictionaryLoader, capacity, overflowPolicy);
+        }
         return new LiveMemoryLog(model, sessionId, dictionaryLoader);
     }
 }
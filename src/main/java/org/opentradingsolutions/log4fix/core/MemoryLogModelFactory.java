@@ -50,13 +50,24 @@ public class MemoryLogModelFactory {
     }
 
     public static Map<SessionID, MemoryLogModel> getMemoryLogModels(SessionSettings settings) {
+        return getMemoryLogModels(settings, null);
+    }
+
+    /**
+     * @param retentionPolicy the policy limiting what each model keeps; null to keep
+     *                        every message and event.
+     */
+    public static Map<SessionID, MemoryLogModel> getMemoryLogModels(SessionSettings settings,
+                                                                    RetentionPolicy retentionPolicy) {
 
         Map<SessionID, MemoryLogModel> memoryLogModelsBySessionId = new LinkedHashMap<SessionID, MemoryLogModel>();
         Iterator iterator = settings.sectionIterator();
         while (iterator.hasNext()) {
 
             SessionID sessionId = (SessionID) iterator.next();
-            memoryLogModelsBySessionId.put(sessionId, new GlazedListsMemoryLogModel(sessionId));
+            GlazedListsMemoryLogModel model = new GlazedListsMemoryLogModel(sessionId);
+            model.setRetentionPolicy(retentionPolicy);
+            memoryLogModelsBySessionId.put(sessionId, model);
         }
         return memoryLogModelsBySessionId;
     }
@@ -0,0 +1,62 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+/**
+ * What an {@link AsyncLiveMemoryLog} does when messages are logged faster than
+ * they are added to the model and its ring buffer is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The logging thread waits until the buffer has room. Nothing is lost, but a
+     * burst that outlasts the buffer slows down the session.
+     */
+    BLOCK,
+
+    /**
+     * The oldest message waiting in the buffer is dropped to make room. Events and
+     * clears are never dropped, so the logging thread only waits if one of them is
+     * the oldest entry.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Heartbeats are dropped once the buffer is nearly full, keeping the rest of the
+     * buffer for the other messages. The logging thread only waits if the buffer is
+     * full of other messages.
+     */
+    DROP_HEARTBEATS
+}
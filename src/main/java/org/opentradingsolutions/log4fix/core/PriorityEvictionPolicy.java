@@ -0,0 +1,109 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import java.util.BitSet;
+
+/**
+ * Evicts the least interesting messages first. The messages of the
+ * {@link #addEvictedFirstMessageTypes(String...) evicted first} types, heartbeats
+ * and test requests by default, are evicted before any other message. The messages
+ * of the {@link #addRetainedMessageTypes(String...) retained} types, session and
+ * business rejects by default, and invalid messages are never evicted.
+ * <p/>
+ * The MsgType values are kept as the codes {@link LogMessage} shares between the
+ * messages of a type, so ranking a message creates no objects.
+ */
+public class PriorityEvictionPolicy implements EvictionPolicy {
+
+    private static final int FIRST = 0;
+    private static final int OTHER = 1;
+
+    private final BitSet evictedFirst = new BitSet();
+    private final BitSet retained = new BitSet();
+    private boolean invalidRetained = true;
+
+    /**
+     * Evicts heartbeats (0) and test requests (1) first and never evicts rejects
+     * (3), business message rejects (j) or invalid messages.
+     */
+    public PriorityEvictionPolicy() {
+        addEvictedFirstMessageTypes("0", "1");
+        addRetainedMessageTypes("3", "j");
+    }
+
+    /**
+     * Evicts messages with one of the given MsgType (35) values before any other message.
+     */
+    public void addEvictedFirstMessageTypes(String... messageTypes) {
+        for (String messageType : messageTypes) {
+            evictedFirst.set(LogMessage.getMessageTypeCode(messageType));
+        }
+    }
+
+    /**
+     * Never evicts messages with one of the given MsgType (35) values.
+     */
+    public void addRetainedMessageTypes(String... messageTypes) {
+        for (String messageType : messageTypes) {
+            retained.set(LogMessage.getMessageTypeCode(messageType));
+        }
+    }
+
+    /**
+     * @param invalidRetained true to never evict a message that is not
+     *                        {@link LogMessage#isValid() valid}. A message is only
+     *                        checked for a missing MsgType or SendingTime when it is
+     *                        created; other errors are found once its fields are shown.
+     */
+    public void setInvalidRetained(boolean invalidRetained) {
+        this.invalidRetained = invalidRetained;
+    }
+
+    public int getEvictionRank(LogMessage message) {
+        if (invalidRetained && !message.isValid()) {
+            return NEVER;
+        }
+
+        int messageType = message.getMessageTypeCode();
+        if (messageType == LogMessage.NO_MESSAGE_TYPE) {
+            return OTHER;
+        }
+        if (retained.get(messageType)) {
+            return NEVER;
+        }
+        return evictedFirst.get(messageType) ? FIRST : OTHER;
+    }
+}
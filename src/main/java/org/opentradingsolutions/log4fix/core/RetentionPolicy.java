@@ -0,0 +1,180 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+/**
+ * Limits what a {@link GlazedListsMemoryLogModel} retains, so a viewer attached to
+ * a busy session does not keep every message forever. A model may be limited by
+ * the number of messages, the estimated bytes used by the messages and the age of
+ * the messages; a limit of 0 is no limit. The {@link EvictionPolicy} decides which
+ * messages are evicted to get back under the limits.
+ * <p/>
+ * Evicting is amortized. Once a limit is exceeded, messages are evicted until the
+ * model is {@link #EVICTION_PERCENT} percent below the limit, in a single pass over
+ * the list and a single list change event. Messages older than the maximum age are
+ * evicted at most every {@link #EVICTION_PERCENT} percent of the maximum age.
+ * <p/>
+ * Messages the eviction policy never evicts are retained even if they exceed the
+ * limits.
+ * <p/>
+ * Configure the policy before giving it to a model.
+ */
+public class RetentionPolicy {
+
+    /**
+     * The percentage of a limit evicted at once.
+     */
+    public static final int EVICTION_PERCENT = 10;
+
+    /**
+     * The estimated bytes used by a message besides its raw message: the message
+     * object, its byte array header and its slot in the list.
+     */
+    public static final int MESSAGE_OVERHEAD = 96;
+
+    private int maximumMessages;
+    private long maximumBytes;
+    private long maximumAge;
+    private int maximumEvents;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.OLDEST_FIRST;
+
+    public int getMaximumMessages() {
+        return maximumMessages;
+    }
+
+    /**
+     * @param maximumMessages the number of messages retained; 0 for no limit.
+     * @throws IllegalArgumentException if the maximum is negative.
+     */
+    public void setMaximumMessages(int maximumMessages) {
+        if (maximumMessages < 0) {
+            throw new IllegalArgumentException("The maximum messages must not be negative: " + maximumMessages);
+        }
+        this.maximumMessages = maximumMessages;
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * @param maximumBytes the {@link #estimateSize(LogMessage) estimated} bytes of the
+     *                     retained messages; 0 for no limit.
+     * @throws IllegalArgumentException if the maximum is negative.
+     */
+    public void setMaximumBytes(long maximumBytes) {
+        if (maximumBytes < 0) {
+            throw new IllegalArgumentException("The maximum bytes must not be negative: " + maximumBytes);
+        }
+        this.maximumBytes = maximumBytes;
+    }
+
+    public long getMaximumAge() {
+        return maximumAge;
+    }
+
+    /**
+     * The age of a message is measured from its receive time or, if the receive
+     * time is not known, its sending time. A message with neither is never too old.
+     *
+     * @param maximumAge the age in milliseconds of the oldest message retained; 0
+     *                   for no limit.
+     * @throws IllegalArgumentException if the maximum is negative.
+     */
+    public void setMaximumAge(long maximumAge) {
+        if (maximumAge < 0) {
+            throw new IllegalArgumentException("The maximum age must not be negative: " + maximumAge);
+        }
+        this.maximumAge = maximumAge;
+    }
+
+    public int getMaximumEvents() {
+        return maximumEvents;
+    }
+
+    /**
+     * Events are evicted oldest first.
+     *
+     * @param maximumEvents the number of events retained; 0 for no limit.
+     * @throws IllegalArgumentException if the maximum is negative.
+     */
+    public void setMaximumEvents(int maximumEvents) {
+        if (maximumEvents < 0) {
+            throw new IllegalArgumentException("The maximum events must not be negative: " + maximumEvents);
+        }
+        this.maximumEvents = maximumEvents;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * @param evictionPolicy the non-null policy; {@link EvictionPolicy#OLDEST_FIRST}
+     *                       by default.
+     * @throws IllegalArgumentException if the policy is null.
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        if (evictionPolicy == null) {
+            throw new IllegalArgumentException("The eviction policy is null.");
+        }
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * @return the estimated number of bytes the message uses in a model.
+     */
+    public static long estimateSize(LogMessage message) {
+        return MESSAGE_OVERHEAD + message.getRawMessageLength();
+    }
+
+    /**
+     * @return the time of the message in milliseconds since the epoch; Long.MIN_VALUE
+     *         if the message has no receive or sending time.
+     */
+    static long getTime(LogMessage message) {
+        if (message.getReceiveTime() != LogMessage.NO_RECEIVE_TIME) {
+            return message.getReceiveTime() / 1000000;
+        }
+        return message.getSendingTimeMillis();
+    }
+
+    /**
+     * @return the limit less the part evicted at once.
+     */
+    static long getEvictionTarget(long limit) {
+        return limit - limit * EVICTION_PERCENT / 100;
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import ca.odell.glazedlists.BasicEventList;
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.impl.ThreadSafeList;
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A memory log model keeping the messages out of the Java heap, so tens of millions
+ * of messages do not make the garbage collector's pauses long and unpredictable.
+ * The raw bytes of each message are appended to fixed size segments allocated with
+ * <code>ByteBuffer.allocateDirect</code>; the heap only holds the position of each
+ * message in the segments. A {@link LogMessage} is built from the segment when the
+ * message is asked for, and the most recently used messages are kept in a bounded
+ * cache, just like the {@link org.opentradingsolutions.log4fix.importer.MappedMemoryLogModel}.
+ * <p/>
+ * The full segments may {@link #setSpillDirectory(File, int) spill} to a temporary
+ * file. Only the newest segments are then kept in direct memory; the older ones are
+ * written to the file and memory mapped, so the operating system pages them in and
+ * out as they are read.
+ * <p/>
+ * The {@link #getMessages() messages} are not an <code>EventList</code>, so the view
+ * shows them with a table model that only reads the rows it paints, and does not
+ * filter or sort them. Listeners are told about added messages with a
+ * {@link #PROPERTY_MESSAGES} property change, at most every
+ * {@link #NOTIFY_INTERVAL} milliseconds, and about cleared messages at once.
+ * <p/>
+ * The messages of a model belong to a single session and data dictionary, those of
+ * the last added message. The direct memory used by the segments counts against
+ * the JVM's <code>-XX:MaxDirectMemorySize</code>.
+ */
+public class SegmentMemoryLogModel implements MemoryLogModel {
+
+    public static final String PROPERTY_MESSAGES = "messages";
+
+    /**
+     * The default number of bytes of each segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The number of built messages kept by the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /**
+     * The most milliseconds between adding a message and telling the listeners.
+     */
+    public static final long NOTIFY_INTERVAL = 100;
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // each message is stored as its index, receive time, flags, length and raw bytes.
+    private static final int HEADER_SIZE = 4 + 8 + 1 + 4;
+    private static final byte FLAG_INCOMING = 1;
+    private static final byte FLAG_UTF8 = 2;
+
+    private final int segmentSize;
+    private final EventList<LogEvent> events;
+    private final PropertyChangeSupport support;
+    private final List<LogMessage> messages;
+
+    // guarded by cache
+    private final LinkedHashMap<Integer, LogMessage> cache;
+    private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+    private ByteBuffer current;
+    // the segment of each message in the high 32 bits and its position in the low 32 bits.
+    private long[] positions = new long[1024];
+    private int count;
+    private long storedBytes;
+    private SessionID messageSessionId;
+    private DataDictionary dictionary;
+    // changes each time the store is released, so a message built from a released
+    // store is not cached.
+    private int storeVersion;
+
+    // guarded by cache
+    private File spillDirectory;
+    private int residentSegments;
+    private File spillFile;
+    private FileChannel spillChannel;
+    private long spillPosition;
+    private int spilledCount;
+    // spill files still mapped when they were released; deleted once they can be.
+    private final List<File> undeletedSpillFiles = new ArrayList<File>();
+
+    private final AtomicBoolean notifyScheduled = new AtomicBoolean();
+    private final Runnable notifyTask = new Runnable() {
+        public void run() {
+            notifyScheduled.set(false);
+            support.firePropertyChange(PROPERTY_MESSAGES, null, null);
+        }
+    };
+
+    private volatile SessionID sessionId;
+
+    public SegmentMemoryLogModel() {
+        this(null);
+    }
+
+    public SegmentMemoryLogModel(SessionID sessionId) {
+        this(sessionId, DEFAULT_SEGMENT_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param segmentSize the number of bytes of each segment. A message larger than a
+     *                    segment gets a segment of its own.
+     * @param cacheSize   the number of built messages kept in memory.
+     * @throws IllegalArgumentException if the segment or cache size is less than one.
+     */
+    public SegmentMemoryLogModel(SessionID sessionId, int segmentSize, final int cacheSize) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("The segment size must be at least one: " + segmentSize);
+        }
+
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("The cache size must be at least one: " + cacheSize);
+        }
+
+        this.sessionId = sessionId;
+        this.segmentSize = segmentSize;
+
+        cache = new LinkedHashMap<Integer, LogMessage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, LogMessage> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        messages = new Messages();
+        events = new ThreadSafeList<LogEvent>(new BasicEventList<LogEvent>());
+        support = new PropertyChangeSupport(this);
+    }
+
+    /**
+     * Spills the full segments older than the newest <code>residentSegments</code>
+     * segments to a temporary file in the directory. The file is created when the
+     * first segment spills and deleted when the model is cleared or closed.
+     *
+     * @param directory        the directory of the file; null to keep every segment
+     *                         in direct memory.
+     * @param residentSegments the number of segments kept in direct memory.
+     * @throws IllegalArgumentException if the number of segments is less than one.
+     */
+    public void setSpillDirectory(File directory, int residentSegments) {
+        if (residentSegments < 1) {
+            throw new IllegalArgumentException("At least one segment must be resident: " + residentSegments);
+        }
+
+        synchronized (cache) {
+            spillDirectory = directory;
+            this.residentSegments = residentSegments;
+        }
+    }
+
+    public SessionID getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(SessionID sessionId) {
+        this.sessionId = sessionId;
+        support.firePropertyChange("sessionId", null, sessionId);
+    }
+
+    /**
+     * @return a read-only, random access list building each message on demand.
+     */
+    public List<LogMessage> getMessages() {
+        return messages;
+    }
+
+    public List<LogEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Copies the message into the segments. The message itself is not kept.
+     *
+     * @throws IllegalStateException if a segment that is full cannot be spilled.
+     */
+    public void addLogMessage(LogMessage logMessage) {
+        byte[] raw = logMessage.getRawBytes();
+        byte flags = (byte) ((logMessage.isIncoming() ? FLAG_INCOMING : 0) | (logMessage.isUtf8() ? FLAG_UTF8 : 0));
+
+        synchronized (cache) {
+            int recordSize = HEADER_SIZE + raw.length;
+            if (current == null || current.remaining() < recordSize) {
+                addSegment(recordSize);
+            }
+
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = ((long) (segments.size() - 1) << 32) | current.position();
+
+            current.putInt(logMessage.getMessageIndex());
+            current.putLong(logMessage.getReceiveTime());
+            current.put(flags);
+            current.putInt(raw.length);
+            current.put(raw);
+            storedBytes += recordSize;
+
+            messageSessionId = logMessage.getSessionId();
+            dictionary = logMessage.getDataDictionary();
+        }
+
+        if (notifyScheduled.compareAndSet(false, true)) {
+            GlazedListsMemoryLogModel.schedule(notifyTask, NOTIFY_INTERVAL);
+        }
+    }
+
+    public void addLogEvent(LogEvent logEvent) {
+        events.add(logEvent);
+    }
+
+    /**
+     * Frees the segments and deletes the spill file.
+     */
+    public void clear() {
+        synchronized (cache) {
+            release();
+        }
+        events.clear();
+        setSessionId(null);
+        support.firePropertyChange(PROPERTY_MESSAGES, null, null);
+    }
+
+    /**
+     * Frees the segments and deletes the spill file, keeping the events. Adding a
+     * message afterwards starts a new store.
+     */
+    public void close() {
+        synchronized (cache) {
+            release();
+        }
+        support.firePropertyChange(PROPERTY_MESSAGES, null, null);
+    }
+
+    public void addPropertyChangeListener(PropertyChangeListener propertyChangeListener) {
+        support.addPropertyChangeListener(propertyChangeListener);
+    }
+
+    /**
+     * @return the number of bytes used by the stored messages, in direct memory and
+     *         in the spill file.
+     */
+    public long getStoredBytes() {
+        synchronized (cache) {
+            return storedBytes;
+        }
+    }
+
+    /**
+     * @return the number of segments, including the spilled segments.
+     */
+    public int getSegmentCount() {
+        synchronized (cache) {
+            return segments.size();
+        }
+    }
+
+    /**
+     * @return the number of segments spilled to the file.
+     */
+    public int getSpilledSegmentCount() {
+        synchronized (cache) {
+            return spilledCount;
+        }
+    }
+
+    /**
+     * @return the spill file; null if no segment has spilled.
+     */
+    File getSpillFile() {
+        synchronized (cache) {
+            return spillFile;
+        }
+    }
+
+    /**
+     * @return the number of built messages held by the cache.
+     */
+    int getCachedMessageCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private void addSegment(int recordSize) {
+        if (current != null && current.position() == 0) {
+            // an empty segment too small for a large message is replaced.
+            segments.remove(segments.size() - 1);
+        } else if (current != null) {
+            // the full segment is only read from now on.
+            current.flip();
+            spillSegments();
+        }
+
+        current = ByteBuffer.allocateDirect(Math.max(segmentSize, recordSize));
+        segments.add(current);
+    }
+
+    /**
+     * Spills the full segments that are no longer among the resident segments.
+     */
+    private void spillSegments() {
+        if (spillDirectory == null) {
+            return;
+        }
+
+        // the segment being added is resident, so one fewer full segment stays.
+        while (segments.size() - spilledCount >= residentSegments) {
+            ByteBuffer segment = segments.get(spilledCount);
+            try {
+                if (spillChannel == null) {
+                    deleteSpillFiles();
+                    spillFile = File.createTempFile("log4fix", ".segments", spillDirectory);
+                    spillFile.deleteOnExit();
+                    spillChannel = new RandomAccessFile(spillFile, "rw").getChannel();
+                }
+
+                ByteBuffer data = segment.duplicate();
+                int length = data.remaining();
+                long position = spillPosition;
+                while (data.hasRemaining()) {
+                    position += spillChannel.write(data, position);
+                }
+                segments.set(spilledCount, spillChannel.map(FileChannel.MapMode.READ_ONLY, spillPosition, length));
+                spillPosition += length;
+                spilledCount++;
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to spill a segment to " + spillDirectory + ": "
+                        + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Drops the segments, including the mapped segments, and closes the spill file
+     * before deleting it. The stored messages are copied out of the segments, so no
+     * segment is referenced outside the model. A mapped segment is only unmapped
+     * when it is garbage collected, and some platforms (e.g. Windows) refuse to
+     * delete a mapped file, so a file that cannot be deleted yet is deleted later.
+     */
+    private void release() {
+        cache.clear();
+        segments.clear();
+        current = null;
+        positions = new long[1024];
+        count = 0;
+        storedBytes = 0;
+        spilledCount = 0;
+        spillPosition = 0;
+        storeVersion++;
+
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } catch (IOException e) {
+                // the file is deleted anyway.
+            }
+            spillChannel = null;
+            undeletedSpillFiles.add(spillFile);
+            spillFile = null;
+        }
+        deleteSpillFiles();
+    }
+
+    private void deleteSpillFiles() {
+        for (Iterator<File> files = undeletedSpillFiles.iterator(); files.hasNext(); ) {
+            File file = files.next();
+            if (file.delete() || !file.exists()) {
+                files.remove();
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the stored record of the message: its header followed by
+     *         the raw bytes.
+     */
+    private byte[] copyRecord(int index) {
+        long position = positions[index];
+        ByteBuffer segment = segments.get((int) (position >>> 32)).duplicate();
+        int offset = (int) position;
+
+        byte[] record = new byte[HEADER_SIZE + segment.getInt(offset + 13)];
+        segment.limit(segment.capacity());
+        segment.position(offset);
+        segment.get(record);
+        return record;
+    }
+
+    private static LogMessage createMessage(byte[] record, SessionID sessionId, DataDictionary dictionary) {
+        ByteBuffer header = ByteBuffer.wrap(record);
+        int messageIndex = header.getInt(0);
+        long receiveTime = header.getLong(4);
+        byte flags = header.get(12);
+
+        String rawMessage = new String(record, HEADER_SIZE, record.length - HEADER_SIZE,
+                (flags & FLAG_UTF8) != 0 ? UTF_8 : ISO_8859_1);
+        return new LogMessage(messageIndex, (flags & FLAG_INCOMING) != 0, sessionId, rawMessage, dictionary,
+                receiveTime);
+    }
+
+    /**
+     * The stored messages, built on demand.
+     */
+    private class Messages extends AbstractList<LogMessage> implements RandomAccess {
+
+        /**
+         * Only the stored record is copied while the model is locked; the message
+         * is built afterwards, so adding messages is not held up by the views.
+         */
+        @Override
+        public LogMessage get(int index) {
+            byte[] record;
+            SessionID sessionId;
+            DataDictionary recordDictionary;
+            int version;
+            synchronized (cache) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+                }
+                LogMessage message = cache.get(index);
+                if (message != null) {
+                    return message;
+                }
+                record = copyRecord(index);
+                sessionId = messageSessionId;
+                recordDictionary = dictionary;
+                version = storeVersion;
+            }
+
+            LogMessage message = createMessage(record, sessionId, recordDictionary);
+
+            synchronized (cache) {
+                if (version == storeVersion) {
+                    // another thread may have built the message first.
+                    LogMessage cached = cache.get(index);
+                    if (cached != null) {
+                        return cached;
+                    }
+                    cache.put(index, message);
+                }
+            }
+            return message;
+        }
+
+        @Override
+        public int size() {
+            synchronized (cache) {
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import quickfix.SessionID;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The memory log models of an import, one per FIX session found in the log files.
+ * A log file written by an acceptor often interleaves many sessions, so each
+ * session gets its own model (and its own tab in the view).
+ * <p/>
+ * The first session uses the primary model. A model for every other session is
+ * created the first time the session is seen, and the listeners are told about it
+ * with a {@link #PROPERTY_MEMORY_LOG_MODEL} property change whose new value is the
+ * model. Clearing removes every model but the primary model; the listeners are
+ * told about each removed model with a property change whose old value is the
+ * model and whose new value is null.
+ */
+public class SessionMemoryLogModels {
+
+    public static final String PROPERTY_MEMORY_LOG_MODEL = "memoryLogModel";
+
+    private final MemoryLogModel primaryModel;
+    private final ConcurrentMap<SessionID, MemoryLogModel> modelsBySessionId;
+    private final List<MemoryLogModel> models;
+    private final PropertyChangeSupport support;
+
+    private SessionID primarySessionId;
+
+    public SessionMemoryLogModels(MemoryLogModel primaryModel) {
+        this.primaryModel = primaryModel;
+        modelsBySessionId = new ConcurrentHashMap<SessionID, MemoryLogModel>();
+        models = new CopyOnWriteArrayList<MemoryLogModel>();
+        models.add(primaryModel);
+        support = new PropertyChangeSupport(this);
+    }
+
+    /**
+     * @return the model receiving the first session and the events of the import.
+     */
+    public MemoryLogModel getPrimaryMemoryLogModel() {
+        return primaryModel;
+    }
+
+    /**
+     * Returns the model for the session, creating it if this is the first time the
+     * session is seen. Looking up a known session does not lock.
+     *
+     * @param sessionId the session Id as seen by the initiator.
+     * @return the non-null model for the session.
+     */
+    public MemoryLogModel getMemoryLogModel(SessionID sessionId) {
+        MemoryLogModel model = modelsBySessionId.get(sessionId);
+        if (model != null) {
+            return model;
+        }
+
+        MemoryLogModel created;
+        synchronized (this) {
+            model = modelsBySessionId.get(sessionId);
+            if (model != null) {
+                return model;
+            }
+
+            if (primarySessionId == null) {
+                primarySessionId = sessionId;
+                modelsBySessionId.put(sessionId, primaryModel);
+                return primaryModel;
+            }
+
+            created = createMemoryLogModel(sessionId);
+            models.add(created);
+            modelsBySessionId.put(sessionId, created);
+        }
+
+        support.firePropertyChange(PROPERTY_MEMORY_LOG_MODEL, null, created);
+        return created;
+    }
+
+    /**
+     * Creates the model of a session other than the first. Override this to use
+     * another kind of model.
+     *
+     * @return a new {@link GlazedListsMemoryLogModel}.
+     */
+    protected MemoryLogModel createMemoryLogModel(SessionID sessionId) {
+        return new GlazedListsMemoryLogModel(sessionId);
+    }
+
+    /**
+     * Adds a model created elsewhere for the session, for example a model that loads
+     * its messages on demand. The model replaces any model the session already has.
+     */
+    public void addMemoryLogModel(SessionID sessionId, MemoryLogModel model) {
+        synchronized (this) {
+            models.add(model);
+            modelsBySessionId.put(sessionId, model);
+        }
+
+        support.firePropertyChange(PROPERTY_MEMORY_LOG_MODEL, null, model);
+    }
+
+    /**
+     * @return the models in the order their sessions were found, starting with the
+     *         primary model. The list may be iterated while sessions are added.
+     */
+    public List<MemoryLogModel> getMemoryLogModels() {
+        return models;
+    }
+
+    /**
+     * Clears the primary model and removes every other model. The primary model is
+     * given to the next new session.
+     * <p/>
+     * A removed model is cleared too, which releases what it holds outside the heap
+     * (e.g. the mapped file of a lazy import or the spill file of an off-heap import).
+     */
+    public void clear() {
+        List<MemoryLogModel> removed = new ArrayList<MemoryLogModel>();
+        synchronized (this) {
+            modelsBySessionId.clear();
+            primarySessionId = null;
+
+            for (MemoryLogModel model : models) {
+                if (model != primaryModel) {
+                    removed.add(model);
+                }
+            }
+            models.removeAll(removed);
+        }
+
+        primaryModel.clear();
+        for (MemoryLogModel model : removed) {
+            model.clear();
+            support.firePropertyChange(PROPERTY_MEMORY_LOG_MODEL, model, null);
+        }
+    }
+
+    public void addPropertyChangeListener(PropertyChangeListener propertyChangeListener) {
+        support.addPropertyChangeListener(propertyChangeListener);
+    }
+}
@@ -34,32 +34,40 @@
 
 package org.opentradingsolutions.log4fix.importer;
 
-import quickfix.SessionID;
+import java.nio.ByteBuffer;
 
 /**
- * Log4FIX currently only knows how to correctly import log files with a single
- * session. If a second session Id is found then this exception raises and stops
- * the thread building the log messages.
- *
- * @author Brian M. Coyner
+ * The bytes of a buffer as ISO-8859-1 characters, so the timestamp parsing of
+ * the {@link FIXHeaderScanner} can be used without copying. Indexes are the
+ * buffer's indexes.
  */
-public class MultipleSessionsException extends InterruptedException {
+final class ByteSequence implements CharSequence {
+
+    private ByteBuffer bytes;
 
-    private final SessionID firstSessionId;
-    private final SessionID secondSessionId;
+    ByteSequence wrap(ByteBuffer bytes) {
+        this.bytes = bytes;
+        return this;
+    }
+
+    public int length() {
+        return bytes.limit();
+    }
 
-    public MultipleSessionsException(SessionID firstSessionId, SessionID secondSessionId) {
-        super("Multiple FIX sessions were found in the log file. Log4FIX does " +
-                "not handle this situation (yet). Here are the sessions:");
-        this.firstSessionId = firstSessionId;
-        this.secondSessionId = secondSessionId;
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xFF);
     }
 
-    public SessionID getFirstSessionId() {
-        return firstSessionId;
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder text = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            text.append(charAt(i));
+        }
+        return text;
     }
 
-    public SessionID getSecondSessionId() {
-        return secondSessionId;
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
     }
-}
\ No newline at end of file
+}
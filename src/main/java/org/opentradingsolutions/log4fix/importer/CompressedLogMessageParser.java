@@ -0,0 +1,436 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Parses a gzip or zip compressed log file without first decompressing it to disk.
+ * A separate thread decompresses the file into a small queue of blocks while the
+ * parser's thread scans the blocks that are already decompressed, so
+ * decompression overlaps with parsing. At most {@link #QUEUED_BLOCKS} blocks are
+ * held in memory.
+ * <p/>
+ * Each entry of a zip file is imported in turn, in the order the entries are
+ * stored, as if each entry were a separate log file. A gzip file (including a
+ * file made up of several gzip members) has a single entry. A file that is not
+ * compressed is read as is.
+ * <p/>
+ * Interrupting the thread stops the decompression and causes the parser to close
+ * the buffer and gracefully terminate, just like the {@link LogMessageParser}.
+ */
+public class CompressedLogMessageParser implements Runnable, ImportProgressSource {
+
+    /**
+     * The number of decompressed bytes in a full block.
+     */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The number of decompressed blocks waiting to be parsed.
+     */
+    static final int QUEUED_BLOCKS = 16;
+
+    private static final int GZIP_MAGIC = 0x1F8B;
+    private static final int ZIP_MAGIC = 0x504B0304;
+
+    private final File file;
+    private final ImportBuffer records;
+    private final LogStreamScanner scanner;
+
+    // the compressed bytes read by the decompressor.
+    private volatile long bytesRead;
+
+    /**
+     * @param file    a non-null log file. The file is opened when the {@link #run()}
+     *                method executes.
+     * @param records a non-null, empty buffer.
+     * @throws IllegalArgumentException if the file is null or the buffer is null.
+     * @throws IllegalStateException    if the buffer is not empty.
+     */
+    public CompressedLogMessageParser(File file, ImportBuffer records) {
+        this(file, records, LogMessageScanner.Framing.LINE);
+    }
+
+    /**
+     * @param framing how the scanner finds each message.
+     * @see #CompressedLogMessageParser(File, ImportBuffer)
+     */
+    public CompressedLogMessageParser(File file, ImportBuffer records, LogMessageScanner.Framing framing) {
+
+        if (file == null) {
+            throw new IllegalArgumentException("The log file is null.");
+        }
+
+        if (records == null) {
+            throw new IllegalArgumentException("The buffer is null.");
+        }
+
+        if (!records.isEmpty()) {
+            throw new IllegalStateException("The buffer must be initially empty.");
+        }
+
+        this.file = file;
+        this.records = records;
+        scanner = new LogStreamScanner(records, framing);
+    }
+
+    /**
+     * Looks at the first bytes of the file, not at the file name.
+     *
+     * @return true if the file is gzip or zip compressed; false if the file is not
+     *         compressed or cannot be read.
+     */
+    public static boolean isCompressed(File file) {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int magic = readMagic(in);
+            return (magic >>> 16) == GZIP_MAGIC || magic == ZIP_MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ohWell) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the first four bytes of the stream; -1 if the stream is shorter.
+     */
+    private static int readMagic(InputStream in) throws IOException {
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b == -1) {
+                return -1;
+            }
+            magic = (magic << 8) | b;
+        }
+        return magic;
+    }
+
+    /**
+     * Must be called before the parser runs.
+     *
+     * @param filter the filter of the messages added to the buffer; null to add
+     *               every message.
+     */
+    public void setFilter(MessageFilter filter) {
+        scanner.setFilter(filter);
+    }
+
+    /**
+     * Must be called before the parser runs.
+     *
+     * @param linePattern the pattern of the lines holding the messages; null to
+     *                    start each message at the first '8=' on a line.
+     */
+    public void setLinePattern(LogLinePattern linePattern) {
+        scanner.setLinePattern(linePattern);
+    }
+
+    /**
+     * @return the number of compressed bytes read, so the progress can be compared
+     *         with the size of the file.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getMessageCount() {
+        return scanner.getMessageCount();
+    }
+
+    public void run() {
+        BlockingQueue<Block> blocks = new ArrayBlockingQueue<Block>(QUEUED_BLOCKS);
+        Thread decompressor = new Thread(new Decompressor(file, blocks));
+        decompressor.start();
+
+        try {
+            EntryInputStream entry = new EntryInputStream(blocks);
+            while (!Thread.currentThread().isInterrupted() && entry.nextEntry()) {
+                scanner.scan(entry);
+            }
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            scanner.add(ImportRecord.error(LogMessageScanner.ERROR_PREFIX + e.getMessage()));
+        } finally {
+            // stops the decompressor if the parser stopped early.
+            decompressor.interrupt();
+            records.close();
+        }
+    }
+
+    /**
+     * A block of decompressed bytes, or a marker.
+     */
+    private static class Block {
+
+        static final Block END_OF_ENTRY = new Block(null, -1, null);
+        static final Block END_OF_FILE = new Block(null, -1, null);
+
+        final byte[] bytes;
+        final int length;
+        final IOException error;
+
+        Block(byte[] bytes, int length, IOException error) {
+            this.bytes = bytes;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Decompresses the file into the queue. Each entry is followed by
+     * {@link Block#END_OF_ENTRY} and the last entry by {@link Block#END_OF_FILE}.
+     * A failure is queued as a block holding the error.
+     */
+    private class Decompressor implements Runnable {
+
+        private final File file;
+        private final BlockingQueue<Block> blocks;
+
+        Decompressor(File file, BlockingQueue<Block> blocks) {
+            this.file = file;
+            this.blocks = blocks;
+        }
+
+        public void run() {
+            InputStream in = null;
+            try {
+                in = new BufferedInputStream(new CountingInputStream(new FileInputStream(file)), BLOCK_SIZE);
+                in.mark(4);
+                int magic = readMagic(in);
+                in.reset();
+
+                if (magic == ZIP_MAGIC) {
+                    ZipInputStream zip = new ZipInputStream(in);
+                    in = zip;
+                    ZipEntry entry;
+                    while ((entry = zip.getNextEntry()) != null) {
+                        if (!entry.isDirectory()) {
+                            copyEntry(zip);
+                        }
+                    }
+                } else if ((magic >>> 16) == GZIP_MAGIC) {
+                    in = new GZIPInputStream(in, BLOCK_SIZE);
+                    copyEntry(in);
+                } else {
+                    copyEntry(in);
+                }
+                blocks.put(Block.END_OF_FILE);
+            } catch (InterruptedException e) {
+                // the parser stopped.
+            } catch (InterruptedIOException e) {
+                // the parser stopped.
+            } catch (IOException e) {
+                try {
+                    blocks.put(new Block(null, -1, e));
+                } catch (InterruptedException ignore) {
+                }
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ohWell) {
+                    }
+                }
+            }
+        }
+
+        private void copyEntry(InputStream in) throws IOException, InterruptedException {
+            while (true) {
+                byte[] bytes = new byte[BLOCK_SIZE];
+                int length = 0;
+                int read = 0;
+                while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) != -1) {
+                    length += read;
+                }
+
+                if (length > 0) {
+                    blocks.put(new Block(bytes, length, null));
+                }
+
+                if (read == -1) {
+                    blocks.put(Block.END_OF_ENTRY);
+                    return;
+                }
+
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from the file.
+     */
+    private class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                bytesRead += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytesRead += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Reads the queued blocks of one entry at a time. The stream reports the end of
+     * the input at the end of each entry; {@link #nextEntry()} moves to the next one.
+     */
+    private static class EntryInputStream extends InputStream {
+
+        private final BlockingQueue<Block> blocks;
+
+        private Block current = Block.END_OF_ENTRY;
+        private int position;
+
+        EntryInputStream(BlockingQueue<Block> blocks) {
+            this.blocks = blocks;
+        }
+
+        /**
+         * Moves to the start of the next entry, skipping whatever is left of the
+         * current entry.
+         *
+         * @return false if there are no more entries.
+         */
+        boolean nextEntry() throws IOException {
+            while (current != Block.END_OF_ENTRY) {
+                current = take();
+            }
+
+            Block next = take();
+            if (next == Block.END_OF_FILE) {
+                return false;
+            }
+
+            current = next;
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (current == Block.END_OF_ENTRY) {
+                return -1;
+            }
+
+            if (position == current.length) {
+                current = take();
+                position = 0;
+                if (current == Block.END_OF_ENTRY) {
+                    return -1;
+                }
+            }
+
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current.bytes, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            if (current != Block.END_OF_ENTRY && position < current.length) {
+                return current.length - position;
+            }
+
+            Block next = blocks.peek();
+            return next == null || next.length < 0 ? 0 : next.length;
+        }
+
+        private Block take() throws IOException {
+            Block block;
+            try {
+                block = blocks.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("The import was canceled.");
+            }
+
+            if (block.error != null) {
+                throw block.error;
+            }
+            return block;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The field delimeter used by a log file. Most logs use the SOH character but some
+ * loggers replace it with a printable character, such as '|' or '^', or with text,
+ * such as "^A" or "&lt;SOH&gt;". A delimeter is detected from the bytes in front of
+ * the BodyLength (9) field and is then reused for as long as the messages use it.
+ * <p/>
+ * Instances are immutable and shared.
+ */
+public final class FIXDelimeter {
+
+    /**
+     * The number of bytes in the longest delimeter.
+     */
+    public static final int MAXIMUM_LENGTH = 5;
+
+    private static final byte SOH_BYTE = 0x01;
+    private static final byte[] CHECKSUM_TAG = {'1', '0', '='};
+
+    private static final FIXDelimeter[] SINGLE_BYTE_DELIMETERS = new FIXDelimeter[256];
+
+    static {
+        for (int value = 0; value < SINGLE_BYTE_DELIMETERS.length; value++) {
+            SINGLE_BYTE_DELIMETERS[value] = new FIXDelimeter(new byte[]{(byte) value});
+        }
+    }
+
+    public static final FIXDelimeter SOH = forByte(SOH_BYTE);
+    public static final FIXDelimeter PIPE = forByte((byte) '|');
+    public static final FIXDelimeter CARET = forByte((byte) '^');
+    public static final FIXDelimeter CARET_A = new FIXDelimeter(new byte[]{'^', 'A'});
+    public static final FIXDelimeter SOH_TEXT = new FIXDelimeter(new byte[]{'<', 'S', 'O', 'H', '>'});
+
+    /**
+     * The text delimeters, checked before falling back to a single byte.
+     */
+    private static final FIXDelimeter[] TEXT_DELIMETERS = {SOH_TEXT, CARET_A};
+
+    private final byte[] bytes;
+    private final byte[] checksumTag;
+
+    private FIXDelimeter(byte[] bytes) {
+        this.bytes = bytes;
+
+        checksumTag = new byte[bytes.length + CHECKSUM_TAG.length];
+        System.arraycopy(bytes, 0, checksumTag, 0, bytes.length);
+        System.arraycopy(CHECKSUM_TAG, 0, checksumTag, bytes.length, CHECKSUM_TAG.length);
+    }
+
+    /**
+     * @return the delimeter made up of the single byte.
+     */
+    public static FIXDelimeter forByte(byte value) {
+        return SINGLE_BYTE_DELIMETERS[value & 0xFF];
+    }
+
+    /**
+     * Detects the delimeter that ends just before the given index. This is normally
+     * the index of the BodyLength tag.
+     *
+     * @param bytes the bytes to look at.
+     * @param from  the index of the first byte that may be part of the delimeter.
+     * @param index the index following the delimeter; must be greater than
+     *              <code>from</code>.
+     * @return the text delimeter ending at the index, otherwise the single byte in
+     *         front of the index.
+     */
+    public static FIXDelimeter detectBefore(ByteBuffer bytes, int from, int index) {
+        for (FIXDelimeter delimeter : TEXT_DELIMETERS) {
+            if (delimeter.endsAt(bytes, from, index)) {
+                return delimeter;
+            }
+        }
+        return forByte(bytes.get(index - 1));
+    }
+
+    /**
+     * Detects the delimeter that starts at the given index. This is normally the
+     * index following the BeginString value.
+     *
+     * @param bytes the bytes to look at.
+     * @param index the index of the first byte of the delimeter; must be less than
+     *              <code>limit</code>.
+     * @param limit the index following the last byte that may be looked at.
+     * @return the text delimeter starting at the index, otherwise the single byte
+     *         at the index.
+     */
+    public static FIXDelimeter detectAt(ByteBuffer bytes, int index, int limit) {
+        for (FIXDelimeter delimeter : TEXT_DELIMETERS) {
+            if (delimeter.startsAt(bytes, index, limit)) {
+                return delimeter;
+            }
+        }
+        return forByte(bytes.get(index));
+    }
+
+    /**
+     * @return the number of bytes in the delimeter.
+     */
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * @return true if the delimeter is the SOH character.
+     */
+    public boolean isSOH() {
+        return this == SOH;
+    }
+
+    /**
+     * @return true if the delimeter starts at the index and ends before the limit.
+     */
+    public boolean startsAt(ByteBuffer buffer, int index, int limit) {
+        if (index < 0 || index + bytes.length > limit) {
+            return false;
+        }
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(index + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the delimeter ends just before the index and starts at or
+     *         after <code>from</code>.
+     */
+    public boolean endsAt(ByteBuffer buffer, int from, int index) {
+        int start = index - bytes.length;
+        return start >= from && startsAt(buffer, start, index);
+    }
+
+    /**
+     * @return the index of the first delimeter between the two indexes; -1 if not
+     *         found.
+     */
+    public int indexIn(ByteBuffer buffer, int from, int to) {
+        if (bytes.length == 1) {
+            return LogMessageScanner.indexOf(buffer, from, to, bytes[0]);
+        }
+        return LogMessageScanner.indexOf(buffer, from, to, bytes);
+    }
+
+    /**
+     * @return the delimeter followed by the CheckSum (10) tag.
+     */
+    byte[] getChecksumTag() {
+        return checksumTag;
+    }
+
+    /**
+     * Replaces each delimeter with the SOH character in a single pass over the
+     * bytes. A text delimeter is shortened to one byte, so the bytes following it
+     * move to the left.
+     *
+     * @param text   the bytes to change.
+     * @param length the number of bytes to change, starting at index 0.
+     * @return the number of bytes after the replacement.
+     */
+    public int translate(byte[] text, int length) {
+        if (isSOH()) {
+            return length;
+        }
+
+        byte first = bytes[0];
+        if (bytes.length == 1) {
+            for (int index = 0; index < length; index++) {
+                if (text[index] == first) {
+                    text[index] = SOH_BYTE;
+                }
+            }
+            return length;
+        }
+
+        int write = 0;
+        int read = 0;
+        while (read < length) {
+            byte b = text[read];
+            if (b == first && matches(text, read, length)) {
+                text[write++] = SOH_BYTE;
+                read += bytes.length;
+            } else {
+                text[write++] = b;
+                read++;
+            }
+        }
+        return write;
+    }
+
+    private boolean matches(byte[] text, int index, int length) {
+        if (index + bytes.length > length) {
+            return false;
+        }
+
+        for (int i = 1; i < bytes.length; i++) {
+            if (text[index + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (byte b : bytes) {
+            if (b == SOH_BYTE) {
+                text.append("SOH");
+            } else {
+                text.append((char) (b & 0xFF));
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import org.opentradingsolutions.log4fix.core.LogMessage;
+
+/**
+ * Finds the values of a few tags in a SOH delimited FIX message using a single
+ * pass over the message. The scanner only records where each value starts and
+ * ends, so no strings are created unless {@link #getValue(int)} is called.
+ * <p/>
+ * Tags are read from the start of each field. A tag such as <code>135=</code> is
+ * therefore never mistaken for <code>35=</code>. Only the first occurrence of each
+ * tag is recorded, and the scan stops as soon as every tag is found.
+ * <p/>
+ * A scanner is reused for every message and is not thread safe.
+ */
+public class FIXHeaderScanner {
+
+    /**
+     * Returned by {@link #getTimestamp(int)} if the value is missing or is not a
+     * UTCTimestamp.
+     */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final int SECONDS_PER_DAY = 86400;
+
+    private final int[] tags;
+    private final int[] valueStarts;
+    private final int[] valueEnds;
+
+    private CharSequence message;
+    private char delimeter;
+
+    /**
+     * @param tags the tags to find, e.g. {@link quickfix.field.MsgType#FIELD}.
+     */
+    public FIXHeaderScanner(int... tags) {
+        this.tags = tags.clone();
+        valueStarts = new int[tags.length];
+        valueEnds = new int[tags.length];
+    }
+
+    /**
+     * Scans the message, replacing the results of the previous scan.
+     *
+     * @param message a SOH delimited FIX message.
+     * @return true if every tag was found.
+     */
+    public boolean scan(CharSequence message) {
+        return scan(message, LogMessage.SOH_DELIMETER);
+    }
+
+    /**
+     * Scans a message using another delimeter, e.g. the raw message of a
+     * {@link LogMessage}, which uses {@link LogMessage#DEFAULT_DELIMETER}.
+     *
+     * @return true if every tag was found.
+     * @see #scan(CharSequence)
+     */
+    public boolean scan(CharSequence message, char delimeter) {
+        this.message = message;
+        this.delimeter = delimeter;
+        for (int i = 0; i < tags.length; i++) {
+            valueStarts[i] = -1;
+            valueEnds[i] = -1;
+        }
+
+        int remaining = tags.length;
+        int length = message.length();
+        int index = 0;
+        while (index < length && remaining > 0) {
+
+            // read the tag number up to the '='.
+            int tag = 0;
+            char c = message.charAt(index);
+            while (c >= '0' && c <= '9') {
+                tag = tag * 10 + (c - '0');
+                if (++index == length) {
+                    return false;
+                }
+                c = message.charAt(index);
+            }
+
+            int valueEnd = indexOfDelimeter(message, index, length, delimeter);
+
+            // a field without a tag number is skipped.
+            if (c == '=' && tag > 0) {
+                int i = indexOfTag(tag);
+                if (i != -1 && valueStarts[i] == -1) {
+                    valueStarts[i] = index + 1;
+                    valueEnds[i] = valueEnd;
+                    remaining--;
+                }
+            }
+
+            index = valueEnd + 1;
+        }
+        return remaining == 0;
+    }
+
+    /**
+     * @return true if the last scan found the tag.
+     */
+    public boolean isFound(int tag) {
+        return valueStarts[checkedIndexOfTag(tag)] != -1;
+    }
+
+    /**
+     * @return the index of the first character of the tag's value; -1 if not found.
+     */
+    public int getValueStart(int tag) {
+        return valueStarts[checkedIndexOfTag(tag)];
+    }
+
+    /**
+     * @return the index following the last character of the tag's value; -1 if
+     *         not found.
+     */
+    public int getValueEnd(int tag) {
+        return valueEnds[checkedIndexOfTag(tag)];
+    }
+
+    /**
+     * @return true if the tag's value equals the given value. A tag that was not
+     *         found equals an empty value.
+     */
+    public boolean valueEquals(int tag, String value) {
+        int i = checkedIndexOfTag(tag);
+        int start = valueStarts[i];
+        if (start == -1) {
+            return value.length() == 0;
+        }
+
+        if (valueEnds[i] - start != value.length()) {
+            return false;
+        }
+
+        for (int j = 0; j < value.length(); j++) {
+            if (message.charAt(start + j) != value.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the tag's value without creating any objects.
+     *
+     * @return the {@link String#hashCode() hash code} of the value as a string; the
+     *         hash code of an empty string if the tag was not found.
+     */
+    public int valueHashCode(int tag) {
+        int i = checkedIndexOfTag(tag);
+        int hash = 0;
+        for (int index = valueStarts[i], end = valueEnds[i]; index < end; index++) {
+            hash = 31 * hash + message.charAt(index);
+        }
+        return hash;
+    }
+
+    /**
+     * Creates a string holding the tag's value.
+     *
+     * @return the value; an empty string if the tag was not found.
+     */
+    public String getValue(int tag) {
+        int i = checkedIndexOfTag(tag);
+        if (valueStarts[i] == -1) {
+            return "";
+        }
+        return message.subSequence(valueStarts[i], valueEnds[i]).toString();
+    }
+
+    /**
+     * Converts the tag's value to a non-negative int without creating any objects.
+     *
+     * @return the value; -1 if the tag was not found or the value is not a number
+     *         of at most nine digits.
+     */
+    public int getInt(int tag) {
+        int i = checkedIndexOfTag(tag);
+        int start = valueStarts[i];
+        int end = valueEnds[i];
+        if (start == -1 || start == end || end - start > 9) {
+            return -1;
+        }
+        return digits(message, start, end - start);
+    }
+
+    /**
+     * Converts the tag's UTCTimestamp value (<code>YYYYMMDD-HH:MM:SS[.sss]</code>)
+     * without creating any objects. Up to nine fractional digits are used; any
+     * further digits are ignored.
+     *
+     * @return the nanoseconds since the epoch; {@link #NO_TIMESTAMP} if the tag was
+     *         not found or the value is not a UTCTimestamp.
+     */
+    public long getTimestamp(int tag) {
+        int i = checkedIndexOfTag(tag);
+        if (valueStarts[i] == -1) {
+            return NO_TIMESTAMP;
+        }
+        return parseTimestamp(message, valueStarts[i], valueEnds[i]);
+    }
+
+    /**
+     * @return the nanoseconds since the epoch; {@link #NO_TIMESTAMP} if the
+     *         characters are not a UTCTimestamp.
+     * @see #getTimestamp(int)
+     */
+    static long parseTimestamp(CharSequence value, int start, int end) {
+        if (end - start < 17 || value.charAt(start + 8) != '-'
+                || value.charAt(start + 11) != ':' || value.charAt(start + 14) != ':') {
+            return NO_TIMESTAMP;
+        }
+
+        int year = digits(value, start, 4);
+        int month = digits(value, start + 4, 2);
+        int day = digits(value, start + 6, 2);
+        int hour = digits(value, start + 9, 2);
+        int minute = digits(value, start + 12, 2);
+        int second = digits(value, start + 15, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return NO_TIMESTAMP;
+        }
+
+        long nanos = 0;
+        int index = start + 17;
+        if (index < end) {
+            if (value.charAt(index) != '.' || index + 1 == end) {
+                return NO_TIMESTAMP;
+            }
+
+            long scale = NANOS_PER_SECOND;
+            for (index++; index < end; index++) {
+                char c = value.charAt(index);
+                if (c < '0' || c > '9') {
+                    return NO_TIMESTAMP;
+                }
+                if (scale > 1) {
+                    scale /= 10;
+                    nanos += (c - '0') * scale;
+                }
+            }
+        }
+
+        long seconds = daysSinceEpoch(year, month, day) * SECONDS_PER_DAY
+                + hour * 3600 + minute * 60 + second;
+        return seconds * NANOS_PER_SECOND + nanos;
+    }
+
+    /**
+     * @return the value of the digits; -1 if any character is not a digit.
+     */
+    private static int digits(CharSequence value, int start, int count) {
+        int result = 0;
+        for (int index = start; index < start + count; index++) {
+            char c = value.charAt(index);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of days between 1970-01-01 and the date in the proleptic
+     *         Gregorian calendar.
+     */
+    private static long daysSinceEpoch(int year, int month, int day) {
+        // count the years from March so that the leap day is the last day of a year.
+        long y = month <= 2 ? year - 1 : year;
+        long era = y / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private int indexOfTag(int tag) {
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] == tag) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int checkedIndexOfTag(int tag) {
+        int i = indexOfTag(tag);
+        if (i == -1) {
+            throw new IllegalArgumentException("The scanner does not look for tag " + tag + ".");
+        }
+        return i;
+    }
+
+    private static int indexOfDelimeter(CharSequence message, int from, int length, char delimeter) {
+        for (int index = from; index < length; index++) {
+            if (message.charAt(index) == delimeter) {
+                return index;
+            }
+        }
+        return length;
+    }
+}
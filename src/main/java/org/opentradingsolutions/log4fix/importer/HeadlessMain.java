@@ -0,0 +1,185 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import org.opentradingsolutions.log4fix.core.SessionMemoryLogModels;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import quickfix.SessionID;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The entry point for analyzing logs without a user interface, e.g. on a server or
+ * at the end of a pipe:
+ * <pre>
+ * zcat big.log.gz | java -cp ... org.opentradingsolutions.log4fix.importer.HeadlessMain -validate
+ * </pre>
+ * The logs are imported like they are by the {@link Main standalone} application,
+ * but the messages are passed to a {@link LogAnalyzer} instead of being kept. The
+ * problems found are written to standard out as they are found, followed by a
+ * summary.
+ */
+public class HeadlessMain {
+
+    private static final String USAGE =
+            "Usage: HeadlessMain [-validate] [-framing line|bodylength] [-filter \"35=D,F 55=IBM\"]\n"
+                    + "                    [-from YYYYMMDD-HH:MM:SS] [-to YYYYMMDD-HH:MM:SS]\n"
+                    + "                    [-prefix \"line prefix regex\"] [file... | -]\n"
+                    + "The log is read from standard in if no file (or '-') is given.";
+
+    private static final int EXIT_USAGE = 2;
+
+    /**
+     * @param args the options followed by the paths of the log files. Several files
+     *             are imported as one timeline, merged by SendingTime. A single pcap
+     *             or pcapng capture file is read as the FIX traffic it captured.
+     */
+    public static void main(String[] args) {
+        PrintStream out = System.out;
+
+        boolean validate = false;
+        LogMessageScanner.Framing framing = LogMessageScanner.Framing.LINE;
+        MessageFilter filter = new MessageFilter();
+        LogLinePattern linePattern = null;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        List<File> files = new ArrayList<File>();
+        boolean standardIn = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("-validate".equals(arg)) {
+                    validate = true;
+                } else if ("-framing".equals(arg)) {
+                    framing = parseFraming(value(args, ++i, arg));
+                } else if ("-filter".equals(arg)) {
+                    filter.addFieldValues(value(args, ++i, arg));
+                } else if ("-prefix".equals(arg)) {
+                    linePattern = new LogLinePattern(value(args, ++i, arg));
+                } else if ("-from".equals(arg)) {
+                    from = MessageFilter.parseTimestamp(value(args, ++i, arg));
+                } else if ("-to".equals(arg)) {
+                    to = MessageFilter.parseTimestamp(value(args, ++i, arg));
+                } else if ("-".equals(arg)) {
+                    standardIn = true;
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option '" + arg + "'.");
+                } else {
+                    File file = new File(arg);
+                    if (!file.isFile()) {
+                        throw new IllegalArgumentException("File Not Found: " + arg);
+                    }
+                    files.add(file);
+                }
+            }
+
+            if (standardIn && !files.isEmpty()) {
+                throw new IllegalArgumentException("Read either standard in or files.");
+            }
+
+            if (from != Long.MIN_VALUE || to != Long.MAX_VALUE) {
+                filter.setTimeWindow(from, to);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(EXIT_USAGE);
+            return;
+        }
+
+        final LogAnalyzer analyzer = new LogAnalyzer(out, validate);
+        ImporterMemoryLog importerMemoryLog = new ImporterMemoryLog(analyzer, new ClassPathDataDictionaryLoader());
+        SessionMemoryLogModels sessionMemoryLogModels = new SessionMemoryLogModels(analyzer) {
+            @Override
+            protected MemoryLogModel createMemoryLogModel(SessionID sessionId) {
+                return analyzer.createSessionModel(sessionId);
+            }
+        };
+
+        ImporterModel model = new ImporterModel(importerMemoryLog, new PassThroughSessionIdResolver(),
+                sessionMemoryLogModels);
+        model.setParallelism(Runtime.getRuntime().availableProcessors());
+        model.setFraming(framing);
+        if (!filter.isEmpty()) {
+            model.setFilter(filter);
+        }
+        model.setLinePattern(linePattern);
+
+        ImporterCallback callback = new ImporterCallback() {
+            public void starting() {
+            }
+
+            public void canceling() {
+            }
+
+            public void progress(ImportProgress progress) {
+                // the final statistics are logged as events.
+            }
+
+            public void done() {
+            }
+        };
+
+        // the importer returns once every message is imported.
+        long start = System.nanoTime();
+        if (files.isEmpty()) {
+            new Importer().start(model, System.in, callback);
+        } else {
+            new Importer().start(model, files, callback);
+        }
+        analyzer.printSummary(System.nanoTime() - start);
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + option + ".");
+        }
+        return args[index];
+    }
+
+    private static LogMessageScanner.Framing parseFraming(String text) {
+        if ("line".equalsIgnoreCase(text)) {
+            return LogMessageScanner.Framing.LINE;
+        } else if ("bodylength".equalsIgnoreCase(text)) {
+            return LogMessageScanner.Framing.BODY_LENGTH;
+        }
+        throw new IllegalArgumentException("Unknown framing '" + text + "'.");
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded buffer between a single parser thread and the {@link LogMessageBuilder}.
+ * <p/>
+ * The parser {@link #put(ImportRecord) puts} records into a private batch. The batch
+ * is published to the builder once it is full, when the parser {@link #flush()
+ * flushes}, or when the parser {@link #close() closes} the buffer. The builder
+ * {@link #drainTo(Collection) drains} every published record at once. Each side
+ * therefore acquires the lock once per batch instead of once per message.
+ * <p/>
+ * The buffer holds at most the configured number of messages and bytes. The parser
+ * blocks while publishing a batch that does not fit. A batch is always accepted by
+ * an empty buffer, so a single message larger than the byte capacity does not block
+ * forever.
+ */
+public class ImportBuffer {
+
+    public static final int DEFAULT_MESSAGE_CAPACITY = 10000;
+    public static final long DEFAULT_BYTE_CAPACITY = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of records published at once.
+     */
+    private static final int MAXIMUM_BATCH_SIZE = 256;
+
+    private final int messageCapacity;
+    private final long byteCapacity;
+    private final int batchSize;
+    private final long batchBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // guarded by lock
+    private final ArrayDeque<ImportRecord> records = new ArrayDeque<ImportRecord>();
+    private long bytes;
+
+    // only touched by the parser thread
+    private List<ImportRecord> pending = new ArrayList<ImportRecord>();
+    private long pendingBytes;
+
+    public ImportBuffer() {
+        this(DEFAULT_MESSAGE_CAPACITY, DEFAULT_BYTE_CAPACITY);
+    }
+
+    /**
+     * @param messageCapacity the maximum number of records held by the buffer.
+     * @param byteCapacity    the maximum number of bytes held by the buffer.
+     * @throws IllegalArgumentException if either capacity is less than one.
+     */
+    public ImportBuffer(int messageCapacity, long byteCapacity) {
+        if (messageCapacity < 1) {
+            throw new IllegalArgumentException("The message capacity must be at least one: " + messageCapacity);
+        }
+
+        if (byteCapacity < 1) {
+            throw new IllegalArgumentException("The byte capacity must be at least one: " + byteCapacity);
+        }
+
+        this.messageCapacity = messageCapacity;
+        this.byteCapacity = byteCapacity;
+
+        // use several batches to fill the buffer so that the parser can keep
+        // working while the builder drains the previous batch.
+        batchSize = Math.max(1, Math.min(MAXIMUM_BATCH_SIZE, messageCapacity / 4));
+        batchBytes = Math.max(1, byteCapacity / 4);
+    }
+
+    public int getMessageCapacity() {
+        return messageCapacity;
+    }
+
+    public long getByteCapacity() {
+        return byteCapacity;
+    }
+
+    /**
+     * Adds the record to the parser's batch. The batch is published if it is full.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for
+     *                              the builder to make room.
+     */
+    public void put(ImportRecord record) throws InterruptedException {
+        pending.add(record);
+        pendingBytes += record.getLength();
+        if (pending.size() >= batchSize || pendingBytes >= batchBytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Publishes the parser's batch, waiting for the builder to make room if needed.
+     * Parsers reading from a stream should flush before blocking on the stream.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for
+     *                              the builder to make room.
+     */
+    public void flush() throws InterruptedException {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        lock.lockInterruptibly();
+        try {
+            while (!records.isEmpty() && !fits(pending.size(), pendingBytes)) {
+                notFull.await();
+            }
+
+            records.addAll(pending);
+            bytes += pendingBytes;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        pending = new ArrayList<ImportRecord>();
+        pendingBytes = 0;
+    }
+
+    /**
+     * Publishes the parser's batch followed by the {@link ImportRecord#END end}
+     * record. If the current thread is interrupted the unpublished records are
+     * discarded because the import is being canceled. This method never blocks
+     * waiting for room, so the builder always receives the end record.
+     */
+    public void close() {
+        if (!Thread.currentThread().isInterrupted()) {
+            try {
+                flush();
+            } catch (InterruptedException e) {
+                // restore the interrupted state.
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        pending = new ArrayList<ImportRecord>();
+        pendingBytes = 0;
+
+        lock.lock();
+        try {
+            records.add(ImportRecord.END);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for at least one published record and then moves every published record
+     * into the given collection, in the order the records were added.
+     *
+     * @return the number of records added to the collection.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public int drainTo(Collection<? super ImportRecord> collection) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (records.isEmpty()) {
+                notEmpty.await();
+            }
+
+            int count = records.size();
+            collection.addAll(records);
+            records.clear();
+            bytes = 0;
+            notFull.signal();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of published records.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return records.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if there are no published records. The parser's unpublished
+     *         batch is not counted, so any thread may call this method.
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return records.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(int count, long size) {
+        return records.size() + count <= messageCapacity && bytes + size <= byteCapacity;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import quickfix.SessionID;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How far an import of a log file got: the file position following the last
+ * message added to the models, the number of messages added and the state of each
+ * session found so far. A later import of the unchanged file resumes from the
+ * checkpoint instead of reading the file from the beginning. The sessions are
+ * restored first, so the remaining messages are routed to the same sessions and
+ * numbered as if the import had never stopped, even though the logon messages that
+ * established the sessions are not read again.
+ * <p/>
+ * Checkpoints are written by the {@link LogMessageBuilder} and the
+ * {@link ParallelLogFileImporter} and saved by the {@link LogFileIndexStore}. A
+ * checkpoint belongs to a single version of a log file, identified by its
+ * {@link LogFileIndex.Key}. A checkpoint is immutable.
+ */
+public final class ImportCheckpoint {
+
+    private static final int MAGIC = 0x4C344643;
+    private static final int VERSION = 1;
+
+    private final LogFileIndex.Key key;
+    private final long offset;
+    private final int messageCount;
+    private final List<Session> sessions;
+
+    ImportCheckpoint(LogFileIndex.Key key, long offset, int messageCount, List<Session> sessions) {
+        this.key = key;
+        this.offset = offset;
+        this.messageCount = messageCount;
+        this.sessions = Collections.unmodifiableList(new ArrayList<Session>(sessions));
+    }
+
+    public LogFileIndex.Key getKey() {
+        return key;
+    }
+
+    /**
+     * @return the file position following the last message imported.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of messages imported before the checkpoint.
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return the sessions found before the checkpoint, the first session first.
+     */
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    @Override
+    public String toString() {
+        return messageCount + " messages, offset " + offset + ", " + sessions.size() + " sessions";
+    }
+
+    /**
+     * Writes the checkpoint to the file, replacing the file's contents.
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            key.write(out);
+            out.writeLong(offset);
+            out.writeInt(messageCount);
+            out.writeInt(sessions.size());
+            for (Session session : sessions) {
+                out.writeUTF(session.sessionId.getBeginString());
+                out.writeUTF(session.sessionId.getSenderCompID());
+                out.writeUTF(session.sessionId.getTargetCompID());
+                out.writeUTF(session.beginString);
+                out.writeUTF(session.initiator);
+                out.writeUTF(session.acceptor);
+                out.writeInt(session.messageCount);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a checkpoint written by {@link #write(File)}.
+     *
+     * @throws IOException if the file cannot be read or is not a checkpoint.
+     */
+    public static ImportCheckpoint read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an import checkpoint.");
+            }
+
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported import checkpoint version: " + version);
+            }
+
+            LogFileIndex.Key key = LogFileIndex.Key.read(in);
+            long offset = in.readLong();
+            int messageCount = in.readInt();
+
+            int sessionCount = in.readInt();
+            List<Session> sessions = new ArrayList<Session>(sessionCount);
+            for (int i = 0; i < sessionCount; i++) {
+                SessionID sessionId = new SessionID(in.readUTF(), in.readUTF(), in.readUTF());
+                sessions.add(new Session(sessionId, in.readUTF(), in.readUTF(), in.readUTF(), in.readInt()));
+            }
+            return new ImportCheckpoint(key, offset, messageCount, sessions);
+        } catch (RuntimeException e) {
+            // a corrupt checkpoint.
+            throw new IOException("Unable to read the checkpoint " + file + ": " + e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * A session found before the checkpoint. The header values of the session's first
+     * message are kept because the resolver may have changed the session Id.
+     */
+    public static final class Session {
+
+        private final SessionID sessionId;
+        private final String beginString;
+        private final String initiator;
+        private final String acceptor;
+        private final int messageCount;
+
+        /**
+         * @param messageCount the number of messages numbered by the session's log.
+         */
+        Session(SessionID sessionId, String beginString, String initiator, String acceptor, int messageCount) {
+            this.sessionId = sessionId;
+            this.beginString = beginString;
+            this.initiator = initiator;
+            this.acceptor = acceptor;
+            this.messageCount = messageCount;
+        }
+
+        public SessionID getSessionId() {
+            return sessionId;
+        }
+
+        public String getBeginString() {
+            return beginString;
+        }
+
+        public String getInitiator() {
+            return initiator;
+        }
+
+        public String getAcceptor() {
+            return acceptor;
+        }
+
+        public int getMessageCount() {
+            return messageCount;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.util.Locale;
+
+/**
+ * How far an import has come, as reported to the {@link ImporterCallback}. The rates
+ * are averages since the import started, and the estimated time to completion
+ * assumes the rest of the log is read at the same rate.
+ */
+public final class ImportProgress {
+
+    /**
+     * The value of a size or time that is not known, e.g. the size of a stream.
+     */
+    public static final long UNKNOWN = -1;
+
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final long bytesRead;
+    private final long totalBytes;
+    private final long messageCount;
+    private final int queueDepth;
+    private final long elapsedNanos;
+
+    /**
+     * @param bytesRead    the number of bytes of the log read so far.
+     * @param totalBytes   the size of the log; {@link #UNKNOWN} if the size is not known.
+     * @param messageCount the number of messages read so far.
+     * @param queueDepth   the number of records waiting between the parser and the
+     *                     builder.
+     * @param elapsedNanos the time since the import started.
+     */
+    public ImportProgress(long bytesRead, long totalBytes, long messageCount, int queueDepth, long elapsedNanos) {
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.messageCount = messageCount;
+        this.queueDepth = queueDepth;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the size of the log; {@link #UNKNOWN} if the log is a stream.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return the number of records parsed but not yet built into messages. A deep
+     *         queue means the builder is the bottleneck.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getMessagesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : messageCount * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : bytesRead * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * @return the percentage of the log read, from 0 to 100; {@link #UNKNOWN} if the
+     *         size of the log is not known.
+     */
+    public int getPercentComplete() {
+        if (totalBytes <= 0) {
+            return (int) UNKNOWN;
+        }
+        return (int) Math.min(100, bytesRead * 100 / totalBytes);
+    }
+
+    /**
+     * @return the estimated time until the whole log is read; {@link #UNKNOWN} if the
+     *         size of the log is not known or nothing has been read yet.
+     */
+    public long getEstimatedNanosRemaining() {
+        if (totalBytes <= 0 || bytesRead <= 0) {
+            return UNKNOWN;
+        }
+        long remaining = Math.max(0, totalBytes - bytesRead);
+        return (long) (remaining * ((double) elapsedNanos / bytesRead));
+    }
+
+    /**
+     * @return e.g. "45% of 270.0 MB, 85,210 messages/s, 12.3 MB/s, 0:13 left".
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        if (getPercentComplete() == UNKNOWN) {
+            text.append(formatMegabytes(bytesRead));
+        } else {
+            text.append(getPercentComplete()).append("% of ").append(formatMegabytes(totalBytes));
+        }
+
+        text.append(String.format(Locale.US, ", %,.0f messages/s, %.1f MB/s", getMessagesPerSecond(),
+                getBytesPerSecond() / BYTES_PER_MEGABYTE));
+
+        long remaining = getEstimatedNanosRemaining();
+        if (remaining != UNKNOWN) {
+            text.append(", ").append(formatDuration(remaining)).append(" left");
+        }
+        return text.toString();
+    }
+
+    static String formatMegabytes(long bytes) {
+        return String.format(Locale.US, "%.1f MB", bytes / BYTES_PER_MEGABYTE);
+    }
+
+    /**
+     * @return the time as <code>[H:]M:SS</code>.
+     */
+    static String formatDuration(long nanos) {
+        long seconds = Math.round(nanos / NANOS_PER_SECOND);
+        long hours = seconds / 3600;
+        long minutes = (seconds / 60) % 60;
+        if (hours > 0) {
+            return String.format(Locale.US, "%d:%02d:%02d", hours, minutes, seconds % 60);
+        }
+        return String.format(Locale.US, "%d:%02d", minutes, seconds % 60);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+/**
+ * A single record handed from a log file parser to the {@link LogMessageBuilder}.
+ * A record is either a raw FIX message, an error found while parsing, an event
+ * noticed while reading the log file, or the end of the log file.
+ */
+public final class ImportRecord {
+
+    public enum Type {
+        /**
+         * The text is a SOH delimited FIX message.
+         */
+        MESSAGE,
+
+        /**
+         * The text describes a parsing error and is logged as an event.
+         */
+        ERROR,
+
+        /**
+         * The text describes something that happened to the log file (e.g. it was
+         * rotated) and is logged as an event.
+         */
+        EVENT,
+
+        /**
+         * No more records follow.
+         */
+        END
+    }
+
+    /**
+     * The last record added by a parser.
+     */
+    public static final ImportRecord END = new ImportRecord(Type.END, "");
+
+    private final Type type;
+    private final String text;
+    private final long offset;
+    private final long end;
+    private final long receiveTime;
+
+    private ImportRecord(Type type, String text) {
+        this(type, text, -1, -1, FIXHeaderScanner.NO_TIMESTAMP);
+    }
+
+    private ImportRecord(Type type, String text, long offset, long end, long receiveTime) {
+        this.type = type;
+        this.text = text;
+        this.offset = offset;
+        this.end = end;
+        this.receiveTime = receiveTime;
+    }
+
+    /**
+     * @param rawMessage a non-null, SOH delimited FIX message.
+     */
+    public static ImportRecord message(String rawMessage) {
+        return new ImportRecord(Type.MESSAGE, rawMessage);
+    }
+
+    /**
+     * @param rawMessage a non-null, SOH delimited FIX message.
+     * @param offset     the file position of the '8=' that starts the message.
+     * @param end        the file position following the last byte of the message.
+     */
+    public static ImportRecord message(String rawMessage, long offset, long end) {
+        return message(rawMessage, offset, end, FIXHeaderScanner.NO_TIMESTAMP);
+    }
+
+    /**
+     * @param rawMessage  a non-null, SOH delimited FIX message.
+     * @param receiveTime the time the message was logged in nanoseconds since the
+     *                    epoch; {@link FIXHeaderScanner#NO_TIMESTAMP} if not known.
+     */
+    public static ImportRecord message(String rawMessage, long receiveTime) {
+        return message(rawMessage, -1, -1, receiveTime);
+    }
+
+    /**
+     * @param rawMessage  a non-null, SOH delimited FIX message.
+     * @param offset      the file position of the '8=' that starts the message.
+     * @param end         the file position following the last byte of the message.
+     * @param receiveTime the time the message was logged in nanoseconds since the
+     *                    epoch; {@link FIXHeaderScanner#NO_TIMESTAMP} if not known.
+     */
+    public static ImportRecord message(String rawMessage, long offset, long end, long receiveTime) {
+        return new ImportRecord(Type.MESSAGE, rawMessage, offset, end, receiveTime);
+    }
+
+    /**
+     * @param text a non-null description of the error. The text is logged exactly as
+     *             given.
+     */
+    public static ImportRecord error(String text) {
+        return new ImportRecord(Type.ERROR, text);
+    }
+
+    /**
+     * @param text a non-null description of the event. The text is logged exactly as
+     *             given.
+     */
+    public static ImportRecord event(String text) {
+        return new ImportRecord(Type.EVENT, text);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the file position of the '8=' that starts the message; -1 if the
+     *         position is not known.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the file position following the last byte of the message; -1 if the
+     *         position is not known.
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the time the message was logged (e.g. the timestamp a QuickFIX/J
+     *         <code>FileLog</code> writes in front of it) in nanoseconds since the
+     *         epoch; {@link FIXHeaderScanner#NO_TIMESTAMP} if not known.
+     * @see LogMessageScanner#getLineTimestamp()
+     */
+    public long getReceiveTime() {
+        return receiveTime;
+    }
+
+    /**
+     * @return the number of characters in the text. This is the number of bytes the
+     *         text occupied in an ASCII log file.
+     */
+    public int getLength() {
+        return text.length();
+    }
+
+    @Override
+    public String toString() {
+        return type + ": " + text;
+    }
+}
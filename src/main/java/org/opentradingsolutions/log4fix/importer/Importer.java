@@ -34,54 +34,385 @@
 
 package org.opentradingsolutions.log4fix.importer;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * @author Brian M. Coyner
  */
 public class Importer {
 
-    private final BlockingQueue<String> queue;
+    /**
+     * The default minimum number of milliseconds between progress reports.
+     */
+    public static final long DEFAULT_PROGRESS_INTERVAL = 250;
 
-    private Thread producer;
-    private ImporterCallback callback;
+    public static final String EVENT_STATISTICS = "Statistics";
+    public static final String EVENT_THROUGHPUT = "Throughput";
+    public static final String EVENT_LATENCY = "Latency";
 
-    public Importer() {
-        this(new LinkedBlockingQueue<String>());
+    /**
+     * The number of milliseconds a canceled import is given to stop before the
+     * importer returns anyway.
+     */
+    static final long CANCEL_TIMEOUT = 100;
+
+    // set by the importing thread, read by the thread canceling the import.
+    private volatile Thread producer;
+    private volatile Thread consumer;
+    private volatile ImporterCallback callback;
+    private volatile boolean canceled;
+
+    /**
+     * Imports the log messages read from the stream. The parser and the builder
+     * exchange messages through an {@link ImportBuffer} sized by the model.
+     */
+    public void start(ImporterModel model, InputStream is, ImporterCallback callback) {
+        ImportBuffer records = createBuffer(model);
+        LogMessageParser parser = new LogMessageParser(is, records, model.getFraming());
+        parser.setFilter(model.getFilter());
+        parser.setLinePattern(model.getLinePattern());
+        start(model, parser, ImportProgress.UNKNOWN, records, callback);
     }
 
-    protected Importer(BlockingQueue<String> queue) {
-        this.queue = queue;
+    /**
+     * Imports the log file by memory mapping the file. This is much faster than
+     * reading the file through an <code>InputStream</code>, especially for large files.
+     *
+     * <p/>
+     * The file is imported by a {@link ParallelLogFileImporter} if the model's
+     * parallelism is greater than one. A gzip or zip compressed file cannot be
+     * mapped, so it is decompressed while it is parsed by a
+     * {@link CompressedLogMessageParser}.
+     * <p/>
+     * If the model has a {@link LogFileIndexStore} an uncompressed file is indexed
+     * while it is imported. If the store already holds an index of the unchanged
+     * file, the messages are read straight from their positions by an
+     * {@link IndexedLogMessageParser}.
+     * <p/>
+     * An uncompressed file at least as large as the model's lazy loading threshold
+     * is imported by a {@link MappedLogFileImporter}, which builds each message only
+     * when it is shown. A compressed file or a capture at least as large as the
+     * model's off-heap threshold keeps its messages in
+     * {@link org.opentradingsolutions.log4fix.core.SegmentMemoryLogModel}s.
+     * <p/>
+     * A pcap or pcapng capture file is read by a {@link PcapLogMessageParser}, which
+     * reassembles the TCP streams in the capture.
+     * <p/>
+     * Every parser applies the model's {@link MessageFilter} and, except for a
+     * capture, the model's {@link LogLinePattern}.
+     * <p/>
+     * An import of an uncompressed log file below the lazy loading threshold (i.e.
+     * by the {@link MappedLogMessageParser}, the {@link IndexedLogMessageParser} or
+     * the {@link ParallelLogFileImporter}) saves {@link ImportCheckpoint checkpoints}
+     * in the model's index store, so it can be
+     * {@link #resume(ImporterModel, File, ImportCheckpoint, ImporterCallback) resumed}.
+     * The other imports are not checkpointed: a compressed file or a capture cannot
+     * be read from a file position, and a lazy import only indexes the file, which
+     * is quick, and keeps the index for the next import.
+     *
+     * @see MappedLogMessageParser
+     */
+    public void start(ImporterModel model, File file, ImporterCallback callback) {
+        LogFileIndexStore indexStore = model.getIndexStore();
+        long totalBytes = file.length();
+        if (PcapLogMessageParser.isCapture(file)) {
+            ImportBuffer records = createBuffer(model);
+            PcapLogMessageParser parser = new PcapLogMessageParser(file, records);
+            parser.setFilter(model.getFilter());
+            start(model, parser, totalBytes, records, callback);
+            return;
+        }
+
+        if (CompressedLogMessageParser.isCompressed(file)) {
+            ImportBuffer records = createBuffer(model);
+            CompressedLogMessageParser parser = new CompressedLogMessageParser(file, records, model.getFraming());
+            parser.setFilter(model.getFilter());
+            parser.setLinePattern(model.getLinePattern());
+            start(model, parser, totalBytes, records, callback);
+            return;
+        }
+
+        if (totalBytes >= model.getLazyLoadingThreshold()) {
+            start(model, new MappedLogFileImporter(model, file), totalBytes, callback);
+            return;
+        }
+
+        // an index is built without a line pattern.
+        LogFileIndex index = indexStore == null || model.getLinePattern() != null
+                ? null : indexStore.load(file, model.getFraming());
+        if (index != null) {
+            ImportBuffer records = createBuffer(model);
+            IndexedLogMessageParser parser = new IndexedLogMessageParser(file, index, records);
+            parser.setFilter(model.getFilter());
+            start(model, parser, totalBytes, records, createBuilder(model, file, records), callback);
+        } else if (model.getParallelism() > 1) {
+            start(model, new ParallelLogFileImporter(model, file, model.getParallelism()), totalBytes, callback);
+        } else {
+            ImportBuffer records = createBuffer(model);
+            MappedLogMessageParser parser = new MappedLogMessageParser(file, records, model.getFraming(), indexStore);
+            parser.setFilter(model.getFilter());
+            parser.setLinePattern(model.getLinePattern());
+            start(model, parser, totalBytes, records, createBuilder(model, file, records), callback);
+        }
     }
 
-    public void start(ImporterModel model, InputStream is, ImporterCallback callback) {
+    /**
+     * @return the checkpoint of an earlier import of the unchanged log file that did
+     *         not finish; null if the file cannot be resumed with the model.
+     */
+    public ImportCheckpoint findCheckpoint(ImporterModel model, File file) {
+        if (!isCheckpointed(model) || CompressedLogMessageParser.isCompressed(file)
+                || PcapLogMessageParser.isCapture(file)) {
+            return null;
+        }
+        return model.getIndexStore().loadCheckpoint(file, model.getFraming());
+    }
+
+    /**
+     * Resumes the import of the log file stopped at the checkpoint, e.g. by
+     * {@link #stop()} or because the application died. Only the rest of the file is
+     * read. The sessions found before the checkpoint are restored and the remaining
+     * messages are appended to the models, numbered after the messages imported
+     * before the checkpoint. The resumed import saves checkpoints of its own.
+     *
+     * @param checkpoint the checkpoint returned by {@link #findCheckpoint(ImporterModel, File)}.
+     */
+    public void resume(ImporterModel model, File file, ImportCheckpoint checkpoint, ImporterCallback callback) {
+        ImportBuffer records = createBuffer(model);
+        MappedLogMessageParser parser = new MappedLogMessageParser(file, records, model.getFraming());
+        parser.setFilter(model.getFilter());
+        parser.setLinePattern(model.getLinePattern());
+        parser.setStart(checkpoint.getOffset());
+
+        LogMessageBuilder builder = createBuilder(model, file, records);
+        builder.resume(checkpoint);
+        start(model, parser, file.length(), records, builder, callback);
+    }
+
+    /**
+     * Imports several log files as one timeline, merging the messages of the files
+     * by SendingTime. A single file is imported like {@link #start(ImporterModel, File,
+     * ImporterCallback)}. Files at least as large together as the model's off-heap
+     * threshold keep their messages out of the Java heap.
+     *
+     * @see MergingLogMessageParser
+     */
+    public void start(ImporterModel model, List<File> files, ImporterCallback callback) {
+        if (files.size() == 1) {
+            start(model, files.get(0), callback);
+        } else {
+            long totalBytes = 0;
+            for (File file : files) {
+                totalBytes += file.length();
+            }
+
+            ImportBuffer records = createBuffer(model);
+            MergingLogMessageParser parser = new MergingLogMessageParser(files, records, model.getFraming());
+            parser.setFilter(model.getFilter());
+            parser.setLinePattern(model.getLinePattern());
+            start(model, parser, totalBytes, records, callback);
+        }
+    }
+
+    /**
+     * Imports the messages already in the log file and then keeps importing the
+     * messages appended to the file until {@link #stop()} is called. The file keeps
+     * growing, so the progress never has an estimated time to completion.
+     *
+     * @see LogFileFollower
+     */
+    public void follow(ImporterModel model, File file, ImporterCallback callback) {
+        ImportBuffer records = createBuffer(model);
+        LogFileFollower follower = new LogFileFollower(file, records, model.getFraming(), model.getFollowInterval());
+        follower.setFilter(model.getFilter());
+        follower.setLinePattern(model.getLinePattern());
+        start(model, follower, ImportProgress.UNKNOWN, records, callback);
+    }
+
+    private <T extends Runnable & ImportProgressSource> void start(ImporterModel model, T importer,
+                                                                    long totalBytes, ImporterCallback callback) {
         this.callback = callback;
 
-        producer = new Thread(new LogMessageParser(is, queue));
+        // the importer does all of the work, so it is both the producer and consumer.
+        producer = new Thread(importer);
+        consumer = producer;
+        canceled = false;
+
+        model.getLatencyStatistics().clear();
+        model.setImportState(ImporterModel.ImportState.IMPORTING);
+        callback.starting();
+        producer.start();
+
+        awaitTermination(model, producer, new Progress(importer, null, totalBytes), callback);
+    }
+
+    /**
+     * Imports the records of a parser that cannot be imported lazily, keeping the
+     * messages out of the Java heap if the source reaches the model's off-heap
+     * threshold.
+     */
+    private <T extends Runnable & ImportProgressSource> void start(ImporterModel model, T parser, long totalBytes,
+                                                                    ImportBuffer records, ImporterCallback callback) {
+        LogMessageBuilder builder = new LogMessageBuilder(model, records);
+        builder.setOffHeap(totalBytes != ImportProgress.UNKNOWN && totalBytes >= model.getOffHeapThreshold());
+        start(model, parser, totalBytes, records, builder, callback);
+    }
+
+    private <T extends Runnable & ImportProgressSource> void start(ImporterModel model, T parser, long totalBytes,
+                                                                    ImportBuffer records, LogMessageBuilder builder,
+                                                                    ImporterCallback callback) {
+        this.callback = callback;
 
-        Thread consumer = new Thread(new LogMessageBuilder(model, queue));
+        producer = new Thread(parser);
+        Thread consumer = new Thread(builder);
+        this.consumer = consumer;
+        canceled = false;
 
+        model.getLatencyStatistics().clear();
+        model.setImportState(ImporterModel.ImportState.IMPORTING);
         callback.starting();
         producer.start();
         consumer.start();
 
-        awaitTermination(consumer, callback);
+        awaitTermination(model, consumer, new Progress(parser, records, totalBytes), callback);
+    }
+
+    /**
+     * @return a builder saving checkpoints of the log file if the model allows it.
+     */
+    private LogMessageBuilder createBuilder(ImporterModel model, File file, ImportBuffer records) {
+        LogMessageBuilder builder = new LogMessageBuilder(model, records);
+        if (isCheckpointed(model)) {
+            try {
+                builder.setCheckpoints(file, LogFileIndex.Key.of(file, model.getFraming()));
+            } catch (IOException e) {
+                // the parser reports the unreadable file.
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * A checkpoint is a position in the file, so an import whose filter or line
+     * pattern skips messages cannot be resumed by an import without them.
+     */
+    private boolean isCheckpointed(ImporterModel model) {
+        return model.getIndexStore() != null && !model.isFiltered() && model.getLinePattern() == null;
     }
 
+    private ImportBuffer createBuffer(ImporterModel model) {
+        return new ImportBuffer(model.getBufferMessageCapacity(), model.getBufferByteCapacity());
+    }
+
+    /**
+     * Cancels the import. Every stage of the import is interrupted, so the import
+     * stops within about {@link #CANCEL_TIMEOUT} milliseconds, leaving the messages
+     * already imported in the models. The model's import state becomes
+     * {@link ImporterModel.ImportState#PARTIAL}.
+     */
     public void stop() {
+        canceled = true;
         callback.canceling();
+
+        // the builder stops before its next record instead of draining the buffer.
+        consumer.interrupt();
         producer.interrupt();
     }
 
-    private void awaitTermination(Thread consumer, ImporterCallback callback) {
+    /**
+     * Waits for the consumer, reporting the progress once per progress interval.
+     * The final progress is also logged, so the statistics of the import are kept
+     * with its events.
+     */
+    private void awaitTermination(ImporterModel model, Thread consumer, Progress progress,
+                                  ImporterCallback callback) {
         try {
-            consumer.join();
+            long interval = model.getProgressInterval();
+            consumer.join(interval);
+            while (consumer.isAlive()) {
+                callback.progress(progress.sample());
+                consumer.join(interval);
+            }
+
+            // the builder may stop early (e.g. it was interrupted), leaving the
+            // parser blocked on a full buffer.
+            producer.interrupt();
         } catch (InterruptedException e) {
             stop();
+            awaitCancellation(consumer);
         } finally {
+            ImportProgress last = progress.sample();
+            logStatistics(model.getImporterMemoryLog(), last);
+            logLatency(model.getImporterMemoryLog(), model.getLatencyStatistics());
+            model.setImportState(canceled || consumer.isAlive()
+                    ? ImporterModel.ImportState.PARTIAL : ImporterModel.ImportState.COMPLETE);
+            callback.progress(last);
             callback.done();
         }
     }
+
+    /**
+     * Gives the canceled consumer a little time to stop, keeping the interrupted
+     * state of the current thread.
+     */
+    private void awaitCancellation(Thread consumer) {
+        try {
+            consumer.join(CANCEL_TIMEOUT);
+        } catch (InterruptedException ignore) {
+        } finally {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void logStatistics(ImporterMemoryLog logger, ImportProgress progress) {
+        logger.onEvent(EVENT_STATISTICS + ": " + progress.getMessageCount() + " messages, "
+                + ImportProgress.formatMegabytes(progress.getBytesRead()) + " in "
+                + ImportProgress.formatDuration(progress.getElapsedNanos()));
+        logger.onEvent(EVENT_THROUGHPUT + ": " + String.format(Locale.US, "%,.0f messages/s, %.1f MB/s",
+                progress.getMessagesPerSecond(), progress.getBytesPerSecond() / (1024 * 1024)));
+    }
+
+    private void logLatency(ImporterMemoryLog logger, LatencyStatistics latency) {
+        for (String counterparty : latency.getCounterparties()) {
+            LatencyHistogram incoming = latency.getHistogram(counterparty, true);
+            if (incoming.getCount() > 0) {
+                logger.onEvent(EVENT_LATENCY + ": " + counterparty + " IN " + incoming);
+            }
+            LatencyHistogram outgoing = latency.getHistogram(counterparty, false);
+            if (outgoing.getCount() > 0) {
+                logger.onEvent(EVENT_LATENCY + ": " + counterparty + " OUT " + outgoing);
+            }
+        }
+    }
+
+    /**
+     * Samples the progress of a running import.
+     */
+    private static class Progress {
+
+        private final ImportProgressSource source;
+        private final ImportBuffer records;
+        private final long totalBytes;
+        private final long start = System.nanoTime();
+
+        /**
+         * @param records the buffer between the parser and the builder; null if the
+         *                source does all of the work.
+         */
+        Progress(ImportProgressSource source, ImportBuffer records, long totalBytes) {
+            this.source = source;
+            this.records = records;
+            this.totalBytes = totalBytes;
+        }
+
+        ImportProgress sample() {
+            int queueDepth = records == null ? 0 : records.size();
+            return new ImportProgress(source.getBytesRead(), totalBytes, source.getMessageCount(), queueDepth,
+                    System.nanoTime() - start);
+        }
+    }
 }
@@ -43,5 +43,12 @@ public interface ImporterCallback {
 
     void canceling();
 
+    /**
+     * Called by the importing thread while the import runs, at most once per the
+     * model's {@link ImporterModel#getProgressInterval() progress interval}, and
+     * once more with the final values just before {@link #done()}.
+     */
+    void progress(ImportProgress progress);
+
     void done();
 }
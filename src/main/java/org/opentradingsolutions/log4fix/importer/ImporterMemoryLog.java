@@ -37,6 +37,7 @@ package org.opentradingsolutions.log4fix.importer;
 import org.opentradingsolutions.log4fix.core.AbstractMemoryLog;
 import org.opentradingsolutions.log4fix.core.MemoryLogModel;
 import org.opentradingsolutions.log4fix.datadictionary.DataDictionaryLoader;
+import quickfix.DataDictionary;
 import quickfix.SessionID;
 
 /**
@@ -46,11 +47,21 @@ public class ImporterMemoryLog extends AbstractMemoryLog {
 
     private SessionID sessionId;
     private final MemoryLogModel model;
+    private final DataDictionaryLoader dictionaryLoader;
 
     public ImporterMemoryLog(MemoryLogModel model, DataDictionaryLoader dictionaryLoader) {
         super(dictionaryLoader);
 
         this.model = model;
+        this.dictionaryLoader = dictionaryLoader;
+    }
+
+    /**
+     * @return a new log adding messages to the given model. The new log uses the same
+     *         data dictionaries as this log.
+     */
+    public ImporterMemoryLog createMemoryLog(MemoryLogModel model) {
+        return new ImporterMemoryLog(model, dictionaryLoader);
     }
 
     @Override
@@ -65,8 +76,28 @@ public class ImporterMemoryLog extends AbstractMemoryLog {
         model.setSessionId(sessionId);
     }
 
+    /**
+     * @return the data dictionary of the given session, loaded the same way as for
+     *         messages added to this log.
+     */
+    DataDictionary loadDataDictionary(SessionID sessionId) {
+        return dictionaryLoader.loadDictionary(sessionId);
+    }
+
     @Override
     protected SessionID getSessionId() {
         return sessionId;
     }
+
+    // the following methods are overridden so the importer package can use them.
+
+    @Override
+    protected int reserveMessageIndexes(int count) {
+        return super.reserveMessageIndexes(count);
+    }
+
+    @Override
+    protected DataDictionary getDataDictionary() {
+        return super.getDataDictionary();
+    }
 }
@@ -34,32 +34,118 @@
 
 package org.opentradingsolutions.log4fix.importer;
 
+import org.opentradingsolutions.log4fix.core.SegmentMemoryLogModel;
+import org.opentradingsolutions.log4fix.core.SessionMemoryLogModels;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.File;
+
 /**
  * @author Brian M. Coyner
  */
 public class ImporterModel {
 
+    public static final String PROPERTY_IMPORT_STATE = "importState";
+
+    /**
+     * The state of the last import.
+     */
+    public enum ImportState {
+
+        /**
+         * Nothing has been imported yet.
+         */
+        IDLE,
+
+        /**
+         * An import is running.
+         */
+        IMPORTING,
+
+        /**
+         * The whole log was imported. Problems found in the log are logged as events.
+         */
+        COMPLETE,
+
+        /**
+         * The import was canceled (or a followed file was stopped). The models hold
+         * only the messages imported before the import stopped.
+         */
+        PARTIAL
+    }
+
     private final SessionIdResolver sessionIdResolver;
     private final ImporterMemoryLog importMemoryLog;
+    private final SessionMemoryLogModels sessionMemoryLogModels;
+    private final LatencyStatistics latencyStatistics = new LatencyStatistics();
 
     private String lastAccessedFilePath;
+    private int parallelism = 1;
+    private LogMessageScanner.Framing framing = LogMessageScanner.Framing.LINE;
+    private int bufferMessageCapacity = ImportBuffer.DEFAULT_MESSAGE_CAPACITY;
+    private long bufferByteCapacity = ImportBuffer.DEFAULT_BYTE_CAPACITY;
+    private long followInterval = LogFileFollower.DEFAULT_POLL_INTERVAL;
+    private LogFileIndexStore indexStore;
+    private long lazyLoadingThreshold = Long.MAX_VALUE;
+    private long offHeapThreshold = Long.MAX_VALUE;
+    private File spillDirectory;
+    private MessageFilter filter;
+    private LogLinePattern linePattern;
+    private long progressInterval = Importer.DEFAULT_PROGRESS_INTERVAL;
+    private int checkpointInterval = LogMessageBuilder.DEFAULT_CHECKPOINT_INTERVAL;
+    private volatile ImportState importState = ImportState.IDLE;
+    private final PropertyChangeSupport support = new PropertyChangeSupport(this);
 
     public ImporterModel(ImporterMemoryLog logger, SessionIdResolver sessionIdResolver) {
-        this.importMemoryLog = logger;
-        this.sessionIdResolver = sessionIdResolver;
+        this(logger, sessionIdResolver, (String) null);
     }
 
     public ImporterModel(ImporterMemoryLog importerMemoryLog, SessionIdResolver sessionIdResolver, String initialFilePath) {
+        this(importerMemoryLog, sessionIdResolver, new SessionMemoryLogModels(importerMemoryLog.getMemoryLogModel()));
+        lastAccessedFilePath = initialFilePath;
+    }
+
+    /**
+     * @param sessionMemoryLogModels the models of the sessions found by an import.
+     *                               The primary model must be the model of the log.
+     */
+    public ImporterModel(ImporterMemoryLog importerMemoryLog, SessionIdResolver sessionIdResolver,
+                         SessionMemoryLogModels sessionMemoryLogModels) {
+
+        if (sessionMemoryLogModels.getPrimaryMemoryLogModel() != importerMemoryLog.getMemoryLogModel()) {
+            throw new IllegalArgumentException("The primary model is not the model of the log.");
+        }
 
         this.importMemoryLog = importerMemoryLog;
         this.sessionIdResolver = sessionIdResolver;
-        lastAccessedFilePath = initialFilePath;
+        this.sessionMemoryLogModels = sessionMemoryLogModels;
     }
 
+    /**
+     * @return the log receiving the events of an import and the messages of the
+     *         first session.
+     */
     public ImporterMemoryLog getImporterMemoryLog() {
         return importMemoryLog;
     }
 
+    /**
+     * @return the models receiving the messages of each session. The primary model
+     *         is the importer memory log's model.
+     */
+    public SessionMemoryLogModels getSessionMemoryLogModels() {
+        return sessionMemoryLogModels;
+    }
+
+    /**
+     * @return the transit latency of the messages of the last import, per
+     *         counterparty and direction.
+     */
+    public LatencyStatistics getLatencyStatistics() {
+        return latencyStatistics;
+    }
+
     public SessionIdResolver getSessionIdResolver() {
         return sessionIdResolver;
     }
@@ -71,4 +157,285 @@ public class ImporterModel {
     public void setLastAccessedFilePath(String lastAccessedFilePath) {
         this.lastAccessedFilePath = lastAccessedFilePath;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the number of threads used to import a log file. The default is one.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads used to import a log file. A log file
+     *                    is imported by a {@link ParallelLogFileImporter} if this is
+     *                    greater than one.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least one: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return how the parser finds each message. The default is
+     *         {@link LogMessageScanner.Framing#LINE}.
+     */
+    public LogMessageScanner.Framing getFraming() {
+        return framing;
+    }
+
+    /**
+     * @param framing how the parser finds each message. Use
+     *                {@link LogMessageScanner.Framing#BODY_LENGTH} for raw captured
+     *                streams without line terminators.
+     */
+    public void setFraming(LogMessageScanner.Framing framing) {
+        if (framing == null) {
+            throw new IllegalArgumentException("The framing is null.");
+        }
+        this.framing = framing;
+    }
+
+    /**
+     * @return the maximum number of parsed messages waiting to be imported.
+     */
+    public int getBufferMessageCapacity() {
+        return bufferMessageCapacity;
+    }
+
+    /**
+     * @param bufferMessageCapacity the maximum number of parsed messages waiting to be
+     *                              imported. The parser blocks once this is reached.
+     */
+    public void setBufferMessageCapacity(int bufferMessageCapacity) {
+        if (bufferMessageCapacity < 1) {
+            throw new IllegalArgumentException("The message capacity must be at least one: " + bufferMessageCapacity);
+        }
+        this.bufferMessageCapacity = bufferMessageCapacity;
+    }
+
+    /**
+     * @return the maximum number of bytes of parsed messages waiting to be imported.
+     */
+    public long getBufferByteCapacity() {
+        return bufferByteCapacity;
+    }
+
+    /**
+     * @param bufferByteCapacity the maximum number of bytes of parsed messages waiting
+     *                           to be imported. The parser blocks once this is reached.
+     */
+    public void setBufferByteCapacity(long bufferByteCapacity) {
+        if (bufferByteCapacity < 1) {
+            throw new IllegalArgumentException("The byte capacity must be at least one: " + bufferByteCapacity);
+        }
+        this.bufferByteCapacity = bufferByteCapacity;
+    }
+
+    /**
+     * @return the maximum number of milliseconds between looks at a followed log file.
+     */
+    public long getFollowInterval() {
+        return followInterval;
+    }
+
+    /**
+     * @param followInterval the maximum number of milliseconds between looks at a
+     *                       followed log file. New messages reach the model within
+     *                       about this long.
+     */
+    public void setFollowInterval(long followInterval) {
+        if (followInterval < 1) {
+            throw new IllegalArgumentException("The follow interval must be at least one: " + followInterval);
+        }
+        this.followInterval = followInterval;
+    }
+
+    /**
+     * @return the minimum number of milliseconds between progress reports.
+     */
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * @param progressInterval the minimum number of milliseconds between progress
+     *                         reports to the {@link ImporterCallback}.
+     */
+    public void setProgressInterval(long progressInterval) {
+        if (progressInterval < 1) {
+            throw new IllegalArgumentException("The progress interval must be at least one: " + progressInterval);
+        }
+        this.progressInterval = progressInterval;
+    }
+
+    public ImportState getImportState() {
+        return importState;
+    }
+
+    /**
+     * Set by the {@link Importer}. Listeners are notified on the importing thread.
+     */
+    void setImportState(ImportState importState) {
+        ImportState old = this.importState;
+        this.importState = importState;
+        support.firePropertyChange(PROPERTY_IMPORT_STATE, old, importState);
+    }
+
+    /**
+     * @return true if the last import was canceled, so the models hold only part
+     *         of the log.
+     */
+    public boolean isPartial() {
+        return importState == ImportState.PARTIAL;
+    }
+
+    public void addPropertyChangeListener(PropertyChangeListener propertyChangeListener) {
+        support.addPropertyChangeListener(propertyChangeListener);
+    }
+
+    public void removePropertyChangeListener(PropertyChangeListener propertyChangeListener) {
+        support.removePropertyChangeListener(propertyChangeListener);
+    }
+
+    /**
+     * @return the number of messages imported between the checkpoints of a log file.
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval the number of messages imported between the
+     *                           checkpoints of a log file. Checkpoints are saved in
+     *                           the {@link #getIndexStore() index store}.
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("The checkpoint interval must be positive: " + checkpointInterval);
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * @return the store of log file indexes; null if log files are not indexed.
+     */
+    public LogFileIndexStore getIndexStore() {
+        return indexStore;
+    }
+
+    /**
+     * @param indexStore the store of log file indexes; null to stop indexing. An
+     *                   uncompressed log file is indexed the first time it is
+     *                   imported, and later imports of the unchanged file read each
+     *                   message straight from the position held by the index.
+     */
+    public void setIndexStore(LogFileIndexStore indexStore) {
+        this.indexStore = indexStore;
+    }
+
+    /**
+     * @return the size in bytes from which a log file is imported lazily.
+     */
+    public long getLazyLoadingThreshold() {
+        return lazyLoadingThreshold;
+    }
+
+    /**
+     * @param lazyLoadingThreshold the size in bytes from which an uncompressed log
+     *                             file is imported by a {@link MappedLogFileImporter},
+     *                             which only keeps the file position of each message.
+     *                             The messages of such a file cannot be searched or
+     *                             filtered. Defaults to <code>Long.MAX_VALUE</code>.
+     */
+    public void setLazyLoadingThreshold(long lazyLoadingThreshold) {
+        if (lazyLoadingThreshold < 0) {
+            throw new IllegalArgumentException("The lazy loading threshold cannot be negative: "
+                    + lazyLoadingThreshold);
+        }
+        this.lazyLoadingThreshold = lazyLoadingThreshold;
+    }
+
+    /**
+     * @return the size in bytes from which the messages of a log that cannot be
+     *         imported lazily are kept out of the Java heap.
+     */
+    public long getOffHeapThreshold() {
+        return offHeapThreshold;
+    }
+
+    /**
+     * @param offHeapThreshold the size in bytes from which a compressed file, a
+     *                         capture or several merged files, none of which can be
+     *                         imported lazily, keep the messages of each session in a
+     *                         {@link SegmentMemoryLogModel}. Like a lazily imported
+     *                         file, the messages cannot be searched or filtered.
+     *                         Defaults to <code>Long.MAX_VALUE</code>.
+     */
+    public void setOffHeapThreshold(long offHeapThreshold) {
+        if (offHeapThreshold < 0) {
+            throw new IllegalArgumentException("The off-heap threshold cannot be negative: " + offHeapThreshold);
+        }
+        this.offHeapThreshold = offHeapThreshold;
+    }
+
+    /**
+     * @return the directory the off-heap models spill their older segments to; null
+     *         if every segment stays in direct memory.
+     */
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory the directory the {@link SegmentMemoryLogModel}s of an
+     *                       import above the {@link #setOffHeapThreshold(long)
+     *                       off-heap threshold} spill their older segments to; null
+     *                       to keep every segment in direct memory.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @return the filter of the imported messages; null if every message is imported.
+     */
+    public MessageFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @param filter the filter of the imported messages, evaluated on the raw bytes
+     *               as each file is parsed; null to import every message. A filtered
+     *               import neither saves nor replaces a log file index.
+     */
+    public void setFilter(MessageFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return true if the filter rejects some messages.
+     */
+    public boolean isFiltered() {
+        return filter != null && !filter.isEmpty();
+    }
+
+    /**
+     * @return the pattern of the application log lines holding the messages; null if
+     *         each message starts at the first '8=' on a line.
+     */
+    public LogLinePattern getLinePattern() {
+        return linePattern;
+    }
+
+    /**
+     * @param linePattern the pattern of the application log lines holding the
+     *                    messages; null to start each message at the first '8=' on a
+     *                    line. An import with a line pattern neither uses nor saves a
+     *                    log file index.
+     */
+    public void setLinePattern(LogLinePattern linePattern) {
+        this.linePattern = linePattern;
+    }
+}
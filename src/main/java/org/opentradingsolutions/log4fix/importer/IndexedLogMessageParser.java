@@ -0,0 +1,237 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Parses a log file using its {@link LogFileIndex}. Each message is read straight
+ * from the position held by the index, so the bytes between the messages are never
+ * read or scanned. The messages and errors are added to the buffer in the same
+ * order as the parser that built the index added them.
+ * <p/>
+ * The file is read through a window of {@link #WINDOW_SIZE} bytes. Each indexed
+ * message in the window is framed by a {@link LogMessageScanner}, which joins lines
+ * and translates the delimeter exactly as the original parser did.
+ * <p/>
+ * Interrupting the thread causes the parser to close the buffer and gracefully
+ * terminate, just like the {@link LogMessageParser}.
+ */
+public class IndexedLogMessageParser implements Runnable, ImportProgressSource {
+
+    static final int WINDOW_SIZE = 1024 * 1024;
+
+    private final File file;
+    private final LogFileIndex index;
+    private final ImportBuffer records;
+    private MessageFilter filter;
+
+    private ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private long windowStart;
+    private long windowEnd;
+
+    // written by the parser, read by the importer.
+    private volatile long bytesRead;
+    private volatile long messageCount;
+
+    /**
+     * @param file    a non-null log file matching the index. The file is opened when
+     *                the {@link #run()} method executes.
+     * @param index   the non-null index of the file.
+     * @param records a non-null, empty buffer.
+     * @throws IllegalArgumentException if any argument is null.
+     * @throws IllegalStateException    if the buffer is not empty.
+     */
+    public IndexedLogMessageParser(File file, LogFileIndex index, ImportBuffer records) {
+        if (file == null) {
+            throw new IllegalArgumentException("The log file is null.");
+        }
+
+        if (index == null) {
+            throw new IllegalArgumentException("The index is null.");
+        }
+
+        if (records == null) {
+            throw new IllegalArgumentException("The buffer is null.");
+        }
+
+        if (!records.isEmpty()) {
+            throw new IllegalStateException("The buffer must be initially empty.");
+        }
+
+        this.file = file;
+        this.index = index;
+        this.records = records;
+    }
+
+    /**
+     * Must be called before the parser runs. Messages whose indexed MsgType or
+     * SendingTime is rejected are not read at all.
+     *
+     * @param filter the filter of the messages added to the buffer; null to add
+     *               every message.
+     */
+    public void setFilter(MessageFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return the file position following the last indexed message read.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public void run() {
+        FileInputStream inputStream = null;
+        try {
+            addRecordToBuffer(ImportRecord.event(LogFileIndexStore.EVENT_INDEX_LOADED + ": "
+                    + index.size() + " messages"));
+
+            inputStream = new FileInputStream(file);
+            parse(inputStream.getChannel());
+        } catch (ClosedByInterruptException e) {
+            // the import was canceled while reading the file.
+        } catch (IOException e) {
+            addRecordToBuffer(ImportRecord.error(LogMessageScanner.ERROR_PREFIX + e.getMessage()));
+        } finally {
+            records.close();
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ohWell) {
+                }
+            }
+        }
+    }
+
+    private void parse(FileChannel channel) throws IOException {
+        LogMessageScanner.Framing framing = index.getKey().getFraming();
+        Charset charset = Charset.defaultCharset();
+        FIXDelimeter delimeter = null;
+        MessageFilter.Matcher matcher = filter == null || filter.isEmpty()
+                ? null : filter.createMatcher(charset, index);
+
+        int error = 0;
+        for (int message = 0; message < index.size(); message++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            while (error < index.getErrorCount() && index.getErrorPosition(error) == message) {
+                addRecordToBuffer(ImportRecord.error(index.getError(error++)));
+            }
+
+            if (matcher != null
+                    && !matcher.mayMatch(index.getMessageTypeCode(message), index.getSendingTime(message))) {
+                continue;
+            }
+
+            long offset = index.getOffset(message);
+            int length = index.getLength(message);
+            LogMessageScanner scanner = new LogMessageScanner(read(channel, offset, length), true, charset, framing);
+            scanner.setDelimeter(delimeter);
+            scanner.setMatcher(matcher);
+
+            if (scanner.next() && !scanner.isError()) {
+                addRecordToBuffer(ImportRecord.message(scanner.getMessage(), offset, offset + length,
+                        index.getReceiveTime(message)));
+                messageCount++;
+                delimeter = scanner.getDelimeter();
+            } else if (scanner.getRejectedCount() > 0) {
+                // the message was rejected by the filter.
+                delimeter = scanner.getDelimeter();
+            } else {
+                addRecordToBuffer(ImportRecord.error(LogMessageScanner.ERROR_PREFIX
+                        + "The indexed message at byte " + offset + " was not found."));
+            }
+            bytesRead = offset + length;
+        }
+        bytesRead = channel.size();
+
+        while (error < index.getErrorCount()) {
+            addRecordToBuffer(ImportRecord.error(index.getError(error++)));
+        }
+    }
+
+    /**
+     * @return a buffer holding the bytes of the message.
+     */
+    private ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        if (offset < windowStart || offset + length > windowEnd) {
+            if (length > window.capacity()) {
+                window = ByteBuffer.allocate(length);
+            }
+
+            window.clear();
+            while (window.hasRemaining()) {
+                if (channel.read(window, offset + window.position()) == -1) {
+                    break;
+                }
+            }
+            window.flip();
+
+            windowStart = offset;
+            windowEnd = offset + window.limit();
+            if (window.limit() < length) {
+                throw new IOException("The log file ended before the indexed message at byte " + offset + ".");
+            }
+        }
+
+        ByteBuffer bytes = window.duplicate();
+        bytes.position((int) (offset - windowStart));
+        bytes.limit(bytes.position() + length);
+        return bytes.slice();
+    }
+
+    private void addRecordToBuffer(ImportRecord record) {
+        try {
+            records.put(record);
+        } catch (InterruptedException e) {
+            // restore the interrupted state.
+            Thread.currentThread().interrupt();
+        }
+    }
+}
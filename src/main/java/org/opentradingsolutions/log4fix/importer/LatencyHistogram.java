@@ -0,0 +1,229 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A streaming histogram of latencies in nanoseconds. The memory used is fixed no
+ * matter how many values are recorded, and each value is recorded in constant
+ * time without creating objects.
+ * <p/>
+ * Values are counted in log-linear buckets: each power of two is split into
+ * {@link #SUB_BUCKETS} equal buckets, so a percentile is accurate to within about
+ * 1.6% of its value. Values below {@link #SUB_BUCKETS} nanoseconds are exact. A
+ * latency computed from two clocks may be negative, so negative values are counted
+ * by their magnitude in a second set of buckets.
+ * <p/>
+ * The histogram is not thread safe.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of buckets each power of two is split into.
+     */
+    static final int SUB_BUCKETS = 64;
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] positive = new long[BUCKETS];
+    private final long[] negative = new long[BUCKETS];
+
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private double sum;
+
+    public void record(long nanos) {
+        if (nanos >= 0) {
+            positive[bucketOf(nanos)]++;
+        } else {
+            // the magnitude of Long.MIN_VALUE does not fit in a long.
+            negative[bucketOf(nanos == Long.MIN_VALUE ? Long.MAX_VALUE : -nanos)]++;
+        }
+
+        count++;
+        sum += nanos;
+        if (nanos < min) {
+            min = nanos;
+        }
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the smallest value recorded; 0 if nothing was recorded.
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return the largest value recorded; 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    /**
+     * @return the mean of the values recorded; 0 if nothing was recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @param percentile from 0 to 100, e.g. 99.9.
+     * @return the value below which the percentage of the recorded values fall,
+     *         clamped to the smallest and largest values recorded; 0 if nothing was
+     *         recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be from 0 to 100: " + percentile);
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        // the rank of the value, from 1 to count.
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+
+        long seen = 0;
+        for (int bucket = BUCKETS - 1; bucket >= 0; bucket--) {
+            seen += negative[bucket];
+            if (seen >= rank) {
+                return clamp(-valueOf(bucket));
+            }
+        }
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += positive[bucket];
+            if (seen >= rank) {
+                return clamp(valueOf(bucket));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Adds the values recorded by the other histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            positive[bucket] += other.positive[bucket];
+            negative[bucket] += other.negative[bucket];
+        }
+
+        if (other.count > 0) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(positive, 0);
+        Arrays.fill(negative, 0);
+        count = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+        sum = 0;
+    }
+
+    /**
+     * @return e.g. "1200 messages, min 0.812 ms, p50 1.204 ms, p99 3.010 ms,
+     *         p999 7.936 ms, max 9.100 ms".
+     */
+    @Override
+    public String toString() {
+        return count + " messages, min " + format(getMin()) + ", p50 " + format(getPercentile(50))
+                + ", p99 " + format(getPercentile(99)) + ", p999 " + format(getPercentile(99.9))
+                + ", max " + format(getMax());
+    }
+
+    /**
+     * @return the value in the most readable unit, e.g. "1.204 ms".
+     */
+    static String format(long nanos) {
+        long magnitude = Math.abs(nanos);
+        if (magnitude >= 1000000000L) {
+            return String.format(Locale.US, "%.3f s", nanos / 1e9);
+        } else if (magnitude >= 1000000L) {
+            return String.format(Locale.US, "%.3f ms", nanos / 1e6);
+        } else if (magnitude >= 1000L) {
+            return String.format(Locale.US, "%.3f us", nanos / 1e3);
+        }
+        return nanos + " ns";
+    }
+
+    private long clamp(long value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * @param magnitude a value of zero or more.
+     */
+    static int bucketOf(long magnitude) {
+        if (magnitude < SUB_BUCKETS) {
+            return (int) magnitude;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(magnitude);
+        int subBucket = (int) (magnitude >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the middle of the values counted by the bucket.
+     */
+    static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowest = (SUB_BUCKETS + subBucket) * width;
+        return lowest + width / 2;
+    }
+}
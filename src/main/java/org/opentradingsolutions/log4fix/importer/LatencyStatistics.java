@@ -0,0 +1,114 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The transit latency of the imported messages, one {@link LatencyHistogram} per
+ * counterparty and direction. The latency of a message is the time the log line was
+ * written (its receive time) minus the message's SendingTime (52), so it includes
+ * the clock skew between the two hosts; a negative latency means the counterparty's
+ * clock is ahead.
+ * <p/>
+ * Messages are recorded by the import thread and read by the UI, so access is
+ * synchronized.
+ */
+public class LatencyStatistics {
+
+    private final Map<String, LatencyHistogram> incoming = new HashMap<String, LatencyHistogram>();
+    private final Map<String, LatencyHistogram> outgoing = new HashMap<String, LatencyHistogram>();
+
+    /**
+     * @param counterparty the CompID of the other side of the session.
+     * @param isIncoming true if the message was received from the counterparty.
+     * @param receiveTime epoch nanoseconds.
+     * @param sendingTime epoch nanoseconds.
+     */
+    public synchronized void record(String counterparty, boolean isIncoming, long receiveTime,
+            long sendingTime) {
+        if (receiveTime == FIXHeaderScanner.NO_TIMESTAMP || sendingTime == FIXHeaderScanner.NO_TIMESTAMP) {
+            return;
+        }
+
+        Map<String, LatencyHistogram> histograms = isIncoming ? incoming : outgoing;
+        LatencyHistogram histogram = histograms.get(counterparty);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(counterparty, histogram);
+        }
+        histogram.record(receiveTime - sendingTime);
+    }
+
+    /**
+     * @return the counterparties with at least one latency recorded, sorted.
+     */
+    public synchronized List<String> getCounterparties() {
+        List<String> counterparties = new ArrayList<String>(incoming.keySet());
+        for (String counterparty : outgoing.keySet()) {
+            if (!incoming.containsKey(counterparty)) {
+                counterparties.add(counterparty);
+            }
+        }
+        Collections.sort(counterparties);
+        return counterparties;
+    }
+
+    /**
+     * @return a copy of the counterparty's histogram for the direction; empty if
+     *         nothing was recorded.
+     */
+    public synchronized LatencyHistogram getHistogram(String counterparty, boolean isIncoming) {
+        LatencyHistogram copy = new LatencyHistogram();
+        LatencyHistogram histogram = (isIncoming ? incoming : outgoing).get(counterparty);
+        if (histogram != null) {
+            copy.add(histogram);
+        }
+        return copy;
+    }
+
+    public synchronized boolean isEmpty() {
+        return incoming.isEmpty() && outgoing.isEmpty();
+    }
+
+    public synchronized void clear() {
+        incoming.clear();
+        outgoing.clear();
+    }
+}
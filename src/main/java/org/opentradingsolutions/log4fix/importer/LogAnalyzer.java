@@ -0,0 +1,339 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import org.opentradingsolutions.log4fix.core.LogEvent;
+import org.opentradingsolutions.log4fix.core.LogMessage;
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import org.opentradingsolutions.log4fix.core.ValidationError;
+import quickfix.SessionID;
+import quickfix.field.MsgSeqNum;
+import quickfix.field.MsgType;
+import quickfix.field.NewSeqNo;
+import quickfix.field.PossDupFlag;
+
+import java.beans.PropertyChangeListener;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A memory log model that keeps statistics instead of messages, so a log of any
+ * size can be analyzed in a small heap. Problems are written to the stream as they
+ * are found:
+ * <ul>
+ * <li><code>EVENT</code> - an event of the import, e.g. a line that is not a message.</li>
+ * <li><code>INVALID</code> - a validation error of a message.</li>
+ * <li><code>GAP</code> - MsgSeqNum values missing between two messages of the same
+ * session and direction.</li>
+ * </ul>
+ * The {@link #printSummary(long) summary} counts the messages by type and by
+ * session and reports the throughput of the import.
+ * <p/>
+ * The analyzer is the model of the first session of an import. The other sessions
+ * get their own {@link #createSessionModel(SessionID) models}, which pass their
+ * messages and events to the analyzer, so each session keeps its own log and data
+ * dictionary. The messages are told apart by their session Id and direction.
+ */
+public class LogAnalyzer implements MemoryLogModel {
+
+    private static final String INCOMING = "IN";
+    private static final String OUTGOING = "OUT";
+
+    private final PrintStream out;
+    private final boolean validate;
+    private final FIXHeaderScanner header = new FIXHeaderScanner(
+            MsgType.FIELD, MsgSeqNum.FIELD, PossDupFlag.FIELD, NewSeqNo.FIELD);
+
+    // guarded by this
+    private final Map<String, long[]> countsByType = new TreeMap<String, long[]>();
+    private final Map<String, String> namesByType = new HashMap<String, String>();
+    private final Map<String, long[]> countsBySession = new LinkedHashMap<String, long[]>();
+    private final Map<String, Integer> expectedSequenceNumbers = new HashMap<String, Integer>();
+    private long messageCount;
+    private long byteCount;
+    private long invalidMessageCount;
+    private long gapCount;
+    private long missingMessageCount;
+    private SessionID sessionId;
+
+    /**
+     * @param out      receives the problems and the summary.
+     * @param validate true to validate every message against its data dictionary.
+     *                 This parses each message completely, so the analysis is slower.
+     *                 Otherwise only the problems found while building each message
+     *                 (e.g. a missing SendingTime) are reported.
+     */
+    public LogAnalyzer(PrintStream out, boolean validate) {
+        this.out = out;
+        this.validate = validate;
+    }
+
+    public synchronized SessionID getSessionId() {
+        return sessionId;
+    }
+
+    public synchronized void setSessionId(SessionID sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * @return an empty list; messages are not kept.
+     */
+    public List<LogMessage> getMessages() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return an empty list; events are written to the stream.
+     */
+    public List<LogEvent> getEvents() {
+        return Collections.emptyList();
+    }
+
+    public void addLogMessage(LogMessage logMessage) {
+        List<ValidationError> errors = validate(logMessage);
+
+        String rawMessage = logMessage.getRawMessage();
+        header.scan(rawMessage, LogMessage.DEFAULT_DELIMETER);
+
+        synchronized (this) {
+            messageCount++;
+            byteCount += rawMessage.length();
+
+            String session = String.valueOf(logMessage.getSessionId());
+            String direction = logMessage.isIncoming() ? INCOMING : OUTGOING;
+            countSession(session, logMessage.isIncoming());
+
+            String type = header.getValue(MsgType.FIELD);
+            countType(type, logMessage.getMessageTypeName());
+
+            if (errors != null && !errors.isEmpty()) {
+                invalidMessageCount++;
+                for (ValidationError error : errors) {
+                    out.println("INVALID " + session + " " + direction + " #" + logMessage + " "
+                            + type + ": " + error.getMessage());
+                }
+            }
+
+            checkSequenceNumber(session + " " + direction, type);
+        }
+    }
+
+    public synchronized void addLogEvent(LogEvent logEvent) {
+        out.println("EVENT " + logEvent.getEvent());
+    }
+
+    public synchronized void clear() {
+        countsByType.clear();
+        namesByType.clear();
+        countsBySession.clear();
+        expectedSequenceNumbers.clear();
+        messageCount = 0;
+        byteCount = 0;
+        invalidMessageCount = 0;
+        gapCount = 0;
+        missingMessageCount = 0;
+    }
+
+    /**
+     * The session Id is not shown, so the listener is never told about it.
+     */
+    public void addPropertyChangeListener(PropertyChangeListener propertyChangeListener) {
+    }
+
+    /**
+     * @return a model for another session of the import that passes its messages
+     *         and events to this analyzer.
+     */
+    public MemoryLogModel createSessionModel(final SessionID sessionId) {
+        return new MemoryLogModel() {
+
+            public SessionID getSessionId() {
+                return sessionId;
+            }
+
+            public void setSessionId(SessionID sessionId) {
+            }
+
+            public List<LogMessage> getMessages() {
+                return Collections.emptyList();
+            }
+
+            public List<LogEvent> getEvents() {
+                return Collections.emptyList();
+            }
+
+            public void addLogMessage(LogMessage logMessage) {
+                LogAnalyzer.this.addLogMessage(logMessage);
+            }
+
+            public void addLogEvent(LogEvent logEvent) {
+                LogAnalyzer.this.addLogEvent(logEvent);
+            }
+
+            public void clear() {
+            }
+
+            public void addPropertyChangeListener(PropertyChangeListener propertyChangeListener) {
+            }
+        };
+    }
+
+    public synchronized long getMessageCount() {
+        return messageCount;
+    }
+
+    public synchronized long getInvalidMessageCount() {
+        return invalidMessageCount;
+    }
+
+    public synchronized long getGapCount() {
+        return gapCount;
+    }
+
+    public synchronized long getMissingMessageCount() {
+        return missingMessageCount;
+    }
+
+    /**
+     * @return the number of messages of the type, e.g. "D".
+     */
+    public synchronized long getMessageCount(String messageType) {
+        long[] count = countsByType.get(messageType);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Writes the counts and the throughput.
+     *
+     * @param elapsedNanos the time the import took.
+     */
+    public synchronized void printSummary(long elapsedNanos) {
+        out.println();
+        out.println("Messages By Type:");
+        for (Map.Entry<String, long[]> entry : countsByType.entrySet()) {
+            String name = namesByType.get(entry.getKey());
+            out.println(String.format("  %-6s %-30s %12d", entry.getKey(), name == null ? "" : name,
+                    entry.getValue()[0]));
+        }
+
+        out.println();
+        out.println("Messages By Session:");
+        for (Map.Entry<String, long[]> entry : countsBySession.entrySet()) {
+            long[] counts = entry.getValue();
+            out.println(String.format("  %-40s %s %12d %s %12d", entry.getKey(), INCOMING, counts[0],
+                    OUTGOING, counts[1]));
+        }
+
+        out.println();
+        out.println("Messages: " + messageCount);
+        out.println("Invalid Messages: " + invalidMessageCount);
+        out.println("Sequence Gaps: " + gapCount + " (" + missingMessageCount + " messages missing)");
+
+        double seconds = elapsedNanos / 1e9;
+        if (seconds > 0) {
+            out.println(String.format("Throughput: %.3f s, %.0f messages/s, %.2f MB/s", seconds,
+                    messageCount / seconds, byteCount / seconds / (1024 * 1024)));
+        }
+        out.flush();
+    }
+
+    private List<ValidationError> validate(LogMessage logMessage) {
+        if (validate) {
+            try {
+                // the message is parsed and validated while its fields are created.
+                logMessage.getLogFields();
+            } catch (RuntimeException e) {
+                return Collections.singletonList(new ValidationError("Unable to parse the message: " + e));
+            }
+        }
+        return logMessage.getValidationErrorMessages();
+    }
+
+    private void countSession(String session, boolean incoming) {
+        long[] counts = countsBySession.get(session);
+        if (counts == null) {
+            counts = new long[2];
+            countsBySession.put(session, counts);
+        }
+        counts[incoming ? 0 : 1]++;
+    }
+
+    private void countType(String type, String name) {
+        long[] count = countsByType.get(type);
+        if (count == null) {
+            count = new long[1];
+            countsByType.put(type, count);
+            namesByType.put(type, name);
+        }
+        count[0]++;
+    }
+
+    /**
+     * Compares the scanned MsgSeqNum with the number expected for the session and
+     * direction. A logon may restart the numbers, a resent message (PossDupFlag)
+     * may repeat an earlier number, and a SequenceReset moves the expected number.
+     */
+    private void checkSequenceNumber(String key, String type) {
+        int sequenceNumber = header.getInt(MsgSeqNum.FIELD);
+        if (sequenceNumber == -1) {
+            return;
+        }
+
+        Integer expected = expectedSequenceNumbers.get(key);
+        if (expected != null && sequenceNumber > expected) {
+            int missing = sequenceNumber - expected;
+            gapCount++;
+            missingMessageCount += missing;
+            out.println("GAP " + key + ": expected " + expected + " but received " + sequenceNumber
+                    + " (" + missing + " missing)");
+        }
+
+        int next = sequenceNumber + 1;
+        if (MsgType.SEQUENCE_RESET.equals(type) && header.getInt(NewSeqNo.FIELD) > 0) {
+            next = header.getInt(NewSeqNo.FIELD);
+        } else if (expected != null && !MsgType.LOGON.equals(type)
+                && (sequenceNumber < expected || header.valueEquals(PossDupFlag.FIELD, "Y"))) {
+            // a resent message does not move the expected number back.
+            next = Math.max(expected, next);
+        }
+        expectedSequenceNumbers.put(key, next);
+    }
+}
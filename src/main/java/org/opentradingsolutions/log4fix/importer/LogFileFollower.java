@@ -0,0 +1,381 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a log file that is still being written, like <code>tail -f</code>. The
+ * follower parses the messages already in the file and then parses only the bytes
+ * appended since the last look. Each batch of new messages is flushed to the buffer
+ * straight away, so the builder appends them to the model within one poll interval.
+ * <p/>
+ * The follower wakes up when a <code>WatchService</code> reports a change to the
+ * file's directory, and at least once every poll interval in case the platform's
+ * watch service is slow or not available.
+ * <p/>
+ * A message that is only partly written stays in the follower's buffer until the
+ * rest of the message is appended. If the file is truncated the follower starts
+ * again from the beginning of the file. If the file is rotated (the path now names a
+ * different file) the follower finishes the old file and then follows the new one
+ * from its beginning. Both are logged as events.
+ * <p/>
+ * The follower runs until its thread is interrupted. It then closes the buffer and
+ * gracefully terminates, just like the {@link LogMessageParser}.
+ */
+public class LogFileFollower implements Runnable, ImportProgressSource {
+
+    /**
+     * The default number of milliseconds between looks at the file.
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 250;
+
+    public static final String EVENT_ROTATED = "Log File Rotated";
+    public static final String EVENT_TRUNCATED = "Log File Truncated";
+
+    /**
+     * The initial number of bytes read from the file at a time.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final File file;
+    private final ImportBuffer records;
+    private final LogMessageScanner.Framing framing;
+    private final long pollInterval;
+    private final Charset charset = Charset.defaultCharset();
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private Object fileIdentity;
+
+    // the file position following the last byte read.
+    private long readPosition;
+
+    // the bytes read but not yet consumed by the scanner.
+    private byte[] bytes = new byte[BLOCK_SIZE];
+    private int length;
+
+    private FIXDelimeter delimeter;
+    private MessageFilter.Matcher matcher;
+    private LogLinePattern.Matcher lineMatcher;
+
+    private volatile long offset;
+    private volatile long bytesRead;
+    private volatile long messageCount;
+
+    /**
+     * @param file    a non-null log file. The file does not need to exist yet.
+     * @param records a non-null, empty buffer.
+     * @throws IllegalArgumentException if the file is null or the buffer is null.
+     * @throws IllegalStateException    if the buffer is not empty.
+     */
+    public LogFileFollower(File file, ImportBuffer records) {
+        this(file, records, LogMessageScanner.Framing.LINE, DEFAULT_POLL_INTERVAL);
+    }
+
+    /**
+     * @param framing      how the scanner finds each message.
+     * @param pollInterval the maximum number of milliseconds between looks at the file.
+     * @see #LogFileFollower(File, ImportBuffer)
+     */
+    public LogFileFollower(File file, ImportBuffer records, LogMessageScanner.Framing framing, long pollInterval) {
+
+        if (file == null) {
+            throw new IllegalArgumentException("The log file is null.");
+        }
+
+        if (records == null) {
+            throw new IllegalArgumentException("The buffer is null.");
+        }
+
+        if (!records.isEmpty()) {
+            throw new IllegalStateException("The buffer must be initially empty.");
+        }
+
+        if (pollInterval < 1) {
+            throw new IllegalArgumentException("The poll interval must be at least one millisecond: " + pollInterval);
+        }
+
+        this.file = file;
+        this.records = records;
+        this.framing = framing;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * @return the position in the followed file of the first byte not yet parsed.
+     *         Bytes of a partly written message are not parsed yet.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of bytes read from every version of the file followed, so
+     *         the value keeps growing when the file is truncated or rotated.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Must be called before the follower runs.
+     *
+     * @param filter the filter of the messages added to the buffer; null to add
+     *               every message.
+     */
+    public void setFilter(MessageFilter filter) {
+        matcher = filter == null || filter.isEmpty() ? null : filter.createMatcher(charset);
+    }
+
+    /**
+     * Must be called before the follower runs.
+     *
+     * @param linePattern the pattern of the lines holding the messages; null to
+     *                    start each message at the first '8=' on a line.
+     */
+    public void setLinePattern(LogLinePattern linePattern) {
+        lineMatcher = linePattern == null ? null : linePattern.createMatcher(charset);
+    }
+
+    public void run() {
+        WatchService watcher = createWatcher();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                poll();
+                records.flush();
+                await(watcher);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedByInterruptException e) {
+            // the follower was stopped while reading the file.
+        } catch (IOException e) {
+            try {
+                add(ImportRecord.error(LogMessageScanner.ERROR_PREFIX + e.getMessage()));
+            } catch (InterruptedException ignore) {
+            }
+        } finally {
+            records.close();
+            closeFile();
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException ohWell) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the bytes appended since the last poll.
+     */
+    private void poll() throws IOException, InterruptedException {
+        if (channel == null) {
+            if (!file.exists()) {
+                // wait for the file to be created.
+                return;
+            }
+            openFile();
+        }
+
+        if (channel.size() < readPosition) {
+            add(ImportRecord.event(EVENT_TRUNCATED + ": " + file.getPath()));
+            restart();
+        }
+
+        readToEnd();
+
+        if (isRotated()) {
+            add(ImportRecord.event(EVENT_ROTATED + ": " + file.getPath()));
+            closeFile();
+            openFile();
+            restart();
+            readToEnd();
+        }
+    }
+
+    private void readToEnd() throws IOException, InterruptedException {
+        long size = channel.size();
+        while (readPosition < size && !Thread.currentThread().isInterrupted()) {
+            if (length == bytes.length) {
+                // a single line or message does not fit.
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+
+            int read = channel.read(ByteBuffer.wrap(bytes, length, bytes.length - length), readPosition);
+            if (read <= 0) {
+                break;
+            }
+
+            readPosition += read;
+            bytesRead += read;
+            length += read;
+            scan();
+        }
+    }
+
+    private void scan() throws InterruptedException {
+        // more bytes may be appended, so the end of the bytes is never the end of the input.
+        LogMessageScanner scanner = new LogMessageScanner(
+                ByteBuffer.wrap(bytes, 0, length), false, charset, framing);
+        scanner.setDelimeter(delimeter);
+        scanner.setMatcher(matcher);
+        scanner.setLineMatcher(lineMatcher);
+        while (scanner.next()) {
+            String text = scanner.getMessage();
+            add(scanner.isError() ? ImportRecord.error(text)
+                    : ImportRecord.message(text, scanner.getLineTimestamp()));
+        }
+        delimeter = scanner.getDelimeter();
+
+        int position = scanner.getPosition();
+        System.arraycopy(bytes, position, bytes, 0, length - position);
+        length -= position;
+        offset = readPosition - length;
+    }
+
+    /**
+     * Starts again from the beginning of the file. A partly read message is dropped.
+     */
+    private void restart() {
+        readPosition = 0;
+        length = 0;
+        offset = 0;
+    }
+
+    /**
+     * @return true if the path now names a different file than the open file.
+     */
+    private boolean isRotated() {
+        Object identity = readIdentity();
+        return identity != null && !identity.equals(fileIdentity);
+    }
+
+    private void openFile() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "r");
+        channel = randomAccessFile.getChannel();
+        fileIdentity = readIdentity();
+    }
+
+    private void closeFile() {
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close();
+            } catch (IOException ohWell) {
+            }
+        }
+        randomAccessFile = null;
+        channel = null;
+    }
+
+    /**
+     * @return the file key (e.g. the inode) of the file, or its creation time if the
+     *         platform has no file keys; null if the file does not exist.
+     */
+    private Object readIdentity() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a service watching the file's directory; null if the directory cannot
+     *         be watched. The follower then only polls.
+     */
+    private WatchService createWatcher() {
+        WatchService watcher = null;
+        try {
+            Path directory = file.getAbsoluteFile().getParentFile().toPath();
+            watcher = FileSystems.getDefault().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return watcher;
+        } catch (Exception e) {
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException ohWell) {
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Waits until the directory changes or the poll interval passes.
+     */
+    private void await(WatchService watcher) throws InterruptedException {
+        if (watcher == null) {
+            Thread.sleep(pollInterval);
+            return;
+        }
+
+        WatchKey key = watcher.poll(pollInterval, TimeUnit.MILLISECONDS);
+        if (key != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    private void add(ImportRecord record) throws InterruptedException {
+        records.put(record);
+        if (record.getType() == ImportRecord.Type.MESSAGE) {
+            messageCount++;
+        }
+    }
+}
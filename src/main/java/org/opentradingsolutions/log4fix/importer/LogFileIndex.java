@@ -0,0 +1,523 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * The position and header fields of every message in a log file. The index is
+ * built by a {@link LogFileIndexer} while the file is imported and is saved by a
+ * {@link LogFileIndexStore}, so the next import of the same file reads each message
+ * straight from its position instead of scanning the whole file.
+ * <p/>
+ * Each message is described by its offset and length in the file, its MsgType,
+ * its session (BeginString, SenderCompID and TargetCompID), its SendingTime and
+ * the timestamp of its line (see {@link ImportRecord#getReceiveTime()}) as
+ * nanoseconds since the epoch and its MsgSeqNum. The values of each message are a
+ * fixed size row of the index file, written by the indexer as the message is found.
+ * The strings are held once in small tables that follow the rows. The errors found
+ * while scanning the file are kept with the position of the message that followed
+ * them.
+ * <p/>
+ * The rows are read through a memory mapped buffer and are never copied to the
+ * heap, so the size of an index on the heap does not grow with the number of
+ * messages.
+ * <p/>
+ * An index belongs to a single version of a log file, identified by its
+ * {@link Key}. An index is immutable.
+ */
+public final class LogFileIndex {
+
+    public static final int NO_SEQUENCE_NUMBER = -1;
+
+    private static final int MAGIC = 0x4C344658;
+    private static final int VERSION = 3;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // the layout of a row.
+    static final int ROW_SIZE = 40;
+    private static final int OFFSET = 0;
+    private static final int LENGTH = 8;
+    private static final int MESSAGE_TYPE = 12;
+    private static final int SESSION = 16;
+    private static final int SENDING_TIME = 20;
+    private static final int RECEIVE_TIME = 28;
+    private static final int SEQUENCE_NUMBER = 36;
+
+    private final Key key;
+    private final int size;
+
+    // the whole index file, and the rows within it.
+    private final ByteBuffer data;
+    private final ByteBuffer rows;
+
+    private final String[] messageTypeNames;
+    private final String[][] sessionFields;
+
+    private final int[] errorPositions;
+    private final String[] errors;
+
+    private LogFileIndex(Key key, int size, ByteBuffer data, ByteBuffer rows, String[] messageTypeNames,
+                         String[][] sessionFields, int[] errorPositions, String[] errors) {
+        this.key = key;
+        this.size = size;
+        this.data = data;
+        this.rows = rows;
+        this.messageTypeNames = messageTypeNames;
+        this.sessionFields = sessionFields;
+        this.errorPositions = errorPositions;
+        this.errors = errors;
+    }
+
+    public Key getKey() {
+        return key;
+    }
+
+    /**
+     * @return the number of messages in the log file.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the file position of the '8=' that starts the message.
+     */
+    public long getOffset(int message) {
+        return rows.getLong(row(message) + OFFSET);
+    }
+
+    /**
+     * @return the number of bytes the message occupies in the file, including any
+     *         line terminators that break the message across lines.
+     */
+    public int getLength(int message) {
+        return rows.getInt(row(message) + LENGTH);
+    }
+
+    /**
+     * @return the MsgType; an empty string if the message has no MsgType.
+     */
+    public String getMessageType(int message) {
+        return messageTypeNames[getMessageTypeCode(message)];
+    }
+
+    /**
+     * @return the code of the message's MsgType, from zero to
+     *         {@link #getMessageTypeCount()}.
+     */
+    public int getMessageTypeCode(int message) {
+        return rows.getInt(row(message) + MESSAGE_TYPE);
+    }
+
+    /**
+     * @return the number of distinct MsgTypes in the log file.
+     */
+    public int getMessageTypeCount() {
+        return messageTypeNames.length;
+    }
+
+    /**
+     * @return the MsgType having the code; an empty string for messages without a
+     *         MsgType.
+     */
+    public String getMessageTypeName(int code) {
+        return messageTypeNames[code];
+    }
+
+    /**
+     * @return the session of the message, from zero to {@link #getSessionCount()}.
+     *         The session is taken from the message header, so each direction of a
+     *         FIX session is a different session of the index.
+     */
+    public int getSession(int message) {
+        return rows.getInt(row(message) + SESSION);
+    }
+
+    /**
+     * @return the SendingTime in nanoseconds since the epoch;
+     *         {@link FIXHeaderScanner#NO_TIMESTAMP} if the message has no SendingTime.
+     */
+    public long getSendingTime(int message) {
+        return rows.getLong(row(message) + SENDING_TIME);
+    }
+
+    /**
+     * @return the timestamp of the message's line in nanoseconds since the epoch;
+     *         {@link FIXHeaderScanner#NO_TIMESTAMP} if the line has no timestamp.
+     */
+    public long getReceiveTime(int message) {
+        return rows.getLong(row(message) + RECEIVE_TIME);
+    }
+
+    /**
+     * @return the MsgSeqNum; {@link #NO_SEQUENCE_NUMBER} if the message has no MsgSeqNum.
+     */
+    public int getSequenceNumber(int message) {
+        return rows.getInt(row(message) + SEQUENCE_NUMBER);
+    }
+
+    public int getSessionCount() {
+        return sessionFields.length;
+    }
+
+    public String getBeginString(int session) {
+        return sessionFields[session][0];
+    }
+
+    public String getSenderCompId(int session) {
+        return sessionFields[session][1];
+    }
+
+    public String getTargetCompId(int session) {
+        return sessionFields[session][2];
+    }
+
+    public int getErrorCount() {
+        return errors.length;
+    }
+
+    /**
+     * @return the index of the message that followed the error in the file.
+     */
+    public int getErrorPosition(int error) {
+        return errorPositions[error];
+    }
+
+    /**
+     * @return the text of the error record.
+     */
+    public String getError(int error) {
+        return errors[error];
+    }
+
+    private int row(int message) {
+        if (message < 0 || message >= size) {
+            throw new IndexOutOfBoundsException("Message: " + message + ", Size: " + size);
+        }
+        return message * ROW_SIZE;
+    }
+
+    /**
+     * Writes the index to the file, replacing the file's contents.
+     */
+    public void write(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer bytes = data.duplicate();
+            bytes.clear();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the start of an index file, followed by the rows.
+     */
+    static void writeHeader(DataOutputStream out, Key key) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        key.write(out);
+    }
+
+    /**
+     * Writes a row of an index file.
+     */
+    static void writeRow(DataOutputStream out, long offset, int length, int messageType, int session,
+                         long sendingTime, long receiveTime, int sequenceNumber) throws IOException {
+        out.writeLong(offset);
+        out.writeInt(length);
+        out.writeInt(messageType);
+        out.writeInt(session);
+        out.writeLong(sendingTime);
+        out.writeLong(receiveTime);
+        out.writeInt(sequenceNumber);
+    }
+
+    /**
+     * Writes the end of an index file, following the rows.
+     *
+     * @param position the position of the end in the file.
+     */
+    static void writeTrailer(DataOutputStream out, long position, int size, String[] messageTypeNames,
+                             String[][] sessionFields, int[] errorPositions, String[] errors) throws IOException {
+        out.writeInt(messageTypeNames.length);
+        for (String messageType : messageTypeNames) {
+            writeString(out, messageType);
+        }
+
+        out.writeInt(sessionFields.length);
+        for (String[] fields : sessionFields) {
+            for (String field : fields) {
+                writeString(out, field);
+            }
+        }
+
+        out.writeInt(errors.length);
+        for (int i = 0; i < errors.length; i++) {
+            out.writeInt(errorPositions[i]);
+            writeString(out, errors[i]);
+        }
+
+        out.writeInt(size);
+        out.writeLong(position);
+    }
+
+    /**
+     * Reads an index written by a {@link LogFileIndexer} or by {@link #write(File)}.
+     * The file is memory mapped and the rows are read straight from the mapping.
+     *
+     * @throws IOException if the file cannot be read or is not an index.
+     */
+    public static LogFileIndex read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The index is too large: " + file);
+            }
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return read(buffer);
+            } catch (RuntimeException e) {
+                // a truncated or corrupt index.
+                throw new IOException("Unable to read the index " + file + ": " + e);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static LogFileIndex read(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a log file index.");
+        }
+
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported log file index version: " + version);
+        }
+
+        long fileSize = buffer.getLong();
+        long lastModified = buffer.getLong();
+        long headHash = buffer.getLong();
+        LogMessageScanner.Framing framing = LogMessageScanner.Framing.valueOf(readString(buffer));
+        Key key = new Key(fileSize, lastModified, headHash, framing);
+        int rowsStart = buffer.position();
+
+        long trailer = buffer.getLong(buffer.limit() - 8);
+        if (trailer < rowsStart || trailer > buffer.limit() - 8) {
+            throw new IOException("The log file index is corrupt.");
+        }
+        buffer.position((int) trailer);
+
+        String[] messageTypeNames = new String[buffer.getInt()];
+        for (int i = 0; i < messageTypeNames.length; i++) {
+            messageTypeNames[i] = readString(buffer);
+        }
+
+        String[][] sessionFields = new String[buffer.getInt()][];
+        for (int i = 0; i < sessionFields.length; i++) {
+            sessionFields[i] = new String[]{readString(buffer), readString(buffer), readString(buffer)};
+        }
+
+        int errorCount = buffer.getInt();
+        int[] errorPositions = new int[errorCount];
+        String[] errors = new String[errorCount];
+        for (int i = 0; i < errorCount; i++) {
+            errorPositions[i] = buffer.getInt();
+            errors[i] = readString(buffer);
+        }
+
+        int size = buffer.getInt();
+        if (size < 0 || rowsStart + (long) size * ROW_SIZE != trailer || buffer.position() != buffer.limit() - 8) {
+            throw new IOException("The log file index is corrupt.");
+        }
+
+        buffer.position(rowsStart);
+        ByteBuffer rows = buffer.slice();
+        rows.limit(size * ROW_SIZE);
+
+        for (int row = 0; row < size * ROW_SIZE; row += ROW_SIZE) {
+            int messageType = rows.getInt(row + MESSAGE_TYPE);
+            int session = rows.getInt(row + SESSION);
+            if (messageType < 0 || messageType >= messageTypeNames.length
+                    || session < 0 || session >= sessionFields.length) {
+                throw new IOException("The log file index is corrupt.");
+            }
+        }
+
+        return new LogFileIndex(key, size, buffer, rows, messageTypeNames, sessionFields, errorPositions, errors);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Identifies a version of a log file by its size, its last modified time and a
+     * hash of its first bytes. The framing is part of the key because it decides
+     * which messages are found.
+     */
+    public static final class Key {
+
+        /**
+         * The number of bytes at the start of the file that are hashed.
+         */
+        static final int HEAD_SIZE = 64 * 1024;
+
+        private final long size;
+        private final long lastModified;
+        private final long headHash;
+        private final LogMessageScanner.Framing framing;
+
+        Key(long size, long lastModified, long headHash, LogMessageScanner.Framing framing) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.headHash = headHash;
+            this.framing = framing;
+        }
+
+        /**
+         * Creates the key of the file as it is now.
+         *
+         * @throws IOException if the head of the file cannot be read.
+         */
+        public static Key of(File file, LogMessageScanner.Framing framing) throws IOException {
+            long size = file.length();
+            long lastModified = file.lastModified();
+
+            CRC32 crc = new CRC32();
+            byte[] head = new byte[(int) Math.min(size, HEAD_SIZE)];
+            InputStream in = new FileInputStream(file);
+            try {
+                int length = 0;
+                while (length < head.length) {
+                    int count = in.read(head, length, head.length - length);
+                    if (count == -1) {
+                        break;
+                    }
+                    length += count;
+                }
+                crc.update(head, 0, length);
+            } finally {
+                in.close();
+            }
+
+            return new Key(size, lastModified, crc.getValue(), framing);
+        }
+
+        /**
+         * Writes the key in the form read by {@link #read(DataInputStream)}.
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeLong(headHash);
+            writeString(out, framing.name());
+        }
+
+        static Key read(DataInputStream in) throws IOException {
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            long headHash = in.readLong();
+            return new Key(size, lastModified, headHash, LogMessageScanner.Framing.valueOf(readString(in)));
+        }
+
+        /**
+         * @return the framing used to find the indexed messages.
+         */
+        public LogMessageScanner.Framing getFraming() {
+            return framing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return size == other.size && lastModified == other.lastModified
+                    && headHash == other.headHash && framing == other.framing;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (size ^ (size >>> 32));
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + (int) (headHash ^ (headHash >>> 32));
+            return 31 * result + framing.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + ", lastModified=" + lastModified + ", headHash=" + headHash
+                    + ", framing=" + framing;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Saves and loads the {@link LogFileIndex} of a log file. The index is saved next
+ * to the log file, with the {@link #INDEX_SUFFIX} appended to the log file's name.
+ * If the log file's directory cannot be written, the index is saved in the cache
+ * directory instead.
+ * <p/>
+ * The {@link ImportCheckpoint} of an import that did not finish is saved the same
+ * way, with the {@link #CHECKPOINT_SUFFIX}.
+ * <p/>
+ * An index or checkpoint is only loaded if its key matches the log file as it is
+ * now, so a log file that was changed, rotated or replaced is imported from scratch.
+ */
+public class LogFileIndexStore {
+
+    public static final String INDEX_SUFFIX = ".l4fx";
+    public static final String CHECKPOINT_SUFFIX = ".l4fc";
+
+    public static final String EVENT_INDEX_LOADED = "Index Loaded";
+    public static final String EVENT_INDEX_SAVED = "Index Saved";
+    public static final String EVENT_CHECKPOINT_SAVED = "Checkpoint Saved";
+    public static final String EVENT_RESUMED = "Resumed";
+
+    private final File cacheDirectory;
+
+    /**
+     * Creates a store that only saves indexes next to the log files.
+     */
+    public LogFileIndexStore() {
+        this(null);
+    }
+
+    /**
+     * @param cacheDirectory the directory holding the indexes of log files whose
+     *                       directories cannot be written; may be null.
+     */
+    public LogFileIndexStore(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * @return the index of the log file; null if there is no index or the index does
+     *         not match the log file.
+     */
+    public LogFileIndex load(File logFile, LogMessageScanner.Framing framing) {
+        try {
+            LogFileIndex.Key key = LogFileIndex.Key.of(logFile, framing);
+            LogFileIndex index = load(getSidecarFile(logFile), key);
+            if (index == null && cacheDirectory != null) {
+                index = load(getCacheFile(logFile), key);
+            }
+            return index;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private LogFileIndex load(File indexFile, LogFileIndex.Key key) {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        try {
+            LogFileIndex index = LogFileIndex.read(indexFile);
+            return key.equals(index.getKey()) ? index : null;
+        } catch (IOException e) {
+            // a corrupt index is replaced by the next import.
+            return null;
+        }
+    }
+
+    /**
+     * Creates an indexer writing to a temporary file next to the file that will hold
+     * the index, so {@link #save(File, LogFileIndexer) saving} the index only renames
+     * the file.
+     *
+     * @return an indexer for the log file as it is now.
+     * @throws IOException if the log file cannot be read or the index cannot be
+     *                     written.
+     */
+    public LogFileIndexer createIndexer(File logFile, LogMessageScanner.Framing framing) throws IOException {
+        LogFileIndex.Key key = LogFileIndex.Key.of(logFile, framing);
+        File indexFile = getWritableFile(logFile, INDEX_SUFFIX);
+        File directory = indexFile.getAbsoluteFile().getParentFile();
+        return new LogFileIndexer(key, File.createTempFile(indexFile.getName(), ".tmp", directory));
+    }
+
+    /**
+     * Saves the index built by an indexer created by this store, replacing any
+     * previous index. The indexer is finished and its file is renamed, so the index
+     * is never copied.
+     *
+     * @return the file holding the index.
+     * @throws IOException if the index cannot be saved.
+     */
+    public File save(File logFile, LogFileIndexer indexer) throws IOException {
+        File temporaryFile = indexer.finish();
+        try {
+            File indexFile = getWritableFile(logFile, INDEX_SUFFIX);
+            Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return indexFile;
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * Saves the index of the log file. The index is written to a temporary file that
+     * then replaces any previous index, so a reader never sees a partial index.
+     *
+     * @return the file holding the index.
+     * @throws IOException if the index cannot be saved.
+     */
+    public File save(File logFile, LogFileIndex index) throws IOException {
+        File indexFile = getWritableFile(logFile, INDEX_SUFFIX);
+        File temporaryFile = new File(indexFile.getPath() + ".tmp");
+        try {
+            index.write(temporaryFile);
+            Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temporaryFile.delete();
+        }
+        return indexFile;
+    }
+
+    /**
+     * @return the checkpoint of the last unfinished import of the log file; null if
+     *         there is no checkpoint or it does not match the log file.
+     */
+    public ImportCheckpoint loadCheckpoint(File logFile, LogMessageScanner.Framing framing) {
+        try {
+            LogFileIndex.Key key = LogFileIndex.Key.of(logFile, framing);
+            ImportCheckpoint checkpoint = loadCheckpoint(getSidecarFile(logFile, CHECKPOINT_SUFFIX), key);
+            if (checkpoint == null && cacheDirectory != null) {
+                checkpoint = loadCheckpoint(getCacheFile(logFile, CHECKPOINT_SUFFIX), key);
+            }
+            return checkpoint;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private ImportCheckpoint loadCheckpoint(File checkpointFile, LogFileIndex.Key key) {
+        if (!checkpointFile.isFile()) {
+            return null;
+        }
+
+        try {
+            ImportCheckpoint checkpoint = ImportCheckpoint.read(checkpointFile);
+            return key.equals(checkpoint.getKey()) ? checkpoint : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the checkpoint of an import of the log file, replacing any previous
+     * checkpoint. Like an index, the checkpoint is replaced in a single step, so a
+     * process that dies while saving leaves the previous checkpoint.
+     *
+     * @return the file holding the checkpoint.
+     * @throws IOException if the checkpoint cannot be saved.
+     */
+    public File saveCheckpoint(File logFile, ImportCheckpoint checkpoint) throws IOException {
+        File checkpointFile = getWritableFile(logFile, CHECKPOINT_SUFFIX);
+        File temporaryFile = new File(checkpointFile.getPath() + ".tmp");
+        try {
+            checkpoint.write(temporaryFile);
+            Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temporaryFile.delete();
+        }
+        return checkpointFile;
+    }
+
+    /**
+     * Deletes the checkpoint of the log file, once the file was imported completely.
+     */
+    public void deleteCheckpoint(File logFile) {
+        getSidecarFile(logFile, CHECKPOINT_SUFFIX).delete();
+        if (cacheDirectory != null) {
+            getCacheFile(logFile, CHECKPOINT_SUFFIX).delete();
+        }
+    }
+
+    /**
+     * @return the sidecar file, or the cache file if the log file's directory cannot
+     *         be written.
+     */
+    private File getWritableFile(File logFile, String suffix) throws IOException {
+        File file = getSidecarFile(logFile, suffix);
+        File directory = file.getAbsoluteFile().getParentFile();
+        if ((directory == null || !directory.canWrite()) && cacheDirectory != null) {
+            if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+                throw new IOException("Unable to create the index directory " + cacheDirectory);
+            }
+            file = getCacheFile(logFile, suffix);
+        }
+        return file;
+    }
+
+    File getSidecarFile(File logFile) {
+        return getSidecarFile(logFile, INDEX_SUFFIX);
+    }
+
+    File getSidecarFile(File logFile, String suffix) {
+        return new File(logFile.getPath() + suffix);
+    }
+
+    File getCacheFile(File logFile) {
+        return getCacheFile(logFile, INDEX_SUFFIX);
+    }
+
+    File getCacheFile(File logFile, String suffix) {
+        // the path keeps log files with the same name apart.
+        String path = logFile.getAbsolutePath();
+        return new File(cacheDirectory, logFile.getName() + "-" + Integer.toHexString(path.hashCode()) + suffix);
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import quickfix.field.BeginString;
+import quickfix.field.MsgSeqNum;
+import quickfix.field.MsgType;
+import quickfix.field.SenderCompID;
+import quickfix.field.SendingTime;
+import quickfix.field.TargetCompID;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link LogFileIndex} from the records of a log file, in file order. Only
+ * message records holding their file position are indexed; error records are kept
+ * with the index of the message that follows them.
+ * <p/>
+ * The row of each message is written to the index file as soon as the message is
+ * added, so only the small string tables are held on the heap. An indexer created by
+ * a {@link LogFileIndexStore} writes next to the index it replaces; otherwise the
+ * rows are written to a temporary file.
+ * <p/>
+ * The header of each message is read by a {@link FIXHeaderScanner}. An indexer is
+ * used by a single thread and must be {@link #close() closed}.
+ */
+public class LogFileIndexer {
+
+    private final LogFileIndex.Key key;
+    private final File file;
+    private final FIXHeaderScanner header = new FIXHeaderScanner(BeginString.FIELD, MsgType.FIELD,
+            SenderCompID.FIELD, TargetCompID.FIELD, SendingTime.FIELD, MsgSeqNum.FIELD);
+
+    // a log file holds few distinct MsgTypes, so they are searched by hash code.
+    private final List<String> messageTypeNames = new ArrayList<String>();
+    private int[] messageTypeHashes = new int[16];
+    private final Map<String, Integer> sessionsByKey = new HashMap<String, Integer>();
+    private final List<String[]> sessionFields = new ArrayList<String[]>();
+    private final List<Integer> errorPositions = new ArrayList<Integer>();
+    private final List<String> errors = new ArrayList<String>();
+
+    private DataOutputStream out;
+    private long position;
+    private int size;
+
+    // the first failure to write the file, reported when the index is built.
+    private IOException writeFailure;
+    private boolean finished;
+
+    // the session of the previous message, checked first.
+    private int lastSession = -1;
+
+    /**
+     * Creates an indexer writing to a temporary file, which is deleted once the
+     * index is built.
+     *
+     * @param key the key of the log file being indexed.
+     * @throws IOException if the temporary file cannot be created.
+     */
+    public LogFileIndexer(LogFileIndex.Key key) throws IOException {
+        this(key, File.createTempFile("log4fix", LogFileIndexStore.INDEX_SUFFIX));
+    }
+
+    /**
+     * @param key  the key of the log file being indexed.
+     * @param file the file receiving the index; replaced if it exists.
+     * @throws IOException if the file cannot be written.
+     */
+    LogFileIndexer(LogFileIndex.Key key, File file) throws IOException {
+        this.key = key;
+        this.file = file;
+        file.deleteOnExit();
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        try {
+            LogFileIndex.writeHeader(out, key);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        position = out.size();
+    }
+
+    /**
+     * Adds the record to the index. A failure to write the index file is reported
+     * when the index is built.
+     *
+     * @throws IllegalArgumentException if the record is a message without a file
+     *                                  position.
+     * @throws IllegalStateException    if the index was built.
+     */
+    public void add(ImportRecord record) {
+        if (finished) {
+            throw new IllegalStateException("The index was built.");
+        }
+
+        if (record.getType() == ImportRecord.Type.ERROR) {
+            errorPositions.add(size);
+            errors.add(record.getText());
+            return;
+        } else if (record.getType() != ImportRecord.Type.MESSAGE) {
+            return;
+        }
+
+        if (record.getOffset() < 0) {
+            throw new IllegalArgumentException("The message does not have a file position.");
+        }
+
+        header.scan(record.getText());
+        int messageType = findMessageType();
+        int session = findSession();
+        size++;
+
+        if (writeFailure == null) {
+            try {
+                // a missing MsgSeqNum is -1, which is LogFileIndex.NO_SEQUENCE_NUMBER.
+                LogFileIndex.writeRow(out, record.getOffset(), (int) (record.getEnd() - record.getOffset()),
+                        messageType, session, header.getTimestamp(SendingTime.FIELD), record.getReceiveTime(),
+                        header.getInt(MsgSeqNum.FIELD));
+                position += LogFileIndex.ROW_SIZE;
+            } catch (IOException e) {
+                writeFailure = e;
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages indexed so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Completes the index file and reads it back. The file is then deleted; the
+     * index stays readable until it is garbage collected. Use
+     * {@link LogFileIndexStore#save(File, LogFileIndexer)} to keep the file instead.
+     *
+     * @return the index holding the records added so far.
+     * @throws IOException if the index file could not be written or read.
+     */
+    public LogFileIndex build() throws IOException {
+        try {
+            return LogFileIndex.read(finish());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Completes the index file, which is then owned by the caller.
+     *
+     * @return the index file.
+     * @throws IOException if the index file could not be written.
+     */
+    File finish() throws IOException {
+        if (finished) {
+            throw new IllegalStateException("The index was built.");
+        }
+        finished = true;
+
+        if (writeFailure != null) {
+            close();
+            throw writeFailure;
+        }
+
+        int[] positions = new int[errorPositions.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = errorPositions.get(i);
+        }
+
+        try {
+            LogFileIndex.writeTrailer(out, position, size,
+                    messageTypeNames.toArray(new String[messageTypeNames.size()]),
+                    sessionFields.toArray(new String[sessionFields.size()][]),
+                    positions, errors.toArray(new String[errors.size()]));
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Deletes the index file unless it was {@link #finish() finished}. An indexer
+     * that was not finished is closed when the import fails or is canceled.
+     */
+    public void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ohWell) {
+            }
+            out = null;
+            file.delete();
+        }
+        finished = true;
+    }
+
+    /**
+     * @return the code of the message's MsgType, found without creating any objects
+     *         unless the MsgType is new.
+     */
+    private int findMessageType() {
+        int hash = header.valueHashCode(MsgType.FIELD);
+        int count = messageTypeNames.size();
+        for (int messageType = 0; messageType < count; messageType++) {
+            if (messageTypeHashes[messageType] == hash
+                    && header.valueEquals(MsgType.FIELD, messageTypeNames.get(messageType))) {
+                return messageType;
+            }
+        }
+
+        if (count == messageTypeHashes.length) {
+            messageTypeHashes = Arrays.copyOf(messageTypeHashes, count * 2);
+        }
+        messageTypeHashes[count] = hash;
+        messageTypeNames.add(header.getValue(MsgType.FIELD));
+        return count;
+    }
+
+    private int findSession() {
+        if (lastSession != -1) {
+            String[] fields = sessionFields.get(lastSession);
+            if (header.valueEquals(BeginString.FIELD, fields[0])
+                    && header.valueEquals(SenderCompID.FIELD, fields[1])
+                    && header.valueEquals(TargetCompID.FIELD, fields[2])) {
+                return lastSession;
+            }
+        }
+
+        String beginString = header.getValue(BeginString.FIELD);
+        String sender = header.getValue(SenderCompID.FIELD);
+        String target = header.getValue(TargetCompID.FIELD);
+        String sessionKey = beginString + '\u0001' + sender + '\u0001' + target;
+
+        Integer session = sessionsByKey.get(sessionKey);
+        if (session == null) {
+            session = sessionFields.size();
+            sessionFields.add(new String[]{beginString, sender, target});
+            sessionsByKey.put(sessionKey, session);
+        }
+        lastSession = session;
+        return session;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.regex.Pattern;
+
+/**
+ * Describes the prefix an application log writes in front of each FIX message,
+ * e.g. the timestamp, level, thread and MDC of a logback line. By default the
+ * {@link LogMessageScanner} starts a message at the first '8=' on a line, which
+ * goes wrong if the prefix itself contains '8='. Given a line pattern, the scanner
+ * starts the message at the first '8=' following the text matched by the pattern.
+ * <p/>
+ * The pattern is a regular expression matched once from the start of each line.
+ * Lines it does not match are skipped. The named group
+ * {@link #GROUP_TIMESTAMP timestamp} becomes the message's receive time and the
+ * other named groups, such as {@link #GROUP_THREAD thread}, are available from the
+ * scanner. For example:
+ * <pre>
+ * (?&lt;timestamp&gt;\S+ \S+) \[(?&lt;thread&gt;[^\]]+)\] \w+ \S+ - (sent|received):
+ * </pre>
+ * Most lines of an application log are not FIX messages. Before the pattern is
+ * applied, the raw bytes of each line are searched for the {@link #getMarker()
+ * marker} (by default "8=FIX"). A line without the marker is skipped without
+ * decoding any bytes, so the regular expression only runs on the lines holding a
+ * message.
+ * <p/>
+ * The pattern applies to the {@link LogMessageScanner.Framing#LINE line} framing.
+ * The body length framing finds messages anywhere and ignores the pattern.
+ */
+public class LogLinePattern {
+
+    /**
+     * The group holding the time the line was written. The digits of the group are
+     * read as <code>yyyyMMddHHmmss</code> followed by the fraction of the second, so
+     * e.g. "2011-03-04 10:00:00,123" and "20110304-10:00:00.123" are both read as
+     * UTC times; any other characters are ignored.
+     */
+    public static final String GROUP_TIMESTAMP = "timestamp";
+
+    public static final String GROUP_THREAD = "thread";
+
+    public static final String DEFAULT_MARKER = "8=FIX";
+
+    private static final byte[] BEGIN_STRING_TAG = {'8', '='};
+
+    private final Pattern pattern;
+    private final String marker;
+    private final boolean timestamp;
+
+    /**
+     * @param regex the regular expression matching the text in front of each message.
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid.
+     */
+    public LogLinePattern(String regex) {
+        this(regex, DEFAULT_MARKER);
+    }
+
+    /**
+     * @param marker text found on every line holding a message.
+     */
+    public LogLinePattern(String regex, String marker) {
+        if (marker.length() == 0) {
+            throw new IllegalArgumentException("The marker is empty.");
+        }
+        pattern = Pattern.compile(regex);
+        this.marker = marker;
+        timestamp = hasGroup(regex, GROUP_TIMESTAMP);
+    }
+
+    public String getPattern() {
+        return pattern.pattern();
+    }
+
+    public String getMarker() {
+        return marker;
+    }
+
+    @Override
+    public String toString() {
+        return pattern.pattern();
+    }
+
+    /**
+     * @return a matcher for the scanners of one thread.
+     */
+    Matcher createMatcher(Charset charset) {
+        return new Matcher(this, charset);
+    }
+
+    private static boolean hasGroup(String regex, String name) {
+        return regex.contains("(?<" + name + ">");
+    }
+
+    /**
+     * Matches the lines of a buffer. The matcher keeps the groups of the last line
+     * matched.
+     */
+    static final class Matcher {
+
+        private final java.util.regex.Matcher matcher;
+        private final byte[] marker;
+        private final boolean timestamp;
+        private final ByteSequence sequence = new ByteSequence();
+
+        // the timestamp digits in the form read by the FIXHeaderScanner.
+        private final char[] utcTimestamp = "yyyyMMdd-HH:mm:ss.nnnnnnnnn".toCharArray();
+        private final CharBuffer utcTimestampSequence = CharBuffer.wrap(utcTimestamp);
+
+        private boolean matched;
+
+        Matcher(LogLinePattern linePattern, Charset charset) {
+            matcher = linePattern.pattern.matcher("");
+            marker = linePattern.marker.getBytes(charset);
+            timestamp = linePattern.timestamp;
+        }
+
+        /**
+         * @return the index of the '8=' starting the line's message; -1 if the line
+         *         does not hold a message.
+         */
+        int find(ByteBuffer buffer, int lineStart, int lineEnd) {
+            matched = false;
+            if (LogMessageScanner.indexOf(buffer, lineStart, lineEnd, marker) == -1) {
+                return -1;
+            }
+
+            matcher.reset(sequence.wrap(buffer));
+            matcher.region(lineStart, lineEnd);
+            if (!matcher.lookingAt()) {
+                return -1;
+            }
+
+            matched = true;
+            return LogMessageScanner.indexOf(buffer, matcher.end(), lineEnd, BEGIN_STRING_TAG);
+        }
+
+        /**
+         * @return the value of the named group of the last line matched; null if the
+         *         group did not take part in the match.
+         * @throws IllegalArgumentException if the pattern has no such group.
+         */
+        String getGroup(String name) {
+            return matched ? matcher.group(name) : null;
+        }
+
+        /**
+         * @return the epoch nanoseconds of the timestamp group of the last line
+         *         matched; {@link FIXHeaderScanner#NO_TIMESTAMP} if there is no such
+         *         group or it is not a time.
+         */
+        long getTimestamp() {
+            if (!matched || !timestamp) {
+                return FIXHeaderScanner.NO_TIMESTAMP;
+            }
+
+            int start = matcher.start(GROUP_TIMESTAMP);
+            if (start == -1) {
+                return FIXHeaderScanner.NO_TIMESTAMP;
+            }
+            return parseTimestamp(sequence, start, matcher.end(GROUP_TIMESTAMP));
+        }
+
+        /**
+         * Copies the digits into <code>yyyyMMdd-HH:mm:ss[.fraction]</code> form.
+         */
+        private long parseTimestamp(CharSequence text, int start, int end) {
+            int length = 0;
+            for (int index = start; index < end && length < utcTimestamp.length; index++) {
+                char c = text.charAt(index);
+                if (c < '0' || c > '9') {
+                    continue;
+                }
+
+                // skip the separators of the UTCTimestamp form.
+                if (length == 8 || length == 11 || length == 14 || length == 17) {
+                    length++;
+                }
+                utcTimestamp[length++] = c;
+            }
+
+            if (length < 17) {
+                return FIXHeaderScanner.NO_TIMESTAMP;
+            }
+            return FIXHeaderScanner.parseTimestamp(utcTimestampSequence, 0, length);
+        }
+    }
+}
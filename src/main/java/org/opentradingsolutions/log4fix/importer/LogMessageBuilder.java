@@ -34,130 +34,186 @@
 
 package org.opentradingsolutions.log4fix.importer;
 
-import org.opentradingsolutions.log4fix.core.LogMessage;
-import quickfix.SessionID;
-import quickfix.field.MsgType;
-
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.concurrent.BlockingQueue;
+import java.util.List;
 
 /**
+ * Builds the log messages of the records handed over by a parser and adds them to
+ * the models of their sessions.
+ * <p/>
+ * Interrupting the thread cancels the import. The builder stops before the next
+ * record, even if more records are already waiting in the buffer, and logs the
+ * {@link #EVENT_CANCELED} event.
+ * <p/>
+ * The latency of each message with a receive time is recorded in the model's
+ * {@link LatencyStatistics}.
+ * <p/>
+ * A builder importing a log file may save an {@link ImportCheckpoint} every
+ * {@link ImporterModel#getCheckpointInterval()} messages and when it is canceled, so
+ * an import that is canceled or dies can be resumed. The checkpoint is deleted once
+ * the whole file is imported.
+ *
  * @author Brian M. Coyner
  */
 public class LogMessageBuilder implements Runnable {
 
     public static final String EVENT_START = "Start";
+    public static final String EVENT_FILTER = "Filter";
     public static final String EVENT_ERROR = "ERROR";
     public static final String EVENT_MESSAGES_IMPORTED = "Messages Imported";
     public static final String EVENT_COMPLETE = "Complete";
+    public static final String EVENT_CANCELED = "Canceled";
 
-    private final BlockingQueue<String> fixMessages;
+    /**
+     * The default number of messages between checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100000;
+
+    private final ImportBuffer records;
     private final ImporterModel model;
 
-    private SessionID senderSessionId;
+    private final SessionTracker sessionTracker;
+
+    // the log file checkpointed by the builder; null if checkpoints are not saved.
+    private File checkpointFile;
+    private LogFileIndex.Key checkpointKey;
+    private ImportCheckpoint resumedCheckpoint;
 
-    public LogMessageBuilder(ImporterModel model, BlockingQueue<String> fixMessages) {
+    public LogMessageBuilder(ImporterModel model, ImportBuffer records) {
         this.model = model;
-        this.fixMessages = fixMessages;
+        this.records = records;
+        sessionTracker = new SessionTracker(model);
+    }
+
+    /**
+     * Saves checkpoints of the import of the log file in the model's
+     * {@link LogFileIndexStore}. The records must hold the file positions of their
+     * messages. Must be called before the builder runs.
+     *
+     * @param key the key of the log file as it was when the import started.
+     */
+    void setCheckpoints(File logFile, LogFileIndex.Key key) {
+        checkpointFile = logFile;
+        checkpointKey = key;
+    }
+
+    /**
+     * Keeps the messages of each session out of the Java heap.
+     * Must be called before the builder runs.
+     *
+     * @see SessionTracker#setOffHeap(boolean)
+     */
+    void setOffHeap(boolean offHeap) {
+        sessionTracker.setOffHeap(offHeap);
+    }
+
+    /**
+     * Continues the import stopped at the checkpoint. The sessions found before the
+     * checkpoint are restored, so the records may start in the middle of the log.
+     * Must be called before the builder runs.
+     */
+    void resume(ImportCheckpoint checkpoint) {
+        resumedCheckpoint = checkpoint;
+        sessionTracker.restore(checkpoint.getSessions());
     }
 
     public void run() {
 
         ImporterMemoryLog logger = model.getImporterMemoryLog();
+        LatencyStatistics latency = model.getLatencyStatistics();
 
         logger.onEvent(EVENT_START + ": " + new Date());
+        if (model.isFiltered()) {
+            logger.onEvent(EVENT_FILTER + ": " + model.getFilter());
+        }
         int messageCount = 0;
 
-        try {
-            while (true) {
-                String rawMessage = fixMessages.take();
-                if ("DONE".equals(rawMessage)) {
-                    break;
-                } else if (rawMessage.startsWith(EVENT_ERROR)) {
-                    logger.onEvent(rawMessage);
-                    continue;
-                }
-
-                int beginIndex = 2; // 8= takes up 0 and 1... value starts at 2.
-                int endIndex = rawMessage.indexOf(LogMessage.SOH_DELIMETER, beginIndex);
-                String beginString = rawMessage.substring(2, endIndex);
-
-                beginIndex = rawMessage.indexOf("35=", endIndex) + 3;
-                endIndex = rawMessage.indexOf(LogMessage.SOH_DELIMETER, beginIndex);
-                String messageType = rawMessage.substring(beginIndex, endIndex);
-
-                beginIndex = rawMessage.indexOf("49=", endIndex) + 3;
-                endIndex = rawMessage.indexOf(LogMessage.SOH_DELIMETER, beginIndex);
-                String senderCompId = rawMessage.substring(beginIndex, endIndex);
+        // the messages imported before the last checkpoint and the position following them.
+        int importedCount = resumedCheckpoint == null ? 0 : resumedCheckpoint.getMessageCount();
+        long offset = resumedCheckpoint == null ? 0 : resumedCheckpoint.getOffset();
+        int checkpointCount = importedCount;
+        int checkpointInterval = model.getCheckpointInterval();
+        if (resumedCheckpoint != null) {
+            logger.onEvent(LogFileIndexStore.EVENT_RESUMED + ": " + resumedCheckpoint);
+        }
 
-                beginIndex = rawMessage.indexOf("56=", endIndex) + 3;
-                endIndex = rawMessage.indexOf(LogMessage.SOH_DELIMETER, beginIndex);
-                String targetCompId = rawMessage.substring(beginIndex, endIndex);
+        List<ImportRecord> batch = new ArrayList<ImportRecord>();
+        try {
+            boolean done = false;
+            while (!done) {
+                records.drainTo(batch);
+                for (ImportRecord record : batch) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
 
-                SessionID currentSessionId = new SessionID(beginString, senderCompId, targetCompId);
+                    if (record.getType() == ImportRecord.Type.END) {
+                        done = true;
+                        break;
+                    } else if (record.getType() == ImportRecord.Type.ERROR
+                            || record.getType() == ImportRecord.Type.EVENT) {
+                        logger.onEvent(record.getText());
+                        continue;
+                    }
 
-                // hopefully the first message we find is the initiator's logon...
-                // @todo - currently it is assumed that the person running this
-                // application is always the initiator. Fix this.
-                if (senderSessionId == null) {
-                    if (MsgType.LOGON.equals(messageType)) {
-                        senderSessionId = currentSessionId;
+                    String rawMessage = record.getText();
+                    boolean incoming = sessionTracker.isIncoming(rawMessage);
+                    ImporterMemoryLog sessionLogger = sessionTracker.getMemoryLog();
+                    long receiveTime = record.getReceiveTime();
+                    if (incoming) {
+                        sessionLogger.onIncoming(rawMessage, receiveTime);
                     } else {
-                        // the logon message is missing... resolve the session Id.
-                        currentSessionId = model.getSessionIdResolver().resolveSessionId(
-                                currentSessionId.getBeginString(),
-                                currentSessionId.getSenderCompID(),
-                                currentSessionId.getTargetCompID());
-                        senderSessionId = currentSessionId;
+                        sessionLogger.onOutgoing(rawMessage, receiveTime);
+                    }
+                    if (receiveTime != FIXHeaderScanner.NO_TIMESTAMP) {
+                        latency.record(sessionTracker.getCounterparty(), incoming, receiveTime,
+                                sessionTracker.getSendingTime());
+                    }
+                    messageCount++;
+
+                    if (checkpointFile != null && record.getEnd() != -1) {
+                        offset = record.getEnd();
+                        if (importedCount + messageCount - checkpointCount >= checkpointInterval) {
+                            checkpointCount = importedCount + messageCount;
+                            saveCheckpoint(offset, checkpointCount, false);
+                        }
                     }
-
-                    logger.setSessionId(senderSessionId);
-                    logger.onEvent("Initiator Session Id: " + senderSessionId);
                 }
+                batch.clear();
+            }
 
-                if (isIncomingMessage(currentSessionId, senderSessionId)) {
-                    logger.onIncoming(rawMessage);
-                } else {
-                    logger.onOutgoing(rawMessage);
-                }
-                messageCount++;
+            if (checkpointFile != null) {
+                model.getIndexStore().deleteCheckpoint(checkpointFile);
             }
         } catch (InterruptedException e) {
-            logger.onEvent("**** ERROR ****");
-            logger.onEvent("The message builder thread was interrupted due to the " +
-                    "following error:");
-            logger.onEvent(" - " + e.getMessage());
-
-            // print some extra information about the failure if multiple sessions
-            // were found in the log file.
-            if (e instanceof MultipleSessionsException) {
-                MultipleSessionsException mse = (MultipleSessionsException) e;
-                logger.onEvent(" - First Session Id: " + mse.getFirstSessionId());
-                logger.onEvent(" - Second Session Id: " + mse.getSecondSessionId());
+            logger.onEvent(EVENT_CANCELED + ": the import is partial");
+            if (checkpointFile != null && importedCount + messageCount > checkpointCount) {
+                saveCheckpoint(offset, importedCount + messageCount, true);
             }
-
-            logger.onEvent("****  END  ****");
         } finally {
             logger.onEvent(EVENT_MESSAGES_IMPORTED + ": " + messageCount);
             logger.onEvent(EVENT_COMPLETE + ": " + new Date());
         }
     }
 
-    private boolean isIncomingMessage(SessionID currentSessionId,
-                                      SessionID senderSessionId) throws InterruptedException {
-
-        boolean incoming;
-        if (senderSessionId.getSenderCompID().equals(currentSessionId.getSenderCompID())
-                && senderSessionId.getTargetCompID().equals(currentSessionId.getTargetCompID())) {
-
-            incoming = false;
-        } else if (senderSessionId.getSenderCompID().equals(currentSessionId.getTargetCompID())
-                && senderSessionId.getTargetCompID().equals(currentSessionId.getSenderCompID())) {
-
-            incoming = true;
-        } else {
-            throw new MultipleSessionsException(senderSessionId, currentSessionId);
+    /**
+     * @param logged true to log the saved checkpoint; periodic checkpoints are not logged.
+     */
+    private void saveCheckpoint(long offset, int messageCount, boolean logged) {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointKey, offset, messageCount,
+                sessionTracker.getCheckpointSessions());
+        try {
+            File file = model.getIndexStore().saveCheckpoint(checkpointFile, checkpoint);
+            if (logged) {
+                model.getImporterMemoryLog().onEvent(LogFileIndexStore.EVENT_CHECKPOINT_SAVED + ": " + file);
+            }
+        } catch (IOException e) {
+            // the import goes on; it just cannot be resumed from here.
+            model.getImporterMemoryLog().onEvent(LogMessageScanner.ERROR_PREFIX
+                    + "Unable to save the checkpoint: " + e.getMessage());
         }
-        return incoming;
     }
 }
\ No newline at end of file
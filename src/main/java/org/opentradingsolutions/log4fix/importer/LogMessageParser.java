@@ -34,38 +34,33 @@
 
 package org.opentradingsolutions.log4fix.importer;
 
-import java.io.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 
 /**
  * Parses the input stream looking for raw FIX message strings. If a FIX
- * message string is found that string is added to the queue to be processed
- * later.
+ * message string is found that string is added to the buffer to be processed
+ * later. The buffer is flushed whenever the stream has no more input ready, so
+ * messages written slowly to the stream are not held back.
  * <p/>
- * Interrupting the thread causes the parser to add a poison pill onto the queue and
- * gracefully terminate. By default, the thread waits for a brief period of time
- * while attempting to add the poison pill. If the poison pill cannot be added to the
- * queue because the queue is full then the parser empties the queue, closes the input
- * stream, and terminates gracefully. It is assumed that if the poison pill cannot be
- * added that the consumer thread is no longer responding.
+ * The stream is read in blocks and each block is searched by a
+ * {@link LogMessageScanner}. See {@link LogStreamScanner}.
+ * <p/>
+ * Interrupting the thread causes the parser to close the buffer and gracefully
+ * terminate. Messages not yet handed to the builder are discarded. Closing the
+ * buffer never blocks, so the builder always receives the {@link ImportRecord#END}
+ * record.
  *
  * @author Brian M. Coyner
  */
-public class LogMessageParser implements Runnable {
+public class LogMessageParser implements Runnable, ImportProgressSource {
 
-    public static final String POISON_PILL = "DONE";
     public static final String SOH_STRING = "\u0001";
 
-    /**
-     * The amount of time (ms) to wait while trying to add the poison pill to the
-     * queue.
-     */
-    public static final int CANCELATION_TIMEOUT = 1000;
-
     private final InputStream inputStream;
-    private final BlockingQueue<String> fixMessages;
-
+    private final ImportBuffer records;
+    private final LogStreamScanner scanner;
 
     /**
      * The parser takes ownership of the input stream once the {@link #run()} method
@@ -76,168 +71,83 @@ public class LogMessageParser implements Runnable {
      *
      * @param inputStream a non-null stream that may or may not already
      *                    contain data ready for reading (i.e. raw FIX message fields). It is assumed that
-     *                    the FIX message fields are delimited with the SOH character and terminated
+     *                    the FIX message fields are delimited with the SOH character (or one of the
+     *                    delimeters known to {@link FIXDelimeter}) and terminated
      *                    with a new line character.
-     * @param fixMessages a non-null, empty queue.
-     * @throws IllegalArgumentException if the input stream is null or the queue is null.
-     * @throws IllegalStateException    if the queue is not empty.
+     * @param records     a non-null, empty buffer.
+     * @throws IllegalArgumentException if the input stream is null or the buffer is null.
+     * @throws IllegalStateException    if the buffer is not empty.
      */
-    public LogMessageParser(InputStream inputStream, BlockingQueue<String> fixMessages) {
+    public LogMessageParser(InputStream inputStream, ImportBuffer records) {
+        this(inputStream, records, LogMessageScanner.Framing.LINE);
+    }
+
+    /**
+     * @param framing how the scanner finds each message. Use
+     *                {@link LogMessageScanner.Framing#BODY_LENGTH} if the stream is not
+     *                made up of lines.
+     * @see #LogMessageParser(InputStream, ImportBuffer)
+     */
+    public LogMessageParser(InputStream inputStream, ImportBuffer records, LogMessageScanner.Framing framing) {
 
         if (inputStream == null) {
             throw new IllegalArgumentException("The log file input stream is null.");
         }
 
-        if (fixMessages == null) {
+        if (records == null) {
             closeInputStream(inputStream);
-            throw new IllegalArgumentException("The queue is null.");
+            throw new IllegalArgumentException("The buffer is null.");
         }
 
-        if (!fixMessages.isEmpty()) {
+        if (!records.isEmpty()) {
             closeInputStream(inputStream);
-            throw new IllegalStateException("The queue must be initially empty.");
+            throw new IllegalStateException("The buffer must be initially empty.");
         }
 
         this.inputStream = inputStream;
-        this.fixMessages = fixMessages;
+        this.records = records;
+        scanner = new LogStreamScanner(records, framing);
     }
 
-    public void run() {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-        try {
-            String line;
-            while ((line = getLine(reader)) != null) {
-
-                if (Thread.interrupted()) {
-                    break;
-                }
-                String rawMessage = extractFIXMessage(line, reader);
-                if (rawMessage != null) {
-                    addMessageToQueue(rawMessage);
-                }
-            }
-
-            addPoisonPillToQueue();
-        } finally {
-            try {
-                reader.close();
-            } catch (IOException ohWell) {
-            }
-        }
+    /**
+     * Must be called before the parser runs.
+     *
+     * @param filter the filter of the messages added to the buffer; null to add
+     *               every message.
+     */
+    public void setFilter(MessageFilter filter) {
+        scanner.setFilter(filter);
     }
 
-    private void addMessageToQueue(String rawMessage) {
-        try {
-            fixMessages.put(rawMessage);
-        } catch (InterruptedException e) {
-            // restore the interrupted state.
-            Thread.currentThread().interrupt();
-        }
+    /**
+     * Must be called before the parser runs.
+     *
+     * @param linePattern the pattern of the lines holding the messages; null to
+     *                    start each message at the first '8=' on a line.
+     */
+    public void setLinePattern(LogLinePattern linePattern) {
+        scanner.setLinePattern(linePattern);
     }
 
-    private void addPoisonPillToQueue() {
+    public long getBytesRead() {
+        return scanner.getBytesRead();
+    }
 
-        try {
-            if (!fixMessages.offer(POISON_PILL, CANCELATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
-                fixMessages.clear();
-                fixMessages.offer(POISON_PILL);
-            } 
-        } catch (InterruptedException e) {
-            // the thread is going to exit. 
-        }
+    public long getMessageCount() {
+        return scanner.getMessageCount();
     }
 
-    private String getLine(BufferedReader reader) {
+    public void run() {
         try {
-            return reader.readLine();
+            scanner.scan(inputStream);
         } catch (InterruptedIOException e) {
             Thread.currentThread().interrupt();
-            return "JUNK";
         } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private String extractFIXMessage(String line, BufferedReader reader) {
-
-
-        int messageStartIndex = line.indexOf("8=");
-        if (messageStartIndex == -1) {
-            return null;
-        }
-
-        try {
-
-            // keep reading the input stream until we find the delimeter
-            String delimeter = getDelimeter(line);
-            while (delimeter == null) {
-                String nextLine = getLine(reader);
-
-                // delimeter not found... message is not complete
-                if (nextLine == null) {
-                    break;
-                }
-
-                // keep building the string
-                line += nextLine;
-                delimeter = getDelimeter(line);
-            }
-
-            // we should have found the delimeter
-            int checksumFieldIndex = line.indexOf(delimeter + "10=");
-            while (checksumFieldIndex == -1) {
-                String nextLine = getLine(reader);
-                if (nextLine == null) {
-                    break;
-                }
-
-                line += nextLine;
-                checksumFieldIndex = line.indexOf(delimeter + "10=");
-            }
-
-            if (checksumFieldIndex != -1) {
-                int checksumFieldEndIndex = line.indexOf(delimeter, checksumFieldIndex + 1);
-                if (checksumFieldEndIndex == -1) {
-                    checksumFieldEndIndex = checksumFieldIndex + 6;
-                }
-                int offset = checksumFieldEndIndex - checksumFieldIndex + 1;
-
-                line = correctDelimeter(line, delimeter);
-                line = line.substring(messageStartIndex, checksumFieldIndex + offset);
-                if (!line.endsWith(SOH_STRING)) {
-                    line += SOH_STRING;
-                }
-                return line;
-            }
-        } catch (Throwable failure) {
-            return "ERROR: " + line;
-        }
-        return null;
-    }
-
-    private String correctDelimeter(String line, String delimeter) {
-
-        // body length field is arbitrary... we use this field to figure out
-        // if the log file uses a different delimeter other than SOH. An assumption
-        // is made that the delimeter is the same for all fields. If not, then
-        // an exception may raise stopping the thread.
-        if (!delimeter.equals(SOH_STRING)) {
-            if (delimeter.length() == 1) {
-                line = line.replaceAll("\\" + delimeter, SOH_STRING);
-            } else {
-                line = line.replaceAll(delimeter, SOH_STRING);
-            }
-        }
-
-        return line;
-    }
-
-    private String getDelimeter(String line) {
-        int endIndex = line.indexOf("9=");
-        if (endIndex == -1) {
-            return null;
+            scanner.add(ImportRecord.error(LogMessageScanner.ERROR_PREFIX + e.getMessage()));
+        } finally {
+            records.close();
+            closeInputStream(inputStream);
         }
-        return line.substring(endIndex - 1, endIndex);
     }
 
     private void closeInputStream(InputStream inputStream) {
@@ -0,0 +1,1009 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Scans a buffer of raw log file bytes for FIX messages without decoding the
+ * bytes into strings. The scanner applies the same rules as the
+ * {@link LogMessageParser}: a message starts at the first '8=' found on a line,
+ * the delimeter is the byte before the first '9=', and the message ends at the
+ * delimeter following the '10=' field. A message that is broken across lines is
+ * joined, just like the parser joins the lines it reads.
+ * <p/>
+ * Each call to {@link #next()} only records the boundaries of the next message.
+ * Bytes are copied out of the buffer when the caller asks for the message by
+ * calling {@link #getMessage()}.
+ * <p/>
+ * The {@link Framing#BODY_LENGTH} framing uses the BodyLength field instead of
+ * lines to find the end of each message. See {@link Framing}.
+ * <p/>
+ * A scanner given a {@link MessageFilter} skips the messages the filter rejects.
+ * The filter is evaluated on the bytes in the buffer, so nothing is copied for a
+ * skipped message.
+ * <p/>
+ * The {@link #getLineTimestamp() timestamp} a QuickFIX/J <code>FileLog</code> writes
+ * in front of each message is parsed on request.
+ * <p/>
+ * A scanner given a {@link LogLinePattern} reads messages embedded in application
+ * log lines: the message starts after the line's prefix and lines not matching the
+ * pattern are skipped.
+ * <p/>
+ * If the buffer does not contain the end of the input then a line or message that
+ * runs past the buffer's limit is not consumed. The scanner reports an
+ * {@link #isUnderflow() underflow} and the caller is expected to scan again from
+ * {@link #getPosition()} with more bytes available.
+ */
+public class LogMessageScanner {
+
+    /**
+     * How the scanner finds the start and end of each message.
+     */
+    public enum Framing {
+
+        /**
+         * A message starts at the first '8=' on a line and ends at the '10=' field.
+         * Text following the message on the same line is ignored. This is how log
+         * files have always been read.
+         */
+        LINE,
+
+        /**
+         * A message starts at any '8=' followed by a BeginString and ends where its
+         * BodyLength (9) field says the body ends. More than one message may be on a
+         * line and the input does not need any line terminators at all. If the
+         * BodyLength field is missing or wrong the scanner falls back to searching
+         * for the '10=' field. Line terminators that break a message across lines
+         * are removed.
+         */
+        BODY_LENGTH
+    }
+
+    public static final String ERROR_PREFIX = "ERROR: ";
+
+    private static final byte SOH = 0x01;
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private static final long CR_BYTES = repeat(CR);
+    private static final long LF_BYTES = repeat(LF);
+
+    private static final int END_OF_INPUT = -1;
+    private static final int UNDERFLOW = -2;
+
+    private static final byte[] BEGIN_STRING_TAG = {'8', '='};
+    private static final byte[] BODY_LENGTH_TAG = {'9', '='};
+    private static final byte[] CHECKSUM_TAG = {'1', '0', '='};
+
+    // limits used by the body length framing.
+    private static final int MAXIMUM_BEGIN_STRING_LENGTH = 16;
+    private static final int MAXIMUM_BODY_LENGTH_DIGITS = 9;
+    private static final int MAXIMUM_CHECKSUM_LENGTH = 8;
+    private static final int MAXIMUM_SCANNED_MESSAGE_LENGTH = 1024 * 1024;
+    private static final int SCAN_SIZE = 4096;
+
+    /**
+     * The longest text in front of a message searched for a line timestamp, e.g.
+     * "20081020-12:00:00.123456789: ".
+     */
+    private static final int MAXIMUM_TIMESTAMP_PREFIX_LENGTH = 32;
+
+    // results of framing a message by its content.
+    private static final int FRAMED = 0;
+    private static final int NOT_A_MESSAGE = -3;
+    private static final int TOO_LONG = -4;
+
+    private final ByteBuffer buffer;
+    private final boolean endOfInput;
+    private final Charset charset;
+    private final Framing framing;
+
+    private int position;
+    private boolean underflow;
+
+    // the bytes of the current record. The view is the buffer itself unless
+    // the record spans multiple lines. In that case the lines are joined into
+    // the scratch buffer.
+    private ByteBuffer view;
+    private int viewStart;
+    private int viewEnd;
+    private boolean joined;
+    private byte[] scratch;
+
+    private int cursor;
+    private int recordStart;
+    private int lastLineEnd;
+    private int messageOffset;
+    private int messageEndInView;
+    private FIXDelimeter delimeter;
+    private boolean error;
+    private boolean correctErrorText;
+    private MessageFilter.Matcher matcher;
+    private LogLinePattern.Matcher lineMatcher;
+    private int rejectedCount;
+    private ByteSequence sequence;
+
+    // the content of a message found by the body length framing. The content is
+    // the message bytes without line terminators.
+    private ByteBuffer scratchView;
+    private int contentLength;
+    private int rawCursor;
+
+    /**
+     * @param buffer     the bytes to scan, from index 0 to the buffer's limit.
+     * @param endOfInput true if the last byte of the buffer is the last byte of
+     *                   the input.
+     */
+    public LogMessageScanner(ByteBuffer buffer, boolean endOfInput) {
+        this(buffer, endOfInput, Charset.defaultCharset());
+    }
+
+    public LogMessageScanner(ByteBuffer buffer, boolean endOfInput, Charset charset) {
+        this(buffer, endOfInput, charset, Framing.LINE);
+    }
+
+    public LogMessageScanner(ByteBuffer buffer, boolean endOfInput, Charset charset, Framing framing) {
+        // the words read while searching are always in big-endian order.
+        this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.endOfInput = endOfInput;
+        this.charset = charset;
+        this.framing = framing;
+    }
+
+    /**
+     * Finds the next message (or unreadable message) in the buffer. Messages
+     * rejected by the {@link #setFilter(MessageFilter) filter} are skipped.
+     *
+     * @return true if a message was found; false if no more messages are found in
+     *         the buffer. Check {@link #isUnderflow()} to see if more input is needed.
+     */
+    public boolean next() {
+        while (nextRecord()) {
+            if (error || matcher == null
+                    || matcher.matches(view, viewStart + messageOffset, messageEndInView, delimeter)) {
+                return true;
+            }
+            rejectedCount++;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of messages skipped because the filter rejected them.
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Sets the filter of the messages returned by {@link #next()}.
+     *
+     * @param filter the filter; null to return every message.
+     */
+    public void setFilter(MessageFilter filter) {
+        setMatcher(filter == null || filter.isEmpty() ? null : filter.createMatcher(charset));
+    }
+
+    /**
+     * Sets the filter using a matcher shared by the scanners of one thread.
+     */
+    void setMatcher(MessageFilter.Matcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Sets the pattern of the lines holding the messages.
+     *
+     * @param linePattern the pattern; null to start each message at the first '8='
+     *                    on a line.
+     */
+    public void setLinePattern(LogLinePattern linePattern) {
+        setLineMatcher(linePattern == null ? null : linePattern.createMatcher(charset));
+    }
+
+    /**
+     * Sets the line pattern using a matcher shared by the scanners of one thread.
+     */
+    void setLineMatcher(LogLinePattern.Matcher lineMatcher) {
+        this.lineMatcher = lineMatcher;
+    }
+
+    private boolean nextRecord() {
+        underflow = false;
+        error = false;
+        correctErrorText = false;
+
+        if (framing == Framing.BODY_LENGTH) {
+            return nextByBodyLength();
+        }
+
+        while (true) {
+            recordStart = position;
+            int lineEnd = findLineEnd(recordStart);
+            if (lineEnd < 0) {
+                return endOfRecords(lineEnd);
+            }
+
+            cursor = nextLineStart(lineEnd);
+
+            int beginString = lineMatcher == null ? indexOf(buffer, recordStart, lineEnd, BEGIN_STRING_TAG)
+                    : lineMatcher.find(buffer, recordStart, lineEnd);
+            if (beginString == -1) {
+                position = cursor;
+                continue;
+            }
+
+            view = buffer;
+            viewStart = recordStart;
+            viewEnd = lineEnd;
+            lastLineEnd = lineEnd;
+            joined = false;
+            messageOffset = beginString - recordStart;
+
+            // the fields are searched from the BeginString, as the line prefix may hold
+            // anything. Keep joining lines until we find the delimeter.
+            int bodyLength = indexOf(view, beginString, viewEnd, BODY_LENGTH_TAG);
+            if (bodyLength == -1 && indexOf(view, viewStart, beginString, BODY_LENGTH_TAG) != -1
+                    && indexOf(view, beginString, viewEnd, CHECKSUM_TAG) != -1) {
+                // the line holds a message whose body length field is in front of
+                // the BeginString.
+                error = true;
+                position = cursor;
+                return true;
+            }
+            while (bodyLength == -1) {
+                int searched = Math.max(messageOffset, viewEnd - viewStart - BODY_LENGTH_TAG.length + 1);
+                int result = appendNextLine();
+                if (result < 0) {
+                    return endOfRecords(result);
+                }
+                bodyLength = indexOf(view, viewStart + searched, viewEnd, BODY_LENGTH_TAG);
+            }
+
+            // the delimeter is detected again only if the messages stop using it.
+            if (delimeter == null || !delimeter.endsAt(view, viewStart + messageOffset, bodyLength)) {
+                delimeter = FIXDelimeter.detectBefore(view, viewStart + messageOffset, bodyLength);
+            }
+            byte[] checksumTag = delimeter.getChecksumTag();
+
+            int checksum = indexOf(view, viewStart + messageOffset, viewEnd, checksumTag);
+            while (checksum == -1) {
+                int searched = Math.max(messageOffset, viewEnd - viewStart - checksumTag.length + 1);
+                int result = appendNextLine();
+                if (result < 0) {
+                    return endOfRecords(result);
+                }
+                checksum = indexOf(view, viewStart + searched, viewEnd, checksumTag);
+            }
+
+            int messageEnd;
+            int checksumEnd = delimeter.indexIn(view, checksum + delimeter.length(), viewEnd);
+            if (checksumEnd == -1) {
+                messageEnd = checksum + checksumTag.length + 3;
+            } else {
+                messageEnd = checksumEnd + delimeter.length();
+            }
+
+            position = cursor;
+            if (messageEnd > viewEnd || messageEnd < viewStart + messageOffset) {
+                error = true;
+                correctErrorText = true;
+                return true;
+            }
+
+            messageEndInView = messageEnd;
+            return true;
+        }
+    }
+
+    private boolean nextByBodyLength() {
+        int limit = buffer.limit();
+        while (true) {
+            int start = indexOf(buffer, position, limit, BEGIN_STRING_TAG);
+            if (start == -1) {
+                if (endOfInput) {
+                    position = limit;
+                } else {
+                    // keep a trailing '8' in case the next bytes start with '='.
+                    position = Math.max(position, limit - 1);
+                    underflow = true;
+                }
+                return false;
+            }
+
+            if (frameByBodyLength(start)) {
+                return true;
+            }
+
+            int result = frameByContent(start);
+            if (result == FRAMED) {
+                return true;
+            } else if (result == UNDERFLOW) {
+                underflow = true;
+                position = start;
+                return false;
+            } else if (result == END_OF_INPUT) {
+                // the last message is incomplete.
+                position = limit;
+                return false;
+            } else if (result == TOO_LONG) {
+                int lineEnd = indexOfLineTerminator(buffer, start,
+                        Math.min(limit, start + MAXIMUM_SCANNED_MESSAGE_LENGTH));
+                error = true;
+                recordStart = start;
+                view = buffer;
+                viewStart = start;
+                viewEnd = lineEnd == -1 ? Math.min(limit, start + MAXIMUM_SCANNED_MESSAGE_LENGTH) : lineEnd;
+                cursor = viewEnd;
+                position = start + BEGIN_STRING_TAG.length;
+                return true;
+            }
+
+            // not a message... keep looking after the '8='.
+            position = start + BEGIN_STRING_TAG.length;
+        }
+    }
+
+    /**
+     * Frames a message that is completely in the buffer, has no line terminators in
+     * its header, has a single byte delimeter and has a correct BodyLength field. The scanner jumps straight from
+     * the BodyLength field to the CheckSum field, and nothing is copied.
+     *
+     * @return true if the message was framed.
+     */
+    private boolean frameByBodyLength(int start) {
+        int limit = buffer.limit();
+
+        int index = start + BEGIN_STRING_TAG.length;
+        int beginStringLimit = Math.min(limit, index + MAXIMUM_BEGIN_STRING_LENGTH);
+        while (index < beginStringLimit && isBeginStringByte(buffer.get(index))) {
+            index++;
+        }
+
+        if (index == start + BEGIN_STRING_TAG.length || index + 3 > limit) {
+            return false;
+        }
+
+        // a text delimeter fails here. Its BodyLength counts each delimeter as one
+        // byte, so the body length cannot be used to jump to the checksum.
+        byte messageDelimeter = buffer.get(index);
+        if (isBeginStringByte(messageDelimeter) || buffer.get(index + 1) != '9' || buffer.get(index + 2) != '=') {
+            return false;
+        }
+
+        index += 3;
+        int digits = index;
+        int digitsLimit = Math.min(limit, index + MAXIMUM_BODY_LENGTH_DIGITS);
+        int bodyLength = 0;
+        while (index < digitsLimit && isDigit(buffer.get(index))) {
+            bodyLength = bodyLength * 10 + (buffer.get(index) - '0');
+            index++;
+        }
+
+        if (index == digits || index >= limit || buffer.get(index) != messageDelimeter) {
+            return false;
+        }
+
+        // the body ends with the delimeter in front of the '10=' field.
+        FIXDelimeter found = FIXDelimeter.forByte(messageDelimeter);
+        byte[] checksumTag = found.getChecksumTag();
+        long checksum = (long) index + bodyLength;
+        if (checksum + checksumTag.length > limit) {
+            return false;
+        }
+
+        if (!matches(buffer, (int) checksum, checksumTag)) {
+            return false;
+        }
+
+        int valueStart = (int) checksum + checksumTag.length;
+        int end = indexOf(buffer, valueStart, Math.min(limit, valueStart + MAXIMUM_CHECKSUM_LENGTH), messageDelimeter);
+        if (end == -1) {
+            return false;
+        }
+        end++;
+
+        delimeter = found;
+        recordStart = start;
+        view = buffer;
+        viewStart = start;
+        viewEnd = end;
+        messageOffset = 0;
+        messageEndInView = end;
+        lastLineEnd = end;
+        joined = false;
+        cursor = end;
+        position = end;
+        return true;
+    }
+
+    /**
+     * Frames a message by copying its content, without line terminators, into the
+     * scratch buffer. The BodyLength field is used if it is present and correct.
+     * Otherwise the content is searched for the '10=' field.
+     *
+     * @return {@link #FRAMED}, {@link #NOT_A_MESSAGE}, {@link #TOO_LONG},
+     *         {@link #UNDERFLOW} or {@link #END_OF_INPUT}.
+     */
+    private int frameByContent(int start) {
+        rawCursor = start;
+        contentLength = 0;
+
+        // the BeginString value ends at the delimeter.
+        int index = BEGIN_STRING_TAG.length;
+        while (true) {
+            if (!fill(index + 1)) {
+                return outOfInput();
+            }
+            if (!isBeginStringByte(scratch[index])) {
+                break;
+            }
+            if (++index > BEGIN_STRING_TAG.length + MAXIMUM_BEGIN_STRING_LENGTH) {
+                return NOT_A_MESSAGE;
+            }
+        }
+
+        if (index == BEGIN_STRING_TAG.length) {
+            return NOT_A_MESSAGE;
+        }
+
+        // make sure a text delimeter is not mistaken for its first byte.
+        if (!fill(index + FIXDelimeter.MAXIMUM_LENGTH) && !endOfInput) {
+            return UNDERFLOW;
+        }
+
+        FIXDelimeter messageDelimeter = FIXDelimeter.detectAt(scratchView, index, contentLength);
+        byte[] checksumTag = messageDelimeter.getChecksumTag();
+        int bodyLengthTag = index + messageDelimeter.length();
+        int checksum = -1;
+
+        if (!fill(bodyLengthTag + 2)) {
+            return outOfInput();
+        }
+
+        if (scratch[bodyLengthTag] == '9' && scratch[bodyLengthTag + 1] == '=') {
+            int digits = bodyLengthTag + 2;
+            int bodyLength = 0;
+            int i = digits;
+            while (true) {
+                if (!fill(i + 1)) {
+                    return outOfInput();
+                }
+                if (i - digits == MAXIMUM_BODY_LENGTH_DIGITS || !isDigit(scratch[i])) {
+                    break;
+                }
+                bodyLength = bodyLength * 10 + (scratch[i] - '0');
+                i++;
+            }
+
+            // the body length only counts single byte delimeters correctly.
+            if (i > digits && messageDelimeter.length() == 1 && scratch[i] == scratch[index]) {
+                int candidate = i + bodyLength;
+                if (fill(candidate + checksumTag.length)) {
+                    if (matches(scratchView, candidate, checksumTag)) {
+                        checksum = candidate;
+                    }
+                } else if (!endOfInput) {
+                    return UNDERFLOW;
+                }
+            }
+        }
+
+        // the body length is missing or wrong... search for the checksum.
+        int searched = index;
+        while (checksum == -1) {
+            checksum = indexOf(scratchView, searched, contentLength, checksumTag);
+            if (checksum == -1) {
+                searched = Math.max(searched, contentLength - checksumTag.length + 1);
+                if (contentLength >= MAXIMUM_SCANNED_MESSAGE_LENGTH) {
+                    return TOO_LONG;
+                }
+
+                int before = contentLength;
+                fill(contentLength + SCAN_SIZE);
+                if (contentLength == before) {
+                    return outOfInput();
+                }
+            }
+        }
+
+        // the checksum value ends at the delimeter.
+        int valueStart = checksum + checksumTag.length;
+        int end = -1;
+        for (int i = valueStart; i <= valueStart + MAXIMUM_CHECKSUM_LENGTH; i++) {
+            if (!fill(i + messageDelimeter.length())) {
+                if (!endOfInput) {
+                    return UNDERFLOW;
+                }
+                break;
+            }
+            if (messageDelimeter.startsAt(scratchView, i, contentLength)) {
+                end = i + messageDelimeter.length();
+                break;
+            }
+        }
+
+        if (end == -1) {
+            end = Math.min(contentLength, checksum + checksumTag.length + 3);
+        }
+
+        int rawEnd = toRawIndex(start, end);
+        delimeter = messageDelimeter;
+        recordStart = start;
+        view = scratchView;
+        viewStart = 0;
+        viewEnd = end;
+        messageOffset = 0;
+        messageEndInView = end;
+        lastLineEnd = rawEnd;
+        joined = rawEnd - start != end;
+        cursor = rawEnd;
+        position = rawEnd;
+        return FRAMED;
+    }
+
+    private int outOfInput() {
+        return endOfInput ? END_OF_INPUT : UNDERFLOW;
+    }
+
+    /**
+     * Copies bytes from the buffer into the content until the content holds the
+     * wanted number of bytes. Line terminators are skipped.
+     *
+     * @return true if the content holds the wanted number of bytes; false if the
+     *         buffer ran out of bytes.
+     */
+    private boolean fill(int wanted) {
+        if (scratch == null || scratch.length < wanted) {
+            int newLength = scratch == null ? 1024 : scratch.length;
+            while (newLength < wanted) {
+                newLength *= 2;
+            }
+
+            byte[] grown = new byte[newLength];
+            if (scratch != null) {
+                System.arraycopy(scratch, 0, grown, 0, contentLength);
+            }
+            scratch = grown;
+            scratchView = ByteBuffer.wrap(scratch);
+        }
+
+        int limit = buffer.limit();
+        while (contentLength < wanted && rawCursor < limit) {
+            byte b = buffer.get(rawCursor++);
+            if (b != CR && b != LF) {
+                scratch[contentLength++] = b;
+            }
+        }
+        return contentLength >= wanted;
+    }
+
+    /**
+     * @return the index in the buffer following the given number of content bytes.
+     */
+    private int toRawIndex(int start, int contentBytes) {
+        int index = start;
+        int count = 0;
+        while (count < contentBytes) {
+            byte b = buffer.get(index++);
+            if (b != CR && b != LF) {
+                count++;
+            }
+        }
+        return index;
+    }
+
+    private static boolean isBeginStringByte(byte b) {
+        return isDigit(b) || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || b == '.';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * @return the index of the first byte not consumed by the scanner.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return true if the last call to {@link #next()} stopped because the buffer ended
+     *         before the end of the input. The scanner needs more bytes to continue.
+     */
+    public boolean isUnderflow() {
+        return underflow;
+    }
+
+    /**
+     * @return true if the current message could not be framed. The
+     *         {@link #getMessage()} returns the offending text prefixed with
+     *         {@link #ERROR_PREFIX}.
+     */
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * @return true if the current message was joined from more than one line.
+     */
+    public boolean isMultiLine() {
+        return joined;
+    }
+
+    /**
+     * @return the index of the '8=' that starts the current message.
+     */
+    public int getMessageStart() {
+        return recordStart + messageOffset;
+    }
+
+    /**
+     * @return the index following the last byte of the current message. If the
+     *         message {@link #isMultiLine() spans lines} then the line terminators
+     *         between the start and end are not part of the message.
+     */
+    public int getMessageEnd() {
+        if (error) {
+            return cursor;
+        }
+        return lastLineEnd - (viewEnd - messageEndInView);
+    }
+
+    /**
+     * Parses the UTC timestamp at the start of the current message's line, e.g. the
+     * "20081020-12:00:00.123: " a QuickFIX/J <code>FileLog</code> writes in front of
+     * each message when <code>FileIncludeTimeStampForMessages</code> is set. This is
+     * the local time the message was logged, i.e. received or sent.
+     * <p/>
+     * With the {@link Framing#BODY_LENGTH} framing the text in front of a message is
+     * not always kept in the buffer, so the timestamp may not be found.
+     *
+     * @return the timestamp in nanoseconds since the epoch;
+     *         {@link FIXHeaderScanner#NO_TIMESTAMP} if the line does not start with
+     *         one or the current message is an error.
+     * @see LogLinePattern#GROUP_TIMESTAMP
+     */
+    public long getLineTimestamp() {
+        if (error) {
+            return FIXHeaderScanner.NO_TIMESTAMP;
+        }
+
+        if (lineMatcher != null && framing == Framing.LINE) {
+            return lineMatcher.getTimestamp();
+        }
+
+        int messageStart = getMessageStart();
+        int limit = Math.max(0, messageStart - MAXIMUM_TIMESTAMP_PREFIX_LENGTH);
+        int lineStart = messageStart;
+        while (lineStart > limit && buffer.get(lineStart - 1) != LF && buffer.get(lineStart - 1) != CR) {
+            lineStart--;
+        }
+
+        if (lineStart == limit && limit > 0 && buffer.get(lineStart - 1) != LF && buffer.get(lineStart - 1) != CR) {
+            // the text in front of the message is too long to be a timestamp.
+            return FIXHeaderScanner.NO_TIMESTAMP;
+        }
+
+        int end = lineStart;
+        while (end < messageStart && isTimestampByte(buffer.get(end))) {
+            end++;
+        }
+
+        // the FileLog separates the timestamp from the message with ": ".
+        if (end > lineStart && buffer.get(end - 1) == ':') {
+            end--;
+        }
+
+        if (sequence == null) {
+            sequence = new ByteSequence();
+        }
+        return FIXHeaderScanner.parseTimestamp(sequence.wrap(buffer), lineStart, end);
+    }
+
+    /**
+     * @param group the name of a group of the {@link LogLinePattern}, e.g.
+     *              {@link LogLinePattern#GROUP_THREAD}.
+     * @return the text of the group in the prefix of the current message's line;
+     *         null if the scanner has no line pattern or the group did not match.
+     * @throws IllegalArgumentException if the pattern has no such group.
+     */
+    public String getLineField(String group) {
+        if (lineMatcher == null || framing != Framing.LINE || error) {
+            return null;
+        }
+        return lineMatcher.getGroup(group);
+    }
+
+    private static boolean isTimestampByte(byte b) {
+        return isDigit(b) || b == '-' || b == ':' || b == '.';
+    }
+
+    /**
+     * @return the delimeter used by the current message; null if no message has
+     *         been found.
+     */
+    public FIXDelimeter getDelimeter() {
+        return delimeter;
+    }
+
+    /**
+     * Sets the delimeter expected for the next message. Scanners that continue where
+     * another scanner stopped use this to keep the delimeter detected earlier in the
+     * same input.
+     *
+     * @param delimeter the delimeter found by the previous scanner, or null.
+     */
+    public void setDelimeter(FIXDelimeter delimeter) {
+        this.delimeter = delimeter;
+    }
+
+    /**
+     * Copies the current message out of the buffer. Each delimeter is replaced with
+     * the SOH character and a trailing SOH is added if the message does not end
+     * with one.
+     *
+     * @return the raw FIX message.
+     */
+    public String getMessage() {
+        if (error) {
+            byte[] text = copy(viewStart, viewEnd - viewStart, 0);
+            int length = text.length;
+            if (correctErrorText) {
+                length = delimeter.translate(text, length);
+            }
+            return ERROR_PREFIX + new String(text, 0, length, charset);
+        }
+
+        int start = viewStart + messageOffset;
+        int length = messageEndInView - start;
+        boolean missingSoh = length == 0 || !endsWithDelimeter(start, messageEndInView);
+
+        byte[] message = copy(start, length, missingSoh ? 1 : 0);
+        length = delimeter.translate(message, length);
+        if (missingSoh) {
+            message[length++] = SOH;
+        }
+        return new String(message, 0, length, charset);
+    }
+
+    private boolean endOfRecords(int result) {
+        if (result == UNDERFLOW) {
+            underflow = true;
+            position = recordStart;
+        } else {
+            position = buffer.limit();
+        }
+        return false;
+    }
+
+    private int appendNextLine() {
+        int lineEnd = findLineEnd(cursor);
+        if (lineEnd < 0) {
+            return lineEnd;
+        }
+
+        join(cursor, lineEnd);
+        lastLineEnd = lineEnd;
+        cursor = nextLineStart(lineEnd);
+        return lineEnd;
+    }
+
+    private void join(int from, int to) {
+        int length = to - from;
+        if (!joined) {
+            int viewLength = viewEnd - viewStart;
+            ensureScratchCapacity(viewLength + length);
+            copyInto(viewStart, viewLength, 0);
+            view = ByteBuffer.wrap(scratch);
+            viewStart = 0;
+            viewEnd = viewLength;
+            joined = true;
+        } else {
+            ensureScratchCapacity(viewEnd + length);
+        }
+
+        copyInto(from, length, viewEnd);
+        viewEnd += length;
+    }
+
+    private void ensureScratchCapacity(int capacity) {
+        if (scratch == null || scratch.length < capacity) {
+            int newLength = scratch == null ? 1024 : scratch.length;
+            while (newLength < capacity) {
+                newLength *= 2;
+            }
+
+            byte[] grown = new byte[newLength];
+            if (joined) {
+                System.arraycopy(scratch, 0, grown, 0, viewEnd);
+                view = ByteBuffer.wrap(grown);
+            }
+            scratch = grown;
+        }
+    }
+
+    private void copyInto(int from, int length, int scratchOffset) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(from);
+        source.get(scratch, scratchOffset, length);
+    }
+
+    private byte[] copy(int from, int length, int extra) {
+        byte[] bytes = new byte[length + extra];
+        ByteBuffer source = view.duplicate();
+        source.position(from);
+        source.get(bytes, 0, length);
+        return bytes;
+    }
+
+    private boolean endsWithDelimeter(int start, int end) {
+        return view.get(end - 1) == SOH || delimeter.endsAt(view, start, end);
+    }
+
+    /**
+     * @return the index of the line terminator (or the end of the input) that ends the
+     *         line starting at the given index; {@link #END_OF_INPUT} if there are no
+     *         more lines; {@link #UNDERFLOW} if the line is not terminated within the buffer.
+     */
+    private int findLineEnd(int from) {
+        int limit = buffer.limit();
+        int lineEnd = indexOfLineTerminator(buffer, from, limit);
+        if (lineEnd != -1) {
+            return lineEnd;
+        }
+
+        if (!endOfInput) {
+            return UNDERFLOW;
+        }
+        return from < limit ? limit : END_OF_INPUT;
+    }
+
+    private int nextLineStart(int lineEnd) {
+        int limit = buffer.limit();
+        if (lineEnd >= limit) {
+            return limit;
+        }
+
+        if (buffer.get(lineEnd) == CR && lineEnd + 1 < limit && buffer.get(lineEnd + 1) == LF) {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    /**
+     * @return the index of the first carriage return or line feed; -1 if not found.
+     */
+    static int indexOfLineTerminator(ByteBuffer bytes, int from, int to) {
+        int index = from;
+
+        // look at eight bytes at a time
+        while (index + 8 <= to) {
+            long word = bytes.getLong(index);
+            long found = matchingBytes(word, LF_BYTES) | matchingBytes(word, CR_BYTES);
+            if (found != 0) {
+                return index + (Long.numberOfLeadingZeros(found) >>> 3);
+            }
+            index += 8;
+        }
+
+        for (; index < to; index++) {
+            byte b = bytes.get(index);
+            if (b == LF || b == CR) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    static int indexOf(ByteBuffer bytes, int from, int to, byte value) {
+        long pattern = repeat(value);
+        int index = from;
+        while (index + 8 <= to) {
+            long found = matchingBytes(bytes.getLong(index), pattern);
+            if (found != 0) {
+                return index + (Long.numberOfLeadingZeros(found) >>> 3);
+            }
+            index += 8;
+        }
+
+        for (; index < to; index++) {
+            if (bytes.get(index) == value) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    static int indexOf(ByteBuffer bytes, int from, int to, byte[] pattern) {
+        int last = to - pattern.length;
+        byte first = pattern[0];
+        long firstBytes = repeat(first);
+        int index = from;
+
+        // find each candidate for the first byte eight bytes at a time
+        while (index + 8 <= last) {
+            long found = matchingBytes(bytes.getLong(index), firstBytes);
+            while (found != 0) {
+                int zeros = Long.numberOfLeadingZeros(found);
+                int candidate = index + (zeros >>> 3);
+                if (matches(bytes, candidate, pattern)) {
+                    return candidate;
+                }
+                found &= ~(Long.MIN_VALUE >>> zeros);
+            }
+            index += 8;
+        }
+
+        for (; index <= last; index++) {
+            if (bytes.get(index) == first && matches(bytes, index, pattern)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static long repeat(byte value) {
+        return (value & 0xFFL) * 0x0101010101010101L;
+    }
+
+    /**
+     * @return a word with the high bit set in each byte of the given word that equals
+     *         the matching byte of the pattern. The bytes are read in big-endian order,
+     *         so the first match is found by counting the leading zeros.
+     */
+    private static long matchingBytes(long word, long pattern) {
+        long bytes = word ^ pattern;
+        return ~(((bytes & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL) | bytes | 0x7F7F7F7F7F7F7F7FL);
+    }
+
+    private static boolean matches(ByteBuffer bytes, int index, byte[] pattern) {
+        if (pattern.length == 4) {
+            return bytes.getInt(index) == ((pattern[0] & 0xFF) << 24 | (pattern[1] & 0xFF) << 16
+                    | (pattern[2] & 0xFF) << 8 | (pattern[3] & 0xFF));
+        }
+
+        for (int offset = 1; offset < pattern.length; offset++) {
+            if (bytes.get(index + offset) != pattern[offset]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reads an input stream in blocks and adds the FIX messages found by a
+ * {@link LogMessageScanner} to a buffer. Bytes that do not yet hold a complete
+ * message are kept and scanned again once at least as many new bytes arrive. The
+ * block grows geometrically, so the cost of scanning stays linear even for very
+ * long lines or messages broken across many lines.
+ * <p/>
+ * A stream that has no more input ready, such as a pipe or a socket, is scanned
+ * early if the new bytes end a line, so the last message of a burst is not held
+ * back waiting for more input.
+ * <p/>
+ * The same scanner may read several streams one after another (e.g. the entries
+ * of a zip file). Each stream is scanned on its own, so a message left incomplete
+ * at the end of one stream is never joined with the next stream.
+ */
+class LogStreamScanner {
+
+    /**
+     * The initial number of bytes read from the stream at a time.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final ImportBuffer records;
+    private final LogMessageScanner.Framing framing;
+    private final Charset charset = Charset.defaultCharset();
+
+    // detected once and reused by each scanner until the messages change it.
+    private FIXDelimeter delimeter;
+    private MessageFilter.Matcher matcher;
+    private LogLinePattern.Matcher lineMatcher;
+
+    // written by the scanning thread, read by the importer.
+    private volatile long bytesRead;
+    private volatile long messageCount;
+
+    LogStreamScanner(ImportBuffer records, LogMessageScanner.Framing framing) {
+        this.records = records;
+        this.framing = framing;
+    }
+
+    /**
+     * @param filter the filter of the messages added to the buffer; null to add
+     *               every message.
+     */
+    void setFilter(MessageFilter filter) {
+        matcher = filter == null || filter.isEmpty() ? null : filter.createMatcher(charset);
+    }
+
+    /**
+     * @param linePattern the pattern of the lines holding the messages; null to
+     *                    start each message at the first '8=' on a line.
+     */
+    void setLinePattern(LogLinePattern linePattern) {
+        lineMatcher = linePattern == null ? null : linePattern.createMatcher(charset);
+    }
+
+    /**
+     * Scans the stream until the end of the stream is reached or the thread is
+     * interrupted. The buffer is flushed whenever the stream has no more input
+     * ready, so messages written slowly to the stream are not held back. The stream
+     * is not closed.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    void scan(InputStream inputStream) throws IOException {
+        byte[] bytes = new byte[BLOCK_SIZE];
+        int length = 0;
+
+        // the number of bytes left over by the last scan. The bytes are not
+        // scanned again until at least as many new bytes arrive.
+        int leftOver = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            if (length == bytes.length) {
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+
+            int read = inputStream.read(bytes, length, bytes.length - length);
+            boolean endOfInput = read == -1;
+            if (!endOfInput) {
+                length += read;
+                bytesRead += read;
+            }
+
+            boolean waiting = !endOfInput && inputStream.available() == 0;
+            boolean lineEnded = waiting && read > 0
+                    && LogMessageScanner.indexOfLineTerminator(ByteBuffer.wrap(bytes), length - read, length) != -1;
+            if (endOfInput || lineEnded || length == bytes.length || length - leftOver >= leftOver) {
+                LogMessageScanner scanner = new LogMessageScanner(
+                        ByteBuffer.wrap(bytes, 0, length), endOfInput, charset, framing);
+                scanner.setDelimeter(delimeter);
+                scanner.setMatcher(matcher);
+                scanner.setLineMatcher(lineMatcher);
+                while (scanner.next()) {
+                    String text = scanner.getMessage();
+                    add(scanner.isError() ? ImportRecord.error(text)
+                            : ImportRecord.message(text, scanner.getLineTimestamp()));
+                }
+                delimeter = scanner.getDelimeter();
+
+                int position = scanner.getPosition();
+                System.arraycopy(bytes, position, bytes, 0, length - position);
+                length -= position;
+                leftOver = length;
+            }
+
+            if (endOfInput) {
+                return;
+            }
+
+            if (waiting) {
+                // the next read is likely to block.
+                flush();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes read from every stream scanned so far.
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of messages added to the buffer so far.
+     */
+    long getMessageCount() {
+        return messageCount;
+    }
+
+    void add(ImportRecord record) {
+        try {
+            records.put(record);
+            if (record.getType() == ImportRecord.Type.MESSAGE) {
+                messageCount++;
+            }
+        } catch (InterruptedException e) {
+            // restore the interrupted state.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush() {
+        try {
+            records.flush();
+        } catch (InterruptedException e) {
+            // restore the interrupted state.
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -42,6 +42,8 @@ import org.opentradingsolutions.log4fix.datadictionary.DataDictionaryLoader;
 import org.opentradingsolutions.log4fix.ui.importer.ImporterController;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Brian M. Coyner
@@ -52,7 +54,8 @@ public class Main {
      * This is the main entry point when starting Log4FIX in "standalone" mode.
      * Use this starting point to import log files.
      *
-     * @param args may contain a single absolute path to a log file that automatically imports.
+     * @param args may contain absolute paths to log files that automatically import.
+     *             Several files are imported as one timeline, merged by SendingTime.
      * @throws Exception if the application fails to start.
      */
     public static void main(String[] args) throws Exception {
@@ -63,19 +66,28 @@ public class Main {
         MemoryLogModel memoryLogModel = new GlazedListsMemoryLogModel();
         ImporterMemoryLog importerMemoryLog = new ImporterMemoryLog(memoryLogModel, dictionaryLoader);
         ImporterModel model = new ImporterModel(importerMemoryLog, sessionIdResolver);
+        model.setParallelism(Runtime.getRuntime().availableProcessors());
+        model.setIndexStore(new LogFileIndexStore(new File(System.getProperty("user.home"), ".log4fix/index")));
+        model.setLazyLoadingThreshold(512L * 1024 * 1024);
+        model.setOffHeapThreshold(128L * 1024 * 1024);
+        model.setSpillDirectory(new File(System.getProperty("java.io.tmpdir")));
         ImporterController controller = new ImporterController(new Importer(), model);
 
-        Log4FIX forImport = Log4FIX.createForImport(memoryLogModel, controller);
+        Log4FIX forImport = Log4FIX.createForImport(model.getSessionMemoryLogModels(), controller);
         forImport.show();
 
-        if (args.length == 1) {
-            String pathToFile = args[0];
+        List<File> files = new ArrayList<File>();
+        for (String pathToFile : args) {
             File file = new File(pathToFile);
             if (file.exists()) {
-                controller.importWithFile(file);
+                files.add(file);
             } else {
                 importerMemoryLog.onEvent("File Not Found: " + pathToFile);
             }
         }
+
+        if (!files.isEmpty()) {
+            controller.importWithFiles(files);
+        }
     }
 }
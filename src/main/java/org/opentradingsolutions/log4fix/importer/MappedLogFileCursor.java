@@ -0,0 +1,215 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Steps through the FIX messages found in a range of a log file. The range is
+ * memory mapped one region at a time and each region is searched with a
+ * {@link LogMessageScanner}. A message that crosses the end of a region is scanned
+ * again at the start of the next region.
+ * <p/>
+ * The cursor does not close the channel.
+ */
+public class MappedLogFileCursor {
+
+    /**
+     * The number of bytes mapped at a time.
+     */
+    public static final int DEFAULT_MAPPING_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long end;
+    private final LogMessageScanner.Framing framing;
+
+    private int mappingSize;
+    private long position;
+    private LogMessageScanner scanner;
+
+    // the delimeter detected by the previous scanner.
+    private FIXDelimeter delimeter;
+    private MessageFilter.Matcher matcher;
+    private LogLinePattern.Matcher lineMatcher;
+
+    /**
+     * Creates a cursor over the entire file.
+     */
+    public MappedLogFileCursor(FileChannel channel) throws IOException {
+        this(channel, 0, channel.size(), DEFAULT_MAPPING_SIZE);
+    }
+
+    /**
+     * @param channel     the log file.
+     * @param start       the position of the first byte to scan. This should be the
+     *                    start of a line.
+     * @param end         the position following the last byte to scan.
+     * @param mappingSize the number of bytes to map at a time.
+     */
+    public MappedLogFileCursor(FileChannel channel, long start, long end, int mappingSize) {
+        this(channel, start, end, mappingSize, LogMessageScanner.Framing.LINE);
+    }
+
+    /**
+     * @param channel     the log file.
+     * @param start       the position of the first byte to scan. This should be the
+     *                    start of a line.
+     * @param end         the position following the last byte to scan.
+     * @param mappingSize the number of bytes to map at a time.
+     * @param framing     how the scanner finds each message.
+     */
+    public MappedLogFileCursor(FileChannel channel, long start, long end, int mappingSize,
+                               LogMessageScanner.Framing framing) {
+        this.channel = channel;
+        this.end = end;
+        this.mappingSize = mappingSize;
+        this.framing = framing;
+        position = start;
+    }
+
+    /**
+     * @param filter the filter of the messages found by {@link #next()}; null to
+     *               find every message.
+     */
+    public void setFilter(MessageFilter filter) {
+        matcher = filter == null || filter.isEmpty() ? null : filter.createMatcher(Charset.defaultCharset());
+    }
+
+    /**
+     * @param linePattern the pattern of the lines holding the messages; null to
+     *                    start each message at the first '8=' on a line.
+     */
+    public void setLinePattern(LogLinePattern linePattern) {
+        lineMatcher = linePattern == null ? null : linePattern.createMatcher(Charset.defaultCharset());
+    }
+
+    /**
+     * Moves to the next message in the range.
+     *
+     * @return true if a message was found; false if there are no more messages.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (scanner == null) {
+                if (position >= end) {
+                    return false;
+                }
+
+                int length = (int) Math.min(mappingSize, end - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                scanner = new LogMessageScanner(region, position + length == end,
+                        Charset.defaultCharset(), framing);
+                scanner.setDelimeter(delimeter);
+                scanner.setMatcher(matcher);
+                scanner.setLineMatcher(lineMatcher);
+            }
+
+            if (scanner.next()) {
+                return true;
+            }
+
+            delimeter = scanner.getDelimeter();
+
+            if (!scanner.isUnderflow()) {
+                position = end;
+                scanner = null;
+                return false;
+            }
+
+            if (scanner.getPosition() == 0) {
+                // a single message does not fit in the region.
+                if (mappingSize == Integer.MAX_VALUE) {
+                    throw new IOException("Unable to find the end of the message at byte " + position + ".");
+                }
+                mappingSize = (int) Math.min(Integer.MAX_VALUE, mappingSize * 2L);
+            }
+
+            position += scanner.getPosition();
+            scanner = null;
+        }
+    }
+
+    /**
+     * @return the file position following the bytes scanned so far.
+     */
+    public long getPosition() {
+        return scanner == null ? position : position + scanner.getPosition();
+    }
+
+    /**
+     * @return the file position of the '8=' that starts the current message.
+     */
+    public long getMessageStart() {
+        return position + scanner.getMessageStart();
+    }
+
+    /**
+     * @return the file position following the last byte of the current message.
+     */
+    public long getMessageEnd() {
+        return position + scanner.getMessageEnd();
+    }
+
+    /**
+     * @return the current message with SOH delimeters.
+     * @see LogMessageScanner#getMessage()
+     */
+    public String getMessage() {
+        return scanner.getMessage();
+    }
+
+    /**
+     * @return the current message as an import record holding the message's file
+     *         position and line timestamp; an error record if the scanner could not extract the message.
+     */
+    public ImportRecord getRecord() {
+        String text = scanner.getMessage();
+        if (scanner.isError()) {
+            return ImportRecord.error(text);
+        }
+        return ImportRecord.message(text, getMessageStart(), getMessageEnd(), scanner.getLineTimestamp());
+    }
+
+    /**
+     * @return the scanner positioned at the current message.
+     */
+    public LogMessageScanner getScanner() {
+        return scanner;
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import org.opentradingsolutions.log4fix.core.LogEvent;
+import quickfix.SessionID;
+import quickfix.field.MsgType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports a log file that may be larger than the heap. No {@link
+ * org.opentradingsolutions.log4fix.core.LogMessage}s are built by the import.
+ * Instead each session found in the file gets a {@link MappedMemoryLogModel} holding
+ * the file offset of each of its messages, and the messages are built when the view
+ * shows them.
+ * <p/>
+ * The offsets are taken from the file's {@link LogFileIndex}. If the model's
+ * {@link LogFileIndexStore} does not hold an index of the unchanged file, the file
+ * is scanned once to build the index, which is then saved. A filtered import
+ * always scans the file and only keeps the offsets of the accepted messages; that
+ * index is written to a temporary file and is not saved. Either way the index is
+ * written to disk as it is built and is read through a mapped buffer, so only the
+ * offsets of each session are held on the heap.
+ * <p/>
+ * Sessions and directions are decided the same way as by the {@link SessionTracker}:
+ * both directions of a pair of CompIDs are one session, and the first message of a
+ * session was sent by the initiator.
+ * <p/>
+ * Interrupting the thread running this importer cancels the import. Models are only
+ * added once the whole file has been indexed.
+ */
+public class MappedLogFileImporter implements Runnable, ImportProgressSource {
+
+    private final ImporterModel model;
+    private final File file;
+    private final int cacheSize;
+
+    // written while the file is scanned, read by the importer.
+    private volatile long bytesRead;
+    private volatile long messageCount;
+
+    /**
+     * @param model the importer model receiving the sessions and events.
+     * @param file  a non-null log file. The file is opened when the {@link #run()}
+     *              method executes.
+     * @throws IllegalArgumentException if the file is null.
+     */
+    public MappedLogFileImporter(ImporterModel model, File file) {
+        this(model, file, MappedMemoryLogModel.DEFAULT_CACHE_SIZE);
+    }
+
+    MappedLogFileImporter(ImporterModel model, File file, int cacheSize) {
+        if (file == null) {
+            throw new IllegalArgumentException("The log file is null.");
+        }
+
+        this.model = model;
+        this.file = file;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * @return the number of bytes scanned while indexing the file; the size of the
+     *         file once its index is loaded.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of messages indexed so far.
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public void run() {
+        ImporterMemoryLog logger = model.getImporterMemoryLog();
+
+        logger.onEvent(LogMessageBuilder.EVENT_START + ": " + new Date());
+        if (model.isFiltered()) {
+            logger.onEvent(LogMessageBuilder.EVENT_FILTER + ": " + model.getFilter());
+        }
+        int messageCount = 0;
+        try {
+            LogFileIndex index = loadIndex(logger);
+            if (index != null) {
+                messageCount = addSessions(logger, index);
+            }
+        } catch (ClosedByInterruptException e) {
+            // the import was canceled while reading the file.
+        } catch (InterruptedException e) {
+            // the import was canceled.
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.onEvent(LogMessageScanner.ERROR_PREFIX + e.getMessage());
+        } finally {
+            if (Thread.currentThread().isInterrupted()) {
+                logger.onEvent(LogMessageBuilder.EVENT_CANCELED + ": the import is partial");
+            }
+            logger.onEvent(LogMessageBuilder.EVENT_MESSAGES_IMPORTED + ": " + messageCount);
+            logger.onEvent(LogMessageBuilder.EVENT_COMPLETE + ": " + new Date());
+        }
+    }
+
+    /**
+     * @return the index of the file; null if the import was canceled.
+     */
+    private LogFileIndex loadIndex(ImporterMemoryLog logger) throws IOException {
+        LogMessageScanner.Framing framing = model.getFraming();
+        LogFileIndexStore indexStore = model.isFiltered() || model.getLinePattern() != null
+                ? null : model.getIndexStore();
+        if (indexStore != null) {
+            LogFileIndex index = indexStore.load(file, framing);
+            if (index != null) {
+                logger.onEvent(LogFileIndexStore.EVENT_INDEX_LOADED + ": " + index.size() + " messages");
+                bytesRead = file.length();
+                messageCount = index.size();
+                return index;
+            }
+        }
+
+        LogFileIndexer indexer = null;
+        if (indexStore != null) {
+            try {
+                indexer = indexStore.createIndexer(file, framing);
+            } catch (IOException e) {
+                logger.onEvent(LogMessageScanner.ERROR_PREFIX + "Unable to save the index: " + e.getMessage());
+            }
+        }
+        if (indexer == null) {
+            indexer = new LogFileIndexer(LogFileIndex.Key.of(file, framing));
+            indexStore = null;
+        }
+
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            FileChannel channel = inputStream.getChannel();
+            MappedLogFileCursor cursor = new MappedLogFileCursor(channel, 0, channel.size(),
+                    MappedLogFileCursor.DEFAULT_MAPPING_SIZE, framing);
+            cursor.setFilter(model.getFilter());
+            cursor.setLinePattern(model.getLinePattern());
+            while (cursor.next()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                ImportRecord record = cursor.getRecord();
+                indexer.add(record);
+                if (record.getType() == ImportRecord.Type.MESSAGE) {
+                    messageCount++;
+                }
+                bytesRead = cursor.getPosition();
+            }
+            bytesRead = channel.size();
+
+            if (indexStore == null) {
+                return indexer.build();
+            }
+
+            File indexFile;
+            try {
+                indexFile = indexStore.save(file, indexer);
+            } catch (IOException e) {
+                throw new IOException("Unable to save the index: " + e.getMessage());
+            }
+            logger.onEvent(LogFileIndexStore.EVENT_INDEX_SAVED + ": " + indexFile);
+            return LogFileIndex.read(indexFile);
+        } finally {
+            indexer.close();
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages in the sessions.
+     */
+    private int addSessions(ImporterMemoryLog logger, LogFileIndex index)
+            throws IOException, InterruptedException {
+
+        // the session and direction of each of the index's sessions.
+        int[] sessionOfIndexSession = new int[index.getSessionCount()];
+        boolean[] incomingOfIndexSession = new boolean[index.getSessionCount()];
+        String[] counterpartyOfIndexSession = new String[index.getSessionCount()];
+        BitSet found = new BitSet(index.getSessionCount());
+
+        Map<String, Integer> sessionsByKey = new HashMap<String, Integer>();
+        List<SessionID> sessionIds = new ArrayList<SessionID>();
+        List<String> initiators = new ArrayList<String>();
+
+        // the number of messages of each session; there are never more sessions
+        // than sessions of the index.
+        int[] counts = new int[index.getSessionCount()];
+
+        int error = 0;
+        for (int i = 0; i < index.size(); i++) {
+            while (error < index.getErrorCount() && index.getErrorPosition(error) == i) {
+                logger.onEvent(index.getError(error++));
+            }
+
+            int indexSession = index.getSession(i);
+            if (!found.get(indexSession)) {
+                found.set(indexSession);
+
+                String beginString = index.getBeginString(indexSession);
+                String sender = index.getSenderCompId(indexSession);
+                String target = index.getTargetCompId(indexSession);
+
+                // the same key for both directions.
+                String key = sender.compareTo(target) <= 0
+                        ? beginString + '\u0001' + sender + '\u0001' + target
+                        : beginString + '\u0001' + target + '\u0001' + sender;
+
+                Integer session = sessionsByKey.get(key);
+                if (session == null) {
+                    session = sessionIds.size();
+                    sessionsByKey.put(key, session);
+                    sessionIds.add(createSessionId(index.getMessageType(i), beginString, sender, target));
+                    initiators.add(sender);
+                }
+
+                sessionOfIndexSession[indexSession] = session;
+                incomingOfIndexSession[indexSession] = !sender.equals(initiators.get(session));
+                counterpartyOfIndexSession[indexSession] = incomingOfIndexSession[indexSession] ? sender : target;
+            }
+
+            counts[sessionOfIndexSession[indexSession]]++;
+        }
+
+        while (error < index.getErrorCount()) {
+            logger.onEvent(index.getError(error++));
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        // split the offsets by session, keeping the file order.
+        long[][] offsets = new long[sessionIds.size()][];
+        BitSet[] incoming = new BitSet[sessionIds.size()];
+        int[] next = new int[sessionIds.size()];
+        for (int session = 0; session < sessionIds.size(); session++) {
+            offsets[session] = new long[counts[session]];
+            incoming[session] = new BitSet(counts[session]);
+        }
+
+        // the messages are not parsed, so the latency comes from the index.
+        LatencyStatistics latency = model.getLatencyStatistics();
+        for (int i = 0; i < index.size(); i++) {
+            int indexSession = index.getSession(i);
+            int session = sessionOfIndexSession[indexSession];
+            int position = next[session]++;
+            offsets[session][position] = index.getOffset(i);
+            if (incomingOfIndexSession[indexSession]) {
+                incoming[session].set(position);
+            }
+            latency.record(counterpartyOfIndexSession[indexSession], incomingOfIndexSession[indexSession],
+                    index.getReceiveTime(i), index.getSendingTime(i));
+        }
+
+        for (int session = 0; session < sessionIds.size(); session++) {
+            SessionID sessionId = sessionIds.get(session);
+
+            MappedMemoryLogModel memoryLogModel = new MappedMemoryLogModel(file, offsets[session], incoming[session],
+                    sessionId, logger.loadDataDictionary(sessionId), model.getFraming(), cacheSize);
+            memoryLogModel.addLogEvent(new LogEvent("Initiator Session Id: " + sessionId));
+
+            model.getSessionMemoryLogModels().addMemoryLogModel(sessionId, memoryLogModel);
+            logger.onEvent("Session Found: " + sessionId);
+        }
+
+        return index.size();
+    }
+
+    private SessionID createSessionId(String messageType, String beginString, String sender, String target) {
+        if (MsgType.LOGON.equals(messageType)) {
+            return new SessionID(beginString, sender, target);
+        }
+        // the logon message is missing... resolve the session Id.
+        return model.getSessionIdResolver().resolveSessionId(beginString, sender, target);
+    }
+}
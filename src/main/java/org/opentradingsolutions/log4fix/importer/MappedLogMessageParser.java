@@ -0,0 +1,264 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Parses a log file by memory mapping the file and scanning the raw bytes for FIX
+ * messages. This parser produces the same messages as the {@link LogMessageParser}
+ * but does not decode every line into a string. Only the bytes of a FIX message
+ * are copied out of the file, and only when the message is added to the buffer.
+ * <p/>
+ * Large files are mapped one region at a time by a {@link MappedLogFileCursor}.
+ * <p/>
+ * If the parser is given a {@link LogFileIndexStore} it also indexes the file and
+ * saves the index once the whole file is parsed.
+ * <p/>
+ * A parser given a {@link #setStart(long) start} position resumes an earlier import
+ * of the file and parses only the rest of the file. The rest is not indexed.
+ * <p/>
+ * Interrupting the thread causes the parser to close the buffer and gracefully
+ * terminate, just like the {@link LogMessageParser}.
+ */
+public class MappedLogMessageParser implements Runnable, ImportProgressSource {
+
+    private final File file;
+    private final ImportBuffer records;
+    private final LogMessageScanner.Framing framing;
+    private final int mappingSize;
+    private final LogFileIndexStore indexStore;
+    private MessageFilter filter;
+    private LogLinePattern linePattern;
+    private long start;
+
+    // written by the parser, read by the importer.
+    private volatile long bytesRead;
+    private volatile long messageCount;
+
+    /**
+     * @param file        a non-null log file. The file is opened when the {@link #run()}
+     *                    method executes.
+     * @param records     a non-null, empty buffer.
+     * @throws IllegalArgumentException if the file is null or the buffer is null.
+     * @throws IllegalStateException    if the buffer is not empty.
+     */
+    public MappedLogMessageParser(File file, ImportBuffer records) {
+        this(file, records, LogMessageScanner.Framing.LINE);
+    }
+
+    /**
+     * @param framing how the scanner finds each message.
+     * @see #MappedLogMessageParser(File, ImportBuffer)
+     */
+    public MappedLogMessageParser(File file, ImportBuffer records, LogMessageScanner.Framing framing) {
+        this(file, records, framing, MappedLogFileCursor.DEFAULT_MAPPING_SIZE);
+    }
+
+    /**
+     * @param indexStore saves the index of the file; may be null.
+     * @see #MappedLogMessageParser(File, ImportBuffer)
+     */
+    public MappedLogMessageParser(File file, ImportBuffer records, LogMessageScanner.Framing framing,
+                                  LogFileIndexStore indexStore) {
+        this(file, records, framing, MappedLogFileCursor.DEFAULT_MAPPING_SIZE, indexStore);
+    }
+
+    MappedLogMessageParser(File file, ImportBuffer records, int mappingSize) {
+        this(file, records, LogMessageScanner.Framing.LINE, mappingSize);
+    }
+
+    MappedLogMessageParser(File file, ImportBuffer records, LogMessageScanner.Framing framing, int mappingSize) {
+        this(file, records, framing, mappingSize, null);
+    }
+
+    MappedLogMessageParser(File file, ImportBuffer records, LogMessageScanner.Framing framing, int mappingSize,
+                           LogFileIndexStore indexStore) {
+
+        if (file == null) {
+            throw new IllegalArgumentException("The log file is null.");
+        }
+
+        if (records == null) {
+            throw new IllegalArgumentException("The buffer is null.");
+        }
+
+        if (!records.isEmpty()) {
+            throw new IllegalStateException("The buffer must be initially empty.");
+        }
+
+        this.file = file;
+        this.records = records;
+        this.framing = framing;
+        this.mappingSize = mappingSize;
+        this.indexStore = indexStore;
+    }
+
+    /**
+     * Must be called before the parser runs. The file is not indexed while it is
+     * filtered, because the index would be missing the rejected messages.
+     *
+     * @param filter the filter of the messages added to the buffer; null to add
+     *               every message.
+     */
+    public void setFilter(MessageFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Must be called before the parser runs. The file is not indexed when a line
+     * pattern is used, because the index is shared by imports without the pattern.
+     *
+     * @param linePattern the pattern of the lines holding the messages; null to
+     *                    start each message at the first '8=' on a line.
+     */
+    public void setLinePattern(LogLinePattern linePattern) {
+        this.linePattern = linePattern;
+    }
+
+    /**
+     * Must be called before the parser runs.
+     *
+     * @param start the file position where parsing starts, e.g. the offset of an
+     *              {@link ImportCheckpoint}. Nothing is indexed unless parsing starts
+     *              at the beginning of the file.
+     */
+    public void setStart(long start) {
+        this.start = start;
+        bytesRead = start;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public void run() {
+        FileInputStream inputStream = null;
+        LogFileIndexer indexer = null;
+        try {
+            boolean filtered = filter != null && !filter.isEmpty();
+            if (indexStore != null && !filtered && linePattern == null && start == 0) {
+                indexer = createIndexer();
+            }
+            inputStream = new FileInputStream(file);
+            if (parse(inputStream.getChannel(), indexer) && indexer != null) {
+                saveIndex(indexer);
+            }
+        } catch (ClosedByInterruptException e) {
+            // the import was canceled while mapping the file.
+        } catch (IOException e) {
+            addRecordToBuffer(ImportRecord.error(LogMessageScanner.ERROR_PREFIX + e.getMessage()));
+        } finally {
+            if (indexer != null) {
+                indexer.close();
+            }
+            records.close();
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ohWell) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the whole file was parsed.
+     */
+    private boolean parse(FileChannel channel, LogFileIndexer indexer) throws IOException {
+        MappedLogFileCursor cursor = new MappedLogFileCursor(channel, Math.min(start, channel.size()),
+                channel.size(), mappingSize, framing);
+        cursor.setFilter(filter);
+        cursor.setLinePattern(linePattern);
+        while (cursor.next()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+
+            ImportRecord record = cursor.getRecord();
+            if (indexer != null) {
+                indexer.add(record);
+            }
+            addRecordToBuffer(record);
+            bytesRead = cursor.getPosition();
+        }
+        bytesRead = cursor.getPosition();
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * @return null if the index cannot be written; the file is then imported
+     *         without saving an index.
+     */
+    private LogFileIndexer createIndexer() {
+        try {
+            return indexStore.createIndexer(file, framing);
+        } catch (IOException e) {
+            addRecordToBuffer(ImportRecord.error(LogMessageScanner.ERROR_PREFIX
+                    + "Unable to save the index: " + e.getMessage()));
+            return null;
+        }
+    }
+
+    private void saveIndex(LogFileIndexer indexer) {
+        try {
+            File indexFile = indexStore.save(file, indexer);
+            addRecordToBuffer(ImportRecord.event(LogFileIndexStore.EVENT_INDEX_SAVED + ": " + indexFile));
+        } catch (IOException e) {
+            addRecordToBuffer(ImportRecord.error(LogMessageScanner.ERROR_PREFIX
+                    + "Unable to save the index: " + e.getMessage()));
+        }
+    }
+
+    private void addRecordToBuffer(ImportRecord record) {
+        try {
+            records.put(record);
+            if (record.getType() == ImportRecord.Type.MESSAGE) {
+                messageCount++;
+            }
+        } catch (InterruptedException e) {
+            // restore the interrupted state.
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import ca.odell.glazedlists.BasicEventList;
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.impl.ThreadSafeList;
+import org.opentradingsolutions.log4fix.core.LogEvent;
+import org.opentradingsolutions.log4fix.core.LogMessage;
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A memory log model for log files that do not fit in memory. The model only holds
+ * the file offset and direction of each message. A {@link LogMessage} is built from
+ * the memory mapped file when the message is asked for, and the most recently used
+ * messages are kept in a bounded cache. A table showing the messages therefore only
+ * builds the messages of the rows it shows.
+ * <p/>
+ * The {@link #getMessages() messages} are not an <code>EventList</code>, so the view
+ * does not filter or sort them; doing so would build every message. Listeners are
+ * told about added or cleared messages with a {@link #PROPERTY_MESSAGES} property
+ * change.
+ * <p/>
+ * The file is mapped in overlapping regions when the model is created, so the model
+ * does not keep the file open. The file must not change while the model is used.
+ * Clearing the model drops the regions and the offsets; a region is unmapped when
+ * it is garbage collected.
+ */
+public class MappedMemoryLogModel implements MemoryLogModel {
+
+    public static final String PROPERTY_MESSAGES = "messages";
+
+    /**
+     * The number of built messages kept by the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    static final long REGION_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * The number of bytes each region shares with the next region, so a message
+     * starting near the end of a region is complete in that region.
+     */
+    private static final int REGION_OVERLAP = 2 * 1024 * 1024;
+
+    private final DataDictionary dictionary;
+    private final LogMessageScanner.Framing framing;
+    private final long fileSize;
+    private final EventList<LogEvent> events;
+    private final PropertyChangeSupport support;
+    private final List<LogMessage> messages;
+
+    // guarded by cache
+    private long[] offsets;
+    private BitSet incoming;
+    private MappedByteBuffer[] regions;
+    private final LinkedHashMap<Integer, LogMessage> cache;
+    private final List<LogMessage> appended;
+    private int mappedCount;
+
+    private volatile SessionID sessionId;
+
+    /**
+     * Creates a model caching {@link #DEFAULT_CACHE_SIZE} messages.
+     *
+     * @see #MappedMemoryLogModel(File, long[], BitSet, SessionID, DataDictionary,
+     *      LogMessageScanner.Framing, int)
+     */
+    public MappedMemoryLogModel(File file, long[] offsets, BitSet incoming, SessionID sessionId,
+                                DataDictionary dictionary, LogMessageScanner.Framing framing) throws IOException {
+        this(file, offsets, incoming, sessionId, dictionary, framing, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param file       the log file holding the messages.
+     * @param offsets    the file position of the '8=' starting each message, in
+     *                   message order. The array is owned by the model.
+     * @param incoming   the direction of each message. The set is owned by the model.
+     * @param sessionId  the session of the messages.
+     * @param dictionary the data dictionary of the session; may be null.
+     * @param framing    the framing used to find the messages.
+     * @param cacheSize  the number of built messages kept in memory.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public MappedMemoryLogModel(File file, long[] offsets, BitSet incoming, SessionID sessionId,
+                                DataDictionary dictionary, LogMessageScanner.Framing framing,
+                                final int cacheSize) throws IOException {
+
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("The cache size must be at least one: " + cacheSize);
+        }
+
+        this.offsets = offsets;
+        this.incoming = incoming;
+        this.sessionId = sessionId;
+        this.dictionary = dictionary;
+        this.framing = framing;
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            fileSize = channel.size();
+            regions = new MappedByteBuffer[(int) ((fileSize + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = i * REGION_SIZE;
+                long length = Math.min(fileSize - start, REGION_SIZE + REGION_OVERLAP);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        } finally {
+            in.close();
+        }
+
+        cache = new LinkedHashMap<Integer, LogMessage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, LogMessage> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        appended = new ArrayList<LogMessage>();
+        mappedCount = offsets.length;
+
+        messages = new Messages();
+        events = new ThreadSafeList<LogEvent>(new BasicEventList<LogEvent>());
+        support = new PropertyChangeSupport(this);
+    }
+
+    public SessionID getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(SessionID sessionId) {
+        this.sessionId = sessionId;
+        support.firePropertyChange("sessionId", null, sessionId);
+    }
+
+    /**
+     * @return a read-only, random access list building each message on demand.
+     */
+    public List<LogMessage> getMessages() {
+        return messages;
+    }
+
+    public List<LogEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Adds a message after the mapped messages. Added messages are kept in memory.
+     */
+    public void addLogMessage(LogMessage logMessage) {
+        synchronized (cache) {
+            appended.add(logMessage);
+        }
+        support.firePropertyChange(PROPERTY_MESSAGES, null, null);
+    }
+
+    public void addLogEvent(LogEvent logEvent) {
+        events.add(logEvent);
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            mappedCount = 0;
+            offsets = new long[0];
+            incoming = new BitSet();
+            regions = new MappedByteBuffer[0];
+            cache.clear();
+            appended.clear();
+        }
+        events.clear();
+        setSessionId(null);
+        support.firePropertyChange(PROPERTY_MESSAGES, null, null);
+    }
+
+    public void addPropertyChangeListener(PropertyChangeListener propertyChangeListener) {
+        support.addPropertyChangeListener(propertyChangeListener);
+    }
+
+    /**
+     * @return the number of built messages held by the cache.
+     */
+    int getCachedMessageCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private LogMessage getMappedMessage(int index) {
+        LogMessage message = cache.get(index);
+        if (message == null) {
+            message = new LogMessage(index, incoming.get(index), sessionId, readMessage(offsets[index]), dictionary);
+            cache.put(index, message);
+        }
+        return message;
+    }
+
+    private String readMessage(long offset) {
+        int region = (int) (offset / REGION_SIZE);
+        long regionStart = region * REGION_SIZE;
+
+        ByteBuffer bytes = regions[region].duplicate();
+        bytes.position((int) (offset - regionStart));
+        boolean endOfInput = regionStart + bytes.limit() == fileSize;
+
+        LogMessageScanner scanner = new LogMessageScanner(bytes.slice(), endOfInput, Charset.defaultCharset(), framing);
+        if (!scanner.next()) {
+            return LogMessageScanner.ERROR_PREFIX + "The message at byte " + offset + " was not found.";
+        }
+        return scanner.getMessage();
+    }
+
+    /**
+     * The mapped messages followed by the added messages.
+     */
+    private class Messages extends AbstractList<LogMessage> implements RandomAccess {
+
+        @Override
+        public LogMessage get(int index) {
+            synchronized (cache) {
+                if (index < 0 || index >= mappedCount + appended.size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+                }
+
+                if (index < mappedCount) {
+                    return getMappedMessage(index);
+                }
+                return appended.get(index - mappedCount);
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (cache) {
+                return mappedCount + appended.size();
+            }
+        }
+    }
+}
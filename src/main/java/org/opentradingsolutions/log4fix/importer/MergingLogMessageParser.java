@@ -0,0 +1,280 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import quickfix.field.SendingTime;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Parses several log files as one timeline. Each file is parsed by its own thread
+ * into a small read-ahead buffer, and the messages are merged by SendingTime
+ * (tag 52) into the import buffer. Messages with the same SendingTime are taken
+ * from the files in the order the files were given.
+ * <p/>
+ * The merge is streaming: only the read-ahead buffer of each file is held in
+ * memory, so the memory used depends on the number of files and not on the size
+ * of the files. The files are expected to be in SendingTime order, as written by
+ * a FIX engine. A message without a SendingTime keeps its place after the previous
+ * message of its file.
+ * <p/>
+ * Errors and events found in a file are added to the import buffer as soon as they
+ * are read, prefixed with the name of the file.
+ * <p/>
+ * Interrupting the thread stops every file's parser, closes the buffer and
+ * gracefully terminates, just like the {@link LogMessageParser}.
+ */
+public class MergingLogMessageParser implements Runnable, ImportProgressSource {
+
+    /**
+     * The number of messages read ahead from each file.
+     */
+    public static final int DEFAULT_READ_AHEAD_CAPACITY = 1024;
+
+    private static final long READ_AHEAD_BYTE_CAPACITY = 1024 * 1024;
+
+    private final List<File> files;
+    private final ImportBuffer records;
+    private final LogMessageScanner.Framing framing;
+    private final int readAheadCapacity;
+    private MessageFilter filter;
+    private LogLinePattern linePattern;
+
+    // the parsers of the files, read by the importer.
+    private final List<ImportProgressSource> fileParsers = new CopyOnWriteArrayList<ImportProgressSource>();
+    private volatile long messageCount;
+
+    /**
+     * @param files   the non-empty list of log files. The files are opened when the
+     *                {@link #run()} method executes.
+     * @param records a non-null, empty buffer.
+     * @throws IllegalArgumentException if the files are null or empty or the buffer is null.
+     * @throws IllegalStateException    if the buffer is not empty.
+     */
+    public MergingLogMessageParser(List<File> files, ImportBuffer records, LogMessageScanner.Framing framing) {
+        this(files, records, framing, DEFAULT_READ_AHEAD_CAPACITY);
+    }
+
+    /**
+     * @param readAheadCapacity the number of messages read ahead from each file.
+     * @see #MergingLogMessageParser(List, ImportBuffer, LogMessageScanner.Framing)
+     */
+    public MergingLogMessageParser(List<File> files, ImportBuffer records, LogMessageScanner.Framing framing,
+                                   int readAheadCapacity) {
+
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("There are no log files.");
+        }
+
+        if (records == null) {
+            throw new IllegalArgumentException("The buffer is null.");
+        }
+
+        if (!records.isEmpty()) {
+            throw new IllegalStateException("The buffer must be initially empty.");
+        }
+
+        this.files = new ArrayList<File>(files);
+        this.records = records;
+        this.framing = framing;
+        this.readAheadCapacity = readAheadCapacity;
+    }
+
+    /**
+     * Must be called before the parser runs.
+     *
+     * @param filter the filter of the messages read from each file; null to read
+     *               every message.
+     */
+    public void setFilter(MessageFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Must be called before the parser runs.
+     *
+     * @param linePattern the pattern of the lines holding the messages; null to
+     *                    start each message at the first '8=' on a line.
+     */
+    public void setLinePattern(LogLinePattern linePattern) {
+        this.linePattern = linePattern;
+    }
+
+    /**
+     * @return the number of bytes read from all of the files.
+     */
+    public long getBytesRead() {
+        long bytesRead = 0;
+        for (ImportProgressSource parser : fileParsers) {
+            bytesRead += parser.getBytesRead();
+        }
+        return bytesRead;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public void run() {
+        List<Thread> parsers = new ArrayList<Thread>(files.size());
+        try {
+            PriorityQueue<Source> sources = new PriorityQueue<Source>(files.size());
+            List<Source> started = new ArrayList<Source>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                ImportBuffer readAhead = new ImportBuffer(readAheadCapacity, READ_AHEAD_BYTE_CAPACITY);
+
+                Thread parser = new Thread(createParser(file, readAhead), "Log4FIX Parser " + file.getName());
+                parsers.add(parser);
+                parser.start();
+                started.add(new Source(i, file, readAhead));
+            }
+
+            for (Source source : started) {
+                if (source.next()) {
+                    sources.add(source);
+                }
+            }
+
+            while (!sources.isEmpty()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                Source source = sources.poll();
+                records.put(source.record);
+                messageCount++;
+                if (source.next()) {
+                    sources.add(source);
+                }
+            }
+        } catch (InterruptedException e) {
+            // restore the interrupted state.
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Thread parser : parsers) {
+                parser.interrupt();
+            }
+            records.close();
+        }
+    }
+
+    private Runnable createParser(File file, ImportBuffer readAhead) {
+        if (CompressedLogMessageParser.isCompressed(file)) {
+            CompressedLogMessageParser parser = new CompressedLogMessageParser(file, readAhead, framing);
+            parser.setFilter(filter);
+            parser.setLinePattern(linePattern);
+            fileParsers.add(parser);
+            return parser;
+        }
+
+        MappedLogMessageParser parser = new MappedLogMessageParser(file, readAhead, framing);
+        parser.setFilter(filter);
+        parser.setLinePattern(linePattern);
+        fileParsers.add(parser);
+        return parser;
+    }
+
+    /**
+     * The next message of a single file.
+     */
+    private class Source implements Comparable<Source> {
+
+        private final int fileIndex;
+        private final String fileName;
+        private final ImportBuffer readAhead;
+        private final FIXHeaderScanner header = new FIXHeaderScanner(SendingTime.FIELD);
+
+        private final List<ImportRecord> batch = new ArrayList<ImportRecord>();
+        private int batchIndex;
+
+        private ImportRecord record;
+        private long sendingTime = FIXHeaderScanner.NO_TIMESTAMP;
+
+        Source(int fileIndex, File file, ImportBuffer readAhead) {
+            this.fileIndex = fileIndex;
+            this.fileName = file.getName();
+            this.readAhead = readAhead;
+        }
+
+        /**
+         * Reads the next message of the file, adding any errors and events found
+         * before it to the import buffer.
+         *
+         * @return false if the file has no more messages.
+         */
+        boolean next() throws InterruptedException {
+            while (true) {
+                if (batchIndex == batch.size()) {
+                    batch.clear();
+                    batchIndex = 0;
+                    readAhead.drainTo(batch);
+                }
+
+                ImportRecord next = batch.get(batchIndex++);
+                switch (next.getType()) {
+                    case MESSAGE:
+                        record = next;
+                        header.scan(next.getText());
+                        long time = header.getTimestamp(SendingTime.FIELD);
+                        if (time != FIXHeaderScanner.NO_TIMESTAMP) {
+                            sendingTime = time;
+                        }
+                        return true;
+                    case ERROR:
+                        records.put(ImportRecord.error(fileName + ": " + next.getText()));
+                        break;
+                    case EVENT:
+                        records.put(ImportRecord.event(fileName + ": " + next.getText()));
+                        break;
+                    default:
+                        record = null;
+                        return false;
+                }
+            }
+        }
+
+        public int compareTo(Source other) {
+            if (sendingTime != other.sendingTime) {
+                return sendingTime < other.sendingTime ? -1 : 1;
+            }
+            return fileIndex - other.fileIndex;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import quickfix.field.MsgType;
+import quickfix.field.SendingTime;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Selects the messages an import keeps. A message is kept if its MsgType is one of
+ * the {@link #addMessageTypes(String...) message types}, its SendingTime is within
+ * the {@link #setTimeWindow(long, long) time window} and, for each tag given a
+ * {@link #addFieldValues(int, String...) value}, one of the message's fields with
+ * that tag has one of the values. A filter without any constraints keeps every
+ * message.
+ * <p/>
+ * The filter is evaluated by the {@link LogMessageScanner} on the raw bytes of each
+ * framed message, before the message is copied out of the buffer. A rejected
+ * message never becomes a <code>String</code>, an {@link ImportRecord} or a
+ * {@link org.opentradingsolutions.log4fix.core.LogMessage}. Lines that cannot be
+ * framed are still reported as errors.
+ * <p/>
+ * Configure the filter before starting the import. The scanners take a snapshot
+ * of the constraints when the filter is set.
+ */
+public class MessageFilter {
+
+    /**
+     * The most tags that may be given values.
+     */
+    public static final int MAXIMUM_TAGS = 63;
+
+    private static final String TIMESTAMP_FORMAT = "yyyyMMdd-HH:mm:ss.SSS";
+
+    private final Map<Integer, List<String>> valuesByTag = new LinkedHashMap<Integer, List<String>>();
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private boolean timeWindow;
+
+    /**
+     * Keeps only messages with one of the given MsgType (35) values, e.g. "D".
+     */
+    public void addMessageTypes(String... messageTypes) {
+        addFieldValues(MsgType.FIELD, messageTypes);
+    }
+
+    /**
+     * Keeps only messages with a field having the tag and one of the values. Values
+     * added for the same tag are alternatives; each tag must be matched.
+     *
+     * @throws IllegalArgumentException if the tag is not positive, no value is given,
+     *                                  or more than {@link #MAXIMUM_TAGS} tags are used.
+     */
+    public void addFieldValues(int tag, String... values) {
+        if (tag < 1) {
+            throw new IllegalArgumentException("The tag must be positive: " + tag);
+        }
+
+        if (values.length == 0) {
+            throw new IllegalArgumentException("No values for tag " + tag + ".");
+        }
+
+        List<String> list = valuesByTag.get(tag);
+        if (list == null) {
+            if (valuesByTag.size() == MAXIMUM_TAGS) {
+                throw new IllegalArgumentException("At most " + MAXIMUM_TAGS + " tags may be filtered.");
+            }
+            list = new ArrayList<String>();
+            valuesByTag.put(tag, list);
+        }
+
+        for (String value : values) {
+            list.add(value);
+        }
+    }
+
+    /**
+     * Keeps only messages whose SendingTime (52) is at or after <code>from</code> and
+     * before <code>to</code>. Messages without a SendingTime are not kept.
+     *
+     * @param from the earliest time in nanoseconds since the epoch;
+     *             <code>Long.MIN_VALUE</code> for no earliest time.
+     * @param to   the time in nanoseconds since the epoch following the latest time;
+     *             <code>Long.MAX_VALUE</code> for no latest time.
+     * @see #parseTimestamp(String)
+     */
+    public void setTimeWindow(long from, long to) {
+        if (from > to) {
+            throw new IllegalArgumentException("The time window ends before it starts.");
+        }
+        this.from = from;
+        this.to = to;
+        timeWindow = true;
+    }
+
+    /**
+     * Adds the constraints written as whitespace separated <code>tag=value</code>
+     * terms. Alternative values are separated by commas, e.g.
+     * <code>35=D,F,G 55=IBM</code>.
+     *
+     * @throws IllegalArgumentException if a term is not a <code>tag=value</code>.
+     */
+    public void addFieldValues(String text) {
+        for (String term : text.trim().split("\\s+")) {
+            if (term.length() == 0) {
+                continue;
+            }
+
+            int equals = term.indexOf('=');
+            if (equals < 1 || equals == term.length() - 1) {
+                throw new IllegalArgumentException("Expected tag=value but found '" + term + "'.");
+            }
+
+            int tag;
+            try {
+                tag = Integer.parseInt(term.substring(0, equals));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a tag number but found '" + term + "'.");
+            }
+            addFieldValues(tag, term.substring(equals + 1).split(","));
+        }
+    }
+
+    /**
+     * @return true if the filter keeps every message.
+     */
+    public boolean isEmpty() {
+        return valuesByTag.isEmpty() && !timeWindow;
+    }
+
+    /**
+     * Converts a UTCTimestamp (<code>YYYYMMDD-HH:MM:SS[.sss]</code>).
+     *
+     * @return the nanoseconds since the epoch.
+     * @throws IllegalArgumentException if the text is not a UTCTimestamp.
+     */
+    public static long parseTimestamp(String text) {
+        String trimmed = text.trim();
+        long timestamp = FIXHeaderScanner.parseTimestamp(trimmed, 0, trimmed.length());
+        if (timestamp == FIXHeaderScanner.NO_TIMESTAMP) {
+            throw new IllegalArgumentException("Expected YYYYMMDD-HH:MM:SS[.sss] but found '" + text + "'.");
+        }
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Integer, List<String>> entry : valuesByTag.entrySet()) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(entry.getKey()).append('=');
+            List<String> values = entry.getValue();
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                text.append(values.get(i));
+            }
+        }
+
+        if (timeWindow) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(SendingTime.FIELD).append(" in [").append(formatTimestamp(from)).append(", ")
+                    .append(formatTimestamp(to)).append(')');
+        }
+        return text.toString();
+    }
+
+    private static String formatTimestamp(long nanos) {
+        if (nanos == Long.MIN_VALUE || nanos == Long.MAX_VALUE) {
+            return "*";
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_FORMAT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(Math.floorDiv(nanos, 1000000L)));
+    }
+
+    /**
+     * @return a matcher of the current constraints, comparing values encoded with
+     *         the charset.
+     */
+    Matcher createMatcher(Charset charset) {
+        return new Matcher(this, charset, null);
+    }
+
+    /**
+     * @return a matcher of the current constraints that may also check the MsgType
+     *         codes of the index.
+     */
+    Matcher createMatcher(Charset charset, LogFileIndex index) {
+        return new Matcher(this, charset, index);
+    }
+
+    /**
+     * Evaluates the filter on raw message bytes without creating any objects. A
+     * matcher is used by one thread.
+     */
+    static final class Matcher {
+
+        private final int[] tags;
+        private final byte[][][] values;
+        // indexed by the MsgType codes of the index; null if any MsgType is kept.
+        private final boolean[] indexedMessageTypes;
+        private final boolean timeWindow;
+        private final long from;
+        private final long to;
+        private final long allTags;
+        private final ByteSequence sequence = new ByteSequence();
+
+        Matcher(MessageFilter filter, Charset charset, LogFileIndex index) {
+            tags = new int[filter.valuesByTag.size()];
+            values = new byte[tags.length][][];
+            int i = 0;
+            for (Map.Entry<Integer, List<String>> entry : filter.valuesByTag.entrySet()) {
+                tags[i] = entry.getKey();
+                List<String> list = entry.getValue();
+                values[i] = new byte[list.size()][];
+                for (int j = 0; j < list.size(); j++) {
+                    values[i][j] = list.get(j).getBytes(charset);
+                }
+                i++;
+            }
+
+            List<String> types = filter.valuesByTag.get(MsgType.FIELD);
+            if (types == null || index == null) {
+                indexedMessageTypes = null;
+            } else {
+                indexedMessageTypes = new boolean[index.getMessageTypeCount()];
+                for (int code = 0; code < indexedMessageTypes.length; code++) {
+                    indexedMessageTypes[code] = types.contains(index.getMessageTypeName(code));
+                }
+            }
+            timeWindow = filter.timeWindow;
+            from = filter.from;
+            to = filter.to;
+            allTags = (1L << tags.length) - 1;
+        }
+
+        /**
+         * A quick check of the values held by the {@link LogFileIndex} given when the
+         * matcher was created. Without an index only the SendingTime is checked.
+         *
+         * @param messageType the {@link LogFileIndex#getMessageTypeCode(int) MsgType code}
+         *                    of the message.
+         * @param sendingTime the SendingTime of the message in nanoseconds since the
+         *                    epoch; {@link FIXHeaderScanner#NO_TIMESTAMP} if it has none.
+         * @return false if the message is certainly rejected.
+         */
+        boolean mayMatch(int messageType, long sendingTime) {
+            if (timeWindow && !isInWindow(sendingTime)) {
+                return false;
+            }
+            return indexedMessageTypes == null || indexedMessageTypes[messageType];
+        }
+
+        /**
+         * @param bytes     the bytes holding the message.
+         * @param start     the index of the '8=' starting the message.
+         * @param end       the index following the last byte of the message.
+         * @param delimeter the delimeter between the fields of the message.
+         * @return true if the message is kept.
+         */
+        boolean matches(ByteBuffer bytes, int start, int end, FIXDelimeter delimeter) {
+            long unmatched = allTags;
+            boolean timeFound = !timeWindow;
+
+            int index = start;
+            while (index < end) {
+
+                // read the tag number up to the '='.
+                int tag = 0;
+                byte b = bytes.get(index);
+                while (b >= '0' && b <= '9') {
+                    tag = tag * 10 + (b - '0');
+                    if (++index == end) {
+                        break;
+                    }
+                    b = bytes.get(index);
+                }
+
+                int valueEnd = delimeter.indexIn(bytes, index, end);
+                if (valueEnd == -1) {
+                    valueEnd = end;
+                }
+
+                // a field without a tag number is skipped.
+                if (b == '=' && tag > 0 && index < end) {
+                    int valueStart = index + 1;
+
+                    if (!timeFound && tag == SendingTime.FIELD) {
+                        long sendingTime = FIXHeaderScanner.parseTimestamp(sequence.wrap(bytes), valueStart, valueEnd);
+                        if (!isInWindow(sendingTime)) {
+                            return false;
+                        }
+                        timeFound = true;
+                    }
+
+                    int i = indexOfTag(tag);
+                    if (i != -1 && (unmatched & (1L << i)) != 0) {
+                        if (matchesAny(bytes, valueStart, valueEnd, values[i])) {
+                            unmatched &= ~(1L << i);
+                        } else if (tag == MsgType.FIELD) {
+                            // the MsgType is never repeated.
+                            return false;
+                        }
+                    }
+
+                    if (unmatched == 0 && timeFound) {
+                        return true;
+                    }
+                }
+
+                index = valueEnd + delimeter.length();
+            }
+            return false;
+        }
+
+        private boolean isInWindow(long sendingTime) {
+            return sendingTime != FIXHeaderScanner.NO_TIMESTAMP && sendingTime >= from && sendingTime < to;
+        }
+
+        private int indexOfTag(int tag) {
+            for (int i = 0; i < tags.length; i++) {
+                if (tags[i] == tag) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean matchesAny(ByteBuffer bytes, int start, int end, byte[][] candidates) {
+            for (byte[] candidate : candidates) {
+                if (candidate.length == end - start && matchesAt(bytes, start, candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean matchesAt(ByteBuffer bytes, int start, byte[] candidate) {
+            for (int i = 0; i < candidate.length; i++) {
+                if (bytes.get(start + i) != candidate[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
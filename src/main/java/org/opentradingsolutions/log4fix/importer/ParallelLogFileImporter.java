@@ -0,0 +1,656 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import org.opentradingsolutions.log4fix.core.LogMessage;
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports a log file using more than one thread. The file is cut into chunks and
+ * each chunk is parsed on a fork/join pool. The chunks are then imported one after
+ * the other in file order, so the imported messages are numbered exactly as they
+ * would be by the {@link LogMessageBuilder}.
+ * <p/>
+ * A chunk always starts at the beginning of a line containing <code>8=FIX</code>.
+ * The nominal chunk boundaries are moved forward to the next such line. If no such
+ * line is found near the nominal boundary the chunk is merged with the next chunk.
+ * <p/>
+ * Each chunk is imported in four steps:
+ * <ol>
+ * <li>the chunk is scanned for raw messages (parallel with other chunks).</li>
+ * <li>the session and direction of each message are decided in file order by a
+ * {@link SessionTracker} (sequential).</li>
+ * <li>each raw message is turned into a {@link LogMessage} (parallel).</li>
+ * <li>the messages are added to the model of their session in file order
+ * (sequential).</li>
+ * </ol>
+ * A chunk is added to the models as soon as it, and every chunk before it, is
+ * scanned. At most <code>parallelism</code> chunks are scanned ahead of the chunk
+ * being added and a chunk is rarely larger than {@link #MAXIMUM_CHUNK_SIZE}, so the
+ * raw messages held at any time do not grow with the size of the file.
+ * <p/>
+ * If the model has an index store, and no filter or line pattern, the importer
+ * saves an {@link ImportCheckpoint} at the end of a chunk once at least
+ * {@link ImporterModel#getCheckpointInterval()} messages were added since the last
+ * checkpoint, and when it is canceled. The import can then be resumed like an
+ * import by the {@link LogMessageBuilder}. The checkpoint is deleted once the whole
+ * file is imported.
+ * <p/>
+ * Interrupting the thread running this importer cancels the import. The chunks
+ * already added stay in the models; a chunk is either added completely or not at
+ * all.
+ */
+public class ParallelLogFileImporter implements Runnable, ImportProgressSource {
+
+    /**
+     * A file is not cut into chunks smaller than this.
+     */
+    public static final int DEFAULT_MINIMUM_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * A file is cut into enough chunks that each is no larger than this. A chunk is
+     * only larger if no message line was found near its nominal end.
+     */
+    public static final int MAXIMUM_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The number of bytes searched for the start of a message when moving a chunk
+     * boundary.
+     */
+    private static final int BOUNDARY_SEARCH_SIZE = 1024 * 1024;
+
+    /**
+     * The number of messages converted by a single fork/join task.
+     */
+    private static final int MESSAGES_PER_TASK = 1024;
+
+    private static final byte[] MESSAGE_START = {'8', '=', 'F', 'I', 'X'};
+
+    private final ImporterModel model;
+    private final File file;
+    private final int parallelism;
+    private final int minimumChunkSize;
+
+    private volatile boolean canceled;
+
+    // set if a chunk could not be read, so the file is not indexed.
+    private volatile boolean readFailed;
+
+    // added to as each chunk is scanned.
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong messageCount = new AtomicLong();
+
+    /**
+     * @param model       the importer model receiving the messages.
+     * @param file        a non-null log file. The file is opened when the {@link #run()}
+     *                    method executes.
+     * @param parallelism the number of threads used to import the file.
+     * @throws IllegalArgumentException if the file is null or the parallelism is less
+     *                                  than one.
+     */
+    public ParallelLogFileImporter(ImporterModel model, File file, int parallelism) {
+        this(model, file, parallelism, DEFAULT_MINIMUM_CHUNK_SIZE);
+    }
+
+    ParallelLogFileImporter(ImporterModel model, File file, int parallelism, int minimumChunkSize) {
+
+        if (file == null) {
+            throw new IllegalArgumentException("The log file is null.");
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least one: " + parallelism);
+        }
+
+        this.model = model;
+        this.file = file;
+        this.parallelism = parallelism;
+        this.minimumChunkSize = minimumChunkSize;
+    }
+
+    /**
+     * @return the number of bytes of the chunks scanned so far.
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return the number of messages found in the chunks scanned so far.
+     */
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    public void run() {
+        ImporterMemoryLog logger = model.getImporterMemoryLog();
+
+        logger.onEvent(LogMessageBuilder.EVENT_START + ": " + new Date());
+        if (model.isFiltered()) {
+            logger.onEvent(LogMessageBuilder.EVENT_FILTER + ": " + model.getFilter());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ChunkImporter chunkImporter = new ChunkImporter(pool, logger);
+        FileInputStream inputStream = null;
+        LogFileIndexer indexer = null;
+
+        // a filtered import would leave the rejected messages out of the index, and
+        // could not be resumed by an import without the filter.
+        LogFileIndexStore indexStore = model.isFiltered() || model.getLinePattern() != null
+                ? null : model.getIndexStore();
+        try {
+            if (indexStore != null) {
+                indexer = createIndexer(logger, indexStore);
+                try {
+                    chunkImporter.setCheckpoints(LogFileIndex.Key.of(file, model.getFraming()));
+                } catch (IOException e) {
+                    // the file is unreadable, which is reported below.
+                }
+            }
+
+            inputStream = new FileInputStream(file);
+            FileChannel channel = inputStream.getChannel();
+
+            long[] boundaries = findChunkBoundaries(channel);
+            importChunks(pool, chunkImporter, channel, boundaries, indexer);
+
+            if (indexer != null && !readFailed) {
+                saveIndex(logger, indexStore, indexer);
+            }
+            if (indexStore != null) {
+                indexStore.deleteCheckpoint(file);
+            }
+        } catch (ClosedByInterruptException e) {
+            // the import was canceled while mapping the file.
+        } catch (CancellationException e) {
+            // the import was canceled.
+            Thread.currentThread().interrupt();
+        } catch (InterruptedException e) {
+            // the import was canceled.
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.onEvent(LogMessageScanner.ERROR_PREFIX + e.getMessage());
+        } finally {
+            if (Thread.currentThread().isInterrupted()) {
+                logger.onEvent(LogMessageBuilder.EVENT_CANCELED + ": the import is partial");
+                chunkImporter.saveCheckpoint(true);
+            }
+            canceled = true;
+            pool.shutdownNow();
+            if (indexer != null) {
+                indexer.close();
+            }
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ohWell) {
+                }
+            }
+
+            logger.onEvent(LogMessageBuilder.EVENT_MESSAGES_IMPORTED + ": " + chunkImporter.getMessageCount());
+            logger.onEvent(LogMessageBuilder.EVENT_COMPLETE + ": " + new Date());
+        }
+    }
+
+    /**
+     * @return null if the index cannot be written; the file is then imported
+     *         without saving an index.
+     */
+    private LogFileIndexer createIndexer(ImporterMemoryLog logger, LogFileIndexStore indexStore) {
+        try {
+            return indexStore.createIndexer(file, model.getFraming());
+        } catch (IOException e) {
+            logger.onEvent(LogMessageScanner.ERROR_PREFIX + "Unable to save the index: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveIndex(ImporterMemoryLog logger, LogFileIndexStore indexStore, LogFileIndexer indexer) {
+        try {
+            File indexFile = indexStore.save(file, indexer);
+            logger.onEvent(LogFileIndexStore.EVENT_INDEX_SAVED + ": " + indexFile);
+        } catch (IOException e) {
+            logger.onEvent(LogMessageScanner.ERROR_PREFIX + "Unable to save the index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Scans the chunks on the pool and imports each chunk, in file order, once it is
+     * scanned. No more than <code>parallelism</code> chunks are scanned ahead of the
+     * chunk being imported.
+     *
+     * @param indexer receives the records of each imported chunk; null if the file
+     *                is not indexed.
+     */
+    private void importChunks(ForkJoinPool pool, ChunkImporter chunkImporter, FileChannel channel,
+                              long[] boundaries, LogFileIndexer indexer) throws InterruptedException, IOException {
+
+        int chunkCount = boundaries.length - 1;
+        ParseTask[] tasks = new ParseTask[chunkCount];
+        int scheduled = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            while (scheduled < chunkCount && scheduled <= chunk + parallelism) {
+                tasks[scheduled] = new ParseTask(channel, boundaries[scheduled], boundaries[scheduled + 1]);
+                pool.execute(tasks[scheduled]);
+                scheduled++;
+            }
+
+            List<ImportRecord> records = await(tasks[chunk]);
+            tasks[chunk] = null;
+
+            if (indexer != null) {
+                for (ImportRecord record : records) {
+                    indexer.add(record);
+                }
+            }
+            chunkImporter.importChunk(records);
+            chunkImporter.chunkImported(boundaries[chunk + 1]);
+        }
+    }
+
+    /**
+     * Waits for the result of a task running on the pool. The task is canceled if
+     * the current thread is interrupted.
+     */
+    private <T> T await(ForkJoinTask<T> task) throws InterruptedException, IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            canceled = true;
+            task.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage());
+        }
+    }
+
+    /**
+     * @return the start of each chunk followed by the end of the file.
+     */
+    long[] findChunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkCount = Math.max(parallelism * 4L, size / MAXIMUM_CHUNK_SIZE);
+        chunkCount = Math.max(1, Math.min(chunkCount, size / minimumChunkSize));
+        long chunkSize = size / chunkCount;
+
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(0L);
+        long lastBoundary = 0;
+        for (long chunk = 1; chunk < chunkCount; chunk++) {
+            long nominal = chunk * chunkSize;
+            if (nominal <= lastBoundary) {
+                continue;
+            }
+
+            long boundary = findMessageLine(channel, nominal, size);
+            if (boundary > lastBoundary && boundary < size) {
+                boundaries.add(boundary);
+                lastBoundary = boundary;
+            }
+        }
+        boundaries.add(size);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the position of the first line, starting at or after the given
+     *         position, that contains <code>8=FIX</code>; -1 if no such line is found.
+     */
+    private long findMessageLine(FileChannel channel, long position, long size) throws IOException {
+
+        // start one byte early to find out if the position is the start of a line.
+        long regionStart = position - 1;
+        int length = (int) Math.min(BOUNDARY_SEARCH_SIZE, size - regionStart);
+        boolean endOfFile = regionStart + length == size;
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, length);
+
+        int lineEnd = LogMessageScanner.indexOfLineTerminator(region, 0, length);
+        while (lineEnd != -1 && lineEnd < length) {
+            int lineStart = lineEnd + 1;
+            lineEnd = LogMessageScanner.indexOfLineTerminator(region, lineStart, length);
+            if (lineEnd == -1) {
+                if (!endOfFile) {
+                    // the line may continue past the end of the region.
+                    return -1;
+                }
+                lineEnd = length;
+            }
+
+            if (LogMessageScanner.indexOf(region, lineStart, lineEnd, MESSAGE_START) != -1) {
+                return regionStart + lineStart;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decides the session of each message of a chunk and adds the chunk's messages
+     * to the models. The chunks must be imported in file order.
+     */
+    private class ChunkImporter {
+
+        private final ForkJoinPool pool;
+        private final ImporterMemoryLog logger;
+        private final SessionTracker sessionTracker = new SessionTracker(model);
+        private final LatencyStatistics latency = model.getLatencyStatistics();
+
+        // the logs of the sessions found so far, in the order they were found.
+        private final List<ImporterMemoryLog> sessionLogs = new ArrayList<ImporterMemoryLog>();
+        private final Map<ImporterMemoryLog, Integer> sessionIndexes = new IdentityHashMap<ImporterMemoryLog, Integer>();
+
+        private int messageCount;
+
+        // the key of the log file checkpointed after each chunk; null if checkpoints
+        // are not saved.
+        private LogFileIndex.Key checkpointKey;
+
+        // the state following the last chunk imported, and the last checkpoint saved.
+        private long chunkEnd;
+        private List<ImportCheckpoint.Session> chunkSessions;
+        private int chunkMessageCount;
+        private int checkpointCount;
+
+        ChunkImporter(ForkJoinPool pool, ImporterMemoryLog logger) {
+            this.pool = pool;
+            this.logger = logger;
+        }
+
+        /**
+         * Saves checkpoints of the import in the model's {@link LogFileIndexStore}.
+         *
+         * @param key the key of the log file as it was when the import started.
+         */
+        void setCheckpoints(LogFileIndex.Key key) {
+            checkpointKey = key;
+        }
+
+        /**
+         * Records the state of the import after the chunk ending at the given file
+         * position, saving a checkpoint if enough messages were added since the last.
+         */
+        void chunkImported(long end) {
+            if (checkpointKey == null) {
+                return;
+            }
+
+            // the sessions are copied now, as the next chunk may be canceled part way.
+            chunkEnd = end;
+            chunkSessions = sessionTracker.getCheckpointSessions();
+            chunkMessageCount = messageCount;
+            if (chunkMessageCount - checkpointCount >= model.getCheckpointInterval()) {
+                saveCheckpoint(false);
+            }
+        }
+
+        /**
+         * Saves a checkpoint following the last chunk imported, unless it was saved.
+         *
+         * @param logged true to log the saved checkpoint; periodic checkpoints are not logged.
+         */
+        void saveCheckpoint(boolean logged) {
+            if (checkpointKey == null || chunkMessageCount == checkpointCount) {
+                return;
+            }
+
+            checkpointCount = chunkMessageCount;
+            ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointKey, chunkEnd, chunkMessageCount,
+                    chunkSessions);
+            try {
+                File checkpointFile = model.getIndexStore().saveCheckpoint(file, checkpoint);
+                if (logged) {
+                    logger.onEvent(LogFileIndexStore.EVENT_CHECKPOINT_SAVED + ": " + checkpointFile);
+                }
+            } catch (IOException e) {
+                // the import goes on; it just cannot be resumed from here.
+                logger.onEvent(LogMessageScanner.ERROR_PREFIX
+                        + "Unable to save the checkpoint: " + e.getMessage());
+            }
+        }
+
+        /**
+         * @return the number of messages added to the models.
+         */
+        int getMessageCount() {
+            return messageCount;
+        }
+
+        void importChunk(List<ImportRecord> records) throws InterruptedException, IOException {
+            List<String> fixMessages = new ArrayList<String>(records.size());
+            BitSet incoming = new BitSet(records.size());
+            long[] receiveTimes = new long[records.size()];
+
+            // the session of each message, as an index into the session logs.
+            int[] sessions = new int[records.size()];
+
+            for (ImportRecord record : records) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+
+                if (record.getType() == ImportRecord.Type.ERROR) {
+                    logger.onEvent(record.getText());
+                    continue;
+                }
+
+                String rawMessage = record.getText();
+                boolean isIncoming = sessionTracker.isIncoming(rawMessage);
+                incoming.set(fixMessages.size(), isIncoming);
+
+                long receiveTime = record.getReceiveTime();
+                receiveTimes[fixMessages.size()] = receiveTime;
+                if (receiveTime != FIXHeaderScanner.NO_TIMESTAMP) {
+                    latency.record(sessionTracker.getCounterparty(), isIncoming, receiveTime,
+                            sessionTracker.getSendingTime());
+                }
+
+                ImporterMemoryLog sessionLog = sessionTracker.getMemoryLog();
+                Integer session = sessionIndexes.get(sessionLog);
+                if (session == null) {
+                    session = sessionLogs.size();
+                    sessionLogs.add(sessionLog);
+                    sessionIndexes.put(sessionLog, session);
+                }
+                sessions[fixMessages.size()] = session;
+                fixMessages.add(rawMessage);
+            }
+
+            int count = fixMessages.size();
+            if (count == 0) {
+                return;
+            }
+
+            // each session numbers its own messages in file order.
+            int[] sessionCounts = new int[sessionLogs.size()];
+            for (int i = 0; i < count; i++) {
+                sessionCounts[sessions[i]]++;
+            }
+
+            int[] nextIndexes = new int[sessionLogs.size()];
+            SessionID[] sessionIds = new SessionID[sessionLogs.size()];
+            DataDictionary[] dictionaries = new DataDictionary[sessionLogs.size()];
+            for (int session = 0; session < sessionLogs.size(); session++) {
+                ImporterMemoryLog sessionLog = sessionLogs.get(session);
+                nextIndexes[session] = sessionLog.reserveMessageIndexes(sessionCounts[session]);
+                sessionIds[session] = sessionLog.getSessionId();
+                dictionaries[session] = sessionLog.getDataDictionary();
+            }
+
+            int[] messageIndexes = new int[count];
+            for (int i = 0; i < count; i++) {
+                messageIndexes[i] = nextIndexes[sessions[i]]++;
+            }
+
+            LogMessage[] messages = new LogMessage[count];
+            CreateMessagesTask task = new CreateMessagesTask(messages, fixMessages, incoming, receiveTimes,
+                    messageIndexes, sessions, sessionIds, dictionaries, 0, count);
+            pool.execute(task);
+            await(task);
+
+            // the whole chunk is added, so a checkpoint always follows a chunk.
+            for (int i = 0; i < count; i++) {
+                sessionLogs.get(sessions[i]).getMemoryLogModel().addLogMessage(messages[i]);
+                messageCount++;
+            }
+        }
+    }
+
+    /**
+     * Scans a chunk and returns its records in file order.
+     */
+    private class ParseTask extends RecursiveTask<List<ImportRecord>> {
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ParseTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<ImportRecord> compute() {
+            List<ImportRecord> records = new ArrayList<ImportRecord>();
+            try {
+                MappedLogFileCursor cursor = new MappedLogFileCursor(channel, start, end,
+                        MappedLogFileCursor.DEFAULT_MAPPING_SIZE, model.getFraming());
+                cursor.setFilter(model.getFilter());
+                cursor.setLinePattern(model.getLinePattern());
+                int messages = 0;
+                while (!canceled && cursor.next()) {
+                    ImportRecord record = cursor.getRecord();
+                    if (record.getType() == ImportRecord.Type.MESSAGE) {
+                        messages++;
+                    }
+                    records.add(record);
+                }
+                messageCount.addAndGet(messages);
+                bytesRead.addAndGet(end - start);
+            } catch (IOException e) {
+                readFailed = true;
+                if (!canceled) {
+                    records.add(ImportRecord.error(LogMessageScanner.ERROR_PREFIX + e.getMessage()));
+                }
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Creates the log messages for a range of raw messages. The session Id and data
+     * dictionary of each message are looked up by the message's session.
+     */
+    private class CreateMessagesTask extends RecursiveAction {
+
+        private final LogMessage[] messages;
+        private final List<String> rawMessages;
+        private final BitSet incoming;
+        private final long[] receiveTimes;
+        private final int[] messageIndexes;
+        private final int[] sessions;
+        private final SessionID[] sessionIds;
+        private final DataDictionary[] dictionaries;
+        private final int from;
+        private final int to;
+
+        CreateMessagesTask(LogMessage[] messages, List<String> rawMessages, BitSet incoming,
+                           long[] receiveTimes, int[] messageIndexes, int[] sessions, SessionID[] sessionIds,
+                           DataDictionary[] dictionaries, int from, int to) {
+            this.messages = messages;
+            this.rawMessages = rawMessages;
+            this.incoming = incoming;
+            this.receiveTimes = receiveTimes;
+            this.messageIndexes = messageIndexes;
+            this.sessions = sessions;
+            this.sessionIds = sessionIds;
+            this.dictionaries = dictionaries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > MESSAGES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new CreateMessagesTask(messages, rawMessages, incoming, receiveTimes, messageIndexes,
+                                sessions, sessionIds, dictionaries, from, middle),
+                        new CreateMessagesTask(messages, rawMessages, incoming, receiveTimes, messageIndexes,
+                                sessions, sessionIds, dictionaries, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to && !canceled; i++) {
+                int session = sessions[i];
+                messages[i] = new LogMessage(messageIndexes[i], incoming.get(i), sessionIds[session],
+                        rawMessages.get(i), dictionaries[session], receiveTimes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses the FIX messages sent over TCP in a pcap or pcapng capture file (e.g.
+ * written by tcpdump or Wireshark), so what was on the wire can be compared with
+ * what the engines logged.
+ * <p/>
+ * The packets are read one at a time and the TCP stream of each direction of each
+ * connection is reassembled by a {@link TcpStream}. The bytes of each stream are
+ * scanned with the {@link LogMessageScanner.Framing#BODY_LENGTH body length}
+ * framing as soon as they arrive, so the messages of all of the connections are
+ * added in the order they were captured. The capture time of the packet completing
+ * a message is the message's receive time. The messages of a connection are
+ * assigned to their session by the builder, like the messages of a log file; a
+ * {@link #EVENT_CONNECTION} event names each stream when its first message is found.
+ * <p/>
+ * The memory used by each stream is bounded: at most the stream capacity is held
+ * ahead of a segment missing from the capture. When more arrives, or the
+ * connection closes, the missing bytes are given up, an error is added and the
+ * scanner continues at the next message. Packets that are not TCP over IPv4 or
+ * IPv6, and IPv4 fragments, are skipped.
+ * <p/>
+ * Interrupting the thread causes the parser to close the buffer and gracefully
+ * terminate, just like the {@link LogMessageParser}.
+ */
+public class PcapLogMessageParser implements Runnable, ImportProgressSource {
+
+    public static final String EVENT_CONNECTION = "Connection";
+
+    /**
+     * The number of bytes held per stream ahead of a segment missing from the capture.
+     */
+    public static final int DEFAULT_STREAM_CAPACITY = 1024 * 1024;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Bytes left over by a scan are scanned again with each packet until there are
+     * this many, then only once as many new bytes arrive. So a very long message
+     * does not cost a scan per packet.
+     */
+    private static final int RESCAN_SIZE = 64 * 1024;
+
+    // link types, see http://www.tcpdump.org/linktypes.html
+    private static final int LINKTYPE_NULL = 0;
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int LINKTYPE_LOOP = 108;
+    private static final int LINKTYPE_LINUX_SLL = 113;
+    private static final int LINKTYPE_IPV4 = 228;
+    private static final int LINKTYPE_IPV6 = 229;
+    private static final int LINKTYPE_LINUX_SLL2 = 276;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86DD;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int ETHERTYPE_QINQ = 0x88A8;
+
+    private static final int PROTOCOL_TCP = 6;
+    private static final int IPV6_HOP_BY_HOP = 0;
+    private static final int IPV6_ROUTING = 43;
+    private static final int IPV6_DESTINATION_OPTIONS = 60;
+
+    private static final int TCP_FIN = 0x01;
+    private static final int TCP_SYN = 0x02;
+    private static final int TCP_RST = 0x04;
+
+    private final File file;
+    private final ImportBuffer records;
+    private final int streamCapacity;
+    private final Charset charset = Charset.defaultCharset();
+    private MessageFilter.Matcher matcher;
+
+    // the streams of the open connections, in the order they were opened.
+    private final Map<StreamKey, TcpStream> streams = new LinkedHashMap<StreamKey, TcpStream>();
+    private final StreamKey probe = new StreamKey();
+    private final Set<Integer> unsupportedLinkTypes = new HashSet<Integer>();
+    private long lastTimestamp = FIXHeaderScanner.NO_TIMESTAMP;
+
+    // written by the parsing thread, read by the importer.
+    private volatile long bytesRead;
+    private volatile long messageCount;
+
+    /**
+     * @param file    a non-null capture file. The file is opened when the
+     *                {@link #run()} method executes.
+     * @param records a non-null, empty buffer.
+     * @throws IllegalArgumentException if the file is null or the buffer is null.
+     * @throws IllegalStateException    if the buffer is not empty.
+     */
+    public PcapLogMessageParser(File file, ImportBuffer records) {
+        this(file, records, DEFAULT_STREAM_CAPACITY);
+    }
+
+    /**
+     * @param streamCapacity the number of bytes held per stream ahead of a segment
+     *                       missing from the capture.
+     * @see #PcapLogMessageParser(File, ImportBuffer)
+     */
+    public PcapLogMessageParser(File file, ImportBuffer records, int streamCapacity) {
+
+        if (file == null) {
+            throw new IllegalArgumentException("The capture file is null.");
+        }
+
+        if (records == null) {
+            throw new IllegalArgumentException("The buffer is null.");
+        }
+
+        if (!records.isEmpty()) {
+            throw new IllegalStateException("The buffer must be initially empty.");
+        }
+
+        this.file = file;
+        this.records = records;
+        this.streamCapacity = streamCapacity;
+    }
+
+    /**
+     * Looks at the first bytes of the file, not at the file name.
+     *
+     * @return true if the file is a pcap or pcapng capture; false if it is not or
+     *         cannot be read.
+     */
+    public static boolean isCapture(File file) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            return PcapReader.isCapture(in.readInt());
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ohWell) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Must be called before the parser runs.
+     *
+     * @param filter the filter of the messages added to the buffer; null to add
+     *               every message.
+     */
+    public void setFilter(MessageFilter filter) {
+        matcher = filter == null || filter.isEmpty() ? null : filter.createMatcher(charset);
+    }
+
+    /**
+     * @return the number of bytes of the capture file read.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public void run() {
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new CountingInputStream(new FileInputStream(file)), BLOCK_SIZE);
+            PcapReader reader = new PcapReader(in);
+            while (!Thread.currentThread().isInterrupted() && reader.next()) {
+                readPacket(reader);
+            }
+
+            // the connections still open at the end of the capture.
+            for (TcpStream stream : new ArrayList<TcpStream>(streams.values())) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                close(stream, lastTimestamp);
+            }
+            streams.clear();
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            add(ImportRecord.error(LogMessageScanner.ERROR_PREFIX + e.getMessage()));
+        } finally {
+            records.close();
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ohWell) {
+                }
+            }
+        }
+    }
+
+    private void readPacket(PcapReader reader) {
+        lastTimestamp = reader.getTimestamp();
+        byte[] data = reader.getData();
+        int offset = reader.getOffset();
+        int end = offset + reader.getLength();
+
+        int etherType;
+        int linkType = reader.getLinkType();
+        switch (linkType) {
+            case LINKTYPE_ETHERNET:
+                if (end - offset < 14) {
+                    return;
+                }
+                etherType = readShort(data, offset + 12);
+                offset += 14;
+                while ((etherType == ETHERTYPE_VLAN || etherType == ETHERTYPE_QINQ) && offset + 4 <= end) {
+                    etherType = readShort(data, offset + 2);
+                    offset += 4;
+                }
+                break;
+            case LINKTYPE_LINUX_SLL:
+                if (end - offset < 16) {
+                    return;
+                }
+                etherType = readShort(data, offset + 14);
+                offset += 16;
+                break;
+            case LINKTYPE_LINUX_SLL2:
+                if (end - offset < 20) {
+                    return;
+                }
+                etherType = readShort(data, offset);
+                offset += 20;
+                break;
+            case LINKTYPE_NULL:
+            case LINKTYPE_LOOP:
+                offset += 4;
+                etherType = getEtherType(data, offset, end);
+                break;
+            case LINKTYPE_RAW:
+            case LINKTYPE_IPV4:
+            case LINKTYPE_IPV6:
+                etherType = getEtherType(data, offset, end);
+                break;
+            default:
+                if (unsupportedLinkTypes.add(linkType)) {
+                    add(ImportRecord.error(LogMessageScanner.ERROR_PREFIX
+                            + "The packets of link type " + linkType + " are skipped."));
+                }
+                return;
+        }
+
+        if (etherType == ETHERTYPE_IPV4) {
+            readIpv4(data, offset, end, reader.getTimestamp());
+        } else if (etherType == ETHERTYPE_IPV6) {
+            readIpv6(data, offset, end, reader.getTimestamp());
+        }
+    }
+
+    /**
+     * @return the ether type of the IP version of the packet; 0 if the packet is not IP.
+     */
+    private static int getEtherType(byte[] data, int offset, int end) {
+        if (offset >= end) {
+            return 0;
+        }
+        int version = (data[offset] >> 4) & 0x0F;
+        return version == 4 ? ETHERTYPE_IPV4 : version == 6 ? ETHERTYPE_IPV6 : 0;
+    }
+
+    private void readIpv4(byte[] data, int offset, int end, long timestamp) {
+        if (end - offset < 20) {
+            return;
+        }
+        int headerLength = (data[offset] & 0x0F) * 4;
+        int totalLength = readShort(data, offset + 2);
+        int fragment = readShort(data, offset + 6);
+        if ((fragment & 0x3FFF) != 0 || data[offset + 9] != PROTOCOL_TCP || headerLength < 20) {
+            return;
+        }
+
+        // a zero length is written by NICs that segment large sends themselves.
+        int segmentEnd = totalLength == 0 ? end : offset + totalLength;
+        readTcp(data, 4, offset + 12, offset + 16, offset + headerLength, segmentEnd, end, timestamp);
+    }
+
+    private void readIpv6(byte[] data, int offset, int end, long timestamp) {
+        if (end - offset < 40) {
+            return;
+        }
+        int payloadLength = readShort(data, offset + 4);
+        int nextHeader = data[offset + 6] & 0xFF;
+        int header = offset + 40;
+        while (nextHeader == IPV6_HOP_BY_HOP || nextHeader == IPV6_ROUTING || nextHeader == IPV6_DESTINATION_OPTIONS) {
+            if (header + 8 > end) {
+                return;
+            }
+            nextHeader = data[header] & 0xFF;
+            header += ((data[header + 1] & 0xFF) + 1) * 8;
+        }
+        if (nextHeader != PROTOCOL_TCP) {
+            return;
+        }
+
+        // a zero length is a jumbogram.
+        int segmentEnd = payloadLength == 0 ? end : offset + 40 + payloadLength;
+        readTcp(data, 16, offset + 8, offset + 24, header, segmentEnd, end, timestamp);
+    }
+
+    /**
+     * @param segmentEnd  the end of the segment on the wire.
+     * @param capturedEnd the end of the bytes captured, which is before the end of
+     *                    the segment if the capture truncated the packet.
+     */
+    private void readTcp(byte[] data, int addressLength, int source, int destination, int tcp,
+                         int segmentEnd, int capturedEnd, long timestamp) {
+        if (tcp + 20 > capturedEnd) {
+            return;
+        }
+        int sourcePort = readShort(data, tcp);
+        int destinationPort = readShort(data, tcp + 2);
+        int sequence = readInt(data, tcp + 4);
+        int flags = data[tcp + 13];
+        int payload = tcp + ((data[tcp + 12] >> 4) & 0x0F) * 4;
+        if (payload > capturedEnd) {
+            return;
+        }
+        int length = Math.max(0, segmentEnd - payload);
+        int captured = Math.max(0, Math.min(segmentEnd, capturedEnd) - payload);
+
+        probe.set(data, addressLength, source, sourcePort, destination, destinationPort);
+        TcpStream stream = streams.get(probe);
+        if (stream == null) {
+            if (length == 0 && (flags & TCP_SYN) == 0) {
+                return;
+            }
+            StreamKey key = probe.copy();
+            stream = new TcpStream(key.toString(), streamCapacity);
+            streams.put(key, stream);
+        }
+
+        if ((flags & TCP_SYN) != 0) {
+            sequence++;
+            stream.start(sequence);
+        }
+
+        if (stream.add(sequence, data, payload, captured) && captured < length) {
+            // the rest of the segment is not in the capture.
+            scan(stream, timestamp, true);
+            stream.skip(length - captured);
+            add(ImportRecord.error(LogMessageScanner.ERROR_PREFIX + (length - captured)
+                    + " bytes of " + stream.getName() + " were not captured."));
+        }
+        scan(stream, timestamp, false);
+        while (stream.isOverCapacity()) {
+            skipGap(stream, timestamp);
+        }
+
+        if ((flags & (TCP_FIN | TCP_RST)) != 0) {
+            close(stream, timestamp);
+            streams.remove(probe);
+        }
+    }
+
+    /**
+     * Scans the rest of a stream whose connection is closed.
+     */
+    private void close(TcpStream stream, long timestamp) {
+        scan(stream, timestamp, true);
+        while (stream.hasGap()) {
+            skipGap(stream, timestamp);
+        }
+        scan(stream, timestamp, true);
+    }
+
+    private void skipGap(TcpStream stream, long timestamp) {
+        // the message in front of the missing bytes can never be completed.
+        scan(stream, timestamp, true);
+        long skipped = stream.skipGap();
+        add(ImportRecord.error(LogMessageScanner.ERROR_PREFIX + skipped
+                + " bytes of " + stream.getName() + " are missing from the capture."));
+        scan(stream, timestamp, false);
+    }
+
+    /**
+     * Adds the messages available in the stream.
+     *
+     * @param endOfInput true if no more bytes follow the bytes available, so an
+     *                   incomplete message at the end is dropped.
+     */
+    private void scan(TcpStream stream, long timestamp, boolean endOfInput) {
+        int length = stream.getLength();
+        int leftOver = stream.getLeftOver();
+        if (length == 0 || (!endOfInput && leftOver >= RESCAN_SIZE && length - leftOver < leftOver)) {
+            return;
+        }
+
+        LogMessageScanner scanner = new LogMessageScanner(ByteBuffer.wrap(stream.getBytes(), 0, length),
+                endOfInput, charset, LogMessageScanner.Framing.BODY_LENGTH);
+        scanner.setDelimeter(stream.getDelimeter());
+        scanner.setMatcher(matcher);
+        while (scanner.next()) {
+            if (scanner.isError()) {
+                add(ImportRecord.error(scanner.getMessage()));
+                continue;
+            }
+            if (!stream.isReported()) {
+                stream.setReported(true);
+                add(ImportRecord.event(EVENT_CONNECTION + ": " + stream.getName()));
+            }
+            add(ImportRecord.message(scanner.getMessage(), timestamp));
+        }
+        stream.setDelimeter(scanner.getDelimeter());
+        stream.consume(scanner.getPosition());
+        stream.setLeftOver(stream.getLength());
+    }
+
+    private void add(ImportRecord record) {
+        try {
+            records.put(record);
+            if (record.getType() == ImportRecord.Type.MESSAGE) {
+                messageCount++;
+            }
+        } catch (InterruptedException e) {
+            // restore the interrupted state.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (readShort(data, offset) << 16) | readShort(data, offset + 2);
+    }
+
+    /**
+     * The addresses and ports of one direction of a connection. The parser looks up
+     * each packet's stream with a single reused key.
+     */
+    private static final class StreamKey {
+
+        private final byte[] source = new byte[16];
+        private final byte[] destination = new byte[16];
+        private int addressLength;
+        private int sourcePort;
+        private int destinationPort;
+        private int hash;
+
+        void set(byte[] data, int addressLength, int sourceOffset, int sourcePort,
+                 int destinationOffset, int destinationPort) {
+            this.addressLength = addressLength;
+            System.arraycopy(data, sourceOffset, source, 0, addressLength);
+            System.arraycopy(data, destinationOffset, destination, 0, addressLength);
+            this.sourcePort = sourcePort;
+            this.destinationPort = destinationPort;
+
+            int h = addressLength;
+            for (int i = 0; i < addressLength; i++) {
+                h = 31 * h + source[i];
+                h = 31 * h + destination[i];
+            }
+            hash = 31 * (31 * h + sourcePort) + destinationPort;
+        }
+
+        StreamKey copy() {
+            StreamKey copy = new StreamKey();
+            System.arraycopy(source, 0, copy.source, 0, addressLength);
+            System.arraycopy(destination, 0, copy.destination, 0, addressLength);
+            copy.addressLength = addressLength;
+            copy.sourcePort = sourcePort;
+            copy.destinationPort = destinationPort;
+            copy.hash = hash;
+            return copy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StreamKey)) {
+                return false;
+            }
+            StreamKey other = (StreamKey) o;
+            if (hash != other.hash || addressLength != other.addressLength
+                    || sourcePort != other.sourcePort || destinationPort != other.destinationPort) {
+                return false;
+            }
+            for (int i = 0; i < addressLength; i++) {
+                if (source[i] != other.source[i] || destination[i] != other.destination[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * @return e.g. "10.0.0.1:5001 -> 10.0.0.2:9878".
+         */
+        @Override
+        public String toString() {
+            return toString(source, sourcePort) + " -> " + toString(destination, destinationPort);
+        }
+
+        private String toString(byte[] address, int port) {
+            String host;
+            try {
+                host = InetAddress.getByAddress(Arrays.copyOf(address, addressLength)).getHostAddress();
+            } catch (UnknownHostException e) {
+                host = "?";
+            }
+            return (addressLength == 16 ? "[" + host + "]" : host) + ":" + port;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the capture file.
+     */
+    private class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                bytesRead += read;
+            }
+            return read;
+        }
+    }
+}
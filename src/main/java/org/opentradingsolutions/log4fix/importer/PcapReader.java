@@ -0,0 +1,382 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the packets of a pcap or pcapng capture file (e.g. written by tcpdump or
+ * Wireshark) one at a time. Only the packet being read is held in memory, so a
+ * capture of any size can be read.
+ * <p/>
+ * Both byte orders and the microsecond and nanosecond variants of the pcap format
+ * are read. In a pcapng file each interface has its own link type and timestamp
+ * resolution. Enhanced, simple and obsolete packet blocks are read; every other
+ * block is skipped.
+ */
+class PcapReader {
+
+    static final int PCAP_MAGIC = 0xA1B2C3D4;
+    static final int PCAP_NANOSECOND_MAGIC = 0xA1B23C4D;
+    static final int PCAPNG_MAGIC = 0x0A0D0D0A;
+
+    private static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+    private static final int PCAP_HEADER_LENGTH = 24;
+    private static final int PCAP_RECORD_HEADER_LENGTH = 16;
+
+    // pcapng block types.
+    private static final int INTERFACE_DESCRIPTION_BLOCK = 1;
+    private static final int OBSOLETE_PACKET_BLOCK = 2;
+    private static final int SIMPLE_PACKET_BLOCK = 3;
+    private static final int ENHANCED_PACKET_BLOCK = 6;
+
+    private static final int OPTION_END = 0;
+    private static final int OPTION_TIMESTAMP_RESOLUTION = 9;
+
+    private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+    private static final long MICROSECONDS_PER_SECOND = 1000000L;
+
+    /**
+     * The longest block or packet read. Anything longer means the file is corrupt.
+     */
+    static final int MAXIMUM_BLOCK_LENGTH = 16 * 1024 * 1024;
+
+    private final InputStream in;
+    private final boolean nextGeneration;
+    private ByteOrder byteOrder;
+
+    // the pcap file's link type and timestamp units.
+    private int pcapLinkType;
+    private long pcapUnitsPerSecond;
+
+    // the pcapng section's interfaces.
+    private final List<Interface> interfaces = new ArrayList<Interface>();
+
+    // the current block (pcapng) or packet (pcap) and the packet within it.
+    private byte[] block = new byte[64 * 1024];
+    private ByteBuffer view = ByteBuffer.wrap(block);
+    private int packetOffset;
+    private int packetLength;
+    private int linkType;
+    private long timestamp;
+
+    /**
+     * Reads the file header. The reader does not close the stream.
+     *
+     * @throws IOException if the stream is not a pcap or pcapng capture or cannot be read.
+     */
+    PcapReader(InputStream in) throws IOException {
+        this.in = in;
+
+        byte[] magic = new byte[4];
+        readFully(magic, 0, 4);
+        int bigEndian = ByteBuffer.wrap(magic).getInt();
+        int littleEndian = ByteBuffer.wrap(magic).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (bigEndian == PCAPNG_MAGIC) {
+            nextGeneration = true;
+            readSectionHeader();
+        } else if (isPcapMagic(bigEndian) || isPcapMagic(littleEndian)) {
+            nextGeneration = false;
+            byteOrder = isPcapMagic(bigEndian) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            int pcapMagic = isPcapMagic(bigEndian) ? bigEndian : littleEndian;
+            pcapUnitsPerSecond = pcapMagic == PCAP_NANOSECOND_MAGIC ? NANOSECONDS_PER_SECOND : MICROSECONDS_PER_SECOND;
+
+            readFully(block, 0, PCAP_HEADER_LENGTH - 4);
+            view = ByteBuffer.wrap(block).order(byteOrder);
+            pcapLinkType = view.getInt(16);
+        } else {
+            throw new IOException("Not a pcap or pcapng capture file.");
+        }
+    }
+
+    /**
+     * @return true if the first four bytes of a file are the magic number of a pcap
+     *         or pcapng capture.
+     */
+    static boolean isCapture(int magic) {
+        return magic == PCAPNG_MAGIC || isPcapMagic(magic) || isPcapMagic(Integer.reverseBytes(magic));
+    }
+
+    private static boolean isPcapMagic(int magic) {
+        return magic == PCAP_MAGIC || magic == PCAP_NANOSECOND_MAGIC;
+    }
+
+    /**
+     * Reads the next packet.
+     *
+     * @return false at the end of the capture.
+     * @throws IOException if the capture cannot be read or is corrupt.
+     */
+    boolean next() throws IOException {
+        return nextGeneration ? nextBlock() : nextRecord();
+    }
+
+    /**
+     * @return the link type of the packet, e.g. 1 for Ethernet.
+     */
+    int getLinkType() {
+        return linkType;
+    }
+
+    /**
+     * @return the time the packet was captured, in nanoseconds since the epoch;
+     *         {@link FIXHeaderScanner#NO_TIMESTAMP} if the packet has no timestamp.
+     */
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the bytes holding the packet. The bytes are only valid until
+     *         {@link #next()} is called again.
+     */
+    byte[] getData() {
+        return block;
+    }
+
+    int getOffset() {
+        return packetOffset;
+    }
+
+    /**
+     * @return the number of bytes captured, which may be less than the length of the
+     *         packet on the wire.
+     */
+    int getLength() {
+        return packetLength;
+    }
+
+    private boolean nextRecord() throws IOException {
+        if (!readHeader(PCAP_RECORD_HEADER_LENGTH)) {
+            return false;
+        }
+        long seconds = view.getInt(0) & 0xFFFFFFFFL;
+        long fraction = view.getInt(4) & 0xFFFFFFFFL;
+        int capturedLength = view.getInt(8);
+        if (capturedLength < 0 || capturedLength > MAXIMUM_BLOCK_LENGTH) {
+            throw new IOException("Corrupt capture file: a packet is " + (capturedLength & 0xFFFFFFFFL) + " bytes.");
+        }
+
+        ensureCapacity(capturedLength);
+        readFully(block, 0, capturedLength);
+        linkType = pcapLinkType;
+        timestamp = toNanoseconds(seconds * pcapUnitsPerSecond + fraction, pcapUnitsPerSecond);
+        packetOffset = 0;
+        packetLength = capturedLength;
+        return true;
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (true) {
+            if (!readHeader(8)) {
+                return false;
+            }
+            int type = view.getInt(0);
+            if (type == PCAPNG_MAGIC) {
+                readSectionHeader();
+                continue;
+            }
+
+            int length = view.getInt(4);
+            if (length < 12 || length > MAXIMUM_BLOCK_LENGTH || length % 4 != 0) {
+                throw new IOException("Corrupt capture file: a block is " + (length & 0xFFFFFFFFL) + " bytes.");
+            }
+
+            // the body followed by the repeated block length.
+            int bodyLength = length - 12;
+            ensureCapacity(bodyLength + 4);
+            readFully(block, 0, bodyLength + 4);
+
+            if (type == INTERFACE_DESCRIPTION_BLOCK) {
+                interfaces.add(readInterface(bodyLength));
+            } else if (type == ENHANCED_PACKET_BLOCK || type == OBSOLETE_PACKET_BLOCK) {
+                int interfaceId = type == ENHANCED_PACKET_BLOCK ? view.getInt(0) : view.getShort(0) & 0xFFFF;
+                Interface packetInterface = getInterface(interfaceId);
+                long units = ((long) view.getInt(4) << 32) | (view.getInt(8) & 0xFFFFFFFFL);
+                setPacket(packetInterface, 20, view.getInt(12), bodyLength);
+                timestamp = toNanoseconds(units, packetInterface.unitsPerSecond);
+                return true;
+            } else if (type == SIMPLE_PACKET_BLOCK) {
+                Interface packetInterface = getInterface(0);
+                int capturedLength = view.getInt(0);
+                if (packetInterface.snapLength > 0) {
+                    capturedLength = Math.min(capturedLength, packetInterface.snapLength);
+                }
+                setPacket(packetInterface, 4, capturedLength, bodyLength);
+                timestamp = FIXHeaderScanner.NO_TIMESTAMP;
+                return true;
+            }
+        }
+    }
+
+    private void setPacket(Interface packetInterface, int offset, int capturedLength, int bodyLength)
+            throws IOException {
+        if (capturedLength < 0 || capturedLength > bodyLength - offset) {
+            throw new IOException("Corrupt capture file: a packet is longer than its block.");
+        }
+        linkType = packetInterface.linkType;
+        packetOffset = offset;
+        packetLength = capturedLength;
+    }
+
+    /**
+     * Reads the rest of a section header block, following the block type. The byte
+     * order of the section is the byte order of its byte order magic.
+     */
+    private void readSectionHeader() throws IOException {
+        if (!readHeader(8)) {
+            throw new EOFException("The capture file ends in a section header.");
+        }
+        int magic = ByteBuffer.wrap(block, 4, 4).getInt();
+        if (magic == BYTE_ORDER_MAGIC) {
+            byteOrder = ByteOrder.BIG_ENDIAN;
+        } else if (magic == Integer.reverseBytes(BYTE_ORDER_MAGIC)) {
+            byteOrder = ByteOrder.LITTLE_ENDIAN;
+        } else {
+            throw new IOException("Corrupt capture file: unknown byte order.");
+        }
+        view.order(byteOrder);
+
+        int length = view.getInt(0);
+        if (length < 28 || length > MAXIMUM_BLOCK_LENGTH || length % 4 != 0) {
+            throw new IOException("Corrupt capture file: a section header is " + (length & 0xFFFFFFFFL) + " bytes.");
+        }
+        // the version, section length, options and repeated block length.
+        ensureCapacity(length - 12);
+        readFully(block, 0, length - 12);
+        interfaces.clear();
+    }
+
+    private Interface readInterface(int bodyLength) {
+        int interfaceLinkType = view.getShort(0) & 0xFFFF;
+        int snapLength = view.getInt(4);
+        long unitsPerSecond = MICROSECONDS_PER_SECOND;
+
+        int option = 8;
+        while (option + 4 <= bodyLength) {
+            int code = view.getShort(option) & 0xFFFF;
+            int length = view.getShort(option + 2) & 0xFFFF;
+            if (code == OPTION_END) {
+                break;
+            }
+            if (code == OPTION_TIMESTAMP_RESOLUTION && length >= 1) {
+                int resolution = block[option + 4] & 0xFF;
+                int exponent = Math.min(resolution & 0x7F, 62);
+                if ((resolution & 0x80) == 0) {
+                    unitsPerSecond = 1;
+                    for (int i = 0; i < Math.min(exponent, 18); i++) {
+                        unitsPerSecond *= 10;
+                    }
+                } else {
+                    unitsPerSecond = 1L << exponent;
+                }
+            }
+            option += 4 + ((length + 3) & ~3);
+        }
+        return new Interface(interfaceLinkType, snapLength, unitsPerSecond);
+    }
+
+    private Interface getInterface(int interfaceId) throws IOException {
+        if (interfaceId < 0 || interfaceId >= interfaces.size()) {
+            throw new IOException("Corrupt capture file: a packet refers to unknown interface " + interfaceId + ".");
+        }
+        return interfaces.get(interfaceId);
+    }
+
+    private static long toNanoseconds(long units, long unitsPerSecond) {
+        if (unitsPerSecond == NANOSECONDS_PER_SECOND) {
+            return units;
+        }
+        long seconds = units / unitsPerSecond;
+        long fraction = units % unitsPerSecond;
+        return seconds * NANOSECONDS_PER_SECOND + (long) ((double) fraction * NANOSECONDS_PER_SECOND / unitsPerSecond);
+    }
+
+    /**
+     * Reads a header into the start of the block.
+     *
+     * @return false if the end of the stream is reached before the header starts.
+     */
+    private boolean readHeader(int length) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return false;
+        }
+        block[0] = (byte) first;
+        readFully(block, 1, length - 1);
+        return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > block.length) {
+            block = new byte[Math.max(capacity, block.length * 2)];
+            view = ByteBuffer.wrap(block).order(byteOrder);
+        }
+    }
+
+    private void readFully(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = in.read(bytes, offset, length);
+            if (read == -1) {
+                throw new EOFException("The capture file ends in the middle of a packet.");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    /**
+     * A pcapng interface description.
+     */
+    private static class Interface {
+
+        final int linkType;
+        final int snapLength;
+        final long unitsPerSecond;
+
+        Interface(int linkType, int snapLength, long unitsPerSecond) {
+            this.linkType = linkType;
+            this.snapLength = snapLength;
+            this.unitsPerSecond = unitsPerSecond;
+        }
+    }
+}
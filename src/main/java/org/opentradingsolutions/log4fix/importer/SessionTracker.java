@@ -0,0 +1,341 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import org.opentradingsolutions.log4fix.core.SegmentMemoryLogModel;
+import org.opentradingsolutions.log4fix.core.SessionMemoryLogModels;
+import quickfix.SessionID;
+import quickfix.field.BeginString;
+import quickfix.field.MsgType;
+import quickfix.field.SenderCompID;
+import quickfix.field.SendingTime;
+import quickfix.field.TargetCompID;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the sessions of an imported log file, decides whether each message was
+ * sent or received and routes each message to the log of its session.
+ * <p/>
+ * A session is identified by the BeginString and the pair of CompIDs, in either
+ * order, so both directions of a session are routed to the same log. The first
+ * message of a session establishes the initiator's session Id. Each session gets
+ * its own model from the {@link SessionMemoryLogModels}; the first session uses the
+ * importer's own log.
+ * <p/>
+ * The header of each message is read by a {@link FIXHeaderScanner}. The last
+ * session is compared with the header first. Otherwise the known sessions are
+ * looked up in a hash table keyed on the BeginString and the CompID pair, hashed
+ * from the scanned header without creating any objects. Strings are only created
+ * for a new session.
+ * <p/>
+ * The sessions found by an earlier import are restored from its
+ * {@link ImportCheckpoint}, so a resumed import does not need the logon messages.
+ * <p/>
+ * An {@link #setOffHeap(boolean) off-heap} import gives every session a new
+ * {@link SegmentMemoryLogModel}, the way a lazy import gives every session a model
+ * reading the file.
+ */
+public class SessionTracker {
+
+    /**
+     * The number of segments of an off-heap model kept in direct memory when the
+     * older segments spill to a file.
+     */
+    static final int RESIDENT_SEGMENTS = 4;
+
+    private static final int INITIAL_TABLE_SIZE = 16;
+
+    private final ImporterModel model;
+    private final FIXHeaderScanner header = new FIXHeaderScanner(
+            BeginString.FIELD, MsgType.FIELD, SenderCompID.FIELD, TargetCompID.FIELD, SendingTime.FIELD);
+    private final List<Session> sessions = new ArrayList<Session>();
+
+    // the sessions chained by the hash of their key; the length is a power of two.
+    private Session[] table = new Session[INITIAL_TABLE_SIZE];
+
+    private Session firstSession;
+    private Session currentSession;
+    private boolean offHeap;
+
+    public SessionTracker(ImporterModel model) {
+        this.model = model;
+    }
+
+    /**
+     * @param offHeap true to keep the messages of each session found from now on in
+     *                a new {@link SegmentMemoryLogModel}, spilling to the model's
+     *                spill directory.
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Finds the session of the message. Use {@link #getMemoryLog()} to get the log of
+     * the message's session.
+     *
+     * @param rawMessage a SOH delimited FIX message.
+     * @return true if the message was received by the initiator; false if the
+     *         message was sent by the initiator.
+     */
+    public boolean isIncoming(String rawMessage) {
+
+        header.scan(rawMessage);
+
+        Session session = currentSession;
+        if (session == null || !session.matchesHeader()) {
+            session = findSession();
+        }
+        currentSession = session;
+
+        return session.isIncoming();
+    }
+
+    /**
+     * @return the log of the session of the last message passed to
+     *         {@link #isIncoming(String)}.
+     */
+    public ImporterMemoryLog getMemoryLog() {
+        return currentSession.log;
+    }
+
+    /**
+     * @return the SendingTime (52) of the last message passed to
+     *         {@link #isIncoming(String)} in epoch nanoseconds;
+     *         {@link FIXHeaderScanner#NO_TIMESTAMP} if it is missing or invalid.
+     */
+    public long getSendingTime() {
+        return header.getTimestamp(SendingTime.FIELD);
+    }
+
+    /**
+     * @return the CompID of the other side of the session of the last message
+     *         passed to {@link #isIncoming(String)}.
+     */
+    public String getCounterparty() {
+        return currentSession.acceptor;
+    }
+
+    /**
+     * @return the session Id established by the first message; null if no messages
+     *         have been seen.
+     */
+    public SessionID getSenderSessionId() {
+        return firstSession == null ? null : firstSession.sessionId;
+    }
+
+    /**
+     * @return the number of sessions found so far.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the state of the sessions found so far, the first session first.
+     */
+    public List<ImportCheckpoint.Session> getCheckpointSessions() {
+        List<ImportCheckpoint.Session> checkpointSessions = new ArrayList<ImportCheckpoint.Session>();
+        for (Session session : sessions) {
+            // the next index of the session's log is the number of messages numbered.
+            checkpointSessions.add(new ImportCheckpoint.Session(session.sessionId, session.beginString,
+                    session.initiator, session.acceptor, session.log.reserveMessageIndexes(0)));
+        }
+        return checkpointSessions;
+    }
+
+    /**
+     * Restores the sessions found before a checkpoint. Must be called before the
+     * first message. The log of each session continues numbering messages after the
+     * messages imported before the checkpoint.
+     */
+    public void restore(List<ImportCheckpoint.Session> checkpointSessions) {
+        for (ImportCheckpoint.Session checkpointSession : checkpointSessions) {
+            Session session = addSession(checkpointSession.getSessionId(), checkpointSession.getBeginString(),
+                    checkpointSession.getInitiator(), checkpointSession.getAcceptor());
+
+            int next = session.log.reserveMessageIndexes(0);
+            if (next < checkpointSession.getMessageCount()) {
+                session.log.reserveMessageIndexes(checkpointSession.getMessageCount() - next);
+            }
+        }
+    }
+
+    private Session findSession() {
+        int hash = hash(header.valueHashCode(BeginString.FIELD), header.valueHashCode(SenderCompID.FIELD),
+                header.valueHashCode(TargetCompID.FIELD));
+        for (Session session = table[hash & (table.length - 1)]; session != null; session = session.next) {
+            if (session.hash == hash && session.matchesHeader()) {
+                return session;
+            }
+        }
+
+        return createSession(header.getValue(BeginString.FIELD), header.getValue(SenderCompID.FIELD),
+                header.getValue(TargetCompID.FIELD));
+    }
+
+    private Session createSession(String beginString, String sender, String target) {
+        SessionID sessionId;
+
+        // hopefully the first message we find is the initiator's logon...
+        // @todo - currently it is assumed that the person running this
+        // application is always the initiator. Fix this.
+        if (header.valueEquals(MsgType.FIELD, MsgType.LOGON)) {
+            sessionId = new SessionID(beginString, sender, target);
+        } else {
+            // the logon message is missing... resolve the session Id.
+            sessionId = model.getSessionIdResolver().resolveSessionId(beginString, sender, target);
+        }
+        return addSession(sessionId, beginString, sender, target);
+    }
+
+    private Session addSession(SessionID sessionId, String beginString, String sender, String target) {
+        ImporterMemoryLog primaryLog = model.getImporterMemoryLog();
+        MemoryLogModel memoryLogModel;
+        if (offHeap) {
+            SegmentMemoryLogModel segmentModel = new SegmentMemoryLogModel(sessionId);
+            if (model.getSpillDirectory() != null) {
+                segmentModel.setSpillDirectory(model.getSpillDirectory(), RESIDENT_SEGMENTS);
+            }
+            model.getSessionMemoryLogModels().addMemoryLogModel(sessionId, segmentModel);
+            memoryLogModel = segmentModel;
+        } else {
+            memoryLogModel = model.getSessionMemoryLogModels().getMemoryLogModel(sessionId);
+        }
+
+        ImporterMemoryLog log;
+        if (memoryLogModel == primaryLog.getMemoryLogModel()) {
+            log = primaryLog;
+        } else {
+            log = primaryLog.createMemoryLog(memoryLogModel);
+        }
+
+        log.setSessionId(sessionId);
+        log.onEvent("Initiator Session Id: " + sessionId);
+        if (log != primaryLog) {
+            primaryLog.onEvent("Session Found: " + sessionId);
+        }
+
+        Session session = new Session(sessionId, log, beginString, sender, target);
+        if (firstSession == null) {
+            firstSession = session;
+        }
+        sessions.add(session);
+
+        if (sessions.size() > table.length * 3 / 4) {
+            table = new Session[table.length * 2];
+            for (Session known : sessions) {
+                known.next = null;
+                link(known);
+            }
+        } else {
+            link(session);
+        }
+        return session;
+    }
+
+    private void link(Session session) {
+        int bucket = session.hash & (table.length - 1);
+        session.next = table[bucket];
+        table[bucket] = session;
+    }
+
+    /**
+     * Combines the hash codes of a session's key. The CompIDs are ordered by their
+     * hash codes, so both directions of a session hash alike.
+     */
+    private static int hash(int beginString, int sender, int target) {
+        int hash = 31 * beginString + Math.min(sender, target);
+        hash = 31 * hash + Math.max(sender, target);
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A session found in the log. The header values of the session's first message
+     * are kept because the resolver may have changed the session Id.
+     */
+    private class Session {
+
+        private final SessionID sessionId;
+        private final ImporterMemoryLog log;
+        private final String beginString;
+        private final String initiator;
+        private final String acceptor;
+        private final int hash;
+
+        // the next session in the same bucket of the table.
+        private Session next;
+
+        Session(SessionID sessionId, ImporterMemoryLog log, String beginString, String initiator, String acceptor) {
+            this.sessionId = sessionId;
+            this.log = log;
+            this.beginString = beginString;
+            this.initiator = initiator;
+            this.acceptor = acceptor;
+            hash = hash(beginString.hashCode(), initiator.hashCode(), acceptor.hashCode());
+        }
+
+        /**
+         * @return true if the scanned header belongs to this session, in either
+         *         direction.
+         */
+        boolean matchesHeader() {
+            if (!header.valueEquals(BeginString.FIELD, beginString)) {
+                return false;
+            }
+            return isSentByInitiator() || isReceivedByInitiator();
+        }
+
+        /**
+         * @return true if the scanned header was not sent by the initiator.
+         */
+        boolean isIncoming() {
+            return !isSentByInitiator();
+        }
+
+        private boolean isSentByInitiator() {
+            return header.valueEquals(SenderCompID.FIELD, initiator)
+                    && header.valueEquals(TargetCompID.FIELD, acceptor);
+        }
+
+        private boolean isReceivedByInitiator() {
+            return header.valueEquals(SenderCompID.FIELD, acceptor)
+                    && header.valueEquals(TargetCompID.FIELD, initiator);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reassembles the bytes sent in one direction of a TCP connection. Bytes are made
+ * available in sequence order: bytes that were already received (retransmissions)
+ * are dropped and segments that arrive ahead of a missing segment are held until
+ * the missing bytes arrive.
+ * <p/>
+ * The memory used is bounded. At most the stream's capacity of early bytes is
+ * held; when more arrive the caller is expected to {@link #skipGap() give up} on
+ * the missing bytes. The bytes made available are kept until the caller
+ * {@link #consume(int) consumes} them.
+ * <p/>
+ * Sequence numbers are 32 bit and wrap around, so the stream keeps its position as
+ * the number of bytes since the first sequence number seen.
+ */
+class TcpStream {
+
+    private final String name;
+    private final int capacity;
+
+    private boolean started;
+    private int initialSequence;
+
+    // the position of the next byte expected.
+    private long next;
+
+    // the bytes available in sequence order and not yet consumed.
+    private byte[] bytes = new byte[4096];
+    private int length;
+
+    // the segments received ahead of a missing segment, by position.
+    private final TreeMap<Long, byte[]> early = new TreeMap<Long, byte[]>();
+    private int earlyBytes;
+
+    // kept for the scanner reading the stream.
+    private FIXDelimeter delimeter;
+    private int leftOver;
+    private boolean reported;
+
+    /**
+     * @param name     the name of the stream, e.g. "10.0.0.1:5001 -> 10.0.0.2:9878".
+     * @param capacity the number of bytes received ahead of a missing segment that
+     *                 may be held.
+     */
+    TcpStream(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Starts the stream at the sequence number following a SYN, so a segment
+     * arriving before the first data segment is not mistaken for a retransmission.
+     */
+    void start(int sequence) {
+        if (!started) {
+            started = true;
+            initialSequence = sequence;
+        }
+    }
+
+    /**
+     * Adds a segment.
+     *
+     * @param sequence the sequence number of the first byte of the segment.
+     * @return true if new bytes of the segment were made available, i.e. the
+     *         segment was the next segment expected.
+     */
+    boolean add(int sequence, byte[] data, int offset, int count) {
+        if (count == 0) {
+            return false;
+        }
+        start(sequence);
+
+        long position = toPosition(sequence);
+        if (position + count <= next) {
+            // already received.
+            return false;
+        }
+        if (position > next) {
+            byte[] held = early.get(position);
+            if (held == null || held.length < count) {
+                byte[] segment = new byte[count];
+                System.arraycopy(data, offset, segment, 0, count);
+                early.put(position, segment);
+                earlyBytes += count - (held == null ? 0 : held.length);
+            }
+            return false;
+        }
+
+        append(data, offset + (int) (next - position), count - (int) (next - position));
+        drainEarly();
+        return true;
+    }
+
+    /**
+     * @return true if more bytes are held ahead of a missing segment than the
+     *         stream's capacity.
+     */
+    boolean isOverCapacity() {
+        return earlyBytes > capacity;
+    }
+
+    /**
+     * @return true if segments are held ahead of a missing segment.
+     */
+    boolean hasGap() {
+        return !early.isEmpty();
+    }
+
+    /**
+     * Gives up on the missing bytes in front of the earliest segment held, making the
+     * segments that follow them available. The bytes available but not yet consumed
+     * are discarded, because they can never be followed by the missing bytes.
+     *
+     * @return the number of bytes missing.
+     */
+    long skipGap() {
+        if (early.isEmpty()) {
+            return 0;
+        }
+        long skipped = early.firstKey() - next;
+        skip(skipped);
+        return skipped;
+    }
+
+    /**
+     * Gives up on the next bytes, e.g. bytes missing from a packet truncated by the
+     * capture. The bytes available but not yet consumed are discarded.
+     */
+    void skip(long count) {
+        length = 0;
+        leftOver = 0;
+        next += count;
+        drainEarly();
+    }
+
+    /**
+     * @return the bytes available. Only the first {@link #getLength()} bytes are valid.
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * Removes bytes from the front of the available bytes.
+     */
+    void consume(int count) {
+        System.arraycopy(bytes, count, bytes, 0, length - count);
+        length -= count;
+    }
+
+    FIXDelimeter getDelimeter() {
+        return delimeter;
+    }
+
+    void setDelimeter(FIXDelimeter delimeter) {
+        this.delimeter = delimeter;
+    }
+
+    /**
+     * @return the number of bytes left over by the last scan of the stream.
+     */
+    int getLeftOver() {
+        return leftOver;
+    }
+
+    void setLeftOver(int leftOver) {
+        this.leftOver = leftOver;
+    }
+
+    /**
+     * @return true if the stream was already reported, i.e. a message was found in it.
+     */
+    boolean isReported() {
+        return reported;
+    }
+
+    void setReported(boolean reported) {
+        this.reported = reported;
+    }
+
+    private long toPosition(int sequence) {
+        // the distance from the next byte expected, which may be negative.
+        int distance = sequence - (initialSequence + (int) next);
+        return next + distance;
+    }
+
+    private void drainEarly() {
+        while (!early.isEmpty() && early.firstKey() <= next) {
+            Map.Entry<Long, byte[]> entry = early.pollFirstEntry();
+            byte[] segment = entry.getValue();
+            earlyBytes -= segment.length;
+            long end = entry.getKey() + segment.length;
+            if (end > next) {
+                int skipped = (int) (next - entry.getKey());
+                append(segment, skipped, segment.length - skipped);
+            }
+        }
+    }
+
+    private void append(byte[] data, int offset, int count) {
+        if (length + count > bytes.length) {
+            byte[] grown = new byte[Math.max(length + count, bytes.length * 2)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+        System.arraycopy(data, offset, bytes, length, count);
+        length += count;
+        next += count;
+    }
+}
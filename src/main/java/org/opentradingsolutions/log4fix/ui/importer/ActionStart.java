@@ -34,6 +34,7 @@
 
 package org.opentradingsolutions.log4fix.ui.importer;
 
+import org.opentradingsolutions.log4fix.importer.ImportCheckpoint;
 import org.opentradingsolutions.log4fix.importer.Importer;
 import org.opentradingsolutions.log4fix.importer.ImporterCallback;
 import org.opentradingsolutions.log4fix.importer.ImporterModel;
@@ -41,8 +42,8 @@ import org.opentradingsolutions.log4fix.importer.ImporterModel;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 /**
@@ -56,9 +57,14 @@ public class ActionStart extends AbstractAction {
     private final Executor executor;
 
     private JFileChooser fileChooser;
+    private MessageFilterPanel filterPanel;
 
     public ActionStart(Importer importer, ImporterModel model, ImporterCallback callback) {
-        super("Import");
+        this("Import", importer, model, callback);
+    }
+
+    protected ActionStart(String name, Importer importer, ImporterModel model, ImporterCallback callback) {
+        super(name);
 
         this.model = model;
         this.importer = importer;
@@ -69,32 +75,107 @@ public class ActionStart extends AbstractAction {
     public void actionPerformed(ActionEvent e) {
         maybeCreateFileChooser();
 
-        if (openLogFile(fileChooser)) {
-            final File selectedFile = fileChooser.getSelectedFile();
-            importFile(selectedFile);
-
+        if (openLogFile(fileChooser) && updateFilter()) {
+            File[] selectedFiles = fileChooser.getSelectedFiles();
+            if (fileChooser.isMultiSelectionEnabled() && selectedFiles.length > 1) {
+                importFiles(Arrays.asList(selectedFiles));
+            } else {
+                final File selectedFile = fileChooser.getSelectedFile();
+                importFile(selectedFile);
+            }
         }
     }
 
+    /**
+     * Imports the file. If an earlier import of the file did not finish, the user is
+     * asked whether to resume it.
+     */
     public void importFile(final File selectedFile) {
         model.setLastAccessedFilePath(selectedFile.getPath());
 
+        ImportCheckpoint checkpoint = isResumable() ? importer.findCheckpoint(model, selectedFile) : null;
+        if (checkpoint != null) {
+            int answer = JOptionPane.showConfirmDialog(null, "The last import of " + selectedFile.getName()
+                    + " stopped after " + checkpoint.getMessageCount() + " messages.\n"
+                    + "Resume the import from there?", "Resume Import", JOptionPane.YES_NO_CANCEL_OPTION);
+            if (answer == JOptionPane.CANCEL_OPTION || answer == JOptionPane.CLOSED_OPTION) {
+                return;
+            } else if (answer == JOptionPane.NO_OPTION) {
+                checkpoint = null;
+            }
+        }
+
+        final ImportCheckpoint resumedCheckpoint = checkpoint;
         Runnable task = new Runnable() {
             public void run() {
-                try {
-                    importer.start(model, new FileInputStream(selectedFile), callback);
-                } catch (IOException ioException) {
-                    throw new RuntimeException(ioException);
+                if (resumedCheckpoint == null) {
+                    start(importer, model, selectedFile, callback);
+                } else {
+                    importer.resume(model, selectedFile, resumedCheckpoint, callback);
                 }
             }
         };
         executor.execute(task);
     }
 
+    /**
+     * Imports the files as one timeline, merged by SendingTime.
+     */
+    public void importFiles(final List<File> selectedFiles) {
+        model.setLastAccessedFilePath(selectedFiles.get(0).getPath());
+
+        Runnable task = new Runnable() {
+            public void run() {
+                importer.start(model, selectedFiles, callback);
+            }
+        };
+        executor.execute(task);
+    }
+
+    /**
+     * @return true if several files may be selected and imported as one timeline.
+     */
+    protected boolean isMultiSelectionEnabled() {
+        return true;
+    }
+
+    /**
+     * @return true if an unfinished import of a file may be resumed.
+     */
+    protected boolean isResumable() {
+        return true;
+    }
+
+    /**
+     * Imports the file. This runs on the executor's thread.
+     */
+    protected void start(Importer importer, ImporterModel model, File file, ImporterCallback callback) {
+        importer.start(model, file, callback);
+    }
+
     private void maybeCreateFileChooser() {
         if (fileChooser == null) {
             fileChooser = new JFileChooser(model.getLastAccessedFilePath());
             fileChooser.setFileFilter(new LogFileFilter());
+            fileChooser.setMultiSelectionEnabled(isMultiSelectionEnabled());
+
+            filterPanel = new MessageFilterPanel();
+            fileChooser.setAccessory(filterPanel);
+        }
+    }
+
+    /**
+     * Gives the model the filter chosen with the file.
+     *
+     * @return false if the filter cannot be understood.
+     */
+    private boolean updateFilter() {
+        try {
+            model.setFilter(filterPanel.createFilter());
+            return true;
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Invalid Filter", JOptionPane.ERROR_MESSAGE);
+            return false;
         }
     }
 
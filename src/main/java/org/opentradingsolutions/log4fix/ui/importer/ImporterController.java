@@ -34,12 +34,14 @@
 
 package org.opentradingsolutions.log4fix.ui.importer;
 
+import org.opentradingsolutions.log4fix.importer.ImportProgress;
 import org.opentradingsolutions.log4fix.importer.Importer;
 import org.opentradingsolutions.log4fix.importer.ImporterCallback;
 import org.opentradingsolutions.log4fix.importer.ImporterModel;
 
 import javax.swing.*;
 import java.io.File;
+import java.util.List;
 
 /**
  * @author Brian M. Coyner
@@ -47,11 +49,16 @@ import java.io.File;
 public class ImporterController {
 
     private final ActionStart start;
+    private final ActionStart follow;
     private final Action stop;
     private final JLabel busyText;
+    private final ImporterModel model;
 
     public ImporterController(Importer service, ImporterModel model) {
-        start = new ActionStart(service, model, new DefaultImporterController());
+        this.model = model;
+        DefaultImporterController callback = new DefaultImporterController();
+        start = new ActionStart(service, model, callback);
+        follow = new ActionFollow(service, model, callback);
         stop = new ActionStop(service);
 
         busyText = new JLabel();
@@ -62,6 +69,10 @@ public class ImporterController {
         return start;
     }
 
+    public Action getFollow() {
+        return follow;
+    }
+
     public Action getStop() {
         return stop;
     }
@@ -74,30 +85,59 @@ public class ImporterController {
         start.importFile(file);
     }
 
+    public void importWithFiles(List<File> files) {
+        start.importFiles(files);
+    }
+
     private class DefaultImporterController implements ImporterCallback {
+
+        // set once the import is canceled, so late progress does not hide it.
+        private volatile boolean canceling;
+
         public void starting() {
+            canceling = false;
             SwingUtilities.invokeLater(new Runnable() {
                 public void run() {
 
                     busyText.setText("Importing...");
+                    busyText.setToolTipText(null);
                     busyText.setVisible(true);
                     start.setEnabled(false);
+                    follow.setEnabled(false);
                     stop.setEnabled(true);
                 }
             });
         }
 
         public void canceling() {
+            canceling = true;
             busyText.setText("Cancelling...");
         }
 
+        public void progress(final ImportProgress progress) {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    if (!canceling) {
+                        busyText.setText("Importing: " + progress);
+                        busyText.setToolTipText(progress.getMessageCount() + " messages, "
+                                + progress.getQueueDepth() + " waiting to be built");
+                    }
+                }
+            });
+        }
+
         public void done() {
+            final boolean partial = model.isPartial();
 
             SwingUtilities.invokeLater(new Runnable() {
 
                 public void run() {
-                    busyText.setVisible(false);
+                    // a partial import stays flagged until the next import starts.
+                    busyText.setText("Partial Import");
+                    busyText.setToolTipText("The import was canceled, so only part of the log was imported.");
+                    busyText.setVisible(partial);
                     start.setEnabled(true);
+                    follow.setEnabled(true);
                     stop.setEnabled(false);
 
                 }
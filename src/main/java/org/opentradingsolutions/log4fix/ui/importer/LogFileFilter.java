@@ -56,11 +56,15 @@ public class LogFileFilter extends FileFilter {
         String filename = f.getName();
         return filename.endsWith(".log")
                 || filename.endsWith(".in")
-                || filename.endsWith(".out");
+                || filename.endsWith(".out")
+                || filename.endsWith(".gz")
+                || filename.endsWith(".zip")
+                || filename.endsWith(".pcap")
+                || filename.endsWith(".pcapng");
     }
 
     @Override
     public String getDescription() {
-        return "Log Files (*.log, *.in, *.out)";
+        return "Log Files (*.log, *.in, *.out, *.gz, *.zip, *.pcap, *.pcapng)";
     }
 }
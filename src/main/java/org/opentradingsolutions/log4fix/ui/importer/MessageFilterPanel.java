@@ -0,0 +1,105 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.ui.importer;
+
+import org.opentradingsolutions.log4fix.importer.MessageFilter;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Lets the user choose which messages an import keeps. The panel is shown next to
+ * the files of the import's file chooser. Empty fields do not filter anything.
+ */
+public class MessageFilterPanel extends JPanel {
+
+    private final JTextField messageTypes = new JTextField(12);
+    private final JTextField from = new JTextField(12);
+    private final JTextField to = new JTextField(12);
+    private final JTextField fields = new JTextField(12);
+
+    public MessageFilterPanel() {
+        super(new GridBagLayout());
+        setBorder(BorderFactory.createTitledBorder("Import Only"));
+
+        messageTypes.setToolTipText("Message types separated by commas, e.g. D,8,F,G");
+        from.setToolTipText("Earliest SendingTime, e.g. 20110101-14:00:00");
+        to.setToolTipText("SendingTime following the latest message, e.g. 20110101-14:05:00");
+        fields.setToolTipText("Fields that must match, e.g. 55=IBM 1=ACCOUNT1,ACCOUNT2");
+
+        addRow(0, "Message Types:", messageTypes);
+        addRow(1, "From:", from);
+        addRow(2, "To:", to);
+        addRow(3, "Fields:", fields);
+    }
+
+    /**
+     * @return the filter described by the fields; null if every message is kept.
+     * @throws IllegalArgumentException if a field cannot be understood.
+     */
+    public MessageFilter createFilter() {
+        MessageFilter filter = new MessageFilter();
+
+        String types = messageTypes.getText().trim();
+        if (types.length() > 0) {
+            filter.addMessageTypes(types.split("\\s*,\\s*"));
+        }
+
+        String fromText = from.getText().trim();
+        String toText = to.getText().trim();
+        if (fromText.length() > 0 || toText.length() > 0) {
+            long fromTime = fromText.length() == 0 ? Long.MIN_VALUE : MessageFilter.parseTimestamp(fromText);
+            long toTime = toText.length() == 0 ? Long.MAX_VALUE : MessageFilter.parseTimestamp(toText);
+            filter.setTimeWindow(fromTime, toTime);
+        }
+
+        filter.addFieldValues(fields.getText());
+
+        return filter.isEmpty() ? null : filter;
+    }
+
+    private void addRow(int row, String label, JComponent field) {
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.gridy = row;
+        constraints.anchor = GridBagConstraints.WEST;
+        constraints.insets = new Insets(2, 4, 2, 4);
+        add(new JLabel(label), constraints);
+
+        constraints.gridx = 1;
+        constraints.fill = GridBagConstraints.HORIZONTAL;
+        constraints.weightx = 1;
+        add(field, constraints);
+    }
+}
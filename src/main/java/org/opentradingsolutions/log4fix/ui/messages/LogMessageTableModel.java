@@ -0,0 +1,115 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.ui.messages;
+
+import org.opentradingsolutions.log4fix.core.LogMessage;
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.List;
+
+/**
+ * Table model of the messages of a {@link MemoryLogModel} whose messages are not an
+ * <code>EventList</code>. Only the messages of the rows the table paints are asked
+ * for, so a model building its messages on demand is never fully read.
+ * <p/>
+ * The table is refreshed whenever the memory log model fires a property change.
+ */
+public class LogMessageTableModel extends AbstractTableModel {
+
+    private static final String[] COLUMN_NAMES = {"Direction", "Message Type", "Sending Time",
+            "Raw Message"};
+
+    private final List<LogMessage> messages;
+    private boolean reversed;
+
+    public LogMessageTableModel(MemoryLogModel memoryLogModel) {
+        messages = memoryLogModel.getMessages();
+        memoryLogModel.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        fireTableDataChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @param reversed true to show the newest message in the first row.
+     */
+    public void setReversed(boolean reversed) {
+        this.reversed = reversed;
+        fireTableDataChanged();
+    }
+
+    /**
+     * @return the message shown in the row.
+     */
+    public LogMessage getElementAt(int row) {
+        return messages.get(reversed ? messages.size() - 1 - row : row);
+    }
+
+    public int getRowCount() {
+        return messages.size();
+    }
+
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    public Object getValueAt(int row, int column) {
+        LogMessage message = getElementAt(row);
+        switch (column) {
+            case 0:
+                return message.isIncoming();
+            case 1:
+                return message.getMessageTypeName();
+            case 2:
+                return message.getSendingTime();
+            default:
+                return message.getRawMessage();
+        }
+    }
+}
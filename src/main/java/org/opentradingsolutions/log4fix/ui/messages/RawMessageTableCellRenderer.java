@@ -60,9 +60,14 @@ public class RawMessageTableCellRenderer extends DefaultTableCellRenderer {
 
         Component comp = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
 
-        //noinspection unchecked
-        EventTableModel<LogMessage> tableModel = (EventTableModel<LogMessage>) table.getModel();
-        LogMessage message = tableModel.getElementAt(row);
+        LogMessage message;
+        if (table.getModel() instanceof LogMessageTableModel) {
+            message = ((LogMessageTableModel) table.getModel()).getElementAt(row);
+        } else {
+            //noinspection unchecked
+            EventTableModel<LogMessage> tableModel = (EventTableModel<LogMessage>) table.getModel();
+            message = tableModel.getElementAt(row);
+        }
 
         if (table.convertColumnIndexToModel(column) == 2) {
             if (value != null) {
@@ -46,6 +46,7 @@ import org.jdesktop.swingx.treetable.TreeTableModel;
 import org.opentradingsolutions.log4fix.core.GlazedListsMemoryLogModel;
 import org.opentradingsolutions.log4fix.core.LogMessage;
 import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import org.opentradingsolutions.log4fix.core.SessionMemoryLogModels;
 import org.opentradingsolutions.log4fix.ui.fields.FieldHighlighter;
 import quickfix.SessionID;
 
@@ -55,7 +56,9 @@ import java.awt.*;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 /**
  * @author Brian M. Coyner
@@ -83,11 +86,66 @@ public class ViewBuilder {
     }
 
     public JComponent createView(MemoryLogModel memoryLogModel) {
+        JTabbedPane tabPane = new JTabbedPane();
+        addTab(tabPane, memoryLogModel);
+        return tabPane;
+    }
+
+    /**
+     * Creates a tab pane showing each session of an import in its own tab. A tab is
+     * added when the import finds a new session.
+     *
+     * @param sessionMemoryLogModels the models of the import.
+     * @return a component ready to show the imported logs.
+     */
+    public JComponent createView(SessionMemoryLogModels sessionMemoryLogModels) {
         final JTabbedPane tabPane = new JTabbedPane();
-        tabPane.addTab(getTabTitle(memoryLogModel), createTabForSession(memoryLogModel));
+
+        // the tab of each model, only used by the event dispatch thread.
+        final Map<MemoryLogModel, JComponent> tabs = new IdentityHashMap<MemoryLogModel, JComponent>();
+        for (MemoryLogModel memoryLogModel : sessionMemoryLogModels.getMemoryLogModels()) {
+            tabs.put(memoryLogModel, addTab(tabPane, memoryLogModel));
+        }
+
+        sessionMemoryLogModels.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(final PropertyChangeEvent evt) {
+                if (!SessionMemoryLogModels.PROPERTY_MEMORY_LOG_MODEL.equals(evt.getPropertyName())) {
+                    return;
+                }
+
+                // sessions are found by the importer thread.
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (evt.getNewValue() != null) {
+                            MemoryLogModel added = (MemoryLogModel) evt.getNewValue();
+                            tabs.put(added, addTab(tabPane, added));
+                        } else {
+                            // the model was removed when the models were cleared.
+                            JComponent tab = tabs.remove(evt.getOldValue());
+                            if (tab != null) {
+                                tabPane.remove(tab);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+
+        return tabPane;
+    }
+
+    /**
+     * @return the tab showing the model.
+     */
+    private JComponent addTab(final JTabbedPane tabPane, MemoryLogModel memoryLogModel) {
+        final JComponent tab = createTabForSession(memoryLogModel);
+        tabPane.addTab(getTabTitle(memoryLogModel), tab);
 
         memoryLogModel.addPropertyChangeListener(new PropertyChangeListener() {
             public void propertyChange(PropertyChangeEvent evt) {
+                if (!"sessionId".equals(evt.getPropertyName())) {
+                    return;
+                }
 
                 String title;
                 if (evt.getNewValue() == null) {
@@ -95,12 +153,14 @@ public class ViewBuilder {
                 } else {
                     title = evt.getNewValue().toString();
                 }
-                tabPane.setTitleAt(0, title);
+
+                int index = tabPane.indexOfComponent(tab);
+                if (index != -1) {
+                    tabPane.setTitleAt(index, title);
+                }
             }
         });
-
-
-        return tabPane;
+        return tab;
     }
 
     private JComponent createTabForSession(MemoryLogModel memoryLogModel) {
@@ -125,6 +185,21 @@ public class ViewBuilder {
         JPanel mainView = new JPanel(new BorderLayout());
         mainView.add(messageAndEventView, BorderLayout.CENTER);
 
+        JPanel sortPanel = new JPanel();
+        ((FlowLayout) sortPanel.getLayout()).setAlignment(FlowLayout.LEFT);
+        JCheckBox sortCheckbox = new JCheckBox("Keep New Messages At The Top");
+        sortPanel.add(sortCheckbox);
+        sortCheckbox.addActionListener(viewModel.getSortByMessageIndexActionListener());
+
+        JPanel northPanel = new JPanel(new BorderLayout());
+        northPanel.add(sortPanel, BorderLayout.WEST);
+        mainView.add(northPanel, BorderLayout.NORTH);
+
+        // messages built on demand (e.g. a lazily imported file) cannot be filtered.
+        if (!viewModel.isFilterable()) {
+            return mainView;
+        }
+
         // @todo - wrap the filter component in a "view builder". This will eliminate
         // the cast and provide the ability to change the layout without junking up
         // builder.
@@ -139,12 +214,6 @@ public class ViewBuilder {
         MatcherEditor matcherEditor = new CompositeMatcherEditor(matchers);
         messages.setMatcherEditor(matcherEditor);
 
-        JPanel sortPanel = new JPanel();
-        ((FlowLayout) sortPanel.getLayout()).setAlignment(FlowLayout.LEFT);
-        JCheckBox sortCheckbox = new JCheckBox("Keep New Messages At The Top");
-        sortPanel.add(sortCheckbox);
-        sortCheckbox.addActionListener(viewModel.getSortByMessageIndexActionListener());
-
         JCheckBox hideHeartbeats = new JCheckBox("Hide Heartbeats");
         sortPanel.add(hideHeartbeats);
         hideHeartbeats.addActionListener(viewModel.getHideHeartbeatsActionListener());
@@ -153,11 +222,7 @@ public class ViewBuilder {
         ((FlowLayout) filterPanel.getLayout()).setAlignment(FlowLayout.RIGHT);
         filterPanel.add(new JLabel("Search:"));
         filterPanel.add(filterField);
-
-        JPanel northPanel = new JPanel(new BorderLayout());
-        northPanel.add(sortPanel, BorderLayout.WEST);
         northPanel.add(filterPanel, BorderLayout.EAST);
-        mainView.add(northPanel, BorderLayout.NORTH);
 
         return mainView;
     }
@@ -68,8 +68,8 @@ import java.util.logging.Logger;
  */
 public class ViewModel implements ListSelectionListener {
 
-    private EventTableModel<LogMessage> rawMessagesTableModel;
-    private EventSelectionModel<LogMessage> rawMessagesSelectionModel;
+    private TableModel rawMessagesTableModel;
+    private ListSelectionModel rawMessagesSelectionModel;
     private TableCellRenderer rawMessagesTableCellRenderer;
 
     private final FieldTreeTableModel treeTableModel;
@@ -78,13 +78,23 @@ public class ViewModel implements ListSelectionListener {
     private final FilterList<LogMessage> filteredList;
     private final EventListModel<LogEvent> eventsListModel;
 
+    /**
+     * The messages of a model whose messages are not an <code>EventList</code> are
+     * shown by a {@link LogMessageTableModel}. Such messages cannot be filtered.
+     */
     public ViewModel(MemoryLogModel memoryLogModel) {
         this.memoryLogModel = memoryLogModel;
 
-        EventList<LogMessage> originalList = (EventList<LogMessage>) memoryLogModel.getMessages();
-        filteredList = new FilterList<LogMessage>(originalList);
-        sortedList = new SortedList<LogMessage>(filteredList);
-        createRaw(sortedList);
+        if (memoryLogModel.getMessages() instanceof EventList) {
+            EventList<LogMessage> originalList = (EventList<LogMessage>) memoryLogModel.getMessages();
+            filteredList = new FilterList<LogMessage>(originalList);
+            sortedList = new SortedList<LogMessage>(filteredList);
+            createRaw(sortedList);
+        } else {
+            filteredList = null;
+            sortedList = null;
+            createRaw(new LogMessageTableModel(memoryLogModel));
+        }
 
         treeTableModel = new FieldTreeTableModel();
         eventsListModel = new EventListModel<LogEvent>((EventList<LogEvent>) memoryLogModel.getEvents());
@@ -102,7 +112,14 @@ public class ViewModel implements ListSelectionListener {
         return filteredList;
     }
 
-    public EventSelectionModel<LogMessage> getRawMessagesSelectionModel() {
+    /**
+     * @return true if the messages can be searched and heartbeats hidden.
+     */
+    public boolean isFilterable() {
+        return filteredList != null;
+    }
+
+    public ListSelectionModel getRawMessagesSelectionModel() {
         return rawMessagesSelectionModel;
     }
 
@@ -125,12 +142,9 @@ public class ViewModel implements ListSelectionListener {
         }
 
         if (!rawMessagesSelectionModel.isSelectionEmpty()) {
-            EventList<LogMessage> selectedMessage = rawMessagesSelectionModel.
-                    getSelected();
-
             RootNode rootNode = new RootNode();
 
-            LogMessage logMessage = selectedMessage.get(0);
+            LogMessage logMessage = getSelectedMessage();
 
             List<LogField> logFields = logMessage.getLogFields();
             for (LogField logField : logFields) {
@@ -166,6 +180,24 @@ public class ViewModel implements ListSelectionListener {
         }
     }
 
+    private LogMessage getSelectedMessage() {
+        if (rawMessagesTableModel instanceof LogMessageTableModel) {
+            return ((LogMessageTableModel) rawMessagesTableModel).getElementAt(
+                    rawMessagesSelectionModel.getMinSelectionIndex());
+        }
+
+        EventList<LogMessage> selectedMessage = ((EventSelectionModel<LogMessage>) rawMessagesSelectionModel).
+                getSelected();
+        return selectedMessage.get(0);
+    }
+
+    private void createRaw(LogMessageTableModel tableModel) {
+        rawMessagesTableModel = tableModel;
+        rawMessagesSelectionModel = new DefaultListSelectionModel();
+        rawMessagesSelectionModel.addListSelectionListener(this);
+        rawMessagesTableCellRenderer = new RawMessageTableCellRenderer();
+    }
+
     private void createRaw(EventList<LogMessage> adminMessages) {
         String[] properties = {LogMessage.INCOMING, LogMessage.MESSAGE_TYPE_NAME,
                 LogMessage.SENDING_TIME, LogMessage.RAW_MESSAGE};
@@ -177,8 +209,9 @@ public class ViewModel implements ListSelectionListener {
 
         rawMessagesTableModel = new EventTableModel<LogMessage>(adminMessages,
                 adminTableFormat);
-        rawMessagesSelectionModel = new EventSelectionModel<LogMessage>(adminMessages);
-        rawMessagesSelectionModel.addListSelectionListener(this);
+        EventSelectionModel<LogMessage> selectionModel = new EventSelectionModel<LogMessage>(adminMessages);
+        selectionModel.addListSelectionListener(this);
+        rawMessagesSelectionModel = selectionModel;
         rawMessagesTableCellRenderer = new RawMessageTableCellRenderer();
     }
 
@@ -187,7 +220,9 @@ public class ViewModel implements ListSelectionListener {
 
             public void actionPerformed(ActionEvent e) {
                 JCheckBox checkbox = (JCheckBox) e.getSource();
-                if (checkbox.isSelected()) {
+                if (sortedList == null) {
+                    ((LogMessageTableModel) rawMessagesTableModel).setReversed(checkbox.isSelected());
+                } else if (checkbox.isSelected()) {
                     sortedList.setComparator(GlazedLists.reverseComparator());
                 } else {
                     sortedList.setComparator(null);
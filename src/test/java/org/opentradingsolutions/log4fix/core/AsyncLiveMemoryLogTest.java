@@ -0,0 +1,270 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import quickfix.SessionID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests logging through the ring buffer of an {@link AsyncLiveMemoryLog}.
+ */
+public class AsyncLiveMemoryLogTest extends TestCase {
+
+    private SessionID sessionId;
+    private BlockingMemoryLogModel model;
+    private List<AsyncLiveMemoryLog> logs = new ArrayList<AsyncLiveMemoryLog>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        sessionId = new SessionID("FIX.4.2", "SENDER", "TARGET");
+        model = new BlockingMemoryLogModel(sessionId);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        model.release();
+        for (AsyncLiveMemoryLog log : logs) {
+            log.close();
+        }
+        super.tearDown();
+    }
+
+    public void testMessagesAndEventsKeepTheirOrder() {
+        AsyncLiveMemoryLog log = create(16, OverflowPolicy.BLOCK);
+        model.release();
+
+        long before = System.currentTimeMillis() * 1000000L;
+        log.onOutgoing(message("A", 1));
+        log.onEvent("Logon sent");
+        log.onIncoming(message("A", 1));
+        log.onIncoming(message("D", 2), 1234L);
+        log.flush();
+
+        List<LogMessage> messages = model.getMessages();
+        assertEquals(3, messages.size());
+        assertFalse(messages.get(0).isIncoming());
+        assertTrue(messages.get(1).isIncoming());
+        assertEquals(message("D", 2).replace('\u0001', '|'), messages.get(2).getRawMessage());
+        assertSame(sessionId, messages.get(0).getSessionId());
+
+        // the time the message was logged.
+        assertTrue(messages.get(0).getReceiveTime() >= before - 10000000L);
+        assertTrue(messages.get(0).getReceiveTime() <= System.currentTimeMillis() * 1000000L + 10000000L);
+        assertEquals(1234L, messages.get(2).getReceiveTime());
+
+        assertEquals(1, model.getEvents().size());
+        assertEquals("Logon sent", model.getEvents().get(0).getEvent());
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    public void testClearKeepsItsPlace() {
+        AsyncLiveMemoryLog log = create(16, OverflowPolicy.BLOCK);
+        model.release();
+
+        log.onIncoming(message("D", 1));
+        log.clear();
+        log.onIncoming(message("D", 2));
+        log.flush();
+
+        assertEquals(1, model.getMessages().size());
+        assertTrue(model.getMessages().get(0).getRawMessage().contains("|34=2|"));
+    }
+
+    public void testBlockLosesNothing() throws Exception {
+        final AsyncLiveMemoryLog log = create(4, OverflowPolicy.BLOCK);
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 1; i <= 20; i++) {
+                    log.onIncoming(message("D", i));
+                }
+            }
+        });
+        producer.start();
+
+        // the model holds up the log, so the producer waits for room.
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        model.release();
+        producer.join(5000);
+        log.flush();
+        assertEquals(20, model.getMessages().size());
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    public void testDropOldest() throws Exception {
+        AsyncLiveMemoryLog log = create(4, OverflowPolicy.DROP_OLDEST);
+        log.onIncoming(message("D", 1));
+        // the first message is taken by the log's thread, which is held up by the model.
+        assertTrue(model.awaitAdding());
+
+        for (int i = 2; i <= 10; i++) {
+            log.onIncoming(message("D", i));
+        }
+        assertEquals(5, log.getDroppedCount());
+
+        model.release();
+        log.flush();
+        List<LogMessage> messages = model.getMessages();
+        assertEquals(5, messages.size());
+        assertTrue(messages.get(0).getRawMessage().contains("|34=1|"));
+        assertTrue(messages.get(1).getRawMessage().contains("|34=7|"));
+        assertTrue(messages.get(4).getRawMessage().contains("|34=10|"));
+        assertEquals(AsyncLiveMemoryLog.EVENT_OVERFLOW + ": 5 messages dropped (DROP_OLDEST)",
+                model.getEvents().get(0).getEvent());
+    }
+
+    public void testDropOldestKeepsEvents() throws Exception {
+        final AsyncLiveMemoryLog log = create(4, OverflowPolicy.DROP_OLDEST);
+        log.onIncoming(message("D", 1));
+        assertTrue(model.awaitAdding());
+
+        log.onIncoming(message("D", 2));
+        log.onEvent("Resend requested");
+        log.onIncoming(message("D", 3));
+        log.onIncoming(message("D", 4));
+        log.onIncoming(message("D", 5));
+        assertEquals(1, log.getDroppedCount());
+
+        // the event is now the oldest entry, so the producer waits for room.
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                log.onIncoming(message("D", 6));
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        model.release();
+        producer.join(5000);
+        log.flush();
+        assertEquals(1, log.getDroppedCount());
+        assertEquals(5, model.getMessages().size());
+        assertTrue(model.getMessages().get(1).getRawMessage().contains("|34=3|"));
+        assertEquals("Resend requested", model.getEvents().get(0).getEvent());
+    }
+
+    public void testDropHeartbeats() throws Exception {
+        AsyncLiveMemoryLog log = create(8, OverflowPolicy.DROP_HEARTBEATS);
+        log.onIncoming(message("D", 1));
+        assertTrue(model.awaitAdding());
+
+        // heartbeats may fill six of the eight entries.
+        for (int i = 2; i <= 9; i++) {
+            log.onIncoming(message("0", i));
+        }
+        assertEquals(2, log.getDroppedCount());
+        log.onIncoming(message("D", 10));
+        log.onIncoming(message("D", 11));
+        assertEquals(2, log.getDroppedCount());
+
+        model.release();
+        log.flush();
+        List<LogMessage> messages = model.getMessages();
+        assertEquals(9, messages.size());
+        assertTrue(messages.get(8).getRawMessage().contains("|34=11|"));
+    }
+
+    public void testIsHeartbeat() {
+        assertTrue(AsyncLiveMemoryLog.isHeartbeat(message("0", 1)));
+        assertTrue(AsyncLiveMemoryLog.isHeartbeat(message("0", 1).replace('\u0001', '|')));
+        assertFalse(AsyncLiveMemoryLog.isHeartbeat(message("D", 1)));
+        assertFalse(AsyncLiveMemoryLog.isHeartbeat(message("D", 1).replace("|34=1|", "|135=0|")));
+        assertFalse(AsyncLiveMemoryLog.isHeartbeat("8=FIX.4.4|35=0A|"));
+    }
+
+    public void testClose() {
+        AsyncLiveMemoryLog log = create(16, OverflowPolicy.BLOCK);
+        model.release();
+        log.onIncoming(message("D", 1));
+        log.close();
+        assertEquals(1, model.getMessages().size());
+
+        log.onIncoming(message("D", 2));
+        assertEquals(1, log.getDroppedCount());
+    }
+
+    private AsyncLiveMemoryLog create(int capacity, OverflowPolicy policy) {
+        AsyncLiveMemoryLog log = new AsyncLiveMemoryLog(model, sessionId, new ClassPathDataDictionaryLoader(),
+                capacity, policy);
+        logs.add(log);
+        return log;
+    }
+
+    private static String message(String messageType, int sequenceNumber) {
+        return ("8=FIX.4.2|9=5|35=" + messageType + "|34=" + sequenceNumber
+                + "|49=SENDER|56=TARGET|52=20081020-12:00:00|10=000|").replace('|', '\u0001');
+    }
+
+    /**
+     * A model that holds up the log's thread until it is released.
+     */
+    private static class BlockingMemoryLogModel extends MockMemoryLogModel {
+
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final CountDownLatch adding = new CountDownLatch(1);
+
+        BlockingMemoryLogModel(SessionID sessionId) {
+            super(sessionId);
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        boolean awaitAdding() throws InterruptedException {
+            return adding.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void addLogMessage(LogMessage logMessage) {
+            adding.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.addLogMessage(logMessage);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tests removing many elements of the list in a single event.
+ */
+public class EvictableEventListTest extends TestCase {
+
+    private EvictableEventList<String> list;
+    private List<String> mirror;
+    private int eventCount;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        list = new EvictableEventList<String>();
+        list.addAll(Arrays.asList("a", "b", "c", "d", "e", "f", "g"));
+
+        // replays each change on a copy, so the reported indexes are checked.
+        mirror = new ArrayList<String>(list);
+        list.addListEventListener(new ListEventListener<String>() {
+            public void listChanged(ListEvent<String> listChanges) {
+                eventCount++;
+                while (listChanges.next()) {
+                    int index = listChanges.getIndex();
+                    switch (listChanges.getType()) {
+                        case ListEvent.INSERT:
+                            mirror.add(index, list.get(index));
+                            break;
+                        case ListEvent.DELETE:
+                            mirror.remove(index);
+                            break;
+                        default:
+                            mirror.set(index, list.get(index));
+                    }
+                }
+            }
+        });
+    }
+
+    public void testRemoveHead() {
+        BitSet indexes = new BitSet();
+        indexes.set(0, 3);
+
+        assertEquals(3, list.removeAll(indexes));
+        assertEquals(Arrays.asList("d", "e", "f", "g"), list);
+        assertEquals(list, mirror);
+        assertEquals(1, eventCount);
+    }
+
+    public void testRemoveScatteredElements() {
+        BitSet indexes = new BitSet();
+        indexes.set(1);
+        indexes.set(3, 5);
+        indexes.set(6);
+        indexes.set(20);
+
+        assertEquals(4, list.removeAll(indexes));
+        assertEquals(Arrays.asList("a", "c", "f"), list);
+        assertEquals(list, mirror);
+        assertEquals(1, eventCount);
+    }
+
+    public void testRemoveNothing() {
+        assertEquals(0, list.removeAll(new BitSet()));
+        assertEquals(7, list.size());
+        assertEquals(0, eventCount);
+    }
+
+    public void testListOperations() {
+        list.add("h");
+        list.add(0, "z");
+        list.set(1, "y");
+        list.remove(2);
+        list.addAll(2, Arrays.asList("1", "2"));
+
+        assertEquals(Arrays.asList("z", "y", "1", "2", "c", "d", "e", "f", "g", "h"), list);
+        assertEquals(list, mirror);
+
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertTrue(mirror.isEmpty());
+    }
+}
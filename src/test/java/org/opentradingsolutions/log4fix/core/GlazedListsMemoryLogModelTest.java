@@ -34,9 +34,16 @@
 
 package org.opentradingsolutions.log4fix.core;
 
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
 import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import quickfix.DataDictionary;
 import quickfix.SessionID;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Brian M. Coyner
  */
@@ -44,6 +51,7 @@ public class GlazedListsMemoryLogModelTest extends TestCase {
 
     private SessionID sessionId;
     private GlazedListsMemoryLogModel model;
+    private DataDictionary dictionary;
 
     @Override
     protected void setUp() throws Exception {
@@ -51,6 +59,7 @@ public class GlazedListsMemoryLogModelTest extends TestCase {
 
         sessionId = new SessionID("FIX.4.2", "sender", "target");
         model = new GlazedListsMemoryLogModel(sessionId);
+        dictionary = new ClassPathDataDictionaryLoader().loadDictionary(sessionId);
     }
 
     public void testGlazedListsMemoryLogModelExtendsMemoryLogModel() {
@@ -60,4 +69,90 @@ public class GlazedListsMemoryLogModelTest extends TestCase {
     public void testGetSessionId() {
         assertSame(sessionId, model.getSessionId());
     }
+
+    public void testMessagesArePublishedWhenTheBatchIsFull() {
+        model = new GlazedListsMemoryLogModel(sessionId, 3, 60000);
+        EventCounter counter = new EventCounter();
+        model.getMessages().addListEventListener(counter);
+
+        List<LogMessage> added = addMessages(2);
+        assertEquals(0, counter.events);
+        assertEquals(0, counter.inserts);
+
+        added.addAll(addMessages(1));
+        assertEquals(1, counter.events);
+        assertEquals(3, counter.inserts);
+        assertEquals(added, new ArrayList<LogMessage>(model.getMessages()));
+    }
+
+    public void testMessagesArePublishedAfterTheBatchInterval() throws Exception {
+        model = new GlazedListsMemoryLogModel(sessionId, 1000, 20);
+        EventCounter counter = new EventCounter();
+        model.getMessages().addListEventListener(counter);
+
+        addMessages(5);
+        for (int i = 0; i < 100 && counter.events == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, counter.events);
+        assertEquals(5, counter.inserts);
+    }
+
+    public void testGetMessagesPublishesTheBufferedMessages() {
+        model = new GlazedListsMemoryLogModel(sessionId, 1000, 60000);
+        List<LogMessage> added = addMessages(10);
+        added.addAll(addMessages(5));
+
+        assertEquals(added, new ArrayList<LogMessage>(model.getMessages()));
+    }
+
+    public void testBatchSizeOfOnePublishesEveryMessage() {
+        model = new GlazedListsMemoryLogModel(sessionId, 1, 60000);
+        EventCounter counter = new EventCounter();
+        model.getMessages().addListEventListener(counter);
+
+        addMessages(3);
+        assertEquals(3, counter.events);
+        assertEquals(3, counter.inserts);
+    }
+
+    public void testInvalidBatchSettings() {
+        try {
+            model.setBatchSize(0);
+            fail("A batch size of 0 is invalid.");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            model.setBatchInterval(-1);
+            fail("A negative interval is invalid.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private List<LogMessage> addMessages(int count) {
+        List<LogMessage> added = new ArrayList<LogMessage>();
+        for (int i = 0; i < count; i++) {
+            LogMessage message = new LogMessage(i, true, sessionId,
+                    "8=FIX.4.2|9=12|35=0|34=" + i + "|10=000|", dictionary);
+            model.addLogMessage(message);
+            added.add(message);
+        }
+        return added;
+    }
+
+    private static class EventCounter implements ListEventListener<LogMessage> {
+
+        private volatile int events;
+        private volatile int inserts;
+
+        public void listChanged(ListEvent<LogMessage> listChanges) {
+            events++;
+            while (listChanges.next()) {
+                if (listChanges.getType() == ListEvent.INSERT) {
+                    inserts++;
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Tests the compact form a {@link LogMessage} is kept in.
+ */
+public class LogMessageStorageTest extends TestCase {
+
+    private static final String RAW = "8=FIX.4.2|9=5|35=D|34=1|49=SENDER|56=TARGET|52=20081020-12:00:00.123|"
+            + "11=ORDER-1|21=1|55=IBM|54=1|60=20081020-12:00:00|40=2|44=91.25|38=100|10=000|";
+
+    private SessionID sessionId;
+    private DataDictionary dictionary;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        sessionId = new SessionID("FIX.4.2", "SENDER", "TARGET");
+        dictionary = new ClassPathDataDictionaryLoader().loadDictionary(sessionId);
+    }
+
+    public void testSohIsShownAsTheDefaultDelimeter() {
+        LogMessage soh = create(RAW.replace('|', LogMessage.SOH_DELIMETER));
+        assertEquals(RAW, soh.getRawMessage());
+        assertEquals(RAW.length(), soh.getRawMessageLength());
+
+        LogMessage pipe = create(RAW);
+        assertEquals(RAW, pipe.getRawMessage());
+    }
+
+    public void testCharactersOutsideLatin1() {
+        String raw = RAW.replace("IBM", "\u682A\u5F0F");
+        assertEquals(raw, create(raw).getRawMessage());
+
+        String latin1 = RAW.replace("IBM", "Soci\u00E9t\u00E9");
+        LogMessage message = create(latin1);
+        assertEquals(latin1, message.getRawMessage());
+        assertEquals(latin1.length(), message.getRawMessageLength());
+    }
+
+    public void testSendingTime() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HH:mm:ss.SSS");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date expected = format.parse("20081020-12:00:00.123");
+
+        LogMessage message = create(RAW.replace('|', LogMessage.SOH_DELIMETER));
+        assertEquals(expected.getTime(), message.getSendingTimeMillis());
+        assertEquals(expected, message.getSendingTime());
+
+        LogMessage missing = create(RAW.replace("52=20081020-12:00:00.123|", ""));
+        assertEquals(LogMessage.NO_SENDING_TIME, missing.getSendingTimeMillis());
+        assertNull(missing.getSendingTime());
+        assertFalse(missing.isValid());
+    }
+
+    public void testMessageTypeNamesAreShared() {
+        String name = create(RAW).getMessageTypeName();
+        assertEquals(dictionary.getValueName(35, "D"), name);
+        assertSame(name, create(RAW.replace("ORDER-1", "ORDER-2")).getMessageTypeName());
+        assertFalse(name.equals(create(RAW.replace("35=D", "35=F")).getMessageTypeName()));
+
+        assertNull(create(RAW.replace("35=D|", "")).getMessageTypeName());
+    }
+
+    public void testMessageType() {
+        LogMessage message = create(RAW);
+        assertEquals("D", message.getMessageType());
+        assertEquals("D", create(RAW.replace('|', LogMessage.SOH_DELIMETER)).getMessageType());
+        assertEquals("AE", create(RAW.replace("35=D", "35=AE")).getMessageType());
+
+        // the value and its code are shared by every message of the type.
+        LogMessage other = create(RAW.replace("ORDER-1", "ORDER-2"));
+        assertSame(message.getMessageType(), other.getMessageType());
+        assertEquals(message.getMessageTypeCode(), other.getMessageTypeCode());
+        assertEquals(message.getMessageTypeCode(), LogMessage.getMessageTypeCode("D"));
+
+        // a tag ending in 35 is not the MsgType.
+        LogMessage missing = create(RAW.replace("35=D", "135=D"));
+        assertNull(missing.getMessageType());
+        assertEquals(LogMessage.NO_MESSAGE_TYPE, missing.getMessageTypeCode());
+        assertFalse(missing.isValid());
+    }
+
+    /**
+     * The raw message is stored once, as one byte per character, and the message
+     * type name is shared by every message of the type.
+     */
+    public void testFootprint() {
+        LogMessage first = create(RAW.replace('|', LogMessage.SOH_DELIMETER));
+        LogMessage second = create(RAW.replace("ORDER-1", "ORDER-2").replace('|', LogMessage.SOH_DELIMETER));
+
+        assertFalse(first.isUtf8());
+        assertEquals(RAW.length(), first.getRawBytes().length);
+        assertEquals(RAW.length(), second.getRawBytes().length);
+        assertNotSame(first.getRawBytes(), second.getRawBytes());
+        assertSame(first.getMessageTypeName(), second.getMessageTypeName());
+
+        assertEquals(RAW.replace("ORDER-1", "ORDER-2"), second.getRawMessage());
+    }
+
+    private LogMessage create(String raw) {
+        return new LogMessage(1, true, sessionId, raw, dictionary);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests the lock-free ring buffer of an {@link AsyncLiveMemoryLog}.
+ */
+public class LogRingBufferTest extends TestCase {
+
+    public void testCapacityIsAPowerOfTwo() {
+        assertEquals(1, new LogRingBuffer(1).getCapacity());
+        assertEquals(8, new LogRingBuffer(5).getCapacity());
+        assertEquals(8, new LogRingBuffer(8).getCapacity());
+
+        try {
+            new LogRingBuffer(0);
+            fail("A buffer must hold at least one entry.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testEntriesAreTakenInOrder() {
+        LogRingBuffer buffer = new LogRingBuffer(4);
+        LogRingBuffer.Entry entry = new LogRingBuffer.Entry();
+        assertTrue(buffer.isEmpty());
+        assertFalse(buffer.poll(entry));
+
+        // several laps around the buffer.
+        for (int i = 0; i < 10; i++) {
+            assertTrue(buffer.offer(LogRingBuffer.INCOMING, "a" + i, i));
+            assertTrue(buffer.offer(LogRingBuffer.OUTGOING, "b" + i, -i));
+            assertEquals(2, buffer.size());
+
+            assertTrue(buffer.poll(entry));
+            assertEquals(LogRingBuffer.INCOMING, entry.kind);
+            assertEquals("a" + i, entry.text);
+            assertEquals(i, entry.time);
+
+            assertTrue(buffer.poll(entry));
+            assertEquals(LogRingBuffer.OUTGOING, entry.kind);
+            assertEquals("b" + i, entry.text);
+            assertEquals(-i, entry.time);
+            assertTrue(buffer.isEmpty());
+        }
+    }
+
+    public void testFullBuffer() {
+        LogRingBuffer buffer = new LogRingBuffer(2);
+        assertTrue(buffer.offer(LogRingBuffer.EVENT, "1", 0));
+        assertTrue(buffer.offer(LogRingBuffer.EVENT, "2", 0));
+        assertFalse(buffer.offer(LogRingBuffer.EVENT, "3", 0));
+        assertEquals(2, buffer.size());
+
+        // dropping the oldest entry makes room.
+        assertTrue(buffer.poll(null));
+        assertTrue(buffer.offer(LogRingBuffer.EVENT, "3", 0));
+
+        LogRingBuffer.Entry entry = new LogRingBuffer.Entry();
+        buffer.poll(entry);
+        assertEquals("2", entry.text);
+        buffer.poll(entry);
+        assertEquals("3", entry.text);
+    }
+
+    public void testDropOldestMessage() {
+        LogRingBuffer buffer = new LogRingBuffer(4);
+        assertFalse(buffer.dropOldestMessage());
+
+        buffer.offer(LogRingBuffer.INCOMING, "1", 0);
+        buffer.offer(LogRingBuffer.EVENT, "2", 0);
+        buffer.offer(LogRingBuffer.OUTGOING, "3", 0);
+        assertTrue(buffer.dropOldestMessage());
+        assertEquals(2, buffer.size());
+
+        // events and clears are kept.
+        assertFalse(buffer.dropOldestMessage());
+        LogRingBuffer.Entry entry = new LogRingBuffer.Entry();
+        buffer.poll(entry);
+        assertEquals("2", entry.text);
+
+        buffer.offer(LogRingBuffer.CLEAR, null, 0);
+        assertTrue(buffer.dropOldestMessage());
+        assertFalse(buffer.dropOldestMessage());
+        assertEquals(1, buffer.size());
+    }
+
+    public void testConcurrentProducers() throws Exception {
+        final LogRingBuffer buffer = new LogRingBuffer(64);
+        final int producers = 4;
+        final int count = 5000;
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        while (!buffer.offer(LogRingBuffer.INCOMING, producer + ":" + i, i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        // each producer's entries are taken in the order they were added.
+        int[] next = new int[producers];
+        Set<String> taken = new HashSet<String>();
+        LogRingBuffer.Entry entry = new LogRingBuffer.Entry();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (taken.size() < producers * count && System.currentTimeMillis() < deadline) {
+            if (buffer.poll(entry)) {
+                assertTrue(taken.add(entry.text));
+                int producer = Integer.parseInt(entry.text.substring(0, entry.text.indexOf(':')));
+                assertEquals(next[producer], entry.time);
+                next[producer]++;
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.join(1000);
+        }
+        assertEquals(producers * count, taken.size());
+        assertTrue(buffer.isEmpty());
+    }
+}
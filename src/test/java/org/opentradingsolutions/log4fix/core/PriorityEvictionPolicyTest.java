@@ -0,0 +1,92 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+/**
+ * Tests the ranks given to messages by the priority eviction policy.
+ */
+public class PriorityEvictionPolicyTest extends TestCase {
+
+    private SessionID sessionId;
+    private DataDictionary dictionary;
+    private PriorityEvictionPolicy policy;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        sessionId = new SessionID("FIX.4.2", "SENDER", "TARGET");
+        dictionary = new ClassPathDataDictionaryLoader().loadDictionary(sessionId);
+        policy = new PriorityEvictionPolicy();
+    }
+
+    public void testDefaultRanks() {
+        int heartbeat = policy.getEvictionRank(create("0"));
+        int testRequest = policy.getEvictionRank(create("1"));
+        int order = policy.getEvictionRank(create("D"));
+
+        assertEquals(heartbeat, testRequest);
+        assertTrue(heartbeat >= 0);
+        assertTrue(heartbeat < order);
+        assertEquals(EvictionPolicy.NEVER, policy.getEvictionRank(create("3")));
+        assertEquals(EvictionPolicy.NEVER, policy.getEvictionRank(create("j")));
+    }
+
+    public void testInvalidMessagesAreRetained() {
+        LogMessage invalid = new LogMessage(1, true, sessionId, "8=FIX.4.2|9=5|35=0|34=1|10=000|", dictionary);
+        assertFalse(invalid.isValid());
+        assertEquals(EvictionPolicy.NEVER, policy.getEvictionRank(invalid));
+
+        policy.setInvalidRetained(false);
+        assertEquals(policy.getEvictionRank(create("0")), policy.getEvictionRank(invalid));
+    }
+
+    public void testAddedMessageTypes() {
+        policy.addEvictedFirstMessageTypes("W");
+        policy.addRetainedMessageTypes("8");
+
+        assertEquals(policy.getEvictionRank(create("0")), policy.getEvictionRank(create("W")));
+        assertEquals(EvictionPolicy.NEVER, policy.getEvictionRank(create("8")));
+    }
+
+    private LogMessage create(String messageType) {
+        return new LogMessage(1, true, sessionId, "8=FIX.4.2|9=5|35=" + messageType
+                + "|34=1|49=SENDER|56=TARGET|52=20081020-12:00:00.123|10=000|", dictionary);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.util.List;
+
+/**
+ * Tests evicting the messages and events of a model over the limits of its
+ * retention policy.
+ */
+public class RetentionPolicyTest extends TestCase {
+
+    private SessionID sessionId;
+    private DataDictionary dictionary;
+    private GlazedListsMemoryLogModel model;
+    private RetentionPolicy policy;
+    private int messageIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        sessionId = new SessionID("FIX.4.2", "SENDER", "TARGET");
+        dictionary = new ClassPathDataDictionaryLoader().loadDictionary(sessionId);
+
+        // every message is published, and checked against the limits, as it is added.
+        model = new GlazedListsMemoryLogModel(sessionId, 1, 60000);
+        policy = new RetentionPolicy();
+    }
+
+    public void testMessagesAreEvictedInChunks() {
+        policy.setMaximumMessages(100);
+        model.setRetentionPolicy(policy);
+        final int[] deletes = new int[1];
+        model.getMessages().addListEventListener(new ListEventListener<LogMessage>() {
+            public void listChanged(ListEvent<LogMessage> listChanges) {
+                while (listChanges.next()) {
+                    if (listChanges.getType() == ListEvent.DELETE) {
+                        deletes[0]++;
+                    }
+                }
+            }
+        });
+
+        add("D", 100);
+        assertEquals(100, model.getMessages().size());
+        assertEquals(0, model.getEvictedCount());
+
+        // going over the limit evicts down to 90% of it, oldest first.
+        add("D", 1);
+        List<LogMessage> messages = model.getMessages();
+        assertEquals(90, messages.size());
+        assertEquals(11, model.getEvictedCount());
+        assertEquals(11, deletes[0]);
+        assertEquals("11", messages.get(0).toString());
+        assertEquals("100", messages.get(89).toString());
+
+        add("D", 10);
+        assertEquals(100, model.getMessages().size());
+        assertEquals(11, model.getEvictedCount());
+    }
+
+    public void testMessagesAreEvictedByEstimatedBytes() {
+        long size = RetentionPolicy.estimateSize(create("D", LogMessage.NO_RECEIVE_TIME));
+        policy.setMaximumBytes(size * 10);
+        model.setRetentionPolicy(policy);
+
+        add("D", 10);
+        assertEquals(10, model.getMessages().size());
+
+        add("D", 1);
+        assertEquals(9, model.getMessages().size());
+    }
+
+    public void testOldMessagesAreEvicted() {
+        // the sending time is used when the receive time is not known.
+        add("D", 2);
+
+        long now = System.currentTimeMillis() * 1000000;
+        long old = now - 600000L * 1000000;
+        for (int i = 0; i < 5; i++) {
+            model.addLogMessage(create("D", old));
+        }
+        for (int i = 0; i < 3; i++) {
+            model.addLogMessage(create("D", now));
+        }
+
+        policy.setMaximumAge(60000);
+        model.setRetentionPolicy(policy);
+        assertEquals(3, model.getMessages().size());
+        assertEquals("7", model.getMessages().get(0).toString());
+    }
+
+    public void testPriorityEviction() {
+        policy.setMaximumMessages(10);
+        policy.setEvictionPolicy(new PriorityEvictionPolicy());
+        model.setRetentionPolicy(policy);
+
+        add("3", 2);
+        add("D", 2);
+        add("0", 3);
+        add("3", 3);
+        add("D", 3);
+
+        // the heartbeats go first, then the oldest orders; the rejects stay.
+        List<LogMessage> messages = model.getMessages();
+        assertEquals(9, messages.size());
+        StringBuilder types = new StringBuilder();
+        for (LogMessage message : messages) {
+            types.append(message.getMessageType());
+        }
+        assertEquals("33D333DDD", types.toString());
+    }
+
+    public void testRetainedMessagesMayExceedTheLimit() {
+        policy.setMaximumMessages(10);
+        policy.setEvictionPolicy(new PriorityEvictionPolicy());
+        model.setRetentionPolicy(policy);
+
+        add("3", 25);
+        assertEquals(25, model.getMessages().size());
+        assertEquals(0, model.getEvictedCount());
+    }
+
+    public void testEventsAreEvicted() {
+        policy.setMaximumEvents(10);
+        model.setRetentionPolicy(policy);
+
+        for (int i = 0; i < 11; i++) {
+            model.addLogEvent(new LogEvent("event " + i));
+        }
+        assertEquals(9, model.getEvents().size());
+        assertEquals("event 2", model.getEvents().get(0).getEvent());
+    }
+
+    public void testInvalidLimits() {
+        try {
+            policy.setMaximumMessages(-1);
+            fail("A negative maximum is invalid.");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            policy.setEvictionPolicy(null);
+            fail("The eviction policy is required.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void add(String messageType, int count) {
+        for (int i = 0; i < count; i++) {
+            model.addLogMessage(create(messageType, LogMessage.NO_RECEIVE_TIME));
+        }
+    }
+
+    private LogMessage create(String messageType, long receiveTime) {
+        return new LogMessage(messageIndex++, true, sessionId, "8=FIX.4.2|9=5|35=" + messageType
+                + "|34=1|49=SENDER|56=TARGET|52=20081020-12:00:00.123|10=000|", dictionary, receiveTime);
+    }
+}
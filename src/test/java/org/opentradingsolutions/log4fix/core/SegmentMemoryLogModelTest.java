@@ -0,0 +1,202 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests storing messages in off-heap segments and building them back on demand.
+ */
+public class SegmentMemoryLogModelTest extends TestCase {
+
+    private static final String RAW = "8=FIX.4.2|9=5|35=D|34=1|49=SENDER|56=TARGET|52=20081020-12:00:00.123|"
+            + "11=ORDER-1|55=IBM|10=000|";
+
+    private SessionID sessionId;
+    private DataDictionary dictionary;
+    private SegmentMemoryLogModel model;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        sessionId = new SessionID("FIX.4.2", "SENDER", "TARGET");
+        dictionary = new ClassPathDataDictionaryLoader().loadDictionary(sessionId);
+
+        // small segments, so a few messages span several segments.
+        model = new SegmentMemoryLogModel(sessionId, 512, 4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        model.close();
+        super.tearDown();
+    }
+
+    public void testMessagesAreBuiltFromTheSegments() {
+        String soh = RAW.replace('|', LogMessage.SOH_DELIMETER);
+        model.addLogMessage(new LogMessage(7, true, sessionId, soh, dictionary, 123456789L));
+        model.addLogMessage(new LogMessage(8, false, sessionId, RAW.replace("IBM", "\u682A\u5F0F"), dictionary));
+
+        List<LogMessage> messages = model.getMessages();
+        assertEquals(2, messages.size());
+
+        LogMessage first = messages.get(0);
+        assertEquals("7", first.toString());
+        assertTrue(first.isIncoming());
+        assertEquals(RAW, first.getRawMessage());
+        assertEquals(123456789L, first.getReceiveTime());
+        assertEquals(sessionId, first.getSessionId());
+        assertEquals(dictionary.getValueName(35, "D"), first.getMessageTypeName());
+        assertNotNull(first.getSendingTime());
+
+        LogMessage second = messages.get(1);
+        assertFalse(second.isIncoming());
+        assertEquals(RAW.replace("IBM", "\u682A\u5F0F"), second.getRawMessage());
+        assertEquals(LogMessage.NO_RECEIVE_TIME, second.getReceiveTime());
+    }
+
+    public void testMessagesSpanSegmentsInOrder() {
+        add(50);
+
+        assertTrue(model.getSegmentCount() > 5);
+        List<LogMessage> messages = model.getMessages();
+        assertEquals(50, messages.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(String.valueOf(i), messages.get(i).toString());
+        }
+        assertTrue(model.getStoredBytes() > 50 * RAW.length());
+    }
+
+    public void testMessageLargerThanASegment() {
+        StringBuilder large = new StringBuilder(RAW);
+        for (int i = 0; i < 100; i++) {
+            large.insert(RAW.length() - 7, "58=large text|");
+        }
+        add(1);
+        model.addLogMessage(new LogMessage(1, true, sessionId, large.toString(), dictionary));
+        add(1);
+
+        assertEquals(large.toString(), model.getMessages().get(1).getRawMessage());
+        assertEquals(RAW, model.getMessages().get(2).getRawMessage());
+    }
+
+    public void testBuiltMessagesAreCached() {
+        add(10);
+        List<LogMessage> messages = model.getMessages();
+        LogMessage message = messages.get(3);
+        assertSame(message, messages.get(3));
+
+        for (int i = 4; i < 10; i++) {
+            messages.get(i);
+        }
+        assertEquals(4, model.getCachedMessageCount());
+        assertNotSame(message, messages.get(3));
+    }
+
+    public void testOldSegmentsSpillToAFile() {
+        model.setSpillDirectory(new File(System.getProperty("java.io.tmpdir")), 2);
+        add(50);
+
+        File spillFile = model.getSpillFile();
+        assertNotNull(spillFile);
+        assertTrue(spillFile.exists());
+        assertEquals(model.getSegmentCount() - 2, model.getSpilledSegmentCount());
+
+        List<LogMessage> messages = model.getMessages();
+        for (int i = 0; i < 50; i++) {
+            assertEquals(String.valueOf(i), messages.get(i).toString());
+            assertEquals(RAW, messages.get(i).getRawMessage());
+        }
+
+        model.clear();
+        assertFalse(spillFile.exists());
+        assertTrue(model.getMessages().isEmpty());
+        assertEquals(0, model.getStoredBytes());
+    }
+
+    public void testMessagesOutliveTheStore() {
+        model.setSpillDirectory(new File(System.getProperty("java.io.tmpdir")), 2);
+        add(50);
+        LogMessage message = model.getMessages().get(0);
+
+        // the message holds a copy of its record, not the spilled segment.
+        model.clear();
+        assertEquals(RAW, message.getRawMessage());
+        assertNull(model.getSpillFile());
+
+        add(1);
+        assertNotSame(message, model.getMessages().get(0));
+    }
+
+    public void testListenersAreToldAboutAddedMessages() throws Exception {
+        final CountDownLatch changed = new CountDownLatch(1);
+        model.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (SegmentMemoryLogModel.PROPERTY_MESSAGES.equals(evt.getPropertyName())) {
+                    changed.countDown();
+                }
+            }
+        });
+
+        add(3);
+        assertTrue(changed.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testIndexOutOfBounds() {
+        add(1);
+        try {
+            model.getMessages().get(1);
+            fail("There is only one message.");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    private void add(int count) {
+        int first = model.getMessages().size();
+        for (int i = first; i < first + count; i++) {
+            model.addLogMessage(new LogMessage(i, i % 2 == 0, sessionId, RAW, dictionary));
+        }
+    }
+}
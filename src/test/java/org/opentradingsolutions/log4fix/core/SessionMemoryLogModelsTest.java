@@ -0,0 +1,139 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.core;
+
+import junit.framework.TestCase;
+import quickfix.SessionID;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SessionMemoryLogModelsTest extends TestCase {
+
+    private MockMemoryLogModel primary;
+    private SessionMemoryLogModels models;
+    private List<Object> createdModels;
+    private List<Object> removedModels;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        primary = new MockMemoryLogModel();
+        models = new SessionMemoryLogModels(primary);
+        createdModels = new ArrayList<Object>();
+        removedModels = new ArrayList<Object>();
+        models.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                assertEquals(SessionMemoryLogModels.PROPERTY_MEMORY_LOG_MODEL, evt.getPropertyName());
+                if (evt.getNewValue() != null) {
+                    createdModels.add(evt.getNewValue());
+                } else {
+                    removedModels.add(evt.getOldValue());
+                }
+            }
+        });
+    }
+
+    public void testFirstSessionUsesThePrimaryModel() {
+        assertSame(primary, models.getMemoryLogModel(sessionId("TARGET")));
+        assertSame(primary, models.getMemoryLogModel(sessionId("TARGET")));
+        assertTrue(createdModels.isEmpty());
+        assertEquals(1, models.getMemoryLogModels().size());
+    }
+
+    public void testEachSessionGetsItsOwnModel() {
+        models.getMemoryLogModel(sessionId("TARGET"));
+        MemoryLogModel other = models.getMemoryLogModel(sessionId("OTHER"));
+
+        assertNotSame(primary, other);
+        assertSame(other, models.getMemoryLogModel(sessionId("OTHER")));
+        assertEquals(sessionId("OTHER"), other.getSessionId());
+        assertEquals(1, createdModels.size());
+        assertSame(other, createdModels.get(0));
+        assertEquals(2, models.getMemoryLogModels().size());
+        assertSame(primary, models.getMemoryLogModels().get(0));
+    }
+
+    public void testClearGivesThePrimaryModelToTheNextSession() {
+        models.getMemoryLogModel(sessionId("TARGET"));
+        primary.addLogEvent(new LogEvent("event"));
+
+        models.clear();
+
+        assertTrue(primary.getEvents().isEmpty());
+        assertSame(primary, models.getMemoryLogModel(sessionId("OTHER")));
+        assertTrue(createdModels.isEmpty());
+    }
+
+    public void testClearRemovesTheOtherModels() {
+        models.getMemoryLogModel(sessionId("TARGET"));
+        MemoryLogModel other = models.getMemoryLogModel(sessionId("OTHER"));
+        MemoryLogModel added = new MockMemoryLogModel();
+        models.addMemoryLogModel(sessionId("ADDED"), added);
+        added.addLogEvent(new LogEvent("event"));
+
+        models.clear();
+
+        assertEquals(1, models.getMemoryLogModels().size());
+        assertSame(primary, models.getMemoryLogModels().get(0));
+        assertEquals(2, removedModels.size());
+        assertSame(other, removedModels.get(0));
+        assertSame(added, removedModels.get(1));
+        assertTrue("A removed model is cleared.", added.getEvents().isEmpty());
+
+        // the next import finds its sessions again.
+        assertSame(primary, models.getMemoryLogModel(sessionId("ADDED")));
+        assertNotSame(other, models.getMemoryLogModel(sessionId("OTHER")));
+    }
+
+    public void testAddedModelReplacesTheSessionsModel() {
+        models.getMemoryLogModel(sessionId("TARGET"));
+        MemoryLogModel added = new MockMemoryLogModel();
+
+        models.addMemoryLogModel(sessionId("TARGET"), added);
+
+        assertSame(added, models.getMemoryLogModel(sessionId("TARGET")));
+        assertEquals(1, createdModels.size());
+        assertSame(added, createdModels.get(0));
+        assertEquals(2, models.getMemoryLogModels().size());
+    }
+
+    private static SessionID sessionId(String target) {
+        return new SessionID("FIX.4.2", "SENDER", target);
+    }
+}
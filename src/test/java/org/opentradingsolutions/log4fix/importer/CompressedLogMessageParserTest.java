@@ -0,0 +1,281 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * These tests assert that the {@link CompressedLogMessageParser} extracts the same
+ * messages from a compressed log file as the {@link LogMessageParser} extracts from
+ * the uncompressed file.
+ */
+public class CompressedLogMessageParserTest extends TestCase {
+
+    private static final String MESSAGE = "8=FIX.4.2|9=5|35=D|10=123|";
+
+    private final List<File> files = new ArrayList<File>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testNullFileFailsFast() {
+        try {
+            new CompressedLogMessageParser(null, new ImportBuffer());
+            fail("A null File should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNullImportBufferFailsFast() throws Exception {
+        try {
+            new CompressedLogMessageParser(createFile(".log"), null);
+            fail("A null ImportBuffer should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNonEmptyImportBufferFailsFast() throws Exception {
+        ImportBuffer records = new ImportBuffer();
+        records.put(ImportRecord.message("Brian"));
+        records.flush();
+        try {
+            new CompressedLogMessageParser(createFile(".log"), records);
+            fail("A non-empty ImportBuffer should fail fast.");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testIsCompressed() throws Exception {
+        assertTrue(CompressedLogMessageParser.isCompressed(createGzipFile(MESSAGE)));
+        assertTrue(CompressedLogMessageParser.isCompressed(createZipFile(MESSAGE)));
+        assertFalse(CompressedLogMessageParser.isCompressed(FIXMessageTestHelper.createLogFile(files, MESSAGE)));
+        assertFalse(CompressedLogMessageParser.isCompressed(FIXMessageTestHelper.createLogFile(files, "")));
+
+        File missing = createFile(".gz");
+        missing.delete();
+        assertFalse(CompressedLogMessageParser.isCompressed(missing));
+    }
+
+    public void testGzipLogFiles() throws Exception {
+        for (File logFile : getLogFiles()) {
+            List<String> expected = parseStream(logFile);
+            File gzipFile = createGzipFile(read(logFile));
+            assertEquals(logFile.getName(), expected, parseFile(gzipFile));
+        }
+    }
+
+    public void testZipLogFiles() throws Exception {
+        List<File> logFiles = getLogFiles();
+        List<String> expected = new ArrayList<String>();
+        String[] contents = new String[logFiles.size()];
+        for (int i = 0; i < contents.length; i++) {
+            List<String> messages = parseStream(logFiles.get(i));
+            expected.addAll(messages.subList(0, messages.size() - 1));
+            contents[i] = read(logFiles.get(i));
+        }
+        expected.add(ImportRecord.END.toString());
+
+        assertEquals(expected, parseFile(createZipFile(contents)));
+    }
+
+    public void testZipEntriesAreImportedOneByOne() throws Exception {
+        // the incomplete message at the end of the first entry is not joined with
+        // the next entry.
+        File zipFile = createZipFile(MESSAGE + "\n8=FIX.4.2|9=5|3", "5=D|10=123|\n" + MESSAGE, "", MESSAGE);
+
+        List<String> messages = parseFile(zipFile);
+        assertEquals(4, messages.size());
+        String expected = ImportRecord.message(MESSAGE.replace('|', '\u0001')).toString();
+        assertEquals(expected, messages.get(0));
+        assertEquals(expected, messages.get(1));
+        assertEquals(expected, messages.get(2));
+        assertEquals(ImportRecord.END.toString(), messages.get(3));
+    }
+
+    public void testUncompressedFile() throws Exception {
+        File logFile = getLogFiles().get(0);
+        assertEquals(parseStream(logFile), parseFile(logFile));
+    }
+
+    public void testCorruptFileReportsAnError() throws Exception {
+        File file = createFile(".gz");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[]{0x1F, (byte) 0x8B, 0, 0, 0, 0});
+        } finally {
+            out.close();
+        }
+
+        List<String> messages = parseFile(file);
+        assertEquals(2, messages.size());
+        assertTrue(messages.get(0).startsWith(ImportRecord.Type.ERROR + ": " + LogMessageScanner.ERROR_PREFIX));
+        assertEquals(ImportRecord.END.toString(), messages.get(1));
+    }
+
+    public void testInterruptingBlockedParserPublishesEndRecordAndThreadDies() throws Exception {
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            contents.append(MESSAGE).append('\n');
+        }
+
+        ImportBuffer records = new ImportBuffer(10, ImportBuffer.DEFAULT_BYTE_CAPACITY);
+        Thread t = new Thread(new CompressedLogMessageParser(createGzipFile(contents.toString()), records));
+        t.start();
+
+        // wait for the parser to fill the buffer.
+        while (records.size() < 10) {
+            Thread.sleep(10);
+        }
+
+        t.interrupt();
+        t.join(1000);
+        assertFalse("The parser thread is still running.", t.isAlive());
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        assertSame(ImportRecord.END, list.get(list.size() - 1));
+    }
+
+    private List<String> parseStream(File file) throws Exception {
+        InputStream is = file.toURI().toURL().openStream();
+        ImportBuffer records = new ImportBuffer();
+        return parse(new LogMessageParser(is, records), records);
+    }
+
+    private List<String> parseFile(File file) throws Exception {
+        ImportBuffer records = new ImportBuffer();
+        return parse(new CompressedLogMessageParser(file, records), records);
+    }
+
+    /**
+     * @return the type and text of each record.
+     */
+    private List<String> parse(Runnable parser, ImportBuffer records) throws Exception {
+        Thread t = new Thread(parser);
+        t.start();
+        t.join(5000);
+        assertFalse("The parser thread is still running.", t.isAlive());
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        assertSame(ImportRecord.END, list.get(list.size() - 1));
+
+        List<String> messages = new ArrayList<String>();
+        for (ImportRecord record : list) {
+            messages.add(record.toString());
+        }
+        return messages;
+    }
+
+    private List<File> getLogFiles() {
+        URL url = getClass().getResource("/logs");
+        File directory = new File(url.getFile());
+        String[] logFiles = directory.list();
+        assertNotNull(logFiles);
+
+        List<File> list = new ArrayList<File>();
+        for (String logFileName : logFiles) {
+            list.add(new File(directory, logFileName));
+        }
+        return list;
+    }
+
+    private String read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int length = 0;
+            while (length < bytes.length) {
+                length += in.read(bytes, length, bytes.length - length);
+            }
+        } finally {
+            in.close();
+        }
+        return new String(bytes);
+    }
+
+    private File createGzipFile(String contents) throws IOException {
+        File file = createFile(".log.gz");
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            out.write(contents.getBytes());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private File createZipFile(String... entries) throws IOException {
+        File file = createFile(".zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("logs/"));
+            out.closeEntry();
+            for (int i = 0; i < entries.length; i++) {
+                out.putNextEntry(new ZipEntry("logs/" + i + ".log"));
+                out.write(entries[i].getBytes());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private File createFile(String suffix) throws IOException {
+        File file = File.createTempFile("log4fix", suffix);
+        files.add(file);
+        return file;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+
+public class FIXDelimeterTest extends TestCase {
+
+    public void testSingleByteDelimetersAreShared() {
+        assertSame(FIXDelimeter.SOH, FIXDelimeter.forByte((byte) 0x01));
+        assertSame(FIXDelimeter.PIPE, FIXDelimeter.forByte((byte) '|'));
+        assertSame(FIXDelimeter.CARET, FIXDelimeter.forByte((byte) '^'));
+        assertSame(FIXDelimeter.forByte((byte) 0xFF), FIXDelimeter.forByte((byte) 0xFF));
+        assertTrue(FIXDelimeter.SOH.isSOH());
+        assertFalse(FIXDelimeter.PIPE.isSOH());
+    }
+
+    public void testDetectBefore() {
+        assertSame(FIXDelimeter.SOH, detectBefore("8=FIX.4.2\u00019="));
+        assertSame(FIXDelimeter.PIPE, detectBefore("8=FIX.4.2|9="));
+        assertSame(FIXDelimeter.CARET, detectBefore("8=FIX.4.2^9="));
+        assertSame(FIXDelimeter.CARET_A, detectBefore("8=FIX.4.2^A9="));
+        assertSame(FIXDelimeter.SOH_TEXT, detectBefore("8=FIX.4.2<SOH>9="));
+        assertSame(FIXDelimeter.forByte((byte) ';'), detectBefore("8=FIX.4.2;9="));
+    }
+
+    public void testTextDelimeterMustFollowTheStart() {
+        ByteBuffer bytes = ByteBuffer.wrap("^A9=".getBytes());
+        assertSame(FIXDelimeter.CARET_A, FIXDelimeter.detectBefore(bytes, 0, 2));
+        assertSame(FIXDelimeter.forByte((byte) 'A'), FIXDelimeter.detectBefore(bytes, 1, 2));
+    }
+
+    public void testDetectAt() {
+        ByteBuffer bytes = ByteBuffer.wrap("FIX.4.2<SOH>9=".getBytes());
+        assertSame(FIXDelimeter.SOH_TEXT, FIXDelimeter.detectAt(bytes, 7, bytes.limit()));
+        assertSame(FIXDelimeter.forByte((byte) '<'), FIXDelimeter.detectAt(bytes, 7, 11));
+
+        bytes = ByteBuffer.wrap("FIX.4.2^A9=".getBytes());
+        assertSame(FIXDelimeter.CARET_A, FIXDelimeter.detectAt(bytes, 7, bytes.limit()));
+    }
+
+    public void testIndexIn() {
+        ByteBuffer bytes = ByteBuffer.wrap("35=A^A49=ALPHA^A10=123^A".getBytes());
+        assertEquals(4, FIXDelimeter.CARET_A.indexIn(bytes, 0, bytes.limit()));
+        assertEquals(14, FIXDelimeter.CARET_A.indexIn(bytes, 5, bytes.limit()));
+        assertEquals(-1, FIXDelimeter.CARET_A.indexIn(bytes, 0, 5));
+        assertEquals(4, FIXDelimeter.CARET.indexIn(bytes, 0, bytes.limit()));
+    }
+
+    public void testTranslateSingleByteDelimeter() {
+        assertEquals("35=D\u000149=A\u0001", translate(FIXDelimeter.PIPE, "35=D|49=A|"));
+        assertEquals("35=D\u0001", translate(FIXDelimeter.SOH, "35=D\u0001"));
+    }
+
+    public void testTranslateTextDelimeter() {
+        assertEquals("35=A\u000149=ALPHA\u0001", translate(FIXDelimeter.CARET_A, "35=A^A49=ALPHA^A"));
+        assertEquals("35=D\u000158=<SO\u0001", translate(FIXDelimeter.SOH_TEXT, "35=D<SOH>58=<SO<SOH>"));
+        assertEquals("58=^", translate(FIXDelimeter.CARET_A, "58=^"));
+        assertEquals("", translate(FIXDelimeter.CARET_A, ""));
+    }
+
+    public void testToString() {
+        assertEquals("SOH", FIXDelimeter.SOH.toString());
+        assertEquals("^A", FIXDelimeter.CARET_A.toString());
+        assertEquals("<SOH>", FIXDelimeter.SOH_TEXT.toString());
+    }
+
+    private FIXDelimeter detectBefore(String text) {
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes());
+        return FIXDelimeter.detectBefore(bytes, 0, bytes.limit() - 2);
+    }
+
+    private String translate(FIXDelimeter delimeter, String text) {
+        byte[] bytes = text.getBytes();
+        int length = delimeter.translate(bytes, bytes.length);
+        return new String(bytes, 0, length);
+    }
+}
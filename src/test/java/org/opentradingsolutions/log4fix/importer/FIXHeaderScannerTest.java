@@ -0,0 +1,173 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+public class FIXHeaderScannerTest extends TestCase {
+
+    private FIXHeaderScanner scanner;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        scanner = new FIXHeaderScanner(8, 35, 49, 56);
+    }
+
+    public void testFindsHeaderTags() {
+        String message = soh("8=FIX.4.2|9=65|35=A|34=1|49=SENDER|52=20060101-12:00:00|56=TARGET|10=061|");
+        assertTrue(scanner.scan(message));
+
+        assertEquals("FIX.4.2", scanner.getValue(8));
+        assertEquals("A", scanner.getValue(35));
+        assertEquals("SENDER", scanner.getValue(49));
+        assertEquals("TARGET", scanner.getValue(56));
+
+        assertEquals(message.indexOf("SENDER"), scanner.getValueStart(49));
+        assertEquals(message.indexOf("SENDER") + 6, scanner.getValueEnd(49));
+    }
+
+    public void testTagSuffixIsNotMistakenForTag() {
+        assertTrue(scanner.scan(soh("8=FIX.4.2|9=65|135=X|1149=Y|35=D|49=S|56=T|")));
+        assertEquals("D", scanner.getValue(35));
+        assertEquals("S", scanner.getValue(49));
+    }
+
+    public void testTagInsideValueIsNotMistakenForTag() {
+        assertTrue(scanner.scan(soh("8=FIX.4.2|58=a 35=X|35=D|49=S|56=T|")));
+        assertEquals("D", scanner.getValue(35));
+    }
+
+    public void testOnlyFirstOccurrenceIsFound() {
+        assertTrue(scanner.scan(soh("8=FIX.4.2|35=D|49=S|49=X|56=T|")));
+        assertEquals("S", scanner.getValue(49));
+    }
+
+    public void testMissingTag() {
+        assertFalse(scanner.scan(soh("8=FIX.4.2|35=D|49=S|")));
+        assertFalse(scanner.isFound(56));
+        assertEquals(-1, scanner.getValueStart(56));
+        assertEquals("", scanner.getValue(56));
+        assertTrue(scanner.valueEquals(56, ""));
+        assertFalse(scanner.valueEquals(56, "T"));
+    }
+
+    public void testValueAtEndWithoutDelimeter() {
+        assertTrue(scanner.scan(soh("8=FIX.4.2|35=D|49=S|56=TARGET")));
+        assertEquals("TARGET", scanner.getValue(56));
+    }
+
+    public void testFieldsWithoutTagNumbersAreSkipped() {
+        assertTrue(scanner.scan(soh("8=FIX.4.2|junk|=X|35=D|49=S|56=T|")));
+        assertEquals("D", scanner.getValue(35));
+    }
+
+    public void testValueEquals() {
+        scanner.scan(soh("8=FIX.4.2|35=A|49=S|56=T|"));
+        assertTrue(scanner.valueEquals(35, "A"));
+        assertFalse(scanner.valueEquals(35, "AB"));
+        assertFalse(scanner.valueEquals(35, "D"));
+    }
+
+    public void testValueHashCode() {
+        scanner.scan(soh("8=FIX.4.2|35=A|49=SENDER|"));
+        assertEquals("FIX.4.2".hashCode(), scanner.valueHashCode(8));
+        assertEquals("SENDER".hashCode(), scanner.valueHashCode(49));
+        assertEquals("A missing tag hashes like an empty value.", "".hashCode(), scanner.valueHashCode(56));
+    }
+
+    public void testScanReplacesPreviousResults() {
+        scanner.scan(soh("8=FIX.4.2|35=A|49=S|56=T|"));
+        scanner.scan(soh("8=FIX.4.4|35=D|"));
+        assertEquals("FIX.4.4", scanner.getValue(8));
+        assertFalse(scanner.isFound(49));
+    }
+
+    public void testUnknownTagFailsFast() {
+        scanner.scan(soh("8=FIX.4.2|35=A|49=S|56=T|"));
+        try {
+            scanner.getValue(52);
+            fail("The scanner does not look for tag 52.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testTimestamp() {
+        FIXHeaderScanner timeScanner = new FIXHeaderScanner(52);
+
+        timeScanner.scan(soh("8=FIX.4.2|52=19700101-00:00:01|"));
+        assertEquals(1000000000L, timeScanner.getTimestamp(52));
+
+        timeScanner.scan(soh("8=FIX.4.2|52=20110304-13:14:15.123|"));
+        long millis = timeScanner.getTimestamp(52) / 1000000L;
+        assertEquals(utcMillis(2011, Calendar.MARCH, 4, 13, 14, 15, 123), millis);
+
+        timeScanner.scan(soh("8=FIX.4.2|52=20000229-23:59:59.123456789123|"));
+        assertEquals(utcMillis(2000, Calendar.FEBRUARY, 29, 23, 59, 59, 0) * 1000000L + 123456789L,
+                timeScanner.getTimestamp(52));
+    }
+
+    public void testMissingOrMalformedTimestamp() {
+        FIXHeaderScanner timeScanner = new FIXHeaderScanner(52);
+
+        timeScanner.scan(soh("8=FIX.4.2|35=D|"));
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, timeScanner.getTimestamp(52));
+
+        timeScanner.scan(soh("8=FIX.4.2|52=20110304 13:14:15|"));
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, timeScanner.getTimestamp(52));
+
+        timeScanner.scan(soh("8=FIX.4.2|52=20111304-13:14:15|"));
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, timeScanner.getTimestamp(52));
+
+        timeScanner.scan(soh("8=FIX.4.2|52=20110304-13:14:15.|"));
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, timeScanner.getTimestamp(52));
+    }
+
+    private static long utcMillis(int year, int month, int day, int hour, int minute, int second, int millis) {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, second);
+        calendar.set(Calendar.MILLISECOND, millis);
+        return calendar.getTimeInMillis();
+    }
+
+    private static String soh(String message) {
+        return message.replace('|', '\u0001');
+    }
+}
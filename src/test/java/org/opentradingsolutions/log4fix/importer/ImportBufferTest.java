@@ -0,0 +1,201 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ImportBufferTest extends TestCase {
+
+    private static final String MESSAGE = "8=FIX.4.2\u00019=5\u000135=0\u000110=123\u0001";
+
+    public void testCapacityLessThanOneFailsFast() {
+        try {
+            new ImportBuffer(0, 100);
+            fail("A message capacity less than one should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            new ImportBuffer(100, 0);
+            fail("A byte capacity less than one should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testRecordsArePublishedInOrderFollowedByTheEndRecord() throws Exception {
+        ImportBuffer buffer = new ImportBuffer();
+        assertTrue(buffer.isEmpty());
+
+        buffer.put(ImportRecord.message("1"));
+        buffer.put(ImportRecord.error("2"));
+        buffer.put(ImportRecord.message("3"));
+
+        // the parser's batch is not handed to the builder until it is published.
+        assertTrue(buffer.isEmpty());
+        buffer.close();
+        assertFalse(buffer.isEmpty());
+
+        List<ImportRecord> records = new ArrayList<ImportRecord>();
+        assertEquals(4, buffer.drainTo(records));
+        assertEquals(ImportRecord.Type.MESSAGE, records.get(0).getType());
+        assertEquals("1", records.get(0).getText());
+        assertEquals(ImportRecord.Type.ERROR, records.get(1).getType());
+        assertEquals("2", records.get(1).getText());
+        assertEquals("3", records.get(2).getText());
+        assertSame(ImportRecord.END, records.get(3));
+        assertTrue(buffer.isEmpty());
+    }
+
+    public void testBatchIsPublishedWhenFull() throws Exception {
+        // a capacity of eight messages publishes two messages at a time.
+        ImportBuffer buffer = new ImportBuffer(8, ImportBuffer.DEFAULT_BYTE_CAPACITY);
+
+        buffer.put(ImportRecord.message(MESSAGE));
+        assertEquals(0, buffer.size());
+
+        buffer.put(ImportRecord.message(MESSAGE));
+        assertEquals(2, buffer.size());
+
+        buffer.put(ImportRecord.message(MESSAGE));
+        assertEquals(2, buffer.size());
+
+        buffer.flush();
+        assertEquals(3, buffer.size());
+    }
+
+    public void testParserBlocksWhenMessageCapacityIsReached() throws Exception {
+        ImportBuffer buffer = new ImportBuffer(1, ImportBuffer.DEFAULT_BYTE_CAPACITY);
+        buffer.put(ImportRecord.message(MESSAGE));
+
+        assertBlocksUntilDrained(buffer);
+    }
+
+    public void testParserBlocksWhenByteCapacityIsReached() throws Exception {
+        ImportBuffer buffer = new ImportBuffer(100, MESSAGE.length() + 1);
+        buffer.put(ImportRecord.message(MESSAGE));
+
+        assertBlocksUntilDrained(buffer);
+    }
+
+    public void testMessageLargerThanTheByteCapacityIsAcceptedByAnEmptyBuffer() throws Exception {
+        ImportBuffer buffer = new ImportBuffer(100, 4);
+        buffer.put(ImportRecord.message(MESSAGE));
+        assertEquals(1, buffer.size());
+    }
+
+    public void testCloseNeverBlocks() throws Exception {
+        ImportBuffer buffer = new ImportBuffer(1, ImportBuffer.DEFAULT_BYTE_CAPACITY);
+        buffer.put(ImportRecord.message(MESSAGE));
+
+        // the buffer is full, but the end record is still added.
+        Thread.currentThread().interrupt();
+        buffer.close();
+        assertTrue("The interrupted state should be preserved.", Thread.interrupted());
+
+        List<ImportRecord> records = new ArrayList<ImportRecord>();
+        buffer.drainTo(records);
+        assertEquals(2, records.size());
+        assertSame(ImportRecord.END, records.get(1));
+    }
+
+    public void testInterruptedCloseDiscardsUnpublishedRecords() throws Exception {
+        ImportBuffer buffer = new ImportBuffer();
+        buffer.put(ImportRecord.message(MESSAGE));
+
+        Thread.currentThread().interrupt();
+        buffer.close();
+        Thread.interrupted();
+
+        List<ImportRecord> records = new ArrayList<ImportRecord>();
+        buffer.drainTo(records);
+        assertEquals(1, records.size());
+        assertSame(ImportRecord.END, records.get(0));
+    }
+
+    public void testDrainWaitsForRecords() throws Exception {
+        final ImportBuffer buffer = new ImportBuffer();
+        final List<ImportRecord> records = new ArrayList<ImportRecord>();
+        final CountDownLatch drained = new CountDownLatch(1);
+
+        Thread builder = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    buffer.drainTo(records);
+                    drained.countDown();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        builder.start();
+
+        assertFalse(drained.await(100, TimeUnit.MILLISECONDS));
+        buffer.close();
+        assertTrue(drained.await(1, TimeUnit.SECONDS));
+        assertSame(ImportRecord.END, records.get(0));
+    }
+
+    /**
+     * Asserts that publishing another message blocks until the buffer is drained.
+     */
+    private void assertBlocksUntilDrained(final ImportBuffer buffer) throws Exception {
+        final CountDownLatch published = new CountDownLatch(1);
+
+        Thread parser = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    buffer.put(ImportRecord.message(MESSAGE));
+                    buffer.flush();
+                    published.countDown();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        parser.start();
+
+        assertFalse("The parser should be blocked.", published.await(100, TimeUnit.MILLISECONDS));
+
+        List<ImportRecord> records = new ArrayList<ImportRecord>();
+        assertEquals(1, buffer.drainTo(records));
+
+        assertTrue("The parser should be unblocked.", published.await(1, TimeUnit.SECONDS));
+        assertEquals(1, buffer.size());
+        parser.join(1000);
+    }
+}
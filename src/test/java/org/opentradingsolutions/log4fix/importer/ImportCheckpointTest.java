@@ -0,0 +1,269 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.core.LogMessage;
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+import quickfix.SessionID;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests saving checkpoints of an import and resuming the import from them.
+ */
+public class ImportCheckpointTest extends TestCase {
+
+    private static final String LOGON =
+            "8=FIX.4.2\u00019=65\u000135=A\u000134=1\u000149=SENDER\u000152=20060101-12:00:00\u0001" +
+            "56=TARGET\u000198=0\u0001108=30\u000110=061\u0001";
+
+    private final List<File> files = new ArrayList<File>();
+    private final LogFileIndexStore store = new LogFileIndexStore();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testWriteAndRead() throws Exception {
+        File logFile = FIXMessageTestHelper.createLogFile(files, LOGON + "\n");
+        LogFileIndex.Key key = LogFileIndex.Key.of(logFile, LogMessageScanner.Framing.LINE);
+        ImportCheckpoint expected = new ImportCheckpoint(key, 1234, 7, Arrays.asList(
+                new ImportCheckpoint.Session(new SessionID("FIX.4.2", "A", "B"), "FIX.4.2", "A", "B", 5),
+                new ImportCheckpoint.Session(new SessionID("FIX.4.4", "C", "D"), "FIX.4.4", "C", "E", 2)));
+
+        File file = store.saveCheckpoint(logFile, expected);
+        files.add(file);
+        assertEquals(store.getSidecarFile(logFile, LogFileIndexStore.CHECKPOINT_SUFFIX), file);
+
+        ImportCheckpoint actual = store.loadCheckpoint(logFile, LogMessageScanner.Framing.LINE);
+        assertEquals(key, actual.getKey());
+        assertEquals(1234, actual.getOffset());
+        assertEquals(7, actual.getMessageCount());
+        assertEquals(2, actual.getSessions().size());
+
+        ImportCheckpoint.Session session = actual.getSessions().get(1);
+        assertEquals(new SessionID("FIX.4.4", "C", "D"), session.getSessionId());
+        assertEquals("FIX.4.4", session.getBeginString());
+        assertEquals("C", session.getInitiator());
+        assertEquals("E", session.getAcceptor());
+        assertEquals(2, session.getMessageCount());
+
+        // the checkpoint belongs to a single version of the file and framing.
+        assertNull(store.loadCheckpoint(logFile, LogMessageScanner.Framing.BODY_LENGTH));
+
+        store.deleteCheckpoint(logFile);
+        assertNull(store.loadCheckpoint(logFile, LogMessageScanner.Framing.LINE));
+    }
+
+    public void testCorruptCheckpointIsIgnored() throws Exception {
+        File logFile = FIXMessageTestHelper.createLogFile(files, LOGON + "\n");
+        File checkpointFile = store.getSidecarFile(logFile, LogFileIndexStore.CHECKPOINT_SUFFIX);
+        files.add(checkpointFile);
+        FIXMessageTestHelper.writeFile(checkpointFile, "junk");
+
+        assertNull(store.loadCheckpoint(logFile, LogMessageScanner.Framing.LINE));
+    }
+
+    public void testCanceledImportIsResumed() throws Exception {
+        String[] messages = createMessages(6);
+        StringBuilder contents = new StringBuilder();
+        for (String message : messages) {
+            contents.append(message).append('\n');
+        }
+        File logFile = FIXMessageTestHelper.createLogFile(files, contents.toString());
+        files.add(store.getSidecarFile(logFile, LogFileIndexStore.CHECKPOINT_SUFFIX));
+
+        // the first import is canceled after three messages.
+        ImporterModel canceled = createModel(new PassThroughSessionIdResolver());
+        ImportBuffer records = new ImportBuffer(16, ImportBuffer.DEFAULT_BYTE_CAPACITY);
+        LogMessageBuilder builder = new LogMessageBuilder(canceled, records);
+        builder.setCheckpoints(logFile, LogFileIndex.Key.of(logFile, LogMessageScanner.Framing.LINE));
+        Thread thread = new Thread(builder);
+        thread.start();
+
+        long offset = 0;
+        for (int i = 0; i < 3; i++) {
+            long end = offset + messages[i].length();
+            records.put(ImportRecord.message(messages[i], offset, end));
+            offset = end + 1;
+        }
+        records.flush();
+
+        MemoryLogModel canceledModel = canceled.getImporterMemoryLog().getMemoryLogModel();
+        for (int i = 0; i < 100 && canceledModel.getMessages().size() < 3; i++) {
+            Thread.sleep(10);
+        }
+        thread.interrupt();
+        thread.join(1000);
+        assertFalse("The builder thread is still running.", thread.isAlive());
+
+        // a new model, as if the application was restarted. The resolver must not
+        // be asked, because the logon is not read again.
+        ImporterModel resumed = createModel(new SessionIdResolver() {
+            public SessionID resolveSessionId(String beginString, String senderCompId, String targetCompId) {
+                return new SessionID(beginString, "WRONG", "WRONG");
+            }
+        });
+        resumed.setIndexStore(store);
+
+        Importer importer = new Importer();
+        ImportCheckpoint checkpoint = importer.findCheckpoint(resumed, logFile);
+        assertNotNull(checkpoint);
+        assertEquals(3, checkpoint.getMessageCount());
+        assertEquals(offset - 1, checkpoint.getOffset());
+
+        importer.resume(resumed, logFile, checkpoint, new MockImporterCallback());
+
+        ImporterMemoryLog log = resumed.getImporterMemoryLog();
+        List<LogMessage> resumedMessages = log.getMemoryLogModel().getMessages();
+        assertEquals(3, resumedMessages.size());
+        for (int i = 0; i < 3; i++) {
+            LogMessage message = resumedMessages.get(i);
+            assertEquals(messages[i + 3].replace('\u0001', '|'), message.getRawMessage());
+            assertEquals(new SessionID("FIX.4.2", "SENDER", "TARGET"), message.getSessionId());
+            assertEquals(i % 2 == 0, message.isIncoming());
+        }
+
+        // the resumed messages are numbered after the messages imported before.
+        assertEquals(6, log.reserveMessageIndexes(0));
+
+        // the whole file is imported, so the checkpoint is gone.
+        assertNull(importer.findCheckpoint(resumed, logFile));
+        assertEquals(ImporterModel.ImportState.COMPLETE, resumed.getImportState());
+    }
+
+    public void testCanceledParallelImportIsResumed() throws Exception {
+        String[] messages = createMessages(200);
+        StringBuilder contents = new StringBuilder();
+        for (String message : messages) {
+            contents.append(message).append('\n');
+        }
+        File logFile = FIXMessageTestHelper.createLogFile(files, contents.toString());
+        files.add(store.getSidecarFile(logFile, LogFileIndexStore.CHECKPOINT_SUFFIX));
+
+        // the import is canceled once the first checkpoint is saved.
+        LogFileIndexStore cancelingStore = new LogFileIndexStore() {
+            @Override
+            public File saveCheckpoint(File logFile, ImportCheckpoint checkpoint) throws IOException {
+                File file = super.saveCheckpoint(logFile, checkpoint);
+                Thread.currentThread().interrupt();
+                return file;
+            }
+        };
+        ImporterModel canceled = createModel(new PassThroughSessionIdResolver());
+        canceled.setIndexStore(cancelingStore);
+        Thread thread = new Thread(new ParallelLogFileImporter(canceled, logFile, 2, 1024));
+        thread.start();
+        thread.join(10000);
+        assertFalse("The importer thread is still running.", thread.isAlive());
+
+        ImporterModel resumed = createModel(new PassThroughSessionIdResolver());
+        Importer importer = new Importer();
+        ImportCheckpoint checkpoint = importer.findCheckpoint(resumed, logFile);
+        assertNotNull(checkpoint);
+
+        // the checkpoint follows the last chunk added to the models.
+        int importedCount = canceled.getImporterMemoryLog().getMemoryLogModel().getMessages().size();
+        assertTrue(importedCount > 0 && importedCount < messages.length);
+        assertEquals(importedCount, checkpoint.getMessageCount());
+        assertEquals('\n', contents.charAt((int) checkpoint.getOffset() - 1));
+
+        importer.resume(resumed, logFile, checkpoint, new MockImporterCallback());
+
+        List<LogMessage> resumedMessages = resumed.getImporterMemoryLog().getMemoryLogModel().getMessages();
+        assertEquals(messages.length - importedCount, resumedMessages.size());
+        for (int i = 0; i < resumedMessages.size(); i++) {
+            assertEquals(messages[importedCount + i].replace('\u0001', '|'), resumedMessages.get(i).getRawMessage());
+        }
+        assertNull(importer.findCheckpoint(resumed, logFile));
+    }
+
+    public void testCompletedParallelImportDeletesTheCheckpoint() throws Exception {
+        File logFile = FIXMessageTestHelper.createLogFile(files, LOGON + "\n");
+        files.add(store.getSidecarFile(logFile));
+        ImporterModel model = createModel(new PassThroughSessionIdResolver());
+        store.saveCheckpoint(logFile, new ImportCheckpoint(LogFileIndex.Key.of(logFile, model.getFraming()), 0, 0,
+                new ArrayList<ImportCheckpoint.Session>()));
+        files.add(store.getSidecarFile(logFile, LogFileIndexStore.CHECKPOINT_SUFFIX));
+
+        new ParallelLogFileImporter(model, logFile, 2).run();
+        assertNull(store.loadCheckpoint(logFile, model.getFraming()));
+    }
+
+    public void testFilteredImportIsNotCheckpointed() throws Exception {
+        File logFile = FIXMessageTestHelper.createLogFile(files, LOGON + "\n");
+        ImporterModel model = createModel(new PassThroughSessionIdResolver());
+        model.setIndexStore(store);
+        store.saveCheckpoint(logFile, new ImportCheckpoint(LogFileIndex.Key.of(logFile, model.getFraming()), 0, 0,
+                new ArrayList<ImportCheckpoint.Session>()));
+        files.add(store.getSidecarFile(logFile, LogFileIndexStore.CHECKPOINT_SUFFIX));
+
+        Importer importer = new Importer();
+        assertNotNull(importer.findCheckpoint(model, logFile));
+
+        MessageFilter filter = new MessageFilter();
+        filter.addMessageTypes("D");
+        model.setFilter(filter);
+        assertNull(importer.findCheckpoint(model, logFile));
+    }
+
+    private String[] createMessages(int count) {
+        String[] messages = new String[count];
+        for (int i = 0; i < count; i++) {
+            // alternate between outgoing and incoming messages.
+            String message = i % 2 == 0 ? LOGON : LOGON.replace("SENDER", "TMP")
+                    .replace("TARGET", "SENDER").replace("TMP", "TARGET");
+            messages[i] = message.replace("34=1", "34=" + (i + 1));
+        }
+        return messages;
+    }
+
+    private ImporterModel createModel(SessionIdResolver resolver) {
+        ImporterModel model = FIXMessageTestHelper.createImporterModel(resolver);
+        model.setIndexStore(store);
+        model.setCheckpointInterval(2);
+        return model;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+public class ImportProgressTest extends TestCase {
+
+    private static final long SECOND = 1000000000L;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    public void testRatesAreAveragedOverTheElapsedTime() {
+        ImportProgress progress = new ImportProgress(10 * MEGABYTE, 40 * MEGABYTE, 50000, 7, 2 * SECOND);
+
+        assertEquals(25000.0, progress.getMessagesPerSecond(), 0.001);
+        assertEquals(5.0 * MEGABYTE, progress.getBytesPerSecond(), 0.001);
+        assertEquals(25, progress.getPercentComplete());
+        assertEquals(6 * SECOND, progress.getEstimatedNanosRemaining());
+        assertEquals(7, progress.getQueueDepth());
+        assertEquals("25% of 40.0 MB, 25,000 messages/s, 5.0 MB/s, 0:06 left", progress.toString());
+    }
+
+    public void testUnknownSizeHasNoEstimate() {
+        ImportProgress progress = new ImportProgress(3 * MEGABYTE, ImportProgress.UNKNOWN, 100, 0, SECOND);
+
+        assertEquals(ImportProgress.UNKNOWN, progress.getPercentComplete());
+        assertEquals(ImportProgress.UNKNOWN, progress.getEstimatedNanosRemaining());
+        assertEquals("3.0 MB, 100 messages/s, 3.0 MB/s", progress.toString());
+    }
+
+    public void testNothingReadHasNoEstimate() {
+        ImportProgress progress = new ImportProgress(0, MEGABYTE, 0, 0, 0);
+
+        assertEquals(0, progress.getPercentComplete());
+        assertEquals(ImportProgress.UNKNOWN, progress.getEstimatedNanosRemaining());
+        assertEquals(0.0, progress.getMessagesPerSecond(), 0.001);
+        assertEquals(0.0, progress.getBytesPerSecond(), 0.001);
+    }
+
+    public void testCompleteImportHasNothingRemaining() {
+        ImportProgress progress = new ImportProgress(MEGABYTE, MEGABYTE, 10, 0, SECOND);
+
+        assertEquals(100, progress.getPercentComplete());
+        assertEquals(0, progress.getEstimatedNanosRemaining());
+    }
+
+    public void testDurationIsFormattedWithHoursWhenNeeded() {
+        assertEquals("0:59", ImportProgress.formatDuration(59 * SECOND));
+        assertEquals("20:00", ImportProgress.formatDuration(1200 * SECOND));
+        assertEquals("1:01:01", ImportProgress.formatDuration(3661 * SECOND));
+    }
+}
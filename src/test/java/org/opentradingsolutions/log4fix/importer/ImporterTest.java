@@ -43,20 +43,22 @@ import org.opentradingsolutions.log4fix.datadictionary.DataDictionaryLoader;
 import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.List;
 
 /**
  * @author Brian M. Coyner
  */
 public class ImporterTest extends TestCase {
 
+    private static final String MESSAGE = "8=FIX.4.2\u00019=5\u000135=0\u000149=S\u000156=T\u000110=000\u0001\n";
+
     private Importer importer;
     private Thread testThread;
     private MockImporterCallback callback;
     private InputStream inputStream;
     private PipedOutputStream outputStream;
     private MemoryLogModel logModel;
+    private ImporterModel importerModel;
 
     protected void setUp() throws Exception {
         super.setUp();
@@ -66,22 +68,18 @@ public class ImporterTest extends TestCase {
         inputStream = new PipedInputStream(outputStream);
         logModel = new MockMemoryLogModel();
 
-        testThread = new Thread(new Runnable() {
-            public void run() {
-
-                DataDictionaryLoader ddLoader = new ClassPathDataDictionaryLoader();
-                SessionIdResolver resolver = new PassThroughSessionIdResolver();
-                ImporterMemoryLog log = new ImporterMemoryLog(logModel, ddLoader);
-                ImporterModel importerModel = new ImporterModel(log, resolver);
+        DataDictionaryLoader ddLoader = new ClassPathDataDictionaryLoader();
+        SessionIdResolver resolver = new PassThroughSessionIdResolver();
+        ImporterMemoryLog log = new ImporterMemoryLog(logModel, ddLoader);
+        importerModel = new ImporterModel(log, resolver);
 
-                importer.start(importerModel, inputStream, callback);
-            }
-        });
+        // bounded buffer.
+        importerModel.setBufferMessageCapacity(1);
+        importerModel.setProgressInterval(10);
 
+        testThread = createImportThread(inputStream);
 
-        // bounded buffer.
-        BlockingQueue<String> queue = new LinkedBlockingQueue<String>(1);
-        importer = new Importer(queue);
+        importer = new Importer();
     }
 
     public void testBlockedInputCorrectlyRespondsToCancelingTheImporter()
@@ -100,6 +98,106 @@ public class ImporterTest extends TestCase {
         testThread.join(1000);
 
         assertCallback(1, 1, 1);
+        assertEquals(ImporterModel.ImportState.PARTIAL, importerModel.getImportState());
+    }
+
+    public void testCompleteImport() throws Exception {
+        assertEquals(ImporterModel.ImportState.IDLE, importerModel.getImportState());
+
+        testThread.start();
+        outputStream.write(MESSAGE.getBytes());
+        outputStream.close();
+        testThread.join(1000);
+
+        assertCallback(1, 1, 0);
+        assertEquals(ImporterModel.ImportState.COMPLETE, importerModel.getImportState());
+        assertFalse(importerModel.isPartial());
+        assertEquals(1, logModel.getMessages().size());
+    }
+
+    public void testCancelStopsAFullPipelineQuickly() throws Exception {
+        importerModel.setBufferMessageCapacity(ImportBuffer.DEFAULT_MESSAGE_CAPACITY);
+
+        // an endless log keeps the buffer full, so the builder always has work queued.
+        testThread = createImportThread(new InputStream() {
+            private final byte[] message = MESSAGE.getBytes();
+            private int position;
+
+            @Override
+            public int read() {
+                byte b = message[position];
+                position = (position + 1) % message.length;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                for (int i = 0; i < len; i++) {
+                    b[off + i] = (byte) read();
+                }
+                return len;
+            }
+
+            @Override
+            public int available() {
+                return Integer.MAX_VALUE;
+            }
+        });
+        testThread.start();
+
+        while (logModel.getMessages().size() < 1000) {
+            Thread.sleep(10);
+        }
+
+        long start = System.nanoTime();
+        importer.stop();
+        testThread.join(1000);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertFalse("The import is still running.", testThread.isAlive());
+        assertTrue("Canceled in " + elapsedMillis + " ms.", elapsedMillis < 500);
+        assertEquals(ImporterModel.ImportState.PARTIAL, importerModel.getImportState());
+
+        int imported = logModel.getMessages().size();
+        Thread.sleep(50);
+        assertEquals("Messages were added after the import stopped.", imported, logModel.getMessages().size());
+    }
+
+    public void testProgressIsReportedWhileImporting() throws Exception {
+        testThread.start();
+
+        byte[] message = MESSAGE.getBytes();
+        for (int i = 0; i < 10; i++) {
+            outputStream.write(message);
+        }
+        outputStream.flush();
+
+        // give the importer time to report its progress.
+        Thread.sleep(200);
+        importer.stop();
+        testThread.join(1000);
+
+        List<ImportProgress> progress = callback.getProgress();
+        assertTrue("Progress Reports: " + progress.size(), progress.size() > 1);
+
+        ImportProgress last = progress.get(progress.size() - 1);
+        assertEquals(10 * message.length, last.getBytesRead());
+        assertEquals(10, last.getMessageCount());
+        assertEquals(ImportProgress.UNKNOWN, last.getTotalBytes());
+        assertEquals(ImportProgress.UNKNOWN, last.getPercentComplete());
+        assertEquals(ImportProgress.UNKNOWN, last.getEstimatedNanosRemaining());
+        assertTrue(last.getElapsedNanos() > 0);
+
+        assertEquals(Importer.EVENT_THROUGHPUT,
+                logModel.getEvents().get(logModel.getEvents().size() - 1).getEvent().split(":")[0]);
+    }
+
+    private Thread createImportThread(final InputStream inputStream) {
+        return new Thread(new Runnable() {
+            public void run() {
+                importer.start(importerModel, inputStream, callback);
+            }
+        });
     }
 
     private void assertCallback(int startingInvokedCounter,
@@ -0,0 +1,235 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * These tests assert that the {@link IndexedLogMessageParser} reads the same records
+ * from an indexed log file as the {@link MappedLogMessageParser} that indexed it.
+ */
+public class IndexedLogMessageParserTest extends TestCase {
+
+    private File directory;
+    private LogFileIndexStore store;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        directory = Files.createTempDirectory("log4fix").toFile();
+        store = new LogFileIndexStore();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    public void testNullIndexFailsFast() throws Exception {
+        try {
+            new IndexedLogMessageParser(new File(directory, "x.log"), null, new ImportBuffer());
+            fail("A null index should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testLogFiles() throws Exception {
+        for (File logFile : copyLogFiles()) {
+            assertSameRecords(logFile, LogMessageScanner.Framing.LINE);
+        }
+    }
+
+    public void testLogFilesWithBodyLengthFraming() throws Exception {
+        for (File logFile : copyLogFiles()) {
+            assertSameRecords(logFile, LogMessageScanner.Framing.BODY_LENGTH);
+        }
+    }
+
+    public void testErrorsAreReplayedInOrder() throws Exception {
+        File logFile = FIXMessageTestHelper.createLogFile(directory,
+                "8=FIX.4.2|9=5|35=0|10=000|\n9=5|8=FIX.4.2|35=0|10=000|\n8=FIX.4.2|9=5|35=1|10=000|\n");
+        List<ImportRecord> replayed = assertSameRecords(logFile, LogMessageScanner.Framing.LINE);
+        assertEquals(ImportRecord.Type.ERROR, replayed.get(1).getType());
+    }
+
+    public void testIndexLoadedEventIsFirst() throws Exception {
+        File logFile = FIXMessageTestHelper.createLogFile(directory, "8=FIX.4.2|9=5|35=0|10=000|\n");
+        parseMapped(logFile, LogMessageScanner.Framing.LINE);
+
+        List<ImportRecord> records = parseIndexed(logFile, LogMessageScanner.Framing.LINE);
+        assertEquals(ImportRecord.Type.EVENT, records.get(0).getType());
+        assertTrue(records.get(0).getText().startsWith(LogFileIndexStore.EVENT_INDEX_LOADED));
+    }
+
+    public void testLogFileTruncatedAfterIndexing() throws Exception {
+        File logFile = FIXMessageTestHelper.createLogFile(directory,
+                "8=FIX.4.2|9=5|35=0|10=000|\n8=FIX.4.2|9=5|35=1|10=000|\n");
+        parseMapped(logFile, LogMessageScanner.Framing.LINE);
+        LogFileIndex index = store.load(logFile, LogMessageScanner.Framing.LINE);
+
+        OutputStream out = new FileOutputStream(logFile);
+        try {
+            out.write("8=FIX.4.2|9=5|35=0|10=000|\n".getBytes());
+        } finally {
+            out.close();
+        }
+
+        ImportBuffer buffer = new ImportBuffer();
+        List<ImportRecord> records = parse(new IndexedLogMessageParser(logFile, index, buffer), buffer);
+        ImportRecord last = records.get(records.size() - 2);
+        assertEquals(ImportRecord.Type.ERROR, last.getType());
+    }
+
+    public void testFilterSkipsRejectedMessages() throws Exception {
+        File logFile = FIXMessageTestHelper.createLogFile(directory,
+                "8=FIX.4.2|9=5|35=0|10=000|\n9=5|8=FIX.4.2|35=0|10=000|\n8=FIX.4.2|9=5|35=1|10=000|\n");
+        parseMapped(logFile, LogMessageScanner.Framing.LINE);
+        LogFileIndex index = store.load(logFile, LogMessageScanner.Framing.LINE);
+
+        MessageFilter filter = new MessageFilter();
+        filter.addMessageTypes("1");
+        ImportBuffer buffer = new ImportBuffer();
+        IndexedLogMessageParser parser = new IndexedLogMessageParser(logFile, index, buffer);
+        parser.setFilter(filter);
+        List<ImportRecord> records = parse(parser, buffer);
+
+        // the index loaded event, the error, the accepted message and the end.
+        assertEquals(4, records.size());
+        assertEquals(ImportRecord.Type.ERROR, records.get(1).getType());
+        assertEquals("8=FIX.4.2\u00019=5\u000135=1\u000110=000\u0001", records.get(2).getText());
+    }
+
+    public void testFilteredParseIsNotIndexed() throws Exception {
+        File logFile = FIXMessageTestHelper.createLogFile(directory,
+                "8=FIX.4.2|9=5|35=0|10=000|\n8=FIX.4.2|9=5|35=1|10=000|\n");
+
+        MessageFilter filter = new MessageFilter();
+        filter.addMessageTypes("1");
+        ImportBuffer buffer = new ImportBuffer();
+        MappedLogMessageParser parser = new MappedLogMessageParser(logFile, buffer, LogMessageScanner.Framing.LINE, store);
+        parser.setFilter(filter);
+        List<ImportRecord> records = parse(parser, buffer);
+
+        assertEquals(2, records.size());
+        assertNull(store.load(logFile, LogMessageScanner.Framing.LINE));
+    }
+
+    /**
+     * @return the records read using the index, without the index loaded event.
+     */
+    private List<ImportRecord> assertSameRecords(File logFile, LogMessageScanner.Framing framing) throws Exception {
+        List<ImportRecord> expected = parseMapped(logFile, framing);
+
+        // the last records are the index saved event and the end.
+        ImportRecord saved = expected.remove(expected.size() - 2);
+        assertTrue(logFile.getName(), saved.getText().startsWith(LogFileIndexStore.EVENT_INDEX_SAVED));
+
+        List<ImportRecord> actual = parseIndexed(logFile, framing);
+        actual.remove(0);
+
+        assertEquals(logFile.getName(), toStrings(expected), toStrings(actual));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getOffset(), actual.get(i).getOffset());
+            assertEquals(expected.get(i).getEnd(), actual.get(i).getEnd());
+        }
+        return actual;
+    }
+
+    private List<ImportRecord> parseMapped(File logFile, LogMessageScanner.Framing framing) throws Exception {
+        ImportBuffer records = new ImportBuffer();
+        return parse(new MappedLogMessageParser(logFile, records, framing, store), records);
+    }
+
+    private List<ImportRecord> parseIndexed(File logFile, LogMessageScanner.Framing framing) throws Exception {
+        LogFileIndex index = store.load(logFile, framing);
+        assertNotNull(logFile.getName(), index);
+
+        ImportBuffer records = new ImportBuffer();
+        return parse(new IndexedLogMessageParser(logFile, index, records), records);
+    }
+
+    private List<ImportRecord> parse(Runnable parser, ImportBuffer records) throws Exception {
+        Thread t = new Thread(parser);
+        t.start();
+        t.join(5000);
+        assertFalse("The parser thread is still running.", t.isAlive());
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        assertSame(ImportRecord.END, list.get(list.size() - 1));
+        return list;
+    }
+
+    private static List<String> toStrings(List<ImportRecord> records) {
+        List<String> strings = new ArrayList<String>();
+        for (ImportRecord record : records) {
+            strings.add(record.toString());
+        }
+        return strings;
+    }
+
+    private List<File> copyLogFiles() throws IOException {
+        URL url = getClass().getResource("/logs");
+        File logs = new File(url.getFile());
+        String[] names = logs.list();
+        assertNotNull(names);
+
+        List<File> list = new ArrayList<File>();
+        for (String name : names) {
+            File copy = new File(directory, name);
+            Files.copy(new File(logs, name).toPath(), copy.toPath());
+            list.add(copy);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest extends TestCase {
+
+    private LatencyHistogram histogram;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        histogram = new LatencyHistogram();
+    }
+
+    public void testEmptyHistogram() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0.0, histogram.getMean());
+    }
+
+    public void testSmallValuesAreExact() {
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+        assertEquals(50, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(50, histogram.getMax());
+        assertEquals(25, histogram.getPercentile(50));
+        assertEquals(50, histogram.getPercentile(100));
+        assertEquals(25.5, histogram.getMean());
+    }
+
+    public void testPercentilesAreWithinTheBucketPrecision() {
+        Random random = new Random(42);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // 10 us to 10 ms
+            values[i] = 10000 + (long) (random.nextDouble() * 10000000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertWithinPrecision(values[49999], histogram.getPercentile(50));
+        assertWithinPrecision(values[98999], histogram.getPercentile(99));
+        assertWithinPrecision(values[99899], histogram.getPercentile(99.9));
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+    }
+
+    public void testNegativeValuesAreOrderedBeforePositiveValues() {
+        histogram.record(-5000000);
+        histogram.record(-1000);
+        histogram.record(2000);
+        histogram.record(3000000);
+
+        assertEquals(-5000000, histogram.getMin());
+        assertWithinPrecision(-1000, histogram.getPercentile(50));
+        assertWithinPrecision(2000, histogram.getPercentile(75));
+        assertEquals(3000000, histogram.getMax());
+    }
+
+    public void testBucketsCoverEveryValue() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(LatencyHistogram.SUB_BUCKETS, LatencyHistogram.bucketOf(LatencyHistogram.SUB_BUCKETS));
+
+        // the highest bucket must be inside the array.
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(Long.MIN_VALUE);
+        assertEquals(2, histogram.getCount());
+
+        for (long value = 64; value < 1L << 40; value = value * 3 + 1) {
+            long middle = LatencyHistogram.valueOf(LatencyHistogram.bucketOf(value));
+            assertWithinPrecision(value, middle);
+        }
+    }
+
+    public void testAddAndClear() {
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(10);
+        other.record(1000000);
+        histogram.record(5);
+        histogram.add(other);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(5, histogram.getMin());
+        assertEquals(1000000, histogram.getMax());
+
+        histogram.clear();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    public void testToString() {
+        histogram.record(1500000);
+        assertEquals("1 messages, min 1.500 ms, p50 1.500 ms, p99 1.500 ms, p999 1.500 ms, max 1.500 ms",
+                histogram.toString());
+        assertEquals("12 ns", LatencyHistogram.format(12));
+        assertEquals("-2.000 s", LatencyHistogram.format(-2000000000L));
+    }
+
+    private void assertWithinPrecision(long expected, long actual) {
+        long tolerance = Math.max(1, Math.abs(expected) / (LatencyHistogram.SUB_BUCKETS / 2));
+        assertTrue("Expected " + expected + " but was " + actual, Math.abs(expected - actual) <= tolerance);
+    }
+}
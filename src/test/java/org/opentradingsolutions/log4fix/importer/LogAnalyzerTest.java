@@ -0,0 +1,160 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.core.LogEvent;
+import org.opentradingsolutions.log4fix.core.LogMessage;
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class LogAnalyzerTest extends TestCase {
+
+    private SessionID sessionId;
+    private DataDictionary dictionary;
+    private ByteArrayOutputStream output;
+    private LogAnalyzer analyzer;
+    private int messageIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        sessionId = new SessionID("FIX.4.2", "SENDER", "TARGET");
+        dictionary = new ClassPathDataDictionaryLoader().loadDictionary(sessionId);
+        output = new ByteArrayOutputStream();
+        analyzer = new LogAnalyzer(new PrintStream(output, true), false);
+    }
+
+    public void testMessagesAreCountedButNotKept() {
+        add(false, "A", 1, "");
+        add(false, "D", 2, "");
+        add(false, "D", 3, "");
+        add(true, "8", 2, "");
+
+        assertEquals(4, analyzer.getMessageCount());
+        assertEquals(2, analyzer.getMessageCount("D"));
+        assertEquals(1, analyzer.getMessageCount("8"));
+        assertEquals(0, analyzer.getMessageCount("F"));
+        assertTrue(analyzer.getMessages().isEmpty());
+
+        analyzer.printSummary(1000000000L);
+        String summary = output.toString();
+        assertTrue(summary, summary.contains("Messages: 4"));
+        assertTrue(summary, summary.contains("IN            1 OUT            3"));
+    }
+
+    public void testGapIsReportedPerDirection() {
+        add(false, "A", 1, "");
+        add(true, "A", 1, "");
+        add(false, "D", 2, "");
+        add(false, "D", 5, "");
+        add(true, "8", 2, "");
+
+        assertEquals(1, analyzer.getGapCount());
+        assertEquals(2, analyzer.getMissingMessageCount());
+        assertTrue(output.toString(), output.toString().contains("expected 3 but received 5 (2 missing)"));
+    }
+
+    public void testResentMessagesDoNotMoveTheExpectedNumberBack() {
+        add(false, "D", 1, "");
+        add(false, "D", 2, "");
+        add(false, "D", 3, "");
+        add(false, "D", 2, "43=Y|");
+        add(false, "D", 4, "");
+
+        assertEquals(0, analyzer.getGapCount());
+    }
+
+    public void testSequenceResetMovesTheExpectedNumber() {
+        add(false, "D", 1, "");
+        add(false, "4", 2, "123=Y|36=10|");
+        add(false, "D", 10, "");
+        add(false, "D", 12, "");
+
+        assertEquals(1, analyzer.getGapCount());
+        assertEquals(1, analyzer.getMissingMessageCount());
+    }
+
+    public void testLogonRestartsTheSequenceNumbers() {
+        add(false, "A", 1, "");
+        add(false, "D", 2, "");
+        add(false, "A", 1, "");
+        add(false, "D", 2, "");
+
+        assertEquals(0, analyzer.getGapCount());
+    }
+
+    public void testSessionModelPassesMessagesToTheAnalyzer() {
+        SessionID otherSessionId = new SessionID("FIX.4.2", "OTHER", "TARGET");
+        MemoryLogModel model = analyzer.createSessionModel(otherSessionId);
+        assertEquals(otherSessionId, model.getSessionId());
+
+        model.addLogMessage(createMessage(otherSessionId, false, "D", 1, ""));
+        model.addLogEvent(new LogEvent("Hello"));
+        add(false, "D", 1, "");
+
+        assertEquals(2, analyzer.getMessageCount());
+        assertEquals(0, analyzer.getGapCount());
+        assertTrue(output.toString(), output.toString().contains("EVENT Hello"));
+    }
+
+    public void testClearResetsTheCounts() {
+        add(false, "D", 1, "");
+        add(false, "D", 5, "");
+        analyzer.clear();
+
+        add(false, "D", 1, "");
+        assertEquals(1, analyzer.getMessageCount());
+        assertEquals(0, analyzer.getGapCount());
+    }
+
+    private void add(boolean incoming, String messageType, int sequenceNumber, String fields) {
+        analyzer.addLogMessage(createMessage(sessionId, incoming, messageType, sequenceNumber, fields));
+    }
+
+    private LogMessage createMessage(SessionID sessionId, boolean incoming, String messageType,
+                                     int sequenceNumber, String fields) {
+        String raw = "8=FIX.4.2|9=5|35=" + messageType + "|34=" + sequenceNumber + "|49="
+                + sessionId.getSenderCompID() + "|56=" + sessionId.getTargetCompID()
+                + "|52=20081020-12:00:00|" + fields + "10=000|";
+        return new LogMessage(++messageIndex, incoming, sessionId, raw, dictionary);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LogFileFollowerTest extends TestCase {
+
+    private static final String ORDER = "8=FIX.4.2\u00019=5\u000135=D\u000110=123\u0001";
+    private static final String HEARTBEAT = "8=FIX.4.2\u00019=5\u000135=0\u000110=124\u0001";
+
+    private File directory;
+    private File file;
+    private ImportBuffer records;
+    private LogFileFollower follower;
+    private Thread thread;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        directory = File.createTempFile("log4fix", ".dir");
+        directory.delete();
+        directory.mkdir();
+        file = new File(directory, "FIX.4.2-SENDER-TARGET.messages.log");
+
+        records = new ImportBuffer();
+        follower = new LogFileFollower(file, records, LogMessageScanner.Framing.LINE, 20);
+        thread = new Thread(follower);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        thread.interrupt();
+        thread.join(1000);
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    public void testNullFileFailsFast() {
+        try {
+            new LogFileFollower(null, new ImportBuffer());
+            fail("A null File should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNullImportBufferFailsFast() {
+        try {
+            new LogFileFollower(file, null);
+            fail("A null ImportBuffer should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNonEmptyImportBufferFailsFast() throws Exception {
+        ImportBuffer nonEmpty = new ImportBuffer();
+        nonEmpty.put(ImportRecord.message("Brian"));
+        nonEmpty.flush();
+        try {
+            new LogFileFollower(file, nonEmpty);
+            fail("A non-empty ImportBuffer should fail fast.");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testInvalidPollIntervalFailsFast() {
+        try {
+            new LogFileFollower(file, new ImportBuffer(), LogMessageScanner.Framing.LINE, 0);
+            fail("A zero poll interval should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testExistingAndAppendedMessagesAreImported() throws Exception {
+        append(ORDER + "\n");
+        thread.start();
+
+        assertMessages(awaitRecords(1), ORDER);
+
+        append(HEARTBEAT + "\n" + ORDER + "\n");
+        assertMessages(awaitRecords(2), HEARTBEAT, ORDER);
+        assertEquals(file.length(), follower.getOffset());
+    }
+
+    public void testFileCreatedAfterFollowingStarts() throws Exception {
+        thread.start();
+        Thread.sleep(60);
+
+        append(ORDER + "\n");
+        assertMessages(awaitRecords(1), ORDER);
+    }
+
+    public void testPartlyWrittenMessageWaitsForTheRest() throws Exception {
+        append(ORDER + "\n8=FIX.4.2\u00019=5\u000135=0\u0001");
+        thread.start();
+
+        assertMessages(awaitRecords(1), ORDER);
+
+        // give the follower a few polls to (wrongly) publish the partial message.
+        Thread.sleep(100);
+        assertTrue(records.isEmpty());
+        assertEquals(ORDER.length() + 1, follower.getOffset());
+
+        append("10=124\u0001\n");
+        assertMessages(awaitRecords(1), HEARTBEAT);
+    }
+
+    public void testTruncatedFileIsFollowedFromTheBeginning() throws Exception {
+        append(ORDER + "\n" + ORDER + "\n");
+        thread.start();
+        assertMessages(awaitRecords(2), ORDER, ORDER);
+
+        FIXMessageTestHelper.writeFile(file, HEARTBEAT + "\n", false);
+
+        List<ImportRecord> list = awaitRecords(2);
+        assertEquals(ImportRecord.Type.EVENT, list.get(0).getType());
+        assertTrue(list.get(0).getText().startsWith(LogFileFollower.EVENT_TRUNCATED));
+        assertMessages(list.subList(1, 2), HEARTBEAT);
+    }
+
+    public void testRotatedFileIsFollowedFromTheBeginning() throws Exception {
+        append(ORDER + "\n");
+        thread.start();
+        assertMessages(awaitRecords(1), ORDER);
+
+        // the rest of the old file is imported before the new file.
+        append(ORDER + "\n");
+        assertTrue(file.renameTo(new File(directory, "rotated.log")));
+        append(HEARTBEAT + "\n" + HEARTBEAT + "\n" + HEARTBEAT + "\n");
+
+        List<ImportRecord> list = awaitRecords(5);
+        assertMessages(list.subList(0, 1), ORDER);
+        assertEquals(ImportRecord.Type.EVENT, list.get(1).getType());
+        assertTrue(list.get(1).getText().startsWith(LogFileFollower.EVENT_ROTATED));
+        assertMessages(list.subList(2, 5), HEARTBEAT, HEARTBEAT, HEARTBEAT);
+    }
+
+    public void testInterruptingFollowerPublishesEndRecordAndThreadDies() throws Exception {
+        append(ORDER + "\n");
+        thread.start();
+        awaitRecords(1);
+
+        thread.interrupt();
+        thread.join(1000);
+        assertFalse("The follower thread is still running.", thread.isAlive());
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        assertEquals(1, list.size());
+        assertSame(ImportRecord.END, list.get(0));
+    }
+
+    private void assertMessages(List<ImportRecord> list, String... messages) {
+        assertEquals(messages.length, list.size());
+        for (int i = 0; i < messages.length; i++) {
+            assertEquals(ImportRecord.Type.MESSAGE, list.get(i).getType());
+            assertEquals(messages[i], list.get(i).getText());
+        }
+    }
+
+    /**
+     * Waits up to one second for the follower to publish the records.
+     */
+    private List<ImportRecord> awaitRecords(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (records.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("Records published within one second.", count, records.size());
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        return list;
+    }
+
+    private void append(String contents) throws IOException {
+        FIXMessageTestHelper.writeFile(file, contents, true);
+    }
+}
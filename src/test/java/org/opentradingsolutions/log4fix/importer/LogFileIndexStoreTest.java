@@ -0,0 +1,168 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class LogFileIndexStoreTest extends TestCase {
+
+    private File directory;
+    private File cacheDirectory;
+    private File logFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        directory = Files.createTempDirectory("log4fix").toFile();
+        cacheDirectory = new File(directory, "cache");
+        logFile = new File(directory, "test.log");
+        FIXMessageTestHelper.writeFile(logFile, "8=FIX.4.2|9=5|35=0|10=000|\n");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        directory.setWritable(true);
+        delete(directory);
+        super.tearDown();
+    }
+
+    public void testIndexIsSavedNextToTheLogFile() throws Exception {
+        LogFileIndexStore store = new LogFileIndexStore(cacheDirectory);
+        File indexFile = store.save(logFile, index(store, LogMessageScanner.Framing.LINE));
+
+        assertEquals(new File(directory, "test.log" + LogFileIndexStore.INDEX_SUFFIX), indexFile);
+        assertFalse(cacheDirectory.exists());
+        assertNotNull(store.load(logFile, LogMessageScanner.Framing.LINE));
+        assertFalse(new File(indexFile.getPath() + ".tmp").exists());
+    }
+
+    public void testIndexerIsSavedByRenamingItsFile() throws Exception {
+        LogFileIndexStore store = new LogFileIndexStore(cacheDirectory);
+        LogFileIndexer indexer = store.createIndexer(logFile, LogMessageScanner.Framing.LINE);
+        indexer.add(ImportRecord.message("8=FIX.4.2\u00019=5\u000135=0\u000110=000\u0001", 0, 26));
+        File indexFile = store.save(logFile, indexer);
+        indexer.close();
+
+        assertEquals(store.getSidecarFile(logFile), indexFile);
+        assertEquals(1, store.load(logFile, LogMessageScanner.Framing.LINE).size());
+        assertEquals("Only the log file and its index remain.", 2, directory.list().length);
+    }
+
+    public void testClosedIndexerLeavesNoFile() throws Exception {
+        LogFileIndexStore store = new LogFileIndexStore(cacheDirectory);
+        LogFileIndexer indexer = store.createIndexer(logFile, LogMessageScanner.Framing.LINE);
+        indexer.add(ImportRecord.message("8=FIX.4.2\u00019=5\u000135=0\u000110=000\u0001", 0, 26));
+        indexer.close();
+
+        assertEquals(1, directory.list().length);
+        assertNull(store.load(logFile, LogMessageScanner.Framing.LINE));
+    }
+
+    public void testMissingIndex() {
+        assertNull(new LogFileIndexStore(cacheDirectory).load(logFile, LogMessageScanner.Framing.LINE));
+    }
+
+    public void testChangedLogFileIsNotLoaded() throws Exception {
+        LogFileIndexStore store = new LogFileIndexStore();
+        store.save(logFile, index(store, LogMessageScanner.Framing.LINE));
+
+        FIXMessageTestHelper.writeFile(logFile, "8=FIX.4.2|9=5|35=0|10=000|\n8=FIX.4.2|9=5|35=1|10=000|\n");
+        assertNull(store.load(logFile, LogMessageScanner.Framing.LINE));
+    }
+
+    public void testOtherFramingIsNotLoaded() throws Exception {
+        LogFileIndexStore store = new LogFileIndexStore();
+        store.save(logFile, index(store, LogMessageScanner.Framing.LINE));
+
+        assertNull(store.load(logFile, LogMessageScanner.Framing.BODY_LENGTH));
+    }
+
+    public void testCorruptIndexIsNotLoaded() throws Exception {
+        LogFileIndexStore store = new LogFileIndexStore();
+        FIXMessageTestHelper.writeFile(store.getSidecarFile(logFile), "junk");
+
+        assertNull(store.load(logFile, LogMessageScanner.Framing.LINE));
+    }
+
+    public void testIndexIsSavedInTheCacheDirectoryIfTheLogDirectoryIsReadOnly() throws Exception {
+        File readOnly = new File(directory, "readOnly");
+        assertTrue(readOnly.mkdir());
+        File readOnlyLog = new File(readOnly, "test.log");
+        FIXMessageTestHelper.writeFile(readOnlyLog, "8=FIX.4.2|9=5|35=0|10=000|\n");
+        assertTrue(readOnly.setWritable(false));
+
+        try {
+            if (readOnly.canWrite()) {
+                // the file system ignores the permission (e.g. running as root).
+                return;
+            }
+
+            LogFileIndexStore store = new LogFileIndexStore(cacheDirectory);
+            File indexFile = store.save(readOnlyLog, index(store, LogMessageScanner.Framing.LINE, readOnlyLog));
+
+            assertEquals(cacheDirectory, indexFile.getParentFile());
+            assertNotNull(store.load(readOnlyLog, LogMessageScanner.Framing.LINE));
+        } finally {
+            readOnly.setWritable(true);
+        }
+    }
+
+    private LogFileIndex index(LogFileIndexStore store, LogMessageScanner.Framing framing) throws IOException {
+        return index(store, framing, logFile);
+    }
+
+    private LogFileIndex index(LogFileIndexStore store, LogMessageScanner.Framing framing, File file)
+            throws IOException {
+        LogFileIndexer indexer = store.createIndexer(file, framing);
+        indexer.add(ImportRecord.message("8=FIX.4.2\u00019=5\u000135=0\u000110=000\u0001", 0, 26));
+        return indexer.build();
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
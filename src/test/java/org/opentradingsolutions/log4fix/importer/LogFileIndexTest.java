@@ -0,0 +1,178 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class LogFileIndexTest extends TestCase {
+
+    private static final LogFileIndex.Key KEY = new LogFileIndex.Key(100, 200, 300, LogMessageScanner.Framing.LINE);
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("log4fix", LogFileIndexStore.INDEX_SUFFIX);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testIndexerReadsTheHeader() throws Exception {
+        LogFileIndexer indexer = new LogFileIndexer(KEY);
+        indexer.add(message("8=FIX.4.2|9=5|35=A|49=SENDER|56=TARGET|34=1|52=19700101-00:00:01.5|10=000|", 10, 60));
+        indexer.add(ImportRecord.error("ERROR: bad"));
+        indexer.add(message("8=FIX.4.2|9=5|35=0|49=TARGET|56=SENDER|10=000|", 61, 90));
+        indexer.add(message("8=FIX.4.2|9=5|35=0|49=SENDER|56=TARGET|34=2|10=000|", 91, 130));
+
+        LogFileIndex index = indexer.build();
+        assertEquals(3, index.size());
+        assertEquals(10, index.getOffset(0));
+        assertEquals(50, index.getLength(0));
+        assertEquals("A", index.getMessageType(0));
+        assertEquals("0", index.getMessageType(1));
+        assertEquals(1500000000L, index.getSendingTime(0));
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, index.getSendingTime(1));
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, index.getReceiveTime(0));
+        assertEquals(1, index.getSequenceNumber(0));
+        assertEquals(LogFileIndex.NO_SEQUENCE_NUMBER, index.getSequenceNumber(1));
+
+        assertEquals(2, index.getSessionCount());
+        assertEquals(0, index.getSession(0));
+        assertEquals(1, index.getSession(1));
+        assertEquals(0, index.getSession(2));
+        assertEquals("FIX.4.2", index.getBeginString(1));
+        assertEquals("TARGET", index.getSenderCompId(1));
+        assertEquals("SENDER", index.getTargetCompId(1));
+
+        assertEquals(1, index.getErrorCount());
+        assertEquals(1, index.getErrorPosition(0));
+        assertEquals("ERROR: bad", index.getError(0));
+    }
+
+    public void testMessageWithoutPositionFailsFast() throws Exception {
+        LogFileIndexer indexer = new LogFileIndexer(KEY);
+        try {
+            indexer.add(ImportRecord.message("8=FIX.4.2\u00019=5\u000110=000\u0001"));
+            fail("A message without a file position cannot be indexed.");
+        } catch (IllegalArgumentException expected) {
+        } finally {
+            indexer.close();
+        }
+    }
+
+    public void testWriteAndRead() throws Exception {
+        LogFileIndexer indexer = new LogFileIndexer(KEY);
+        for (int i = 0; i < 5000; i++) {
+            String message = "8=FIX.4.2|9=5|35=" + (i % 3) + "|49=S|56=T|34=" + i + "|52=20110304-10:00:00|10=000|";
+            indexer.add(ImportRecord.message(message.replace('|', '\u0001'), i * 100L, i * 100L + 60, i * 1000L));
+        }
+        indexer.add(ImportRecord.error("ERROR: at the end"));
+        LogFileIndex expected = indexer.build();
+
+        expected.write(file);
+        LogFileIndex actual = LogFileIndex.read(file);
+
+        assertEquals(KEY, actual.getKey());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getOffset(i), actual.getOffset(i));
+            assertEquals(expected.getLength(i), actual.getLength(i));
+            assertEquals(expected.getMessageType(i), actual.getMessageType(i));
+            assertEquals(expected.getSession(i), actual.getSession(i));
+            assertEquals(expected.getSendingTime(i), actual.getSendingTime(i));
+            assertEquals(i * 1000L, actual.getReceiveTime(i));
+            assertEquals(expected.getSequenceNumber(i), actual.getSequenceNumber(i));
+        }
+        assertEquals("S", actual.getSenderCompId(0));
+        assertEquals(1, actual.getErrorCount());
+        assertEquals(5000, actual.getErrorPosition(0));
+        assertEquals("ERROR: at the end", actual.getError(0));
+    }
+
+    public void testReadingAnotherFileFails() throws Exception {
+        FIXMessageTestHelper.writeFile(file, "8=FIX.4.2|9=5|35=0|10=000|");
+
+        try {
+            LogFileIndex.read(file);
+            fail("The file is not an index.");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testReadingATruncatedIndexFails() throws Exception {
+        LogFileIndexer indexer = new LogFileIndexer(KEY);
+        indexer.add(message("8=FIX.4.2|9=5|35=0|10=000|", 0, 20));
+        indexer.build().write(file);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 4);
+        } finally {
+            raf.close();
+        }
+
+        try {
+            LogFileIndex.read(file);
+            fail("The index is truncated.");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testKeyChangesWithTheFile() throws Exception {
+        FIXMessageTestHelper.writeFile(file, "8=FIX.4.2|9=5|35=0|10=000|\n");
+        LogFileIndex.Key before = LogFileIndex.Key.of(file, LogMessageScanner.Framing.LINE);
+        assertEquals(before, LogFileIndex.Key.of(file, LogMessageScanner.Framing.LINE));
+        assertFalse(before.equals(LogFileIndex.Key.of(file, LogMessageScanner.Framing.BODY_LENGTH)));
+
+        long lastModified = file.lastModified();
+        FIXMessageTestHelper.writeFile(file, "8=FIX.4.2|9=5|35=1|10=000|\n");
+        file.setLastModified(lastModified);
+        assertFalse("The head of the file changed.", before.equals(LogFileIndex.Key.of(file, LogMessageScanner.Framing.LINE)));
+    }
+
+    private static ImportRecord message(String message, long offset, long end) {
+        return ImportRecord.message(message.replace('|', '\u0001'), offset, end);
+    }
+}
@@ -38,8 +38,8 @@ import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * These tests assert that a FIX message can be extracted from an input stream.
@@ -52,28 +52,28 @@ public class LogFileParserTest extends TestCase {
 
     public void testNullInputStreamFailsFast() {
         try {
-            new LogMessageParser(null, new LinkedBlockingQueue<String>());
+            new LogMessageParser(null, new ImportBuffer());
             fail("A null InputStream should fail fast.");
 
         } catch (IllegalArgumentException expected) {
         }
     }
 
-    public void testNullBlockingQueueFailsFast() {
+    public void testNullImportBufferFailsFast() {
         try {
             new LogMessageParser(getClass().getResourceAsStream("/"), null);
-            fail("A null BlockingQueue should fail fast.");
+            fail("A null ImportBuffer should fail fast.");
         } catch (IllegalArgumentException expected) {
         }
     }
 
-    public void testNonEmptyBlockingQueueFailsFast() {
+    public void testNonEmptyImportBufferFailsFast() throws Exception {
         try {
-            BlockingQueue<String> fixMessages =
-                    new LinkedBlockingQueue<String>();
-            assertTrue(fixMessages.add("Brian"));
-            new LogMessageParser(getClass().getResourceAsStream("/"), fixMessages);
-            fail("A non-empty BlockingQueue should fail fast.");
+            ImportBuffer records = new ImportBuffer();
+            records.put(ImportRecord.message("Brian"));
+            records.flush();
+            new LogMessageParser(getClass().getResourceAsStream("/"), records);
+            fail("A non-empty ImportBuffer should fail fast.");
         } catch (IllegalStateException expected) {
         }
     }
@@ -82,24 +82,20 @@ public class LogFileParserTest extends TestCase {
 
         String noFIXMessages = "No\nMessages Are\nIn This\nStream";
         InputStream is = new ByteArrayInputStream(noFIXMessages.getBytes());
-        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
-
-        parseAndWait(is, queue);
-        assertFalse(queue.isEmpty());
-        assertEquals(1, queue.size());
-        assertEquals("DONE", queue.take());
+        List<ImportRecord> records = parseAndWait(is);
+        assertFalse(records.isEmpty());
+        assertEquals(1, records.size());
+        assertSame(ImportRecord.END, records.get(0));
     }
 
     public void testInputStreamWithOneFIXMessage() throws Exception {
         String message = "8=FIX.4.2\u00019=456\u000135=D\u000110=123\u0001";
         InputStream is = new ByteArrayInputStream(message.getBytes());
-        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
-
-        parseAndWait(is, queue);
-        assertFalse(queue.isEmpty());
-        assertEquals(2, queue.size());
-        assertEquals(message, queue.take());
-        assertEquals("DONE", queue.take());
+        List<ImportRecord> records = parseAndWait(is);
+        assertFalse(records.isEmpty());
+        assertEquals(2, records.size());
+        assertEquals(message, records.get(0).getText());
+        assertSame(ImportRecord.END, records.get(1));
     }
 
     public void testInputStreamWithTwoFIXMessages() throws Exception {
@@ -109,14 +105,12 @@ public class LogFileParserTest extends TestCase {
 
         // put a new line on the end
         InputStream is = new ByteArrayInputStream(line.getBytes());
-        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
-
-        parseAndWait(is, queue);
-        assertFalse(queue.isEmpty());
-        assertEquals(3, queue.size());
-        assertEquals(message, queue.take());
-        assertEquals(message, queue.take());
-        assertEquals("DONE", queue.take());
+        List<ImportRecord> records = parseAndWait(is);
+        assertFalse(records.isEmpty());
+        assertEquals(3, records.size());
+        assertEquals(message, records.get(0).getText());
+        assertEquals(message, records.get(1).getText());
+        assertSame(ImportRecord.END, records.get(2));
     }
 
     /**
@@ -126,25 +120,49 @@ public class LogFileParserTest extends TestCase {
     public void testFIXMessageThatDoesNotEndWithSOH() throws Exception {
         String oneMessage = "8=FIX.4.2\u00019=456\u000135=D\u000110=123";
         InputStream is = new ByteArrayInputStream(oneMessage.getBytes());
-        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
-
-        parseAndWait(is, queue);
-        assertFalse(queue.isEmpty());
-        assertEquals(2, queue.size());
-        assertEquals(oneMessage + "\u0001", queue.take());
-        assertEquals("DONE", queue.take());
+        List<ImportRecord> records = parseAndWait(is);
+        assertFalse(records.isEmpty());
+        assertEquals(2, records.size());
+        assertEquals(oneMessage + "\u0001", records.get(0).getText());
+        assertSame(ImportRecord.END, records.get(1));
     }
 
     public void testFIXMessageWithNonStandardOneCharacterDelimeter() throws Exception {
         String oneMessage = "8=FIX.4.2|9=456|35=D|10=123";
         InputStream is = new ByteArrayInputStream(oneMessage.getBytes());
-        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+        List<ImportRecord> records = parseAndWait(is);
+        assertFalse(records.isEmpty());
+        assertEquals(2, records.size());
+        assertEquals(oneMessage.replaceAll("\\|", "\u0001") + "\u0001", records.get(0).getText());
+        assertSame(ImportRecord.END, records.get(1));
+    }
+
+    public void testFIXMessageWithCaretDelimeter() throws Exception {
+        String message = "8=FIX.4.2^9=456^35=D^10=123^";
+        List<ImportRecord> records = parseAndWait(new ByteArrayInputStream(message.getBytes()));
+        assertEquals(2, records.size());
+        assertEquals("8=FIX.4.2\u00019=456\u000135=D\u000110=123\u0001", records.get(0).getText());
+        assertSame(ImportRecord.END, records.get(1));
+    }
 
-        parseAndWait(is, queue);
-        assertFalse(queue.isEmpty());
-        assertEquals(2, queue.size());
-        assertEquals(oneMessage.replaceAll("\\|", "\u0001") + "\u0001", queue.take());
-        assertEquals("DONE", queue.take());
+    public void testFIXMessagesWithTextDelimeters() throws Exception {
+        String caretA = "8=FIX.4.2^A9=456^A35=A^A49=ALPHA^A10=123^A";
+        String sohText = "8=FIX.4.2<SOH>9=456<SOH>35=D<SOH>58=<S<SOH>10=123<SOH>";
+
+        InputStream is = new ByteArrayInputStream((caretA + "\n" + sohText + "\n" + caretA).getBytes());
+        List<ImportRecord> records = parseAndWait(is);
+        assertEquals(4, records.size());
+        assertEquals("8=FIX.4.2\u00019=456\u000135=A\u000149=ALPHA\u000110=123\u0001", records.get(0).getText());
+        assertEquals("8=FIX.4.2\u00019=456\u000135=D\u000158=<S\u000110=123\u0001", records.get(1).getText());
+        assertEquals(records.get(0).getText(), records.get(2).getText());
+        assertSame(ImportRecord.END, records.get(3));
+    }
+
+    public void testFIXMessageWithTextDelimeterThatDoesNotEndWithDelimeter() throws Exception {
+        String message = "8=FIX.4.2^A9=456^A35=D^A10=123";
+        List<ImportRecord> records = parseAndWait(new ByteArrayInputStream(message.getBytes()));
+        assertEquals(2, records.size());
+        assertEquals("8=FIX.4.2\u00019=456\u000135=D\u000110=123\u0001", records.get(0).getText());
     }
 
     public void testFIXMessageWithJunkAtTheBeginningOfTheString()
@@ -153,31 +171,34 @@ public class LogFileParserTest extends TestCase {
         String message = "8=FIX.4.2|9=456|35=D|10=123|";
 
         InputStream is = new ByteArrayInputStream((junkInTheTrunkMessage + message).getBytes());
-        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
-
-        parseAndWait(is, queue);
-        assertFalse(queue.isEmpty());
-        assertEquals(2, queue.size());
-        assertEquals(message.replaceAll("\\|", "\u0001"), queue.take());
-        assertEquals("DONE", queue.take());
+        List<ImportRecord> records = parseAndWait(is);
+        assertFalse(records.isEmpty());
+        assertEquals(2, records.size());
+        assertEquals(message.replaceAll("\\|", "\u0001"), records.get(0).getText());
+        assertSame(ImportRecord.END, records.get(1));
     }
 
     public void testIncompleteFIXMessage() throws Exception {
         String message = "8=FIX.";
 
         InputStream is = new ByteArrayInputStream(message.getBytes());
-        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
-
-        parseAndWait(is, queue);
-        assertFalse(queue.isEmpty());
-        assertEquals(1, queue.size());
-        assertEquals("DONE", queue.take());
+        List<ImportRecord> records = parseAndWait(is);
+        assertFalse(records.isEmpty());
+        assertEquals(1, records.size());
+        assertSame(ImportRecord.END, records.get(0));
     }
 
-    private void parseAndWait(InputStream is, BlockingQueue<String> queue)
+    private List<ImportRecord> parseAndWait(InputStream is)
             throws InterruptedException {
-        Thread t = new Thread(new LogMessageParser(is, queue));
+        ImportBuffer records = new ImportBuffer();
+        Thread t = new Thread(new LogMessageParser(is, records));
         t.start();
         t.join(1000);
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        if (!records.isEmpty()) {
+            records.drainTo(list);
+        }
+        return list;
     }
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Tests scanning application log lines with a {@link LogLinePattern}.
+ */
+public class LogLinePatternTest extends TestCase {
+
+    private static final String PREFIX =
+            "(?<timestamp>\\S+ \\S+) \\[(?<thread>[^\\]]+)\\] (?<level>\\w+) \\S+ - (sent|received): ";
+
+    private static final String ORDER = "8=FIX.4.2|9=5|35=D|10=123|";
+    private static final String HEARTBEAT = "8=FIX.4.2\u00019=5\u000135=0\u000110=124\u0001";
+
+    public void testMessageStartsAfterThePrefix() {
+        // the thread name contains '8=' in front of the message.
+        LogMessageScanner scanner = createScanner(
+                "2011-03-04 10:00:00,250 [worker-8=FIX] INFO c.a.Gateway - sent: " + ORDER + "\n");
+
+        assertTrue(scanner.next());
+        assertFalse(scanner.isError());
+        assertEquals(ORDER, scanner.getMessage().replace('\u0001', '|'));
+        assertEquals("worker-8=FIX", scanner.getLineField(LogLinePattern.GROUP_THREAD));
+        assertEquals("INFO", scanner.getLineField("level"));
+
+        long expected = FIXHeaderScanner.parseTimestamp("20110304-10:00:00.250", 0, 21);
+        assertEquals(expected, scanner.getLineTimestamp());
+        assertFalse(scanner.next());
+    }
+
+    public void testLinesNotMatchingThePatternAreSkipped() {
+        LogMessageScanner scanner = createScanner(
+                "2011-03-04 10:00:00,250 [main] INFO c.a.Gateway - starting\n"
+                        + "2011-03-04 10:00:01,000 [main] DEBUG c.a.Gateway - config 8=FIX.4.2|9=5|35=D|10=000|\n"
+                        + "2011-03-04 10:00:02,000 [io-1] INFO c.a.Gateway - received: " + HEARTBEAT + "\n");
+
+        assertTrue(scanner.next());
+        assertEquals("io-1", scanner.getLineField(LogLinePattern.GROUP_THREAD));
+        assertEquals(HEARTBEAT, scanner.getMessage());
+        assertFalse(scanner.next());
+    }
+
+    public void testMarkerIsRequired() {
+        LogLinePattern linePattern = new LogLinePattern(".*?: ", "8=FIXT");
+        LogMessageScanner scanner = createScanner("a: " + ORDER + "\nb: 8=FIXT.1.1|9=5|35=0|10=000|\n");
+        scanner.setLinePattern(linePattern);
+
+        assertTrue(scanner.next());
+        assertEquals("8=FIXT.1.1|9=5|35=0|10=000|", scanner.getMessage().replace('\u0001', '|'));
+        assertFalse(scanner.next());
+    }
+
+    public void testPatternWithoutTimestamp() {
+        LogMessageScanner scanner = createScanner("20110304-10:00:00: " + ORDER + "\n");
+        scanner.setLinePattern(new LogLinePattern("\\S+ "));
+
+        assertTrue(scanner.next());
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, scanner.getLineTimestamp());
+        try {
+            scanner.getLineField(LogLinePattern.GROUP_THREAD);
+            fail("The pattern has no thread group.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testTimestampForms() {
+        assertTimestamp("20110304-10:00:00.123", "20110304-10:00:00.123");
+        assertTimestamp("20110304-10:00:00.123", "2011-03-04T10:00:00.123Z");
+        assertTimestamp("20110304-10:00:00", "2011/03/04 10:00:00");
+        assertTimestamp(null, "10:00:00,123");
+    }
+
+    public void testInvalidPattern() {
+        try {
+            new LogLinePattern("(unclosed");
+            fail("The pattern is invalid.");
+        } catch (PatternSyntaxException expected) {
+        }
+
+        try {
+            new LogLinePattern(".*", "");
+            fail("The marker is empty.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void assertTimestamp(String utcTimestamp, String text) {
+        LogLinePattern.Matcher matcher = new LogLinePattern("(?<timestamp>[^|]+)\\|")
+                .createMatcher(Charset.defaultCharset());
+        ByteBuffer line = ByteBuffer.wrap((text + "|8=FIX.4.2|").getBytes());
+        assertEquals(text.length() + 1, matcher.find(line, 0, line.limit()));
+
+        long expected = utcTimestamp == null ? FIXHeaderScanner.NO_TIMESTAMP
+                : FIXHeaderScanner.parseTimestamp(utcTimestamp, 0, utcTimestamp.length());
+        assertEquals(text, expected, matcher.getTimestamp());
+    }
+
+    private LogMessageScanner createScanner(String contents) {
+        LogMessageScanner scanner = new LogMessageScanner(ByteBuffer.wrap(contents.getBytes()), true);
+        scanner.setLinePattern(new LogLinePattern(PREFIX));
+        return scanner;
+    }
+}
@@ -37,20 +37,18 @@ package org.opentradingsolutions.log4fix.importer;
 import junit.framework.TestCase;
 import org.opentradingsolutions.log4fix.core.LogEvent;
 import org.opentradingsolutions.log4fix.core.MemoryLogModel;
-import org.opentradingsolutions.log4fix.core.MockMemoryLogModel;
-import org.opentradingsolutions.log4fix.datadictionary.DataDictionaryLoader;
-import org.opentradingsolutions.log4fix.datadictionary.SessionDataDictionaryLoader;
+import org.opentradingsolutions.log4fix.core.SegmentMemoryLogModel;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
 
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * @author Brian M. Coyner
  */
 public class LogMessageBuilderTest extends TestCase {
 
-    private BlockingQueue<String> queue;
+    private ImportBuffer records;
+    private LogMessageBuilder builder;
     private Thread thread;
     private ImporterModel model;
 
@@ -58,10 +56,10 @@ public class LogMessageBuilderTest extends TestCase {
     protected void setUp() throws Exception {
         super.setUp();
 
-        model = createModel();
+        model = FIXMessageTestHelper.createImporterModel();
 
-        queue = new LinkedBlockingQueue<String>(1);
-        LogMessageBuilder builder = new LogMessageBuilder(model, queue);
+        records = new ImportBuffer(1, ImportBuffer.DEFAULT_BYTE_CAPACITY);
+        builder = new LogMessageBuilder(model, records);
         thread = new Thread(builder);
     }
 
@@ -72,15 +70,15 @@ public class LogMessageBuilderTest extends TestCase {
         super.tearDown();
     }
 
-    public void testPoisonPillTerminatesThread() throws Exception {
+    public void testEndRecordTerminatesThread() throws Exception {
 
         // start the thread
         thread.start();
 
-        // add the poison pill to the queue
-        queue.put("DONE");
+        // add the end record to the buffer
+        records.close();
 
-        // wait for the poison to take effect
+        // wait for the end record to take effect
         thread.join(500);
 
         assertFalse("The builder thread is still running.", thread.isAlive());
@@ -89,7 +87,7 @@ public class LogMessageBuilderTest extends TestCase {
     public void testLogBuilderEventMessages() throws Exception {
         thread.start();
 
-        queue.put("DONE");
+        records.close();
         thread.join(500);
 
         ImporterMemoryLog logger = model.getImporterMemoryLog();
@@ -105,8 +103,8 @@ public class LogMessageBuilderTest extends TestCase {
         thread.start();
 
         final String errorMessage = LogMessageBuilder.EVENT_ERROR + " Test Error";
-        queue.put(errorMessage);
-        queue.put("DONE");
+        records.put(ImportRecord.error(errorMessage));
+        records.close();
         thread.join(500);
 
         ImporterMemoryLog logger = model.getImporterMemoryLog();
@@ -119,12 +117,56 @@ public class LogMessageBuilderTest extends TestCase {
         assertTrue(events.get(3).getEvent().startsWith(LogMessageBuilder.EVENT_COMPLETE));
     }
 
+    public void testReceiveTimeAndLatency() throws Exception {
+        thread.start();
+
+        long sendingTime = FIXHeaderScanner.parseTimestamp("20081020-12:00:00", 0, 17);
+        records.put(ImportRecord.message("8=FIX.4.2\u00019=5\u000135=A\u000149=ME\u000156=YOU"
+                + "\u000152=20081020-12:00:00\u000110=000\u0001", sendingTime + 2000000L));
+        records.put(ImportRecord.message("8=FIX.4.2\u00019=5\u000135=A\u000149=YOU\u000156=ME"
+                + "\u000152=20081020-12:00:00\u000110=000\u0001", sendingTime - 1000000L));
+        records.close();
+        thread.join(500);
+
+        MemoryLogModel memoryModel = model.getImporterMemoryLog().getMemoryLogModel();
+        assertEquals(2, memoryModel.getMessages().size());
+        assertEquals(sendingTime + 2000000L, memoryModel.getMessages().get(0).getReceiveTime());
+
+        LatencyStatistics latency = model.getLatencyStatistics();
+        assertEquals(1, latency.getCounterparties().size());
+        assertEquals("YOU", latency.getCounterparties().get(0));
+
+        LatencyHistogram outgoing = latency.getHistogram("YOU", false);
+        assertEquals(1, outgoing.getCount());
+        assertEquals(2000000L, outgoing.getMax());
+
+        // the counterparty's clock is ahead.
+        LatencyHistogram incoming = latency.getHistogram("YOU", true);
+        assertEquals(1, incoming.getCount());
+        assertEquals(-1000000L, incoming.getMin());
+    }
+
+    public void testOffHeapSessions() throws Exception {
+        builder.setOffHeap(true);
+        thread.start();
 
-    private ImporterModel createModel() {
-        DataDictionaryLoader dataDictionaryLoader = new SessionDataDictionaryLoader();
-        SessionIdResolver sessionIdResolver = new PassThroughSessionIdResolver();
-        MemoryLogModel memoryLogModel = new MockMemoryLogModel();
-        ImporterMemoryLog memoryLog = new ImporterMemoryLog(memoryLogModel, dataDictionaryLoader);
-        return new ImporterModel(memoryLog, sessionIdResolver);
+        records.put(ImportRecord.message("8=FIX.4.2\u00019=5\u000135=A\u000149=ME\u000156=YOU"
+                + "\u000152=20081020-12:00:00\u000110=000\u0001"));
+        records.put(ImportRecord.message("8=FIX.4.2\u00019=5\u000135=A\u000149=YOU\u000156=ME"
+                + "\u000152=20081020-12:00:00\u000110=000\u0001"));
+        records.close();
+        thread.join(500);
+
+        // the session gets a model of its own; the primary model keeps the events.
+        List<MemoryLogModel> models = model.getSessionMemoryLogModels().getMemoryLogModels();
+        assertEquals(2, models.size());
+        assertTrue(models.get(0).getMessages().isEmpty());
+
+        SegmentMemoryLogModel sessionModel = (SegmentMemoryLogModel) models.get(1);
+        assertEquals(2, sessionModel.getMessages().size());
+        assertFalse(sessionModel.getMessages().get(0).isIncoming());
+        assertTrue(sessionModel.getMessages().get(1).isIncoming());
+        sessionModel.close();
     }
+
 }
\ No newline at end of file
@@ -35,29 +35,25 @@
 package org.opentradingsolutions.log4fix.importer;
 
 import junit.framework.TestCase;
-import org.junit.Assert;
 
-import java.io.IOException;
+import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-
-import static org.opentradingsolutions.log4fix.importer.LogMessageParser.POISON_PILL;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Brian M. Coyner
  */
 public class LogMessageParserTest extends TestCase {
 
+    private static final String MESSAGE = "8=FIX.4.2\u00019=456\u000135=D\u000110=568\u0001";
+
     private PipedInputStream in;
-    private BlockingQueue<String> queue;
+    private ImportBuffer records;
     private PipedOutputStream out;
     private static final int POLL_TIMEOUT = 500;
     private Thread parserThread;
-    private CountDownLatch didAddToQueueLatch;
 
     @Override
     public void setUp() throws Exception {
@@ -66,34 +62,26 @@ public class LogMessageParserTest extends TestCase {
         out = new PipedOutputStream();
         in = new PipedInputStream(out);
 
-        didAddToQueueLatch = new CountDownLatch(1);
-
-        queue = new LinkedBlockingQueue<String>(1) {
-            @Override
-            public void put(String s) throws InterruptedException {
-                super.put(s);
-
-                // kind of a hack because we are using intimate knowledge of what API calls the parser uses. It works, though.
-                didAddToQueueLatch.countDown();
-            }
-        };
-        parserThread = new Thread(new LogMessageParser(in, queue));
+        // bounded buffer holding a single message.
+        records = new ImportBuffer(1, ImportBuffer.DEFAULT_BYTE_CAPACITY);
+        parserThread = new Thread(new LogMessageParser(in, records));
     }
 
-    public void testConstructParserWithNonEmptyQueueFailsFast() {
-        queue = new LinkedBlockingQueue<String>();
-        queue.add("Brian");
+    public void testConstructParserWithNonEmptyBufferFailsFast() throws Exception {
+        records = new ImportBuffer();
+        records.put(ImportRecord.message("Brian"));
+        records.flush();
         try {
-            new LogMessageParser(in, queue);
-            fail("An empty queue must be passed to the parser.");
+            new LogMessageParser(in, records);
+            fail("An empty buffer must be passed to the parser.");
         } catch (IllegalStateException expected) {
         }
     }
 
-    public void testConstructParserWithNullQueueFailsFast() {
+    public void testConstructParserWithNullBufferFailsFast() {
         try {
             new LogMessageParser(in, null);
-            fail("A non-null queue must be passed to the parser.");
+            fail("A non-null buffer must be passed to the parser.");
         } catch (IllegalArgumentException expected) {
         }
     }
@@ -101,56 +89,142 @@ public class LogMessageParserTest extends TestCase {
     public void testConstructParserWithNullInputStreamFailsFast() {
         in = null;
         try {
-            new LogMessageParser(in, queue);
+            new LogMessageParser(in, records);
             fail("A non-null input stream must be passed to the parser.");
         } catch (IllegalArgumentException expected) {
         }
     }
 
-    public void testInterruptingBlockedInputStreamPublishesPoisonPillAndThreadDies()
+    public void testInterruptingBlockedInputStreamPublishesEndRecordAndThreadDies()
             throws Exception {
 
         parserThread.start();
 
         // interrupt the parserThread and see if the parserThread publishes
-        // a poison-pill to the queue
+        // the end record to the buffer
         parserThread.interrupt();
+        parserThread.join(POLL_TIMEOUT);
+        assertFalse("The parser thread is still running.", parserThread.isAlive());
 
-        assertEquals(POISON_PILL, queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS));
+        List<ImportRecord> list = drain();
+        assertEquals(1, list.size());
+        assertSame(ImportRecord.END, list.get(0));
     }
 
-    public void testInterruptingBlockedQueuePublishesPoisonPillAndThreadDies() throws Exception {
+    public void testMessageIsPublishedWhenTheInputStreamHasNoMoreInput() throws Exception {
 
         parserThread.start();
 
-        // the bounded queue (size 1) is empty at this time
-        assertEquals(1, queue.remainingCapacity());
+        out.write((MESSAGE + "\n").getBytes());
+        waitForRecords(1);
 
-        // write a single message
-        out.write(("8=FIX.4.2\u00019=456\u000135=D\u000110=568\u0001" + "\n").getBytes());
+        List<ImportRecord> list = drain();
+        assertEquals(1, list.size());
+        assertEquals(MESSAGE, list.get(0).getText());
 
-        // wait for the parser to receive and enqueue the message FIX message
-        boolean success = didAddToQueueLatch.await(5, TimeUnit.SECONDS);
-        if (!success) {
-            Assert.fail("The FIX message was not enqueued on the parser's queue.");
-        }
+        parserThread.interrupt();
+        parserThread.join(POLL_TIMEOUT);
+    }
 
-        assertFullQueue();
+    public void testMessageIsPublishedWhenTheLineEndsAfterAPause() throws Exception {
+
+        parserThread.start();
+
+        out.write(MESSAGE.substring(0, 20).getBytes());
+        Thread.sleep(100);
+        assertEquals(0, records.size());
+
+        out.write((MESSAGE.substring(20) + "\n").getBytes());
+        waitForRecords(1);
+        assertEquals(MESSAGE, drain().get(0).getText());
 
-        // interrupt the thread and remove the messages from the queue.
         parserThread.interrupt();
-        parserThread.join(LogMessageParser.CANCELATION_TIMEOUT + 300);
+        parserThread.join(POLL_TIMEOUT);
+    }
 
-        assertFullQueue();
+    public void testLongMessageTrickledOneByteAtATime() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 256 * 1024) {
+            text.append("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        }
+        final byte[] bytes = ("8=FIX.4.2\u00019=5\u000135=D\u000158=" + text + "\u000110=123\u0001\n").getBytes();
+
+        // a stream that never has more input ready, like a slow pipe.
+        InputStream trickle = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() {
+                return position < bytes.length ? bytes[position++] : -1;
+            }
 
-        // We should have only have the poison pill. The original message is discarded when the thread is interrupted
-        // to make room for the poison pill. Remember that the queue size is 1. Therefore the parser simply clears the
-        // entire queue of messages to make room for the single poison pill message.
-        assertEquals("DONE", queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS));
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (position == bytes.length) {
+                    return -1;
+                }
+                b[off] = bytes[position++];
+                return 1;
+            }
+
+            @Override
+            public int available() {
+                return 0;
+            }
+        };
+
+        records = new ImportBuffer();
+        Thread thread = new Thread(new LogMessageParser(trickle, records));
+        thread.start();
+        thread.join(5000);
+        assertFalse("The parser thread is still running.", thread.isAlive());
+
+        List<ImportRecord> list = drain();
+        assertEquals(2, list.size());
+        assertEquals(ImportRecord.Type.MESSAGE, list.get(0).getType());
+        assertTrue(list.get(0).getText().contains(text));
+        assertSame(ImportRecord.END, list.get(1));
+    }
+
+    public void testInterruptingBlockedBufferPublishesEndRecordAndThreadDies() throws Exception {
+
+        parserThread.start();
+
+        // the first message fills the buffer.
+        out.write((MESSAGE + "\n").getBytes());
+        waitForRecords(1);
+
+        // the parser blocks trying to publish the second message.
+        out.write((MESSAGE + "\n").getBytes());
+        Thread.sleep(200);
+        assertTrue("The parser thread should be blocked.", parserThread.isAlive());
+        assertEquals(1, records.size());
+
+        parserThread.interrupt();
+        parserThread.join(POLL_TIMEOUT);
+        assertFalse("The parser thread is still running.", parserThread.isAlive());
+
+        // The second message is discarded when the thread is interrupted. The end
+        // record is always published, even though the buffer is full.
+        List<ImportRecord> list = drain();
+        assertEquals(2, list.size());
+        assertEquals(MESSAGE, list.get(0).getText());
+        assertSame(ImportRecord.END, list.get(1));
+    }
+
+    private void waitForRecords(int count) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (records.size() < count) {
+            if (System.currentTimeMillis() > timeout) {
+                fail("The FIX message was not published to the parser's buffer.");
+            }
+            Thread.sleep(10);
+        }
     }
 
-    private void assertFullQueue() {
-        assertEquals(1, queue.size());
-        assertEquals(0, queue.remainingCapacity());
+    private List<ImportRecord> drain() throws InterruptedException {
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        return list;
     }
 }
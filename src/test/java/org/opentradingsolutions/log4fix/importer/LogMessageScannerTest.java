@@ -0,0 +1,198 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link LogMessageScanner.Framing#BODY_LENGTH} framing. The line framing is
+ * covered by the parser tests. The scanner replaces the delimeter with SOH, so
+ * the messages are changed back to the '|' delimeter before comparing.
+ */
+public class LogMessageScannerTest extends TestCase {
+
+    private static final String ORDER = "8=FIX.4.2|9=5|35=D|10=123|";
+    private static final String HEARTBEAT = "8=FIX.4.2|9=5|35=0|10=124|";
+
+    public void testMessagesWithoutLineTerminators() {
+        List<String> messages = scan(ORDER + HEARTBEAT + ORDER, true);
+        assertEquals(3, messages.size());
+        assertEquals(ORDER, messages.get(0));
+        assertEquals(HEARTBEAT, messages.get(1));
+        assertEquals(ORDER, messages.get(2));
+    }
+
+    public void testJunkBetweenMessagesIsSkipped() {
+        List<String> messages = scan("junk" + ORDER + "\n2008-01-01 more junk " + HEARTBEAT + "\n", true);
+        assertEquals(2, messages.size());
+        assertEquals(ORDER, messages.get(0));
+        assertEquals(HEARTBEAT, messages.get(1));
+    }
+
+    public void testBodyLengthSkipsEmbeddedChecksumTag() {
+        // the text field contains "|10=" which would end a line framed message early.
+        String message = "8=FIX.4.2|9=15|35=D|58=x|10=b|10=123|";
+        List<String> messages = scan(message + HEARTBEAT, true);
+        assertEquals(2, messages.size());
+        assertEquals(message, messages.get(0));
+        assertEquals(HEARTBEAT, messages.get(1));
+    }
+
+    public void testWrongBodyLengthFallsBackToChecksumSearch() {
+        List<String> messages = scan("8=FIX.4.2|9=99|35=D|10=123|" + HEARTBEAT, true);
+        assertEquals(2, messages.size());
+        assertEquals("8=FIX.4.2|9=99|35=D|10=123|", messages.get(0));
+        assertEquals(HEARTBEAT, messages.get(1));
+    }
+
+    public void testMissingBodyLengthFallsBackToChecksumSearch() {
+        List<String> messages = scan("8=FIX.4.2|35=D|10=123|" + HEARTBEAT, true);
+        assertEquals(HEARTBEAT, messages.get(messages.size() - 1));
+    }
+
+    public void testMessageWrappedAcrossLines() {
+        List<String> messages = scan("8=FIX.4.2|9=5|3\r\n5=D|1\n0=123|\n" + HEARTBEAT, true);
+        assertEquals(2, messages.size());
+        assertEquals(ORDER, messages.get(0));
+        assertEquals(HEARTBEAT, messages.get(1));
+    }
+
+    public void testIncompleteMessageAtEndOfInputIsDropped() {
+        List<String> messages = scan(ORDER + "8=FIX.4.2|9=5|35=D|", true);
+        assertEquals(1, messages.size());
+        assertEquals(ORDER, messages.get(0));
+    }
+
+    public void testIncompleteMessageUnderflows() {
+        String contents = ORDER + "8=FIX.4.2|9=5|35=D|";
+        LogMessageScanner scanner = createScanner(contents, false);
+        assertTrue(scanner.next());
+        assertEquals(ORDER.replace('|', '\u0001'), scanner.getMessage());
+
+        assertFalse(scanner.next());
+        assertTrue(scanner.isUnderflow());
+        assertEquals(ORDER.length(), scanner.getPosition());
+    }
+
+    public void testSplitBeginStringUnderflows() {
+        LogMessageScanner scanner = createScanner("junk8", false);
+        assertFalse(scanner.next());
+        assertTrue(scanner.isUnderflow());
+        assertEquals(4, scanner.getPosition());
+    }
+
+    public void testEveryPrefixEitherUnderflowsOrMatchesTheWholeInput() {
+        String contents = "junk" + ORDER + "\n" + HEARTBEAT + "8=FIX.4.2|9=15|35=D|58=x|10=b|10=123|";
+        List<String> expected = scan(contents, true);
+        assertEquals(3, expected.size());
+
+        for (int length = 0; length <= contents.length(); length++) {
+            List<String> messages = new ArrayList<String>();
+            LogMessageScanner scanner = createScanner(contents.substring(0, length), false);
+            while (scanner.next()) {
+                messages.add(scanner.getMessage().replace('\u0001', '|'));
+            }
+            String rest = contents.substring(scanner.getPosition());
+            messages.addAll(scan(rest, true));
+
+            assertEquals("Prefix length " + length, expected, messages);
+        }
+    }
+
+    public void testTextDelimeters() {
+        String caretA = "8=FIX.4.2^A9=5^A35=D^A10=123^A";
+        String sohText = "8=FIX.4.2<SOH>9=5<SOH>35=0<SOH>10=124<SOH>";
+        List<String> messages = scan(caretA + sohText + caretA, true);
+        assertEquals(3, messages.size());
+        assertEquals(ORDER, messages.get(0));
+        assertEquals(HEARTBEAT, messages.get(1));
+        assertEquals(ORDER, messages.get(2));
+    }
+
+    public void testDelimeterIsKeptBetweenMessages() {
+        LogMessageScanner scanner = createScanner("8=FIX.4.2^A9=5^A35=D^A10=123^A\n", true);
+        assertNull(scanner.getDelimeter());
+        assertTrue(scanner.next());
+        assertSame(FIXDelimeter.CARET_A, scanner.getDelimeter());
+
+        scanner = createScanner("8=FIX.4.2^A9=5^A35=D^A10=123^A\n", true);
+        scanner.setDelimeter(FIXDelimeter.CARET_A);
+        assertTrue(scanner.next());
+        assertSame(FIXDelimeter.CARET_A, scanner.getDelimeter());
+
+        scanner = createScanner(HEARTBEAT, true);
+        scanner.setDelimeter(FIXDelimeter.CARET_A);
+        assertTrue(scanner.next());
+        assertSame(FIXDelimeter.PIPE, scanner.getDelimeter());
+    }
+
+    public void testLineTimestampIsTheReceiveTime() {
+        LogMessageScanner scanner = createScanner("20081020-12:00:01.500: " + ORDER + "\n"
+                + "2008-10-20 12:00:02 " + HEARTBEAT + "\n"
+                + HEARTBEAT + "\n", true);
+
+        long sendingTime = FIXHeaderScanner.parseTimestamp("20081020-12:00:00", 0, 17);
+
+        assertTrue(scanner.next());
+        assertEquals(sendingTime + 1500000000L, scanner.getLineTimestamp());
+
+        // not a UTCTimestamp.
+        assertTrue(scanner.next());
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, scanner.getLineTimestamp());
+
+        // no prefix.
+        assertTrue(scanner.next());
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, scanner.getLineTimestamp());
+    }
+
+    private List<String> scan(String contents, boolean endOfInput) {
+        List<String> messages = new ArrayList<String>();
+        LogMessageScanner scanner = createScanner(contents, endOfInput);
+        while (scanner.next()) {
+            messages.add(scanner.getMessage().replace('\u0001', '|'));
+        }
+        return messages;
+    }
+
+    private LogMessageScanner createScanner(String contents, boolean endOfInput) {
+        ByteBuffer buffer = ByteBuffer.wrap(contents.getBytes());
+        return new LogMessageScanner(buffer, endOfInput, Charset.defaultCharset(), LogMessageScanner.Framing.BODY_LENGTH);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.core.LogEvent;
+import org.opentradingsolutions.log4fix.core.LogMessage;
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * These tests assert that the {@link MappedLogFileImporter} finds the same sessions
+ * and messages as the stream import.
+ */
+public class MappedLogFileImporterTest extends TestCase {
+
+    private static final String LOGON =
+            "8=FIX.4.2\u00019=65\u000135=A\u000134=1\u000149=SENDER\u000152=20060101-12:00:00\u0001" +
+            "56=TARGET\u000198=0\u0001108=30\u000110=061\u0001";
+
+    private final List<File> files = new ArrayList<File>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testNullFileFailsFast() {
+        try {
+            new MappedLogFileImporter(FIXMessageTestHelper.createImporterModel(), null);
+            fail("A null File should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testEmptyFile() throws Exception {
+        assertSameImport(FIXMessageTestHelper.createLogFile(files, ""));
+    }
+
+    public void testLogFiles() throws Exception {
+        URL url = getClass().getResource("/logs");
+        File directory = new File(url.getFile());
+        String[] logFiles = directory.list();
+        assertNotNull(logFiles);
+
+        for (String logFileName : logFiles) {
+            assertSameImport(new File(directory, logFileName));
+        }
+    }
+
+    public void testMultipleSessions() throws Exception {
+        String otherSession = LOGON.replace("SENDER", "OTHERS");
+        List<MemoryLogModel> models = assertSameImport(FIXMessageTestHelper.createLogFile(files,
+                createMessages(1000) + otherSession + "\n" +
+                createMessages(1000)));
+
+        assertEquals(3, models.size());
+        assertEquals(2000, models.get(1).getMessages().size());
+        assertEquals(1, models.get(2).getMessages().size());
+    }
+
+    public void testIndexIsSavedAndReused() throws Exception {
+        File file = FIXMessageTestHelper.createLogFile(files, createMessages(100));
+        files.add(new File(file.getPath() + LogFileIndexStore.INDEX_SUFFIX));
+        LogFileIndexStore store = new LogFileIndexStore();
+
+        ImporterModel model = FIXMessageTestHelper.createImporterModel();
+        model.setIndexStore(store);
+        runImporter(model, file);
+        assertTrue(getEvents(model).contains(LogFileIndexStore.EVENT_INDEX_SAVED + ": " + store.getSidecarFile(file)));
+
+        ImporterModel reused = FIXMessageTestHelper.createImporterModel();
+        reused.setIndexStore(store);
+        runImporter(reused, file);
+        assertTrue(getEvents(reused).contains(LogFileIndexStore.EVENT_INDEX_LOADED + ": 100 messages"));
+        assertEquals(100, reused.getSessionMemoryLogModels().getMemoryLogModels().get(1).getMessages().size());
+    }
+
+    /**
+     * @return the models of the lazy import; the first is the primary model.
+     */
+    private List<MemoryLogModel> assertSameImport(File file) throws Exception {
+        ImporterModel expected = FIXMessageTestHelper.createImporterModel();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            new Importer().start(expected, in, new MockImporterCallback());
+        } finally {
+            in.close();
+        }
+
+        ImporterModel actual = FIXMessageTestHelper.createImporterModel();
+        runImporter(actual, file);
+
+        // the stream import adds the first session's messages to the primary model.
+        List<MemoryLogModel> expectedModels = expected.getSessionMemoryLogModels().getMemoryLogModels();
+        List<MemoryLogModel> actualModels = actual.getSessionMemoryLogModels().getMemoryLogModels();
+        assertTrue(actual.getImporterMemoryLog().getMemoryLogModel().getMessages().isEmpty());
+
+        if (expectedModels.get(0).getMessages().isEmpty()) {
+            assertEquals(file.getName(), 1, actualModels.size());
+            return actualModels;
+        }
+
+        assertEquals(file.getName(), expectedModels.size() + 1, actualModels.size());
+        for (int i = 0; i < expectedModels.size(); i++) {
+            MemoryLogModel expectedModel = expectedModels.get(i);
+            MemoryLogModel actualModel = actualModels.get(i + 1);
+            assertTrue(actualModel instanceof MappedMemoryLogModel);
+            assertEquals(file.getName(), expectedModel.getSessionId(), actualModel.getSessionId());
+
+            List<LogMessage> expectedMessages = expectedModel.getMessages();
+            List<LogMessage> actualMessages = actualModel.getMessages();
+            assertEquals(file.getName(), expectedMessages.size(), actualMessages.size());
+            for (int j = 0; j < expectedMessages.size(); j++) {
+                LogMessage expectedMessage = expectedMessages.get(j);
+                LogMessage actualMessage = actualMessages.get(j);
+                assertEquals(expectedMessage.isIncoming(), actualMessage.isIncoming());
+                assertEquals(expectedMessage.getRawMessage(), actualMessage.getRawMessage());
+            }
+        }
+        return actualModels;
+    }
+
+    private void runImporter(ImporterModel model, File file) throws InterruptedException {
+        Thread thread = new Thread(new MappedLogFileImporter(model, file, 16));
+        thread.start();
+        thread.join(10000);
+        assertFalse("The importer thread is still running.", thread.isAlive());
+    }
+
+    private List<String> getEvents(ImporterModel model) {
+        List<String> events = new ArrayList<String>();
+        for (LogEvent event : model.getImporterMemoryLog().getMemoryLogModel().getEvents()) {
+            events.add(event.getEvent());
+        }
+        return events;
+    }
+
+    private String createMessages(int count) {
+        StringBuilder messages = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            // alternate between outgoing and incoming messages.
+            String message = i % 2 == 0 ? LOGON : LOGON.replace("SENDER", "TMP")
+                    .replace("TARGET", "SENDER").replace("TMP", "TARGET");
+            messages.append(message.replace("34=1", "34=" + (i + 1))).append('\n');
+        }
+        return messages.toString();
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * These tests assert that the {@link MappedLogMessageParser} and the {@link LogMessageParser}
+ * both extract the expected messages.
+ */
+public class MappedLogMessageParserTest extends TestCase {
+
+    private static final String ORDER = "8=FIX.4.2\u00019=456\u000135=D\u000110=123\u0001";
+    private static final String EXPECTED_MESSAGE_COUNT = "ExpectedMessageCount";
+
+    private final List<File> files = new ArrayList<File>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testNullFileFailsFast() {
+        try {
+            new MappedLogMessageParser(null, new ImportBuffer());
+            fail("A null File should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNullImportBufferFailsFast() throws Exception {
+        try {
+            new MappedLogMessageParser(FIXMessageTestHelper.createLogFile(files, ""), null);
+            fail("A null ImportBuffer should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNonEmptyImportBufferFailsFast() throws Exception {
+        ImportBuffer records = new ImportBuffer();
+        records.put(ImportRecord.message("Brian"));
+        records.flush();
+        try {
+            new MappedLogMessageParser(FIXMessageTestHelper.createLogFile(files, ""), records);
+            fail("A non-empty ImportBuffer should fail fast.");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testEmptyFile() throws Exception {
+        assertMessages("");
+    }
+
+    public void testMissingFileReportsAnError() throws Exception {
+        File file = FIXMessageTestHelper.createLogFile(files, "");
+        file.delete();
+
+        List<String> messages = parseFile(file, MappedLogFileCursor.DEFAULT_MAPPING_SIZE);
+        assertEquals(2, messages.size());
+        assertTrue(messages.get(0).startsWith(ImportRecord.Type.ERROR + ": " + LogMessageBuilder.EVENT_ERROR));
+        assertEquals(ImportRecord.END.toString(), messages.get(1));
+    }
+
+    public void testFileWithNoFIXMessages() throws Exception {
+        assertMessages("No\nMessages Are\nIn This\nStream");
+    }
+
+    public void testFileWithOneFIXMessage() throws Exception {
+        assertMessages(ORDER, ImportRecord.message(ORDER));
+    }
+
+    public void testFileWithTwoFIXMessages() throws Exception {
+        assertMessages(ORDER + "\n" + ORDER, ImportRecord.message(ORDER), ImportRecord.message(ORDER));
+        assertMessages(ORDER + "\r\n" + ORDER + "\r\n", ImportRecord.message(ORDER), ImportRecord.message(ORDER));
+        assertMessages(ORDER + "\r" + ORDER + "\r", ImportRecord.message(ORDER), ImportRecord.message(ORDER));
+    }
+
+    public void testFIXMessageThatDoesNotEndWithSOH() throws Exception {
+        assertMessages("8=FIX.4.2\u00019=456\u000135=D\u000110=123", ImportRecord.message(ORDER));
+    }
+
+    public void testFIXMessageWithNonStandardOneCharacterDelimeter() throws Exception {
+        assertMessages("8=FIX.4.2|9=456|35=D|10=123", ImportRecord.message(ORDER));
+    }
+
+    public void testFIXMessageWithJunkAtTheBeginningOfTheString() throws Exception {
+        assertMessages("JunkInTheTrunk8=FIX.4.2|9=456|35=D|10=123|", ImportRecord.message(ORDER));
+    }
+
+    public void testIncompleteFIXMessage() throws Exception {
+        assertMessages("8=FIX.");
+        assertMessages("8=FIX.4.2|9=456|35=D|");
+    }
+
+    public void testMessageSplitBetweenLines() throws Exception {
+        assertMessages("8=FIX.\n4.2|9=456|35=D|1\n0=123|\n8=FIX.4.2|9=456|35=D|10=123|",
+                ImportRecord.message(ORDER), ImportRecord.message(ORDER));
+    }
+
+    public void testMissingDelimeterBeforeBodyLength() throws Exception {
+        String contents = "9=456|8=FIX.4.2|35=D|10=123|";
+        assertMessages(contents, ImportRecord.error(LogMessageScanner.ERROR_PREFIX + contents));
+    }
+
+    public void testFieldTagsInTheLinePrefixAreIgnored() throws Exception {
+        String prefix = "2011-01-01 9=1\u000110=2 ";
+        assertMessages(prefix + ORDER + "\n" + prefix + "8=FIX.4.2|9=456|35=D|10=123|",
+                ImportRecord.message(ORDER), ImportRecord.message(ORDER));
+
+        // the message is wrapped before its body length field.
+        assertMessages(prefix + "8=FIX.4.2\u0001\n9=456\u000135=D\u000110=123\u0001", ImportRecord.message(ORDER));
+    }
+
+    public void testLogFiles() throws Exception {
+        URL url = getClass().getResource("/logs");
+        File directory = new File(url.getFile());
+        String[] logFiles = directory.list();
+        assertNotNull(logFiles);
+
+        for (String logFileName : logFiles) {
+            File logFile = new File(directory, logFileName);
+            List<String> expected = parseFile(logFile, MappedLogFileCursor.DEFAULT_MAPPING_SIZE);
+            assertEquals(logFileName, getExpectedMessageCount(logFile), countMessages(expected));
+            assertEquals(logFileName, expected, parseStream(logFile));
+
+            // forces messages and lines to cross the mapped regions.
+            assertEquals(logFileName, expected, parseFile(logFile, 7));
+            assertEquals(logFileName, expected, parseFile(logFile, 64));
+        }
+    }
+
+    public void testBodyLengthFraming() throws Exception {
+        String order = "8=FIX.4.2|9=5|35=D|10=123|";
+        String text = "8=FIX.4.2|9=15|35=D|58=x|10=b|10=123|";
+        File file = FIXMessageTestHelper.createLogFile(files,
+                "junk" + order + order + "\n8=FIX.4.2|9=5|3\n5=D|10=123|" + text + "8=FIX.4.2|9=5|");
+        order = order.replace('|', '\u0001');
+        text = text.replace('|', '\u0001');
+
+        List<String> expected = new ArrayList<String>();
+        expected.add(ImportRecord.message(order).toString());
+        expected.add(ImportRecord.message(order).toString());
+        expected.add(ImportRecord.message(order).toString());
+        expected.add(ImportRecord.message(text).toString());
+        expected.add(ImportRecord.END.toString());
+
+        ImportBuffer records = new ImportBuffer();
+        InputStream is = file.toURI().toURL().openStream();
+        assertEquals(expected, parse(new LogMessageParser(is, records, LogMessageScanner.Framing.BODY_LENGTH), records));
+
+        for (int mappingSize : new int[]{MappedLogFileCursor.DEFAULT_MAPPING_SIZE, 3, 7, 64}) {
+            records = new ImportBuffer();
+            assertEquals(expected, parse(new MappedLogMessageParser(file, records,
+                    LogMessageScanner.Framing.BODY_LENGTH, mappingSize), records));
+        }
+    }
+
+    /**
+     * Asserts that both parsers, across several mapping sizes, produce the given records
+     * followed by {@link ImportRecord#END}.
+     */
+    private void assertMessages(String contents, ImportRecord... records) throws Exception {
+        File file = FIXMessageTestHelper.createLogFile(files, contents);
+
+        List<String> expected = new ArrayList<String>();
+        for (ImportRecord record : records) {
+            expected.add(record.toString());
+        }
+        expected.add(ImportRecord.END.toString());
+
+        assertEquals(expected, parseStream(file));
+        assertEquals(expected, parseFile(file, MappedLogFileCursor.DEFAULT_MAPPING_SIZE));
+        assertEquals(expected, parseFile(file, 3));
+    }
+
+    /**
+     * @return the "ExpectedMessageCount" written in the log file's expected results.
+     */
+    private int getExpectedMessageCount(File logFile) throws Exception {
+        BufferedReader reader = new BufferedReader(new FileReader(logFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(EXPECTED_MESSAGE_COUNT)) {
+                    return Integer.valueOf(line.substring(line.indexOf("=") + 1));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        fail(logFile.getName() + " does not declare an " + EXPECTED_MESSAGE_COUNT + ".");
+        return -1;
+    }
+
+    private int countMessages(List<String> records) {
+        int count = 0;
+        for (String record : records) {
+            if (record.startsWith(ImportRecord.Type.MESSAGE + ": ")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<String> parseStream(File file) throws Exception {
+        InputStream is = file.toURI().toURL().openStream();
+        ImportBuffer records = new ImportBuffer();
+        return parse(new LogMessageParser(is, records), records);
+    }
+
+    private List<String> parseFile(File file, int mappingSize) throws Exception {
+        ImportBuffer records = new ImportBuffer();
+        return parse(new MappedLogMessageParser(file, records, mappingSize), records);
+    }
+
+    /**
+     * @return the type and text of each record.
+     */
+    private List<String> parse(Runnable parser, ImportBuffer records) throws Exception {
+        Thread t = new Thread(parser);
+        t.start();
+        t.join(5000);
+        assertFalse("The parser thread is still running.", t.isAlive());
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        assertSame(ImportRecord.END, list.get(list.size() - 1));
+
+        List<String> messages = new ArrayList<String>();
+        for (ImportRecord record : list) {
+            messages.add(record.toString());
+        }
+        return messages;
+    }
+}
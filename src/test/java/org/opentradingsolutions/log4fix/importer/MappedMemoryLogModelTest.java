@@ -0,0 +1,184 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.core.LogEvent;
+import org.opentradingsolutions.log4fix.core.LogMessage;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+import quickfix.DataDictionary;
+import quickfix.SessionID;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+public class MappedMemoryLogModelTest extends TestCase {
+
+    private static final String MESSAGE = "8=FIX.4.2\u00019=5\u000135=0\u000134=1\u000110=000\u0001";
+
+    private SessionID sessionId;
+    private DataDictionary dictionary;
+    private File file;
+    private long[] offsets;
+    private BitSet incoming;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        sessionId = new SessionID("FIX.4.2", "SENDER", "TARGET");
+        dictionary = new ClassPathDataDictionaryLoader().loadDictionary(sessionId);
+
+        StringBuilder contents = new StringBuilder();
+        offsets = new long[100];
+        incoming = new BitSet();
+        for (int i = 0; i < offsets.length; i++) {
+            contents.append("junk ");
+            offsets[i] = contents.length();
+            contents.append(createMessage(i + 1)).append('\n');
+            if (i % 2 == 1) {
+                incoming.set(i);
+            }
+        }
+        file = File.createTempFile("log4fix", ".log");
+        FIXMessageTestHelper.writeFile(file, contents.toString());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testCacheSizeLessThanOneFailsFast() throws Exception {
+        try {
+            new MappedMemoryLogModel(file, offsets, incoming, sessionId, dictionary, LogMessageScanner.Framing.LINE, 0);
+            fail("A cache size less than one should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testMessagesAreBuiltFromTheFile() throws Exception {
+        MappedMemoryLogModel model = createModel(10);
+
+        List<LogMessage> messages = model.getMessages();
+        assertEquals(100, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            LogMessage message = messages.get(i);
+            assertEquals(createMessage(i + 1).replace(LogMessage.SOH_DELIMETER, LogMessage.DEFAULT_DELIMETER),
+                    message.getRawMessage());
+            assertEquals(String.valueOf(i), message.toString());
+            assertEquals(i % 2 == 1, message.isIncoming());
+            assertEquals(sessionId, message.getSessionId());
+        }
+    }
+
+    public void testOnlyRequestedMessagesAreBuilt() throws Exception {
+        MappedMemoryLogModel model = createModel(10);
+        assertEquals(0, model.getCachedMessageCount());
+
+        model.getMessages().get(50);
+        assertEquals(1, model.getCachedMessageCount());
+    }
+
+    public void testCacheIsBounded() throws Exception {
+        MappedMemoryLogModel model = createModel(10);
+
+        LogMessage first = model.getMessages().get(0);
+        assertSame("A cached message.", first, model.getMessages().get(0));
+
+        for (int i = 1; i < 100; i++) {
+            model.getMessages().get(i);
+        }
+        assertEquals(10, model.getCachedMessageCount());
+        assertNotSame("The message was evicted.", first, model.getMessages().get(0));
+        assertEquals(first.getRawMessage(), model.getMessages().get(0).getRawMessage());
+    }
+
+    public void testMessagesCanBeAddedAfterTheMappedMessages() throws Exception {
+        MappedMemoryLogModel model = createModel(10);
+        final List<String> properties = new ArrayList<String>();
+        model.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                properties.add(evt.getPropertyName());
+            }
+        });
+
+        LogMessage added = new LogMessage(100, true, sessionId, createMessage(101), dictionary);
+        model.addLogMessage(added);
+
+        assertEquals(101, model.getMessages().size());
+        assertSame(added, model.getMessages().get(100));
+        assertEquals(1, properties.size());
+        assertEquals(MappedMemoryLogModel.PROPERTY_MESSAGES, properties.get(0));
+    }
+
+    public void testIndexOutOfBounds() throws Exception {
+        MappedMemoryLogModel model = createModel(10);
+        try {
+            model.getMessages().get(100);
+            fail("The index is out of bounds.");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    public void testClear() throws Exception {
+        MappedMemoryLogModel model = createModel(10);
+        model.getMessages().get(0);
+        model.addLogEvent(new LogEvent("event"));
+
+        model.clear();
+
+        assertTrue(model.getMessages().isEmpty());
+        assertTrue(model.getEvents().isEmpty());
+        assertEquals(0, model.getCachedMessageCount());
+        assertNull(model.getSessionId());
+    }
+
+    private MappedMemoryLogModel createModel(int cacheSize) throws IOException {
+        return new MappedMemoryLogModel(file, offsets, incoming, sessionId, dictionary,
+                LogMessageScanner.Framing.LINE, cacheSize);
+    }
+
+    private static String createMessage(int sequenceNumber) {
+        return MESSAGE.replace("34=1", "34=" + sequenceNumber);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class MergingLogMessageParserTest extends TestCase {
+
+    private final List<File> files = new ArrayList<File>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testNoFilesFailsFast() {
+        try {
+            new MergingLogMessageParser(Collections.<File>emptyList(), new ImportBuffer(),
+                    LogMessageScanner.Framing.LINE);
+            fail("An empty list of files should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNullImportBufferFailsFast() throws Exception {
+        try {
+            new MergingLogMessageParser(Arrays.asList(FIXMessageTestHelper.createLogFile(files, "")), null,
+                    LogMessageScanner.Framing.LINE);
+            fail("A null ImportBuffer should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testMessagesAreMergedBySendingTime() throws Exception {
+        File out = FIXMessageTestHelper.createLogFile(files, message(1, "01") + message(3, "03") + message(5, "05"));
+        File in = FIXMessageTestHelper.createLogFile(files, message(2, "02") + message(4, "04") + message(6, "06"));
+
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), getSequenceNumbers(parse(out, in)));
+    }
+
+    public void testFileOrderBreaksTies() throws Exception {
+        File first = FIXMessageTestHelper.createLogFile(files, message(1, "01") + message(2, "02"));
+        File second = FIXMessageTestHelper.createLogFile(files, message(3, "01") + message(4, "02"));
+
+        assertEquals(Arrays.asList(1, 3, 2, 4), getSequenceNumbers(parse(first, second)));
+        assertEquals(Arrays.asList(3, 1, 4, 2), getSequenceNumbers(parse(second, first)));
+    }
+
+    public void testMessageWithoutSendingTimeFollowsThePreviousMessageOfItsFile() throws Exception {
+        File first = FIXMessageTestHelper.createLogFile(files,
+                message(1, "01") + "8=FIX.4.2|9=5|35=0|34=2|10=000|\n" + message(4, "04"));
+        File second = FIXMessageTestHelper.createLogFile(files, message(3, "03"));
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), getSequenceNumbers(parse(first, second)));
+    }
+
+    public void testCompressedFilesAreMerged() throws Exception {
+        File first = FIXMessageTestHelper.createLogFile(files, message(1, "01") + message(3, "03"));
+        File second = createFile(".log.gz");
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(second));
+        try {
+            out.write((message(2, "02") + message(4, "04")).getBytes());
+        } finally {
+            out.close();
+        }
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), getSequenceNumbers(parse(first, second)));
+    }
+
+    public void testErrorsArePrefixedWithTheFileName() throws Exception {
+        File missing = createFile(".log");
+        missing.delete();
+        File first = FIXMessageTestHelper.createLogFile(files, message(1, "01"));
+
+        List<ImportRecord> records = parse(first, missing);
+        assertEquals(3, records.size());
+        assertEquals(ImportRecord.Type.ERROR, records.get(0).getType());
+        assertTrue(records.get(0).getText().startsWith(missing.getName() + ": "));
+        assertEquals(Arrays.asList(1), getSequenceNumbers(records));
+    }
+
+    public void testReadAheadIsBounded() throws Exception {
+        StringBuilder odd = new StringBuilder();
+        StringBuilder even = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String seconds = String.valueOf(i % 60);
+            String time = (seconds.length() == 1 ? "0" : "") + seconds;
+            String minutes = String.valueOf(10 + i / 60);
+            (i % 2 == 0 ? even : odd).append(message(i + 1, time).replace("10:00:", "10:" + minutes + ":"));
+        }
+
+        ImportBuffer records = new ImportBuffer();
+        List<ImportRecord> list = parse(new MergingLogMessageParser(
+                Arrays.asList(FIXMessageTestHelper.createLogFile(files, even.toString()),
+                        FIXMessageTestHelper.createLogFile(files, odd.toString())),
+                records, LogMessageScanner.Framing.LINE, 2), records);
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 1; i <= 1000; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, getSequenceNumbers(list));
+    }
+
+    public void testInterruptingBlockedParserPublishesEndRecordAndThreadDies() throws Exception {
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            contents.append(message(i, "01"));
+        }
+
+        ImportBuffer records = new ImportBuffer(10, ImportBuffer.DEFAULT_BYTE_CAPACITY);
+        Thread t = new Thread(new MergingLogMessageParser(
+                Arrays.asList(FIXMessageTestHelper.createLogFile(files, contents.toString()),
+                        FIXMessageTestHelper.createLogFile(files, contents.toString())),
+                records, LogMessageScanner.Framing.LINE));
+        t.start();
+
+        // wait for the parser to fill the buffer.
+        while (records.size() < 10) {
+            Thread.sleep(10);
+        }
+
+        t.interrupt();
+        t.join(1000);
+        assertFalse("The parser thread is still running.", t.isAlive());
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        assertSame(ImportRecord.END, list.get(list.size() - 1));
+    }
+
+    private List<ImportRecord> parse(File... logFiles) throws Exception {
+        ImportBuffer records = new ImportBuffer();
+        return parse(new MergingLogMessageParser(Arrays.asList(logFiles), records,
+                LogMessageScanner.Framing.LINE), records);
+    }
+
+    private List<ImportRecord> parse(Runnable parser, ImportBuffer records) throws Exception {
+        Thread t = new Thread(parser);
+        t.start();
+        t.join(5000);
+        assertFalse("The parser thread is still running.", t.isAlive());
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        assertSame(ImportRecord.END, list.get(list.size() - 1));
+        return list;
+    }
+
+    private static List<Integer> getSequenceNumbers(List<ImportRecord> records) {
+        FIXHeaderScanner header = new FIXHeaderScanner(34);
+        List<Integer> sequenceNumbers = new ArrayList<Integer>();
+        for (ImportRecord record : records) {
+            if (record.getType() == ImportRecord.Type.MESSAGE) {
+                header.scan(record.getText());
+                sequenceNumbers.add(Integer.valueOf(header.getValue(34)));
+            }
+        }
+        return sequenceNumbers;
+    }
+
+    private static String message(int sequenceNumber, String seconds) {
+        return "8=FIX.4.2|9=5|35=0|34=" + sequenceNumber + "|52=20110304-10:00:" + seconds + "|10=000|\n";
+    }
+
+    private File createFile(String suffix) throws IOException {
+        File file = File.createTempFile("log4fix", suffix);
+        files.add(file);
+        return file;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * These tests scan messages with a {@link LogMessageScanner} given a filter. The
+ * messages use the '|' delimeter unless the test says otherwise.
+ */
+public class MessageFilterTest extends TestCase {
+
+    private static final String ORDER =
+            "8=FIX.4.2|9=60|35=D|49=SENDER|56=TARGET|52=20110101-14:00:00.000|55=IBM|54=1|10=000|";
+    private static final String CANCEL =
+            "8=FIX.4.2|9=60|35=F|49=SENDER|56=TARGET|52=20110101-14:03:00|55=MSFT|54=1|10=000|";
+    private static final String HEARTBEAT =
+            "8=FIX.4.2|9=40|35=0|49=SENDER|56=TARGET|52=20110101-14:10:00|10=000|";
+
+    private MessageFilter filter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        filter = new MessageFilter();
+    }
+
+    public void testEmptyFilterKeepsEverything() {
+        assertTrue(filter.isEmpty());
+        assertEquals(3, scan(LogMessageScanner.Framing.LINE).size());
+    }
+
+    public void testMessageTypes() {
+        filter.addMessageTypes("D", "F");
+        assertFalse(filter.isEmpty());
+
+        List<String> messages = scan(LogMessageScanner.Framing.LINE);
+        assertEquals(2, messages.size());
+        assertEquals(ORDER, messages.get(0));
+        assertEquals(CANCEL, messages.get(1));
+    }
+
+    public void testTimeWindow() {
+        filter.setTimeWindow(MessageFilter.parseTimestamp("20110101-14:00:00.001"),
+                MessageFilter.parseTimestamp("20110101-14:10:00"));
+
+        List<String> messages = scan(LogMessageScanner.Framing.LINE);
+        assertEquals(1, messages.size());
+        assertEquals(CANCEL, messages.get(0));
+    }
+
+    public void testMessagesWithoutSendingTimeAreOutsideTheWindow() {
+        filter.setTimeWindow(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertTrue(scan("8=FIX.4.2|9=5|35=0|10=000|\n", LogMessageScanner.Framing.LINE).isEmpty());
+    }
+
+    public void testFieldValues() {
+        filter.addFieldValues(55, "IBM");
+        filter.addFieldValues(54, "1", "2");
+
+        List<String> messages = scan(LogMessageScanner.Framing.LINE);
+        assertEquals(1, messages.size());
+        assertEquals(ORDER, messages.get(0));
+    }
+
+    public void testValueMustMatchTheWholeField() {
+        filter.addFieldValues(55, "IB");
+        assertTrue(scan(LogMessageScanner.Framing.LINE).isEmpty());
+
+        filter = new MessageFilter();
+        filter.addFieldValues(5, "IBM");
+        assertTrue("Tag 55 is not tag 5.", scan(LogMessageScanner.Framing.LINE).isEmpty());
+    }
+
+    public void testAnyRepeatedFieldMayMatch() {
+        filter.addFieldValues(448, "B");
+        String message = "8=FIX.4.2|9=5|35=D|453=2|448=A|448=B|10=000|";
+        assertEquals(1, scan(message + "\n", LogMessageScanner.Framing.LINE).size());
+    }
+
+    public void testBodyLengthFraming() {
+        filter.addMessageTypes("F");
+        List<String> messages = scan(ORDER + CANCEL + HEARTBEAT, LogMessageScanner.Framing.BODY_LENGTH);
+        assertEquals(1, messages.size());
+        assertEquals(CANCEL, messages.get(0));
+    }
+
+    public void testTextDelimeter() {
+        filter.addFieldValues("35=F 55=MSFT");
+        List<String> messages = scan((ORDER + "\n" + CANCEL + "\n").replace("|", "^A"),
+                LogMessageScanner.Framing.LINE);
+        assertEquals(1, messages.size());
+        assertEquals(CANCEL, messages.get(0));
+    }
+
+    public void testErrorsAreNotFiltered() {
+        filter.addMessageTypes("D");
+        LogMessageScanner scanner = createScanner("9=5|8=FIX.4.2|35=0|10=000|\n" + HEARTBEAT + "\n",
+                LogMessageScanner.Framing.LINE);
+        assertTrue(scanner.next());
+        assertTrue(scanner.isError());
+        assertFalse(scanner.next());
+        assertEquals(1, scanner.getRejectedCount());
+    }
+
+    public void testIndexedValues() throws Exception {
+        LogFileIndexer indexer = new LogFileIndexer(new LogFileIndex.Key(1, 2, 3, LogMessageScanner.Framing.LINE));
+        indexer.add(ImportRecord.message(CANCEL.replace('|', '\u0001'), 0, CANCEL.length()));
+        indexer.add(ImportRecord.message(ORDER.replace('|', '\u0001'), 0, ORDER.length()));
+        indexer.add(ImportRecord.message(ORDER.replace('|', '\u0001'), 0, ORDER.length()));
+        LogFileIndex index = indexer.build();
+        assertEquals(2, index.getMessageTypeCount());
+        assertEquals(1, index.getMessageTypeCode(2));
+        assertEquals("F", index.getMessageTypeName(0));
+        assertEquals("D", index.getMessageTypeName(1));
+
+        filter.addMessageTypes("D");
+        filter.setTimeWindow(0, Long.MAX_VALUE);
+        MessageFilter.Matcher matcher = filter.createMatcher(Charset.defaultCharset(), index);
+
+        assertTrue(matcher.mayMatch(1, 1));
+        assertFalse(matcher.mayMatch(0, 1));
+        assertFalse(matcher.mayMatch(1, FIXHeaderScanner.NO_TIMESTAMP));
+
+        // without an index only the SendingTime is checked.
+        matcher = filter.createMatcher(Charset.defaultCharset());
+        assertTrue(matcher.mayMatch(0, 1));
+    }
+
+    public void testParseFieldValues() {
+        filter.addFieldValues(" 35=D,F  55=IBM ");
+        assertEquals("35=D,F 55=IBM", filter.toString());
+
+        assertInvalidFieldValues("55");
+        assertInvalidFieldValues("=IBM");
+        assertInvalidFieldValues("55=");
+        assertInvalidFieldValues("X=IBM");
+    }
+
+    public void testParseTimestamp() {
+        assertEquals(1293890400000000000L, MessageFilter.parseTimestamp("20110101-14:00:00"));
+        try {
+            MessageFilter.parseTimestamp("14:00:00");
+            fail("Not a UTCTimestamp.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testInvalidTimeWindow() {
+        try {
+            filter.setTimeWindow(2, 1);
+            fail("The window ends before it starts.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void assertInvalidFieldValues(String text) {
+        try {
+            new MessageFilter().addFieldValues(text);
+            fail("'" + text + "' is not a tag=value.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private List<String> scan(LogMessageScanner.Framing framing) {
+        return scan(ORDER + "\n" + CANCEL + "\n" + HEARTBEAT + "\n", framing);
+    }
+
+    private List<String> scan(String contents, LogMessageScanner.Framing framing) {
+        List<String> messages = new ArrayList<String>();
+        LogMessageScanner scanner = createScanner(contents, framing);
+        while (scanner.next()) {
+            assertFalse(scanner.isError());
+            messages.add(scanner.getMessage().replace('\u0001', '|'));
+        }
+        return messages;
+    }
+
+    private LogMessageScanner createScanner(String contents, LogMessageScanner.Framing framing) {
+        ByteBuffer buffer = ByteBuffer.wrap(contents.getBytes());
+        LogMessageScanner scanner = new LogMessageScanner(buffer, true, Charset.defaultCharset(), framing);
+        scanner.setFilter(filter);
+        return scanner;
+    }
+}
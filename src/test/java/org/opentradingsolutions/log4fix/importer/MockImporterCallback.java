@@ -34,6 +34,9 @@
 
 package org.opentradingsolutions.log4fix.importer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Brian M. Coyner
  */
@@ -42,6 +45,7 @@ public class MockImporterCallback implements ImporterCallback {
     private int startingInvokedCounter;
     private int cancelingInvokedCounter;
     private int doneInvokedCounter;
+    private final List<ImportProgress> progress = new ArrayList<ImportProgress>();
 
     public void starting() {
         ++startingInvokedCounter;
@@ -51,6 +55,10 @@ public class MockImporterCallback implements ImporterCallback {
         ++cancelingInvokedCounter;
     }
 
+    public void progress(ImportProgress progress) {
+        this.progress.add(progress);
+    }
+
     public void done() {
         ++doneInvokedCounter;
     }
@@ -66,4 +74,8 @@ public class MockImporterCallback implements ImporterCallback {
     int getDoneInvokedCounter() {
         return doneInvokedCounter;
     }
+
+    List<ImportProgress> getProgress() {
+        return progress;
+    }
 }
@@ -0,0 +1,263 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.core.LogEvent;
+import org.opentradingsolutions.log4fix.core.LogMessage;
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * These tests assert that the {@link ParallelLogFileImporter} imports exactly the
+ * same messages, in the same order, as the single threaded import.
+ */
+public class ParallelLogFileImporterTest extends TestCase {
+
+    private static final String LOGON =
+            "8=FIX.4.2\u00019=65\u000135=A\u000134=1\u000149=SENDER\u000152=20060101-12:00:00\u0001" +
+            "56=TARGET\u000198=0\u0001108=30\u000110=061\u0001";
+
+    private final List<File> files = new ArrayList<File>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testNullFileFailsFast() {
+        try {
+            new ParallelLogFileImporter(FIXMessageTestHelper.createImporterModel(), null, 2);
+            fail("A null File should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testParallelismLessThanOneFailsFast() throws Exception {
+        try {
+            new ParallelLogFileImporter(FIXMessageTestHelper.createImporterModel(),
+                    FIXMessageTestHelper.createLogFile(files, ""), 0);
+            fail("A parallelism less than one should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testEmptyFile() throws Exception {
+        assertSameImport(FIXMessageTestHelper.createLogFile(files, ""));
+    }
+
+    public void testLogFiles() throws Exception {
+        URL url = getClass().getResource("/logs");
+        File directory = new File(url.getFile());
+        String[] logFiles = directory.list();
+        assertNotNull(logFiles);
+
+        for (String logFileName : logFiles) {
+            assertSameImport(new File(directory, logFileName));
+        }
+    }
+
+    public void testManyMessages() throws Exception {
+        File file = FIXMessageTestHelper.createLogFile(files, createMessages(5000, "\n"));
+        List<LogMessage> messages = assertSameImport(file);
+
+        assertEquals(5000, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals("Message Index.", String.valueOf(i), messages.get(i).toString());
+        }
+    }
+
+    public void testMessagesSplitBetweenLines() throws Exception {
+        assertSameImport(FIXMessageTestHelper.createLogFile(files, createMessages(2000, "\n")
+                .replace("\u000152=", "\u0001\n52=")));
+    }
+
+    public void testChunksStartAtTheBeginningOfAMessageLine() throws Exception {
+        String contents = createMessages(2000, "\r\n")
+                .replace("8=FIX", "junk 8=FIX")
+                .replace("\u000152=", "\u0001\n52=");
+        File file = FIXMessageTestHelper.createLogFile(files, contents);
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            ParallelLogFileImporter importer = new ParallelLogFileImporter(FIXMessageTestHelper.createImporterModel(),
+                    file, 4, 1024);
+            long[] boundaries = importer.findChunkBoundaries(in.getChannel());
+
+            assertTrue("Chunk Count.", boundaries.length > 2);
+            assertEquals(0, boundaries[0]);
+            assertEquals(file.length(), boundaries[boundaries.length - 1]);
+
+            for (int i = 1; i < boundaries.length - 1; i++) {
+                int boundary = (int) boundaries[i];
+                assertTrue(boundaries[i] > boundaries[i - 1]);
+                assertEquals('\n', contents.charAt(boundary - 1));
+                assertTrue(contents.startsWith("junk 8=FIX", boundary));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testFileWithoutLineBreaksIsASingleChunk() throws Exception {
+        File file = FIXMessageTestHelper.createLogFile(files, createMessages(100, ""));
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ParallelLogFileImporter importer = new ParallelLogFileImporter(FIXMessageTestHelper.createImporterModel(),
+                    file, 4, 1024);
+            long[] boundaries = importer.findChunkBoundaries(channel);
+            assertEquals(2, boundaries.length);
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testMultipleSessions() throws Exception {
+        String otherSession = LOGON.replace("SENDER", "OTHERS");
+        List<LogMessage> messages = assertSameImport(FIXMessageTestHelper.createLogFile(files,
+                createMessages(1000, "\n") + otherSession + "\n" +
+                createMessages(1000, "\n")));
+        assertEquals("The other session has its own model.", 2000, messages.size());
+    }
+
+    public void testFileIsIndexed() throws Exception {
+        File file = FIXMessageTestHelper.createLogFile(files,
+                createMessages(2000, "\n").replace("\u000152=", "\u0001\n52="));
+        LogFileIndexStore store = new LogFileIndexStore();
+        files.add(new File(file.getPath() + LogFileIndexStore.INDEX_SUFFIX));
+
+        ImporterModel model = FIXMessageTestHelper.createImporterModel();
+        model.setIndexStore(store);
+        Thread thread = new Thread(new ParallelLogFileImporter(model, file, 4, 1024));
+        thread.start();
+        thread.join(10000);
+
+        LogFileIndex index = store.load(file, model.getFraming());
+        assertNotNull(index);
+        assertEquals(2000, index.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(i + 1, index.getSequenceNumber(i));
+        }
+        assertTrue(getEvents(model.getImporterMemoryLog().getMemoryLogModel()).contains(
+                LogFileIndexStore.EVENT_INDEX_SAVED + ": " + store.getSidecarFile(file)));
+    }
+
+    /**
+     * @return the messages imported by the parallel importer.
+     */
+    private List<LogMessage> assertSameImport(File file) throws Exception {
+        ImporterModel expected = FIXMessageTestHelper.createImporterModel();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            new Importer().start(expected, in, new MockImporterCallback());
+        } finally {
+            in.close();
+        }
+
+        ImporterModel actual = FIXMessageTestHelper.createImporterModel();
+        Thread thread = new Thread(new ParallelLogFileImporter(actual, file, 4, 1024));
+        thread.start();
+        thread.join(10000);
+        assertFalse("The importer thread is still running.", thread.isAlive());
+
+        MemoryLogModel expectedModel = expected.getImporterMemoryLog().getMemoryLogModel();
+        MemoryLogModel actualModel = actual.getImporterMemoryLog().getMemoryLogModel();
+        assertEquals(file.getName(), expectedModel.getSessionId(), actualModel.getSessionId());
+
+        List<LogMessage> expectedMessages = expectedModel.getMessages();
+        List<LogMessage> actualMessages = actualModel.getMessages();
+        assertEquals(file.getName(), expectedMessages.size(), actualMessages.size());
+        for (int i = 0; i < expectedMessages.size(); i++) {
+            LogMessage expectedMessage = expectedMessages.get(i);
+            LogMessage actualMessage = actualMessages.get(i);
+            assertEquals(expectedMessage.toString(), actualMessage.toString());
+            assertEquals(expectedMessage.isIncoming(), actualMessage.isIncoming());
+            assertEquals(expectedMessage.getRawMessage(), actualMessage.getRawMessage());
+        }
+
+        assertEquals(file.getName(), getEvents(expectedModel), getEvents(actualModel));
+
+        List<MemoryLogModel> expectedModels = expected.getSessionMemoryLogModels().getMemoryLogModels();
+        List<MemoryLogModel> actualModels = actual.getSessionMemoryLogModels().getMemoryLogModels();
+        assertEquals(file.getName(), expectedModels.size(), actualModels.size());
+        for (int i = 1; i < expectedModels.size(); i++) {
+            assertEquals(expectedModels.get(i).getSessionId(), actualModels.get(i).getSessionId());
+            assertEquals(expectedModels.get(i).getMessages().size(), actualModels.get(i).getMessages().size());
+        }
+        return actualMessages;
+    }
+
+    /**
+     * @return the events without the start, complete and statistics events, which
+     *         contain the current time or the time the import took.
+     */
+    private List<String> getEvents(MemoryLogModel memoryLogModel) {
+        List<String> events = new ArrayList<String>();
+        for (LogEvent event : memoryLogModel.getEvents()) {
+            String text = event.getEvent();
+            if (!text.startsWith(LogMessageBuilder.EVENT_START)
+                    && !text.startsWith(LogMessageBuilder.EVENT_COMPLETE)
+                    && !text.startsWith(Importer.EVENT_STATISTICS)
+                    && !text.startsWith(Importer.EVENT_THROUGHPUT)
+                    && !text.startsWith(Importer.EVENT_LATENCY)) {
+                events.add(text);
+            }
+        }
+        return events;
+    }
+
+    private String createMessages(int count, String lineSeparator) {
+        StringBuilder messages = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            // alternate between outgoing and incoming messages.
+            String message = i % 2 == 0 ? LOGON : LOGON.replace("SENDER", "TMP")
+                    .replace("TARGET", "SENDER").replace("TMP", "TARGET");
+            messages.append(message.replace("34=1", "34=" + (i + 1))).append(lineSeparator);
+        }
+        return messages.toString();
+    }
+}
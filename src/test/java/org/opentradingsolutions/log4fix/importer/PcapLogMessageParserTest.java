@@ -0,0 +1,316 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.util.FIXMessageTestHelper;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests importing the FIX messages of the TCP connections in a capture file.
+ */
+public class PcapLogMessageParserTest extends TestCase {
+
+    private static final byte[] CLIENT = {10, 0, 0, 1};
+    private static final byte[] SERVER = {10, 0, 0, 2};
+    private static final int CLIENT_PORT = 40000;
+    private static final int SERVER_PORT = 9878;
+
+    private static final int FIN = 0x01;
+    private static final int SYN = 0x02;
+    private static final int ACK = 0x10;
+
+    private static final long SECONDS = 1230000000L;
+
+    private static final String LOGON = message("35=A|34=1|49=CLIENT|56=SERVER|98=0|108=30|");
+    private static final String LOGON_REPLY = message("35=A|34=1|49=SERVER|56=CLIENT|98=0|108=30|");
+    private static final String ORDER = message("35=D|34=2|49=CLIENT|56=SERVER|11=1|55=IBM|");
+    private static final String ORDER2 = message("35=D|34=3|49=CLIENT|56=SERVER|11=2|55=MSFT|");
+    private static final String ORDER3 = message("35=D|34=4|49=CLIENT|56=SERVER|11=3|55=AAPL|");
+
+    private final List<File> files = new ArrayList<File>();
+    private ByteBuffer capture;
+    private int clientSequence = 1000;
+    private int serverSequence = 5000;
+    private int microseconds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        capture = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        capture.putInt(PcapReader.PCAP_MAGIC).putShort((short) 2).putShort((short) 4)
+                .putInt(0).putInt(0).putInt(65535).putInt(1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testNullFileFailsFast() {
+        try {
+            new PcapLogMessageParser(null, new ImportBuffer());
+            fail("A null File should fail fast.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testIsCapture() throws Exception {
+        assertTrue(PcapLogMessageParser.isCapture(writeCapture()));
+        assertFalse(PcapLogMessageParser.isCapture(FIXMessageTestHelper.createLogFile(files, LOGON)));
+        assertFalse(PcapLogMessageParser.isCapture(FIXMessageTestHelper.createLogFile(files, "")));
+    }
+
+    public void testNotACapture() throws Exception {
+        List<ImportRecord> records = parse(FIXMessageTestHelper.createLogFile(files, LOGON));
+        assertEquals(2, records.size());
+        assertEquals(ImportRecord.Type.ERROR, records.get(0).getType());
+    }
+
+    public void testMessagesOfBothDirections() throws Exception {
+        handshake();
+
+        // the logon is split across two packets.
+        int split = LOGON.length() / 2;
+        fromClient(ACK, LOGON.substring(0, split));
+        fromClient(ACK, LOGON.substring(split));
+        fromServer(ACK, LOGON_REPLY);
+        // two messages in one packet.
+        fromClient(ACK, ORDER + ORDER2);
+        fromClient(FIN | ACK, "");
+        fromServer(FIN | ACK, "");
+
+        List<ImportRecord> records = parse(writeCapture());
+        assertEquals(7, records.size());
+        assertEvent("Connection: 10.0.0.1:40000 -> 10.0.0.2:9878", records.get(0));
+        assertMessage(LOGON, 4, records.get(1));
+        assertEvent("Connection: 10.0.0.2:9878 -> 10.0.0.1:40000", records.get(2));
+        assertMessage(LOGON_REPLY, 5, records.get(3));
+        assertMessage(ORDER, 6, records.get(4));
+        assertMessage(ORDER2, 6, records.get(5));
+        assertSame(ImportRecord.END, records.get(6));
+    }
+
+    public void testSegmentsOutOfOrderAndRetransmitted() throws Exception {
+        handshake();
+        int start = clientSequence;
+        clientSequence = start + LOGON.length();
+        fromClient(ACK, ORDER);
+        clientSequence = start;
+        fromClient(ACK, LOGON);
+        clientSequence = start;
+        fromClient(ACK, LOGON + ORDER);
+        fromClient(ACK, ORDER2);
+
+        List<ImportRecord> records = parse(writeCapture());
+        assertEquals(5, records.size());
+        assertEquals(ImportRecord.Type.EVENT, records.get(0).getType());
+        // the early order waits for the logon.
+        assertMessage(LOGON, 4, records.get(1));
+        assertMessage(ORDER, 4, records.get(2));
+        assertMessage(ORDER2, 6, records.get(3));
+    }
+
+    public void testCaptureStartingInTheMiddleOfAConnection() throws Exception {
+        // the end of a message, then complete messages.
+        fromClient(ACK, ORDER.substring(20) + ORDER2);
+        fromClient(ACK, ORDER3);
+
+        List<ImportRecord> records = parse(writeCapture());
+        assertEquals(4, records.size());
+        assertMessage(ORDER2, 1, records.get(1));
+        assertMessage(ORDER3, 2, records.get(2));
+    }
+
+    public void testMissingSegmentIsSkipped() throws Exception {
+        handshake();
+        fromClient(ACK, LOGON);
+        // the middle of the order is never captured.
+        fromClient(ACK, ORDER.substring(0, 20));
+        clientSequence += ORDER.length() - 20 - 10;
+        fromClient(ACK, ORDER.substring(ORDER.length() - 10));
+        fromClient(ACK, ORDER2);
+        fromClient(ACK, ORDER3);
+
+        List<ImportRecord> records = parse(writeCapture(), 2 * ORDER2.length());
+        assertEquals(6, records.size());
+        assertMessage(LOGON, 3, records.get(1));
+        assertEquals(ImportRecord.Type.ERROR, records.get(2).getType());
+        assertTrue(records.get(2).getText(), records.get(2).getText().contains(
+                (ORDER.length() - 30) + " bytes of 10.0.0.1:40000 -> 10.0.0.2:9878 are missing"));
+        // the messages held while waiting for the missing bytes.
+        assertMessage(ORDER2, 7, records.get(3));
+        assertMessage(ORDER3, 7, records.get(4));
+    }
+
+    public void testMissingSegmentIsSkippedWhenTheConnectionCloses() throws Exception {
+        handshake();
+        fromClient(ACK, LOGON.substring(0, 20));
+        clientSequence += 10;
+        fromClient(ACK, ORDER);
+        fromClient(FIN | ACK, "");
+
+        List<ImportRecord> records = parse(writeCapture());
+        assertEquals(ImportRecord.Type.ERROR, records.get(0).getType());
+        assertMessage(ORDER, 5, records.get(2));
+    }
+
+    public void testFilter() throws Exception {
+        handshake();
+        fromClient(ACK, LOGON);
+        fromClient(ACK, ORDER);
+
+        MessageFilter filter = new MessageFilter();
+        filter.addMessageTypes("D");
+        ImportBuffer buffer = new ImportBuffer();
+        PcapLogMessageParser parser = new PcapLogMessageParser(writeCapture(), buffer);
+        parser.setFilter(filter);
+
+        List<ImportRecord> records = parse(parser, buffer);
+        assertEquals(3, records.size());
+        assertMessage(ORDER, 4, records.get(1));
+        assertEquals(1, parser.getMessageCount());
+        assertEquals(capture.position(), parser.getBytesRead());
+    }
+
+    private void handshake() {
+        fromClient(SYN, "");
+        clientSequence++;
+        fromServer(SYN | ACK, "");
+        serverSequence++;
+    }
+
+    private void fromClient(int flags, String payload) {
+        packet(CLIENT, CLIENT_PORT, SERVER, SERVER_PORT, clientSequence, flags, payload);
+        clientSequence += payload.length();
+    }
+
+    private void fromServer(int flags, String payload) {
+        packet(SERVER, SERVER_PORT, CLIENT, CLIENT_PORT, serverSequence, flags, payload);
+        serverSequence += payload.length();
+    }
+
+    /**
+     * Adds an Ethernet frame holding an IPv4 packet holding a TCP segment. Each
+     * packet is captured a microsecond after the last.
+     */
+    private void packet(byte[] source, int sourcePort, byte[] destination, int destinationPort, int sequence,
+                        int flags, String payload) {
+        byte[] data = payload.replace('|', '\u0001').getBytes();
+        int ipLength = 20 + 20 + data.length;
+        ByteBuffer frame = ByteBuffer.allocate(14 + ipLength);
+        frame.put(new byte[12]).putShort((short) 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) ipLength).putInt(0x00004000)
+                .put((byte) 64).put((byte) 6).putShort((short) 0).put(source).put(destination);
+        frame.putShort((short) sourcePort).putShort((short) destinationPort).putInt(sequence).putInt(0)
+                .put((byte) 0x50).put((byte) flags).putShort((short) 65535).putInt(0);
+        frame.put(data);
+
+        microseconds++;
+        capture.putInt((int) SECONDS).putInt(microseconds).putInt(frame.capacity()).putInt(frame.capacity())
+                .put(frame.array());
+    }
+
+    private File writeCapture() throws IOException {
+        File file = File.createTempFile("log4fix", ".pcap");
+        files.add(file);
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.write(capture.array(), 0, capture.position());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private List<ImportRecord> parse(File file) throws Exception {
+        ImportBuffer records = new ImportBuffer();
+        return parse(new PcapLogMessageParser(file, records), records);
+    }
+
+    private List<ImportRecord> parse(File file, int streamCapacity) throws Exception {
+        ImportBuffer records = new ImportBuffer();
+        return parse(new PcapLogMessageParser(file, records, streamCapacity), records);
+    }
+
+    private List<ImportRecord> parse(Runnable parser, ImportBuffer records) throws Exception {
+        Thread t = new Thread(parser);
+        t.start();
+        t.join(5000);
+        assertFalse("The parser thread is still running.", t.isAlive());
+
+        List<ImportRecord> list = new ArrayList<ImportRecord>();
+        records.drainTo(list);
+        assertSame(ImportRecord.END, list.get(list.size() - 1));
+        return list;
+    }
+
+    private void assertEvent(String expected, ImportRecord record) {
+        assertEquals(ImportRecord.Type.EVENT, record.getType());
+        assertEquals(expected, record.getText());
+    }
+
+    /**
+     * @param packet the number of the packet completing the message.
+     */
+    private void assertMessage(String expected, int packet, ImportRecord record) {
+        assertEquals(record.getText(), ImportRecord.Type.MESSAGE, record.getType());
+        assertEquals(expected.replace('|', '\u0001'), record.getText());
+        assertEquals(SECONDS * 1000000000L + packet * 1000L, record.getReceiveTime());
+    }
+
+    /**
+     * @return a FIX.4.2 message with the body, its BodyLength and its CheckSum.
+     */
+    private static String message(String body) {
+        String header = "8=FIX.4.2|9=" + body.length() + "|";
+        int checksum = 0;
+        for (char c : (header + body).replace('|', '\u0001').toCharArray()) {
+            checksum += c;
+        }
+        return header + body + "10=" + String.format("%03d", checksum % 256) + "|";
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests reading the packets of pcap and pcapng capture files.
+ */
+public class PcapReaderTest extends TestCase {
+
+    private static final long SECONDS = 1230000000L;
+
+    public void testIsCapture() {
+        assertTrue(PcapReader.isCapture(PcapReader.PCAP_MAGIC));
+        assertTrue(PcapReader.isCapture(Integer.reverseBytes(PcapReader.PCAP_MAGIC)));
+        assertTrue(PcapReader.isCapture(Integer.reverseBytes(PcapReader.PCAP_NANOSECOND_MAGIC)));
+        assertTrue(PcapReader.isCapture(PcapReader.PCAPNG_MAGIC));
+        assertFalse(PcapReader.isCapture(0x383D4649));
+    }
+
+    public void testNotACapture() {
+        try {
+            new PcapReader(new ByteArrayInputStream("8=FIX.4.2|9=5|35=D|10=123|".getBytes()));
+            fail("A log file is not a capture.");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testLittleEndianMicrosecondPcap() throws Exception {
+        ByteBuffer file = pcap(ByteOrder.LITTLE_ENDIAN, PcapReader.PCAP_MAGIC, 1);
+        record(file, SECONDS, 250000, "abc");
+        record(file, SECONDS + 1, 1, "defg");
+
+        PcapReader reader = new PcapReader(toStream(file));
+        assertTrue(reader.next());
+        assertEquals(1, reader.getLinkType());
+        assertEquals(SECONDS * 1000000000L + 250000000L, reader.getTimestamp());
+        assertEquals("abc", getPacket(reader));
+
+        assertTrue(reader.next());
+        assertEquals((SECONDS + 1) * 1000000000L + 1000L, reader.getTimestamp());
+        assertEquals("defg", getPacket(reader));
+
+        assertFalse(reader.next());
+    }
+
+    public void testBigEndianNanosecondPcap() throws Exception {
+        ByteBuffer file = pcap(ByteOrder.BIG_ENDIAN, PcapReader.PCAP_NANOSECOND_MAGIC, 101);
+        record(file, SECONDS, 123456789, "abc");
+
+        PcapReader reader = new PcapReader(toStream(file));
+        assertTrue(reader.next());
+        assertEquals(101, reader.getLinkType());
+        assertEquals(SECONDS * 1000000000L + 123456789L, reader.getTimestamp());
+        assertEquals("abc", getPacket(reader));
+        assertFalse(reader.next());
+    }
+
+    public void testTruncatedPcap() throws Exception {
+        ByteBuffer file = pcap(ByteOrder.LITTLE_ENDIAN, PcapReader.PCAP_MAGIC, 1);
+        record(file, SECONDS, 0, "abcdef");
+        file.position(file.position() - 2);
+
+        PcapReader reader = new PcapReader(toStream(file));
+        try {
+            reader.next();
+            fail("The last packet is incomplete.");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testPcapng() throws Exception {
+        ByteBuffer file = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        sectionHeader(file);
+        // microseconds by default.
+        interfaceDescription(file, 1, -1);
+        // nanoseconds.
+        interfaceDescription(file, 113, 9);
+        // a block that is skipped, e.g. a name resolution block.
+        block(file, 4, new byte[8]);
+
+        ByteBuffer packet = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        long units = SECONDS * 1000000000L + 5;
+        packet.putInt(1).putInt((int) (units >>> 32)).putInt((int) units).putInt(3).putInt(3).put("abc".getBytes());
+        block(file, 6, packet.array());
+
+        packet = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        units = SECONDS * 1000000L + 7;
+        packet.putInt(0).putInt((int) (units >>> 32)).putInt((int) units).putInt(2).putInt(4).put("de".getBytes());
+        block(file, 6, packet.array());
+
+        // a simple packet block has no timestamp.
+        packet = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        packet.putInt(4).put("fghi".getBytes());
+        block(file, 3, packet.array());
+
+        PcapReader reader = new PcapReader(toStream(file));
+        assertTrue(reader.next());
+        assertEquals(113, reader.getLinkType());
+        assertEquals(SECONDS * 1000000000L + 5, reader.getTimestamp());
+        assertEquals("abc", getPacket(reader));
+
+        assertTrue(reader.next());
+        assertEquals(1, reader.getLinkType());
+        assertEquals(SECONDS * 1000000000L + 7000, reader.getTimestamp());
+        assertEquals("de", getPacket(reader));
+
+        assertTrue(reader.next());
+        assertEquals(1, reader.getLinkType());
+        assertEquals(FIXHeaderScanner.NO_TIMESTAMP, reader.getTimestamp());
+        assertEquals("fghi", getPacket(reader));
+
+        assertFalse(reader.next());
+    }
+
+    public void testPcapngPacketOfUnknownInterface() throws Exception {
+        ByteBuffer file = ByteBuffer.allocate(1024).order(ByteOrder.BIG_ENDIAN);
+        sectionHeader(file);
+        ByteBuffer packet = ByteBuffer.allocate(20);
+        packet.putInt(3);
+        block(file, 6, packet.array());
+
+        PcapReader reader = new PcapReader(toStream(file));
+        try {
+            reader.next();
+            fail("The packet's interface is not described.");
+        } catch (IOException expected) {
+        }
+    }
+
+    private ByteBuffer pcap(ByteOrder order, int magic, int linkType) {
+        ByteBuffer file = ByteBuffer.allocate(1024).order(order);
+        file.putInt(magic).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(linkType);
+        return file;
+    }
+
+    private void record(ByteBuffer file, long seconds, int fraction, String data) {
+        file.putInt((int) seconds).putInt(fraction).putInt(data.length()).putInt(data.length()).put(data.getBytes());
+    }
+
+    private void sectionHeader(ByteBuffer file) {
+        ByteBuffer body = ByteBuffer.allocate(16).order(file.order());
+        body.putInt(0x1A2B3C4D).putShort((short) 1).putShort((short) 0).putLong(-1);
+        block(file, PcapReader.PCAPNG_MAGIC, body.array());
+    }
+
+    /**
+     * @param resolution the if_tsresol option; -1 for none.
+     */
+    private void interfaceDescription(ByteBuffer file, int linkType, int resolution) {
+        ByteBuffer body = ByteBuffer.allocate(resolution == -1 ? 8 : 20).order(file.order());
+        body.putShort((short) linkType).putShort((short) 0).putInt(0);
+        if (resolution != -1) {
+            body.putShort((short) 9).putShort((short) 1).put((byte) resolution).put(new byte[3]);
+            body.putShort((short) 0).putShort((short) 0);
+        }
+        block(file, 1, body.array());
+    }
+
+    private void block(ByteBuffer file, int type, byte[] body) {
+        int padded = (body.length + 3) & ~3;
+        file.putInt(type).putInt(padded + 12).put(body).put(new byte[padded - body.length]).putInt(padded + 12);
+    }
+
+    private ByteArrayInputStream toStream(ByteBuffer file) {
+        return new ByteArrayInputStream(file.array(), 0, file.position());
+    }
+
+    private String getPacket(PcapReader reader) {
+        return new String(reader.getData(), reader.getOffset(), reader.getLength());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+import org.opentradingsolutions.log4fix.core.MockMemoryLogModel;
+import org.opentradingsolutions.log4fix.datadictionary.SessionDataDictionaryLoader;
+import quickfix.SessionID;
+
+public class SessionTrackerTest extends TestCase {
+
+    private int resolveCount;
+    private ImporterModel model;
+    private SessionTracker tracker;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        SessionIdResolver resolver = new SessionIdResolver() {
+            public SessionID resolveSessionId(String beginString, String senderCompId, String targetCompId) {
+                resolveCount++;
+                return new SessionID(beginString, senderCompId, targetCompId);
+            }
+        };
+
+        ImporterMemoryLog log = new ImporterMemoryLog(new MockMemoryLogModel(), new SessionDataDictionaryLoader());
+        model = new ImporterModel(log, resolver);
+        tracker = new SessionTracker(model);
+    }
+
+    public void testLogonEstablishesTheSession() throws Exception {
+        assertFalse(tracker.isIncoming(message("A", "SENDER", "TARGET")));
+        assertEquals(0, resolveCount);
+        assertEquals(new SessionID("FIX.4.2", "SENDER", "TARGET"), tracker.getSenderSessionId());
+
+        assertTrue(tracker.isIncoming(message("0", "TARGET", "SENDER")));
+        assertFalse(tracker.isIncoming(message("0", "SENDER", "TARGET")));
+    }
+
+    public void testMissingLogonIsResolved() throws Exception {
+        assertFalse(tracker.isIncoming(message("D", "SENDER", "TARGET")));
+        assertEquals(1, resolveCount);
+    }
+
+    public void testTagSuffixIsNotMistakenForMessageType() throws Exception {
+        assertFalse(tracker.isIncoming(soh("8=FIX.4.2|9=5|1135=A|35=D|49=SENDER|56=TARGET|10=000|")));
+        assertEquals("The message is not a logon.", 1, resolveCount);
+    }
+
+    public void testMessageFromAnotherSessionIsRoutedToItsOwnLog() throws Exception {
+        tracker.isIncoming(message("A", "SENDER", "TARGET"));
+        ImporterMemoryLog first = tracker.getMemoryLog();
+
+        assertFalse(tracker.isIncoming(message("A", "SENDER", "OTHER")));
+        ImporterMemoryLog second = tracker.getMemoryLog();
+
+        assertNotSame(first, second);
+        assertSame(model.getImporterMemoryLog(), first);
+        assertEquals(new SessionID("FIX.4.2", "SENDER", "OTHER"), second.getSessionId());
+        assertEquals(2, model.getSessionMemoryLogModels().getMemoryLogModels().size());
+        assertEquals(2, tracker.getSessionCount());
+
+        assertTrue(tracker.isIncoming(message("0", "TARGET", "SENDER")));
+        assertSame(first, tracker.getMemoryLog());
+        assertTrue(tracker.isIncoming(message("0", "OTHER", "SENDER")));
+        assertSame(second, tracker.getMemoryLog());
+    }
+
+    public void testBothDirectionsAreOneSession() throws Exception {
+        assertFalse(tracker.isIncoming(message("A", "TARGET", "SENDER")));
+        assertTrue(tracker.isIncoming(message("A", "SENDER", "TARGET")));
+        assertEquals(1, tracker.getSessionCount());
+        assertEquals(new SessionID("FIX.4.2", "TARGET", "SENDER"), tracker.getSenderSessionId());
+    }
+
+    public void testBeginStringIsPartOfTheSession() throws Exception {
+        tracker.isIncoming(message("A", "SENDER", "TARGET"));
+        tracker.isIncoming(soh("8=FIX.4.4|9=5|35=A|49=SENDER|56=TARGET|10=000|"));
+        assertEquals(2, tracker.getSessionCount());
+    }
+
+    public void testManySessions() throws Exception {
+        ImporterMemoryLog[] logs = new ImporterMemoryLog[40];
+        for (int i = 0; i < logs.length; i++) {
+            assertFalse(tracker.isIncoming(message("A", "SENDER", "TARGET" + i)));
+            logs[i] = tracker.getMemoryLog();
+        }
+        assertEquals(logs.length, tracker.getSessionCount());
+
+        for (int i = logs.length - 1; i >= 0; i--) {
+            assertTrue(tracker.isIncoming(message("0", "TARGET" + i, "SENDER")));
+            assertSame(logs[i], tracker.getMemoryLog());
+        }
+        assertEquals(logs.length, tracker.getSessionCount());
+    }
+
+    private static String message(String messageType, String sender, String target) {
+        return soh("8=FIX.4.2|9=5|35=" + messageType + "|49=" + sender + "|56=" + target + "|10=000|");
+    }
+
+    private static String soh(String message) {
+        return message.replace('|', '\u0001');
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The Log4FIX Software License
+ * Copyright (c) 2006 - 2011 Brian M. Coyner  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. Neither the name of the product (Log4FIX), nor Brian M. Coyner,
+ *    nor the names of its contributors may be used to endorse or promote
+ *    products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL BRIAN M. COYNER OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package org.opentradingsolutions.log4fix.importer;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the reassembly of one direction of a TCP connection.
+ */
+public class TcpStreamTest extends TestCase {
+
+    private TcpStream stream;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        stream = new TcpStream("10.0.0.1:40000 -> 10.0.0.2:9878", 8);
+    }
+
+    public void testSegmentsInOrder() {
+        stream.start(1000);
+        assertTrue(add(1000, "abc"));
+        assertTrue(add(1003, "def"));
+        assertEquals("abcdef", available());
+
+        stream.consume(4);
+        assertEquals("ef", available());
+    }
+
+    public void testRetransmittedBytesAreDropped() {
+        stream.start(1000);
+        add(1000, "abcd");
+        assertFalse(add(1000, "ab"));
+        assertTrue(add(1002, "cdef"));
+        assertEquals("abcdef", available());
+    }
+
+    public void testEarlySegmentsWaitForTheMissingSegment() {
+        stream.start(1000);
+        add(1000, "ab");
+        assertFalse(add(1004, "ef"));
+        assertFalse(add(1006, "gh"));
+        assertTrue(stream.hasGap());
+        assertEquals("ab", available());
+
+        assertTrue(add(1002, "cd"));
+        assertFalse(stream.hasGap());
+        assertEquals("abcdefgh", available());
+    }
+
+    public void testOverlappingEarlySegments() {
+        stream.start(1000);
+        add(1002, "cdef");
+        add(1004, "efgh");
+        add(1000, "abc");
+        assertEquals("abcdefgh", available());
+    }
+
+    public void testFirstSegmentStartsTheStream() {
+        // the capture started in the middle of the connection.
+        assertTrue(add(5000, "xyz"));
+        assertEquals("xyz", available());
+    }
+
+    public void testSequenceNumbersWrapAround() {
+        stream.start(0xFFFFFFFE);
+        add(0xFFFFFFFE, "ab");
+        add(1, "de");
+        add(0, "c");
+        assertEquals("abcde", available());
+    }
+
+    public void testSkipGap() {
+        stream.start(1000);
+        add(1000, "ab");
+        add(1010, "klmno");
+        assertFalse(stream.isOverCapacity());
+        add(1015, "pqrs");
+        assertTrue(stream.isOverCapacity());
+
+        assertEquals(8, stream.skipGap());
+        assertFalse(stream.isOverCapacity());
+        assertFalse(stream.hasGap());
+
+        // the bytes in front of the gap can never be completed.
+        assertEquals("klmnopqrs", available());
+
+        // the missing bytes are now retransmissions.
+        assertFalse(add(1002, "cdefghij"));
+        assertEquals("klmnopqrs", available());
+    }
+
+    public void testSkip() {
+        stream.start(1000);
+        add(1000, "ab");
+        add(1006, "gh");
+        stream.skip(4);
+        assertEquals("gh", available());
+    }
+
+    private boolean add(int sequence, String text) {
+        byte[] bytes = ("-" + text).getBytes();
+        return stream.add(sequence, bytes, 1, text.length());
+    }
+
+    private String available() {
+        return new String(stream.getBytes(), 0, stream.getLength());
+    }
+}
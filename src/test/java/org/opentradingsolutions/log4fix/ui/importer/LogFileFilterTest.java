@@ -76,6 +76,14 @@ public class LogFileFilterTest extends TestCase {
         assertTrue("*.out file should be accepted.", filter.accept(MockFile.createExistingFile("today.out")));
     }
 
+    public void testDotGzFile() {
+        assertTrue("*.gz file should be accepted.", filter.accept(MockFile.createExistingFile("today.log.gz")));
+    }
+
+    public void testDotZipFile() {
+        assertTrue("*.zip file should be accepted.", filter.accept(MockFile.createExistingFile("today.zip")));
+    }
+
     public void testDotTextFile() {
         assertFalse("*.txt file should not be accepted.", filter.accept(MockFile.createExistingFile("today.txt")));
     }
@@ -34,13 +34,25 @@
 
 package org.opentradingsolutions.log4fix.util;
 
+import org.opentradingsolutions.log4fix.core.MemoryLogModel;
+import org.opentradingsolutions.log4fix.core.MockMemoryLogModel;
+import org.opentradingsolutions.log4fix.datadictionary.ClassPathDataDictionaryLoader;
+import org.opentradingsolutions.log4fix.importer.ImporterMemoryLog;
+import org.opentradingsolutions.log4fix.importer.ImporterModel;
+import org.opentradingsolutions.log4fix.importer.PassThroughSessionIdResolver;
+import org.opentradingsolutions.log4fix.importer.SessionIdResolver;
 import quickfix.Message;
 import quickfix.SessionID;
 import quickfix.field.*;
 import quickfix.fix42.Heartbeat;
 import quickfix.fix42.NewOrderSingle;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author Brian M. Coyner
@@ -102,4 +114,56 @@ public class FIXMessageTestHelper {
     public Message createHeartbeatMessage() {
         return new Heartbeat();
     }
+
+    /**
+     * Creates a temporary log file holding the contents.
+     *
+     * @param files the files the test deletes when it is done; the new file is added.
+     */
+    public static File createLogFile(List<File> files, String contents) throws IOException {
+        File file = File.createTempFile("log4fix", ".log");
+        files.add(file);
+        writeFile(file, contents);
+        return file;
+    }
+
+    /**
+     * Creates a log file holding the contents in the directory. The test deletes
+     * the directory's files when it is done.
+     */
+    public static File createLogFile(File directory, String contents) throws IOException {
+        File file = File.createTempFile("log4fix", ".log", directory);
+        writeFile(file, contents);
+        return file;
+    }
+
+    public static void writeFile(File file, String contents) throws IOException {
+        writeFile(file, contents, false);
+    }
+
+    /**
+     * @param append true to add the contents to the end of the file.
+     */
+    public static void writeFile(File file, String contents, boolean append) throws IOException {
+        OutputStream out = new FileOutputStream(file, append);
+        try {
+            out.write(contents.getBytes());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return an importer model logging to a {@link MockMemoryLogModel} and using
+     *         the session Ids found in the log.
+     */
+    public static ImporterModel createImporterModel() {
+        return createImporterModel(new PassThroughSessionIdResolver());
+    }
+
+    public static ImporterModel createImporterModel(SessionIdResolver resolver) {
+        MemoryLogModel memoryLogModel = new MockMemoryLogModel();
+        ImporterMemoryLog memoryLog = new ImporterMemoryLog(memoryLogModel, new ClassPathDataDictionaryLoader());
+        return new ImporterModel(memoryLog, resolver);
+    }
 }